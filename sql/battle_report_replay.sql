@@ -0,0 +1,13 @@
+-- 战报改为保存开战快照 + 随机种子，回放时重新结算生成完整战报
+-- payload 仅保留给已有的整份编码战报，新战报 payload 为空
+
+ALTER TABLE battle_report
+  MODIFY COLUMN `payload` MEDIUMBLOB NULL COMMENT '整份编码的战报(旧数据)',
+  ADD COLUMN IF NOT EXISTS `seed` BIGINT DEFAULT 0 COMMENT '战斗随机种子' AFTER `payload`,
+  ADD COLUMN IF NOT EXISTS `snapshot` BLOB NULL COMMENT '开战快照(双方单位属性)' AFTER `seed`,
+  ADD COLUMN IF NOT EXISTS `victory_a` TINYINT(1) DEFAULT 0 COMMENT 'A方是否获胜' AFTER `snapshot`,
+  ADD COLUMN IF NOT EXISTS `total_rounds` INT DEFAULT 0 COMMENT '回合数' AFTER `victory_a`,
+  ADD COLUMN IF NOT EXISTS `side_a_remaining` INT DEFAULT 0 COMMENT 'A方剩余兵力' AFTER `total_rounds`,
+  ADD COLUMN IF NOT EXISTS `side_b_remaining` INT DEFAULT 0 COMMENT 'B方剩余兵力' AFTER `side_a_remaining`;
+
+-- 国战每轮配对的洗牌种子保存在 nation_war_session_round.data (RoundResult.pairingSeed)，无需改表
@@ -0,0 +1,18 @@
+-- 战报存储表
+-- 国战/联盟战/英雄榜的战报统一以紧凑二进制（字符串表 + varint + deflate）存储，
+-- 业务记录只保存 report_id，客户端按需通过 /battle-report/{id} 拉取
+
+CREATE TABLE IF NOT EXISTS `battle_report` (
+  `id` BIGINT AUTO_INCREMENT COMMENT '战报ID',
+  `report_type` VARCHAR(16) NOT NULL COMMENT 'nationwar/alliancewar/herorank',
+  `server_id` INT DEFAULT 1 COMMENT '区服ID',
+  `payload` MEDIUMBLOB NOT NULL COMMENT '编码后的战报',
+  `raw_size` INT DEFAULT 0 COMMENT '按旧JSON格式估算的字节数，用于观察压缩比',
+  `create_time` BIGINT NOT NULL COMMENT '创建时间戳',
+  PRIMARY KEY (`id`),
+  KEY `idx_create_time` (`create_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='战报存储表';
+
+-- 英雄榜战斗记录改为引用战报ID，旧的 battle_report 文本列仅用于读取历史数据
+ALTER TABLE hero_rank_battle
+  ADD COLUMN IF NOT EXISTS report_id BIGINT DEFAULT 0 COMMENT '战报ID(battle_report.id)';
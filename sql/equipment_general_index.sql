@@ -0,0 +1,2 @@
+-- 阵型批量加载按 equipped_general_id IN (...) 查询已穿戴装备，补充索引
+ALTER TABLE `equipment` ADD INDEX IF NOT EXISTS `idx_equip_general` (`equipped_general_id`, `equipped`);
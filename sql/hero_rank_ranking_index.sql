@@ -0,0 +1,2 @@
+-- 英雄榜每日结算按 server_id + ranking 顺序流式读取，补充索引
+ALTER TABLE `hero_rank` ADD INDEX IF NOT EXISTS `idx_hr_server_ranking` (`server_id`, `ranking`);
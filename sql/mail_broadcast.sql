@@ -0,0 +1,29 @@
+-- 全服广播邮件
+-- 每日俸禄、全服补偿等只写一条广播模板 + 附件；
+-- 玩家打开邮箱（或查询红点）时把自己还没有邮件行的广播补成 mail 行（只带状态，标题/正文/附件读模板）
+
+CREATE TABLE IF NOT EXISTS mail_broadcast (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    sender_id VARCHAR(64) NOT NULL DEFAULT 'system' COMMENT '发送者ID',
+    sender_name VARCHAR(64) DEFAULT '系统' COMMENT '发送者名称',
+    title VARCHAR(128) NOT NULL COMMENT '邮件标题',
+    content TEXT COMMENT '邮件内容',
+    has_attachment TINYINT(1) DEFAULT 0 COMMENT '是否有附件',
+    create_time BIGINT NOT NULL COMMENT '发送时间（此后创建角色的玩家收不到）',
+    expire_time BIGINT DEFAULT 0 COMMENT '过期时间，0=永不过期；过期后不再补发'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='全服广播邮件';
+
+CREATE TABLE IF NOT EXISTS mail_broadcast_attachment (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    broadcast_id BIGINT NOT NULL COMMENT '关联广播ID',
+    item_type VARCHAR(16) NOT NULL COMMENT 'silver/gold/boundGold/food/wood/paper/item/equipment',
+    item_id VARCHAR(128) DEFAULT '' COMMENT '道具ID（item/equipment类型时使用）',
+    item_name VARCHAR(64) NOT NULL COMMENT '物品名称',
+    item_quality VARCHAR(8) DEFAULT '1' COMMENT '品质',
+    count INT NOT NULL DEFAULT 1 COMMENT '数量',
+    INDEX idx_broadcast (broadcast_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='全服广播邮件附件';
+
+-- 补发出的个人邮件行引用模板；唯一键保证并发补发不重复
+ALTER TABLE mail ADD COLUMN broadcast_id BIGINT DEFAULT NULL COMMENT '来源广播ID，普通邮件为NULL' AFTER deleted;
+ALTER TABLE mail ADD UNIQUE KEY uk_receiver_broadcast (receiver_id, broadcast_id);
@@ -0,0 +1,8 @@
+-- 邮件红点计数：未读数 / 未领取附件数
+-- 发信、已读、领取、删除时增量维护，红点轮询只读这张表；打开收件箱时按 mail 表 COUNT 校准
+
+CREATE TABLE IF NOT EXISTS mail_counter (
+    receiver_id VARCHAR(64) NOT NULL PRIMARY KEY COMMENT '接收者ID',
+    unread INT NOT NULL DEFAULT 0 COMMENT '未读邮件数',
+    unclaimed INT NOT NULL DEFAULT 0 COMMENT '未领取附件的邮件数'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='邮件红点计数';
@@ -0,0 +1,42 @@
+-- 国战会话增量持久化表
+-- 会话元数据 / 城市战场 / 玩家状态 / 每轮结果分行存储，每轮结算只写有变化的行
+-- 旧的 nation_war.data 整体JSON仅作为恢复时的兼容回退
+
+CREATE TABLE IF NOT EXISTS `nation_war_session` (
+  `session_id` VARCHAR(64) NOT NULL COMMENT '会话ID(SESSION_yyyy-MM-dd)',
+  `server_id` INT NOT NULL DEFAULT 1 COMMENT '区服ID',
+  `war_date` VARCHAR(16) NOT NULL COMMENT '国战日期(yyyy-MM-dd)',
+  `phase` VARCHAR(16) NOT NULL COMMENT '会话阶段',
+  `current_round` INT DEFAULT 0 COMMENT '当前轮次',
+  `data` TEXT COMMENT '会话元数据JSON（报名/锁定目标/阶段时间，不含战场和玩家）',
+  `update_time` BIGINT DEFAULT 0 COMMENT '最后写入时间戳',
+  PRIMARY KEY (`session_id`, `server_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='国战会话元数据表';
+
+CREATE TABLE IF NOT EXISTS `nation_war_session_city` (
+  `session_id` VARCHAR(64) NOT NULL COMMENT '会话ID',
+  `server_id` INT NOT NULL DEFAULT 1 COMMENT '区服ID',
+  `city_id` VARCHAR(32) NOT NULL COMMENT '城市ID',
+  `data` TEXT COMMENT '城市战场JSON（比分/守军/胜负，不含轮次记录）',
+  `update_time` BIGINT DEFAULT 0 COMMENT '最后写入时间戳',
+  PRIMARY KEY (`session_id`, `server_id`, `city_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='国战城市战场状态表';
+
+CREATE TABLE IF NOT EXISTS `nation_war_session_player` (
+  `session_id` VARCHAR(64) NOT NULL COMMENT '会话ID',
+  `server_id` INT NOT NULL DEFAULT 1 COMMENT '区服ID',
+  `od_user_id` VARCHAR(64) NOT NULL COMMENT '玩家ID（含NPC_前缀的援军）',
+  `data` TEXT COMMENT '玩家参战状态JSON',
+  `update_time` BIGINT DEFAULT 0 COMMENT '最后写入时间戳',
+  PRIMARY KEY (`session_id`, `server_id`, `od_user_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='国战玩家状态表';
+
+CREATE TABLE IF NOT EXISTS `nation_war_session_round` (
+  `session_id` VARCHAR(64) NOT NULL COMMENT '会话ID',
+  `server_id` INT NOT NULL DEFAULT 1 COMMENT '区服ID',
+  `city_id` VARCHAR(32) NOT NULL COMMENT '城市ID',
+  `round_number` INT NOT NULL COMMENT '轮次',
+  `data` MEDIUMTEXT COMMENT '本轮结果JSON（对战/轮空）',
+  `create_time` BIGINT DEFAULT 0 COMMENT '写入时间戳',
+  PRIMARY KEY (`session_id`, `server_id`, `city_id`, `round_number`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='国战轮次结果表（只追加）';
@@ -0,0 +1,106 @@
+package com.tencent.wxcloudrun.service.battle;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 战斗引擎与单位组装压测
+ *
+ * 运行: mvn -P benchmark test-compile exec:exec
+ * 分配率: 默认带 -prof gc，看 gc.alloc.rate.norm（每次操作分配字节数）
+ * 开始前先跑 BattleScenarioCheck 校验固定场景集，结果不一致直接失败，摘要打印在日志里供版本间对比。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BattleBenchmark {
+
+    private static final int SCENARIOS = 64;
+
+    private BattleService battleService;
+    private List<BattleScenarios> player6v6;
+    private List<BattleScenarios> bossSquad;
+    private List<BattleScenarios> nationWarPair;
+    private List<BattleScenarios> tacticsHeavy;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        battleService = new BattleService();
+        long digest = BattleScenarioCheck.verify(battleService);
+        System.out.printf("%n[scenario-check] digest=%08x%n", digest);
+
+        player6v6 = BattleScenarios.generate(BattleScenarios.Kind.PLAYER_6V6, SCENARIOS);
+        bossSquad = BattleScenarios.generate(BattleScenarios.Kind.BOSS_SQUAD, SCENARIOS);
+        nationWarPair = BattleScenarios.generate(BattleScenarios.Kind.NATION_WAR_PAIR, SCENARIOS);
+        tacticsHeavy = BattleScenarios.generate(BattleScenarios.Kind.TACTICS_HEAVY, SCENARIOS);
+    }
+
+    private BattleScenarios next(List<BattleScenarios> list) {
+        BattleScenarios s = list.get(cursor++ & (SCENARIOS - 1));
+        s.reset();
+        return s;
+    }
+
+    @Benchmark
+    public BattleService.BattleReport player6v6Report() {
+        BattleScenarios s = next(player6v6);
+        return battleService.fight(s.sideA, s.sideB, s.kind.maxRounds);
+    }
+
+    @Benchmark
+    public boolean player6v6Simulate() {
+        BattleScenarios s = next(player6v6);
+        return battleService.simulate(s.sideA, s.sideB, s.kind.maxRounds);
+    }
+
+    @Benchmark
+    public BattleService.BattleReport bossSquadOneRound() {
+        BattleScenarios s = next(bossSquad);
+        return battleService.fight(s.sideA, s.sideB, s.kind.maxRounds);
+    }
+
+    @Benchmark
+    public BattleService.BattleReport nationWarPair() {
+        BattleScenarios s = next(nationWarPair);
+        return battleService.fight(s.sideA, s.sideB, s.kind.maxRounds);
+    }
+
+    @Benchmark
+    public boolean nationWarPairSimulate() {
+        BattleScenarios s = next(nationWarPair);
+        return battleService.simulate(s.sideA, s.sideB, s.kind.maxRounds);
+    }
+
+    @Benchmark
+    public BattleService.BattleReport tacticsHeavy() {
+        BattleScenarios s = next(tacticsHeavy);
+        return battleService.fight(s.sideA, s.sideB, s.kind.maxRounds);
+    }
+
+    /**
+     * 阵容组装的纯计算部分（兵种表 + 阵型 + 武将四维 + 装备/特性加成），
+     * FormationService.buildPlayerBattleUnits 里的查库部分不在压测范围内
+     */
+    @Benchmark
+    public void assembleFormation(Blackhole bh) {
+        SplittableRandom r = new SplittableRandom(cursor++);
+        for (int pos = 0; pos < 6; pos++) {
+            int maxSoldiers = 600 + r.nextInt(5) * 100;
+            BattleCalculator.BattleUnit u = BattleCalculator.assembleBattleUnit(
+                    "G" + pos, 60, 400, 300, 80, 80, 10, 25,
+                    1 + pos % 3, 8, maxSoldiers, maxSoldiers,
+                    BattleCalculator.maxPeopleToFormationLevel(maxSoldiers),
+                    120, 120, 5, 5, 5, 30, 30, 10);
+            u.position = pos;
+            bh.consume(u);
+        }
+    }
+}
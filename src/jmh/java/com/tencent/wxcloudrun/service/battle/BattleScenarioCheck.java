@@ -0,0 +1,87 @@
+package com.tencent.wxcloudrun.service.battle;
+
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 固定场景集的结果校验
+ *
+ * 对每个场景用场景种子结算三次：带战报 fight 两次（确定性）、不带战报 simulate 一次（记录与否结果一致），
+ * 再把胜负/回合数/剩余兵力汇总成摘要。引擎改动前后摘要相同，说明结算结果没有变化。
+ *
+ * 用法: mvn -P benchmark test-compile exec:java -Dexec.mainClass=com.tencent.wxcloudrun.service.battle.BattleScenarioCheck
+ */
+public final class BattleScenarioCheck {
+
+    public static final int SCENARIOS_PER_KIND = 256;
+
+    private BattleScenarioCheck() {}
+
+    /**
+     * @return 全部场景结果的 CRC32 摘要
+     * @throws IllegalStateException 同种子结果不一致时
+     */
+    public static long verify(BattleService battleService) {
+        CRC32 crc = new CRC32();
+        for (BattleScenarios.Kind kind : BattleScenarios.Kind.values()) {
+            List<BattleScenarios> scenarios = BattleScenarios.generate(kind, SCENARIOS_PER_KIND);
+            for (int i = 0; i < scenarios.size(); i++) {
+                BattleScenarios s = scenarios.get(i);
+
+                s.reset();
+                BattleService.BattleReport first = battleService.fight(s.sideA, s.sideB, kind.maxRounds, s.seed);
+                s.reset();
+                BattleService.BattleReport second = battleService.fight(s.sideA, s.sideB, kind.maxRounds, s.seed);
+                s.reset();
+                boolean simulated = battleService.simulate(s.sideA, s.sideB, kind.maxRounds, s.seed);
+                int simA = remaining(s.sideA);
+                int simB = remaining(s.sideB);
+                s.reset();
+
+                if (!sameOutcome(first, second)) {
+                    throw new IllegalStateException(kind + "#" + i + " 同种子两次战报不一致");
+                }
+                if (first.victoryA != simulated || first.sideARemaining != simA || first.sideBRemaining != simB) {
+                    throw new IllegalStateException(kind + "#" + i + " 带战报与不带战报的结算结果不一致");
+                }
+                update(crc, first.victoryA ? 1 : 0);
+                update(crc, first.totalRounds);
+                update(crc, first.sideARemaining);
+                update(crc, first.sideBRemaining);
+                for (BattleService.RoundLog r : first.rounds) update(crc, r.actions.size());
+            }
+        }
+        return crc.getValue();
+    }
+
+    public static void main(String[] args) {
+        long digest = verify(new BattleService());
+        System.out.printf("scenarios=%d x %d, digest=%08x%n",
+                BattleScenarios.Kind.values().length, SCENARIOS_PER_KIND, digest);
+    }
+
+    private static boolean sameOutcome(BattleService.BattleReport a, BattleService.BattleReport b) {
+        if (a.victoryA != b.victoryA || a.totalRounds != b.totalRounds
+                || a.sideARemaining != b.sideARemaining || a.sideBRemaining != b.sideBRemaining
+                || a.rounds.size() != b.rounds.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.rounds.size(); i++) {
+            if (a.rounds.get(i).actions.size() != b.rounds.get(i).actions.size()) return false;
+        }
+        return true;
+    }
+
+    private static int remaining(List<BattleCalculator.BattleUnit> side) {
+        int sum = 0;
+        for (BattleCalculator.BattleUnit u : side) sum += Math.max(0, u.soldierCount);
+        return sum;
+    }
+
+    private static void update(CRC32 crc, int v) {
+        crc.update(v >>> 24);
+        crc.update(v >>> 16);
+        crc.update(v >>> 8);
+        crc.update(v);
+    }
+}
@@ -0,0 +1,167 @@
+package com.tencent.wxcloudrun.service.battle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * 压测用的可复现战斗场景
+ *
+ * 所有单位都由固定种子生成，同一个 (kind, index) 在任何机器、任何版本上得到相同的阵容和战斗种子，
+ * 方便对比引擎改动前后的吞吐和结果。
+ */
+public final class BattleScenarios {
+
+    public enum Kind {
+        /** 玩家 6v6，英雄榜/掠夺/盟战 */
+        PLAYER_6V6(20),
+        /** 6人打 Boss 小队，只打1回合（世界Boss/联盟Boss） */
+        BOSS_SQUAD(1),
+        /** 国战单场，20回合上限，双方带部分兵力 */
+        NATION_WAR_PAIR(20),
+        /** 全员带主动兵法、高触发率（AOE/连射/反伤/以逸待劳） */
+        TACTICS_HEAVY(20);
+
+        public final int maxRounds;
+
+        Kind(int maxRounds) { this.maxRounds = maxRounds; }
+    }
+
+    private static final String[] ACTIVE_TACTICS = {
+            "t_archer_1", "t_archer_2", "t_archer_3", "t_cavalry_1", "t_cavalry_2",
+            "t_cavalry_3", "t_cavalry_4", "t_special_lvbu"
+    };
+    private static final String[] PASSIVE_TACTICS = {
+            "t_infantry_1", "t_infantry_2", "t_infantry_3", "t_infantry_4", "t_infantry_5"
+    };
+
+    public final Kind kind;
+    public final long seed;
+    public final List<BattleCalculator.BattleUnit> sideA;
+    public final List<BattleCalculator.BattleUnit> sideB;
+    private final int[] initialA;
+    private final int[] initialB;
+
+    private BattleScenarios(Kind kind, long seed,
+                            List<BattleCalculator.BattleUnit> sideA, List<BattleCalculator.BattleUnit> sideB) {
+        this.kind = kind;
+        this.seed = seed;
+        this.sideA = sideA;
+        this.sideB = sideB;
+        this.initialA = soldiers(sideA);
+        this.initialB = soldiers(sideB);
+    }
+
+    /** 恢复开战前兵力，同一个场景可以反复结算 */
+    public void reset() {
+        for (int i = 0; i < initialA.length; i++) sideA.get(i).soldierCount = initialA[i];
+        for (int i = 0; i < initialB.length; i++) sideB.get(i).soldierCount = initialB[i];
+    }
+
+    public static List<BattleScenarios> generate(Kind kind, int count) {
+        List<BattleScenarios> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) list.add(create(kind, i));
+        return list;
+    }
+
+    public static BattleScenarios create(Kind kind, int index) {
+        SplittableRandom r = new SplittableRandom(0x5EEDL * 31 + kind.ordinal() * 1_000_003L + index);
+        List<BattleCalculator.BattleUnit> a;
+        List<BattleCalculator.BattleUnit> b;
+        switch (kind) {
+            case BOSS_SQUAD:
+                a = formation(r, "A", 6, 0.5, 1.0);
+                b = bossSquad(r);
+                break;
+            case NATION_WAR_PAIR:
+                a = formation(r, "A", 6, 0.5, 0.6);
+                b = formation(r, "B", 6, 0.5, 0.6);
+                break;
+            case TACTICS_HEAVY:
+                a = formation(r, "A", 6, 1.0, 1.0);
+                b = formation(r, "B", 6, 1.0, 1.0);
+                break;
+            default:
+                a = formation(r, "A", 6, 0.5, 1.0);
+                b = formation(r, "B", 6, 0.5, 1.0);
+                break;
+        }
+        return new BattleScenarios(kind, r.nextLong(), a, b);
+    }
+
+    /**
+     * @param activeRatio 带主动兵法的比例（其余一半被动、一半无兵法）
+     * @param fillRatio   最低兵力比例（国战中后期兵力不满）
+     */
+    private static List<BattleCalculator.BattleUnit> formation(SplittableRandom r, String side, int size,
+                                                               double activeRatio, double fillRatio) {
+        List<BattleCalculator.BattleUnit> units = new ArrayList<>(size);
+        for (int pos = 0; pos < size; pos++) {
+            int level = 40 + r.nextInt(61);
+            int troopType = 1 + r.nextInt(3);
+            int tier = 5 + r.nextInt(6);
+            int maxSoldiers = 600 + r.nextInt(5) * 100;
+            int soldiers = (int) (maxSoldiers * (fillRatio + (1 - fillRatio) * r.nextDouble()));
+            BattleCalculator.BattleUnit u = BattleCalculator.assembleBattleUnit(
+                    side + pos, level,
+                    200 + r.nextInt(600), 150 + r.nextInt(500), 20 + r.nextInt(120), 20 + r.nextInt(120),
+                    r.nextInt(15), 15 + r.nextInt(20),
+                    troopType, tier, Math.max(1, soldiers), maxSoldiers,
+                    BattleCalculator.maxPeopleToFormationLevel(maxSoldiers),
+                    r.nextInt(300), r.nextInt(300), r.nextInt(10), r.nextInt(10), r.nextInt(10),
+                    r.nextInt(4) == 0 ? r.nextInt(80) : 0, r.nextInt(4) == 0 ? r.nextInt(80) : 0,
+                    r.nextInt(4) == 0 ? r.nextInt(30) : 0);
+            u.position = pos;
+            if (r.nextInt(5) == 0) u.traitDamageResist = r.nextInt(20);
+            if (r.nextInt(5) == 0) u.traitLifePct = r.nextInt(30);
+            u.traitImmuneAmbush = r.nextInt(8) == 0;
+
+            double roll = r.nextDouble();
+            if (roll < activeRatio) {
+                u.tacticsId = ACTIVE_TACTICS[r.nextInt(ACTIVE_TACTICS.length)];
+                u.tacticsTriggerRate = 20 + r.nextInt(30);
+                u.tacticsEffectValue = 20 + r.nextInt(60);
+            } else if (roll < activeRatio + (1 - activeRatio) / 2) {
+                u.tacticsId = PASSIVE_TACTICS[r.nextInt(PASSIVE_TACTICS.length)];
+                u.tacticsEffectValue = 5 + r.nextInt(25);
+            }
+            if (u.tacticsId != null) {
+                u.tacticsName = u.tacticsId;
+                u.tacticsLevel = 1 + r.nextInt(10);
+                u.tacticsTriggerBonus = r.nextInt(10);
+                u.tacticsTriggerMultiplier = r.nextInt(6) == 0 ? 2.0 : 1.0;
+            }
+            units.add(u);
+        }
+        return units;
+    }
+
+    private static List<BattleCalculator.BattleUnit> bossSquad(SplittableRandom r) {
+        List<BattleCalculator.BattleUnit> units = new ArrayList<>(6);
+        int level = 60 + r.nextInt(41);
+        for (int pos = 0; pos < 6; pos++) {
+            BattleCalculator.BattleUnit u = new BattleCalculator.BattleUnit();
+            u.name = "Boss" + pos;
+            u.level = level;
+            u.totalAttack = 2000 + r.nextInt(2000);
+            u.totalDefense = 1500 + r.nextInt(1500);
+            u.valor = level * 2;
+            u.command = level * 2;
+            u.mobility = 20 + r.nextInt(20);
+            u.troopType = 1 + pos % 3;
+            u.soldierTier = Math.min(10, 1 + level / 10);
+            u.soldierCount = 5000 + r.nextInt(5000);
+            u.maxSoldierCount = 10000;
+            u.soldierLife = 400 + r.nextInt(400);
+            u.position = pos;
+            units.add(u);
+        }
+        return units;
+    }
+
+    private static int[] soldiers(List<BattleCalculator.BattleUnit> units) {
+        int[] s = new int[units.size()];
+        for (int i = 0; i < s.length; i++) s[i] = units.get(i).soldierCount;
+        return s;
+    }
+}
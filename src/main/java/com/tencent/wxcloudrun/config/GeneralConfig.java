@@ -1,8 +1,7 @@
 package com.tencent.wxcloudrun.config;
 
 import com.tencent.wxcloudrun.dao.GeneralQualityMapper;
-import com.tencent.wxcloudrun.dao.GeneralFamousTraitMapper;
-import com.tencent.wxcloudrun.dao.GeneralTemplateMapper;
+import com.tencent.wxcloudrun.service.catalog.GameCatalog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,7 +11,7 @@ import javax.annotation.PostConstruct;
 import java.util.*;
 
 /**
- * 武将配置 - 从数据库加载品质与模板（槽位 + 模板 + 特征）
+ * 武将配置 - 从数据库加载品质；模板（槽位 + 模板 + 特征）由 {@link GameCatalog} 启动时整体装载
  */
 @Component
 public class GeneralConfig {
@@ -22,9 +21,7 @@ public class GeneralConfig {
     @Autowired
     private GeneralQualityMapper generalQualityMapper;
     @Autowired
-    private GeneralTemplateMapper generalTemplateMapper;
-    @Autowired
-    private GeneralFamousTraitMapper generalFamousTraitMapper;
+    private GameCatalog gameCatalog;
 
     /** 品质定义（启动时从 general_quality 加载并缓存） */
     private final Map<String, Quality> qualities = new LinkedHashMap<>();
@@ -64,39 +61,27 @@ public class GeneralConfig {
     }
 
     /**
-     * 按品质获取该品质下所有将领模板（从数据库 general_template + general_slot + general_famous_trait 查询）
+     * 按品质获取该品质下所有将领模板（只读，来自配置目录）
      */
     public List<GeneralTemplate> getAllGeneralsByQuality(String quality) {
-        List<Map<String, Object>> rows = generalTemplateMapper.listByQualityCode(quality);
-        if (rows == null || rows.isEmpty()) {
-            return Collections.emptyList();
-        }
-        return buildGeneralTemplates(rows);
+        return gameCatalog.current().getTemplates(quality);
     }
 
     /**
      * 按品质与可招募势力获取模板（本国 + 群 + 虚构），用于按国家限制招募
      */
     public List<GeneralTemplate> getRecruitableGeneralsByQuality(String quality, String playerFaction) {
-        List<String> factions = Arrays.asList(playerFaction, "群", "虚构");
-        List<Map<String, Object>> rows = generalTemplateMapper.listRecruitableByQualityAndFaction(quality, factions);
-        if (rows == null || rows.isEmpty()) {
-            return Collections.emptyList();
-        }
-        return buildGeneralTemplates(rows);
+        return gameCatalog.current().getRecruitableTemplates(quality, playerFaction);
     }
 
-    private List<GeneralTemplate> buildGeneralTemplates(List<Map<String, Object>> rows) {
-        Set<Integer> templateIds = new HashSet<>();
-        for (Map<String, Object> row : rows) {
-            Object tid = row.get("templateId");
-            if (tid != null) templateIds.add(((Number) tid).intValue());
-        }
-
+    /**
+     * 模板行（listAllBaseTemplates 等）+ 特性行（含 templateId）→ 模板对象，特性列表只读
+     */
+    public static List<GeneralTemplate> buildGeneralTemplates(List<Map<String, Object>> rows,
+                                                              List<Map<String, Object>> traitRows) {
         Map<Integer, List<Trait>> traitsByTemplateId = new HashMap<>();
-        if (!templateIds.isEmpty()) {
-            List<Map<String, Object>> traitRows = generalFamousTraitMapper.findByTemplateIds(new ArrayList<>(templateIds));
-            for (Map<String, Object> tr : traitRows != null ? traitRows : Collections.<Map<String, Object>>emptyList()) {
+        if (traitRows != null) {
+            for (Map<String, Object> tr : traitRows) {
                 Object tid = tr.get("templateId");
                 String traitName = (String) tr.get("traitName");
                 String traitDesc = (String) tr.get("traitDesc");
@@ -125,7 +110,8 @@ public class GeneralConfig {
             int templateId = tid != null ? ((Number) tid).intValue() : 0;
             Object siObj = row.get("slotIndex");
             int slotIndex = siObj != null ? ((Number) siObj).intValue() : 0;
-            List<Trait> traits = traitsByTemplateId.getOrDefault(templateId, Collections.emptyList());
+            List<Trait> traits = Collections.unmodifiableList(
+                    traitsByTemplateId.getOrDefault(templateId, Collections.emptyList()));
             result.add(new GeneralTemplate(name, qualityCode, faction != null ? faction : "群", type, troopType, traits, avatar, slotId, slotIndex));
         }
         return result;
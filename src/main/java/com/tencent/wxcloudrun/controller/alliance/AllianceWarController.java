@@ -7,6 +7,7 @@ import com.tencent.wxcloudrun.model.AllianceWar.WarBattle;
 import com.tencent.wxcloudrun.model.AllianceWar.WarParticipant;
 import com.tencent.wxcloudrun.service.PlayerNameResolver;
 import com.tencent.wxcloudrun.service.alliance.AllianceWarService;
+import com.tencent.wxcloudrun.service.battle.BattleReportStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
@@ -27,6 +28,7 @@ public class AllianceWarController {
     
     private final AllianceWarService allianceWarService;
     private final PlayerNameResolver playerNameResolver;
+    private final BattleReportStore battleReportStore;
     
     private String getUserId(HttpServletRequest request) {
         return String.valueOf(request.getAttribute("userId"));
@@ -266,7 +268,9 @@ public class AllianceWarController {
             if (found == null) return ApiResponse.error("战报不存在");
             Map<String, Object> result = new HashMap<>();
             result.put("battle", found);
-            if (found.getBattleReportJson() != null) {
+            if (found.getBattleReportId() != null) {
+                result.put("battleReport", battleReportStore.load(found.getBattleReportId()));
+            } else if (found.getBattleReportJson() != null) {
                 result.put("battleReport", JSON.parseObject(found.getBattleReportJson()));
             }
             return ApiResponse.success(result);
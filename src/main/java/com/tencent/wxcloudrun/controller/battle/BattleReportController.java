@@ -0,0 +1,41 @@
+package com.tencent.wxcloudrun.controller.battle;
+
+import com.tencent.wxcloudrun.dto.ApiResponse;
+import com.tencent.wxcloudrun.service.battle.BattleReportStore;
+import com.tencent.wxcloudrun.service.battle.BattleService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * 战报回放：国战/联盟战/英雄榜的战斗记录只带 battleReportId，客户端点开回放时再来拉取
+ */
+@RestController
+@RequestMapping("/battle-report")
+public class BattleReportController {
+
+    @Autowired
+    private BattleReportStore battleReportStore;
+
+    @GetMapping("/{id}")
+    public ApiResponse<BattleService.BattleReport> getReport(@PathVariable long id) {
+        try {
+            return ApiResponse.success(battleReportStore.load(id));
+        } catch (Exception e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 回放校验：按保存的开战快照和种子重新结算，比对胜负/回合数/剩余兵力
+     */
+    @GetMapping("/{id}/verify")
+    public ApiResponse<Map<String, Object>> verify(@PathVariable long id) {
+        try {
+            return ApiResponse.success(battleReportStore.verify(id));
+        } catch (Exception e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+}
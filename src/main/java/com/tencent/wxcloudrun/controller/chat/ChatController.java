@@ -7,8 +7,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -17,6 +19,8 @@ import java.util.Map;
 public class ChatController {
 
     private static final Logger logger = LoggerFactory.getLogger(ChatController.class);
+    /** 长轮询最长挂起时间，需小于网关超时 */
+    private static final long MAX_POLL_WAIT_MS = 25000;
 
     @Autowired private ChatService chatService;
     @Autowired private GameServerMapper gameServerMapper;
@@ -50,16 +54,37 @@ public class ChatController {
         }
     }
 
+    /**
+     * 拉取 since 之后的新消息。wait>0（毫秒）时为长轮询：暂无新消息则挂起，
+     * 有人发言立即返回，超时返回空列表；wait=0 保持原来的立即返回
+     */
     @GetMapping("/poll")
-    public ApiResponse<List<Map<String, Object>>> poll(
+    public DeferredResult<ApiResponse<List<Map<String, Object>>>> poll(
             HttpServletRequest request,
             @RequestParam(defaultValue = "world") String channel,
-            @RequestParam(defaultValue = "0") long since) {
+            @RequestParam(defaultValue = "0") long since,
+            @RequestParam(defaultValue = "0") long wait) {
+        long waitMs = Math.min(Math.max(wait, 0), MAX_POLL_WAIT_MS);
+        DeferredResult<ApiResponse<List<Map<String, Object>>>> result = new DeferredResult<>(
+                waitMs > 0 ? waitMs : null, ApiResponse.success(Collections.<Map<String, Object>>emptyList()));
         try {
-            return ApiResponse.success(chatService.poll(getUserId(request), channel, since));
+            String userId = getUserId(request);
+            List<Map<String, Object>> msgs = chatService.poll(userId, channel, since);
+            if (!msgs.isEmpty() || waitMs <= 0) {
+                result.setResult(ApiResponse.success(msgs));
+                return result;
+            }
+            Runnable cancel = chatService.awaitMessages(userId, channel, since,
+                    m -> result.setResult(ApiResponse.success(m)));
+            if (cancel == null) {
+                result.setResult(ApiResponse.success(msgs));
+            } else {
+                result.onCompletion(cancel);
+            }
         } catch (Exception e) {
-            return ApiResponse.error(e.getMessage());
+            result.setResult(ApiResponse.error(e.getMessage()));
         }
+        return result;
     }
 
     @GetMapping("/private-chat")
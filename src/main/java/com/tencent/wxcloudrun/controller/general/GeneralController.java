@@ -4,6 +4,7 @@ import com.tencent.wxcloudrun.dto.ApiResponse;
 import com.tencent.wxcloudrun.model.General;
 import com.tencent.wxcloudrun.model.Equipment;
 import com.tencent.wxcloudrun.service.general.GeneralService;
+import com.tencent.wxcloudrun.service.equipment.EquipBonus;
 import com.tencent.wxcloudrun.service.equipment.EquipmentService;
 import com.tencent.wxcloudrun.service.SuitConfigService;
 import com.tencent.wxcloudrun.repository.EquipmentRepository;
@@ -75,13 +76,13 @@ public class GeneralController {
     }
 
     private void applyEquipmentBonus(General general) {
-        Map<String, Integer> bonus = suitConfigService.calculateTotalEquipBonus(general.getId());
-        general.setAttrAttack((general.getAttrAttack() != null ? general.getAttrAttack() : 0) + bonus.getOrDefault("attack", 0));
-        general.setAttrDefense((general.getAttrDefense() != null ? general.getAttrDefense() : 0) + bonus.getOrDefault("defense", 0));
-        general.setAttrMobility((general.getAttrMobility() != null ? general.getAttrMobility() : 0) + bonus.getOrDefault("mobility", 0));
-        general.setAttrValor((general.getAttrValor() != null ? general.getAttrValor() : 0) + bonus.getOrDefault("valor", 0));
-        general.setAttrCommand((general.getAttrCommand() != null ? general.getAttrCommand() : 0) + bonus.getOrDefault("command", 0));
-        general.setAttrDodge((general.getAttrDodge() != null ? general.getAttrDodge() : 0) + bonus.getOrDefault("dodge", 0));
+        EquipBonus bonus = suitConfigService.calculateTotalEquipBonus(general.getId());
+        general.setAttrAttack((general.getAttrAttack() != null ? general.getAttrAttack() : 0) + bonus.attack);
+        general.setAttrDefense((general.getAttrDefense() != null ? general.getAttrDefense() : 0) + bonus.defense);
+        general.setAttrMobility((general.getAttrMobility() != null ? general.getAttrMobility() : 0) + bonus.mobility);
+        general.setAttrValor((general.getAttrValor() != null ? general.getAttrValor() : 0) + bonus.valor);
+        general.setAttrCommand((general.getAttrCommand() != null ? general.getAttrCommand() : 0) + bonus.command);
+        general.setAttrDodge((general.getAttrDodge() != null ? general.getAttrDodge() : 0) + bonus.dodge);
     }
     
     /**
@@ -350,6 +350,11 @@ public class NationWarController {
         }
     }
 
+    @GetMapping("/round-metrics")
+    public ApiResponse<Map<String, Object>> getRoundMetrics() {
+        return ApiResponse.success(nationWarService.getRoundEngineMetrics());
+    }
+
     @GetMapping("/battle-detail/{warId}/{battleId}")
     public ApiResponse<Map<String, Object>> getBattleDetail(@PathVariable String warId,
                                                              @PathVariable String battleId) {
@@ -4,10 +4,16 @@ import com.tencent.wxcloudrun.dao.ChatMapper;
 import com.tencent.wxcloudrun.dao.GameServerMapper;
 import com.tencent.wxcloudrun.dto.ApiResponse;
 import com.tencent.wxcloudrun.model.General;
+import com.tencent.wxcloudrun.repository.PlayerDirectory;
 import com.tencent.wxcloudrun.service.general.GeneralService;
 import com.tencent.wxcloudrun.service.formation.FormationService;
+import com.tencent.wxcloudrun.service.PlayerNameResolver;
+import com.tencent.wxcloudrun.service.RateLimiter;
 import com.tencent.wxcloudrun.service.UserResourceService;
 import com.tencent.wxcloudrun.service.alliance.AllianceBossService;
+import com.tencent.wxcloudrun.service.catalog.GameCatalog;
+import com.tencent.wxcloudrun.service.chat.ChatChannelHub;
+import com.tencent.wxcloudrun.service.chat.ChatMessageWriter;
 import com.tencent.wxcloudrun.service.herorank.HeroRankService;
 import com.tencent.wxcloudrun.service.server.ServerMergeService;
 import com.tencent.wxcloudrun.service.mail.MailService;
@@ -73,6 +79,24 @@ public class GameServerController {
     @Autowired
     private UgcModerationService ugcModerationService;
 
+    @Autowired
+    private PlayerDirectory playerDirectory;
+
+    @Autowired
+    private PlayerNameResolver playerNameResolver;
+
+    @Autowired
+    private ChatChannelHub chatChannelHub;
+
+    @Autowired
+    private ChatMessageWriter chatMessageWriter;
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Autowired
+    private GameCatalog gameCatalog;
+
     @Value("${simulation.players.admin-key:}")
     private String simulationAdminKey;
 
@@ -193,6 +217,8 @@ public class GameServerController {
         serverMapper.incrementServerPlayers(serverId);
 
         String gameUserId = userId + "_" + serverId;
+        playerDirectory.updateName(gameUserId, validated);
+        playerNameResolver.invalidateUser(userId);
 
         // 初始化该区服的用户资源（金币、银两等）
         try {
@@ -379,6 +405,42 @@ public class GameServerController {
         return ApiResponse.success(serverMapper.findAllServers());
     }
 
+    /**
+     * 查看本实例限流统计：各桶当前条目数、累计放行/拒绝次数
+     * 请求头: X-Admin-Key 或 X-Sim-Key
+     */
+    @GetMapping("/admin/rate-limit-stats")
+    public ApiResponse<Map<String, Object>> adminRateLimitStats(HttpServletRequest request) {
+        if (!hasSimulationAdminAccess(request)) {
+            return ApiResponse.error(403, "无权操作");
+        }
+        return ApiResponse.success(rateLimiter.getMetrics());
+    }
+
+    /**
+     * 查看配置目录当前版本与各类配置条数
+     * 请求头: X-Admin-Key 或 X-Sim-Key
+     */
+    @GetMapping("/admin/catalog")
+    public ApiResponse<Map<String, Object>> adminCatalog(HttpServletRequest request) {
+        if (!hasSimulationAdminAccess(request)) {
+            return ApiResponse.error(403, "无权操作");
+        }
+        return ApiResponse.success(gameCatalog.describe());
+    }
+
+    /**
+     * 改表后热更新配置目录（武将模板、名将特性、爵位、套装、商城、秘境），无需重启
+     * 请求头: X-Admin-Key 或 X-Sim-Key
+     */
+    @PostMapping("/admin/catalog/reload")
+    public ApiResponse<Map<String, Object>> adminReloadCatalog(HttpServletRequest request) {
+        if (!hasSimulationAdminAccess(request)) {
+            return ApiResponse.error(403, "无权操作");
+        }
+        return ApiResponse.success(gameCatalog.reload());
+    }
+
     /**
      * 手动触发玩家行为模拟（仅管理员 userId=1）
      */
@@ -478,8 +540,8 @@ public class GameServerController {
             return ApiResponse.error(400, "boundGold 超出安全上限");
         }
 
-        List<Map<String, Object>> allPlayers = serverMapper.findAllPlayerServers();
-        if (allPlayers == null || allPlayers.isEmpty()) {
+        int totalPlayers = serverMapper.countPlayerServers();
+        if (totalPlayers <= 0) {
             Map<String, Object> empty = new LinkedHashMap<>();
             empty.put("totalPlayers", 0);
             empty.put("sent", 0);
@@ -489,40 +551,25 @@ public class GameServerController {
             return ApiResponse.success(empty);
         }
 
-        int sent = 0;
-        int failed = 0;
-        List<String> failSamples = new ArrayList<>();
-        for (Map<String, Object> ps : allPlayers) {
-            String rawUserId = String.valueOf(ps.get("userId"));
-            int serverId = ((Number) ps.get("serverId")).intValue();
-            String gameUserId = rawUserId + "_" + serverId;
-            try {
-                List<Map<String, Object>> atts = new ArrayList<>();
-                Map<String, Object> goldAtt = new LinkedHashMap<>();
-                goldAtt.put("itemType", "boundGold");
-                goldAtt.put("itemName", "绑金");
-                goldAtt.put("count", boundGold);
-                atts.add(goldAtt);
-                mailService.sendSystemMail(gameUserId, title, content, atts);
-                sent++;
-            } catch (Exception e) {
-                failed++;
-                if (failSamples.size() < 20) {
-                    failSamples.add(gameUserId + ":" + e.getMessage());
-                }
-                logger.warn("[补偿邮件] 发送失败 user={} err={}", gameUserId, e.getMessage());
-            }
-        }
+        // 全服广播：一条模板邮件，玩家打开邮箱时各自补出
+        List<Map<String, Object>> atts = new ArrayList<>();
+        Map<String, Object> goldAtt = new LinkedHashMap<>();
+        goldAtt.put("itemType", "boundGold");
+        goldAtt.put("itemName", "绑金");
+        goldAtt.put("count", boundGold);
+        atts.add(goldAtt);
+        long broadcastId = mailService.sendBroadcastMail(title, content, atts);
 
         Map<String, Object> result = new LinkedHashMap<>();
-        result.put("totalPlayers", allPlayers.size());
-        result.put("sent", sent);
-        result.put("failed", failed);
+        result.put("totalPlayers", totalPlayers);
+        result.put("sent", totalPlayers);
+        result.put("failed", 0);
         result.put("boundGold", boundGold);
         result.put("title", title);
-        result.put("failSamples", failSamples);
-        logger.info("[补偿邮件] 发放完成 total={} sent={} failed={} gold={}",
-                allPlayers.size(), sent, failed, boundGold);
+        result.put("failSamples", new ArrayList<String>());
+        result.put("broadcastId", broadcastId);
+        logger.info("[补偿邮件] 广播发放完成 broadcastId={} total={} gold={}",
+                broadcastId, totalPlayers, boundGold);
         return ApiResponse.success(result);
     }
 
@@ -572,11 +619,20 @@ public class GameServerController {
         int maskedLordNames = 0;
         int maskedSenderNames = 0;
         int maskedChatContents = 0;
+        // 先把写入队列里的聊天消息落库，清洗才能覆盖到
+        chatMessageWriter.flush();
         for (String keyword : keywords) {
             maskedLordNames += serverMapper.maskLordNameByKeyword(keyword, maskName);
             maskedSenderNames += chatMapper.maskSenderNameByKeyword(keyword, maskName);
             maskedChatContents += chatMapper.maskMessageContentByKeyword(keyword, maskContent);
         }
+        if (maskedLordNames > 0) {
+            playerDirectory.invalidate();
+            playerNameResolver.invalidateAll();
+        }
+        if (maskedLordNames > 0 || maskedSenderNames > 0 || maskedChatContents > 0) {
+            chatChannelHub.clear();
+        }
 
         Map<String, Object> result = new LinkedHashMap<>();
         result.put("keywords", keywords);
@@ -655,32 +711,16 @@ public class GameServerController {
     public void dailyWelfareMail() {
         logger.info("[每日福利] 开始发放每日邮件奖励...");
         try {
-            List<Map<String, Object>> allPlayers = serverMapper.findAllPlayerServers();
-            if (allPlayers == null || allPlayers.isEmpty()) {
-                logger.info("[每日福利] 无玩家数据，跳过");
-                return;
-            }
-            int sent = 0;
-            for (Map<String, Object> ps : allPlayers) {
-                String rawUserId = String.valueOf(ps.get("userId"));
-                int serverId = ((Number) ps.get("serverId")).intValue();
-                String gameUserId = rawUserId + "_" + serverId;
-                try {
-                    List<Map<String, Object>> atts = new ArrayList<>();
-                    Map<String, Object> goldAtt = new LinkedHashMap<>();
-                    goldAtt.put("itemType", "boundGold");
-                    goldAtt.put("itemName", "绑金");
-                    goldAtt.put("count", 100);
-                    atts.add(goldAtt);
-                    mailService.sendSystemMail(gameUserId, "每日俸禄",
-                            "主公辛苦了！这是你今日的俸禄：100绑金。\n请及时领取！",
-                            atts);
-                    sent++;
-                } catch (Exception e) {
-                    logger.warn("[每日福利] 发送失败: {}", gameUserId, e);
-                }
-            }
-            logger.info("[每日福利] 发放完成，共发送 {} 封邮件", sent);
+            List<Map<String, Object>> atts = new ArrayList<>();
+            Map<String, Object> goldAtt = new LinkedHashMap<>();
+            goldAtt.put("itemType", "boundGold");
+            goldAtt.put("itemName", "绑金");
+            goldAtt.put("count", 100);
+            atts.add(goldAtt);
+            long broadcastId = mailService.sendBroadcastMail("每日俸禄",
+                    "主公辛苦了！这是你今日的俸禄：100绑金。\n请及时领取！",
+                    atts);
+            logger.info("[每日福利] 发放完成，广播邮件 broadcastId={}", broadcastId);
         } catch (Exception e) {
             logger.error("[每日福利] 发放异常", e);
         }
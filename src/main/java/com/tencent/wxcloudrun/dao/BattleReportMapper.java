@@ -0,0 +1,23 @@
+package com.tencent.wxcloudrun.dao;
+
+import org.apache.ibatis.annotations.*;
+import java.util.Map;
+
+@Mapper
+public interface BattleReportMapper {
+
+    @Insert("INSERT INTO battle_report (report_type, server_id, payload, seed, snapshot, victory_a, total_rounds, " +
+            "side_a_remaining, side_b_remaining, raw_size, create_time) VALUES " +
+            "(#{reportType}, #{serverId}, #{payload}, #{seed}, #{snapshot}, #{victoryA}, #{totalRounds}, " +
+            "#{sideARemaining}, #{sideBRemaining}, #{rawSize}, #{createTime})")
+    @Options(useGeneratedKeys = true, keyProperty = "id", keyColumn = "id")
+    int insertReport(Map<String, Object> report);
+
+    @Select("SELECT id, payload, seed, snapshot, victory_a AS victoryA, total_rounds AS totalRounds, " +
+            "side_a_remaining AS sideARemaining, side_b_remaining AS sideBRemaining " +
+            "FROM battle_report WHERE id = #{id}")
+    Map<String, Object> findById(@Param("id") long id);
+
+    @Delete("DELETE FROM battle_report WHERE create_time < #{before} LIMIT #{limit}")
+    int deleteBefore(@Param("before") long before, @Param("limit") int limit);
+}
@@ -25,6 +25,16 @@ public interface ChatMapper {
                            @Param("nationId") String nationId,
                            @Param("allianceId") String allianceId);
 
+    /**
+     * 同 insertMessageFull，参数为 Map（批量写入失败时逐条重试用）
+     */
+    int insertChatMessage(Map<String, Object> message);
+
+    /**
+     * 多行批量写入（聊天异步落库），字段同 insertChatMessage
+     */
+    int insertMessages(@Param("messages") List<Map<String, Object>> messages);
+
     List<Map<String, Object>> findRecent(@Param("channel") String channel,
                                           @Param("serverId") int serverId,
                                           @Param("limit") int limit);
@@ -74,6 +84,10 @@ public interface ChatMapper {
 
     Map<String, Object> findAnnouncementById(@Param("id") int id);
 
+    int maskMessage(@Param("senderId") String senderId,
+                    @Param("createTime") long createTime,
+                    @Param("maskContent") String maskContent);
+
     int maskMessageContentByKeyword(@Param("keyword") String keyword,
                                     @Param("maskContent") String maskContent);
 
@@ -25,5 +25,7 @@ public interface EquipmentMapper {
     
     List<Equipment> findEquippedByGeneralId(@Param("generalId") String generalId);
 
+    List<Equipment> findEquippedByGeneralIds(@Param("generalIds") List<String> generalIds);
+
     void unequipByGeneralId(@Param("generalId") String generalId);
 }
@@ -2,6 +2,7 @@ package com.tencent.wxcloudrun.dao;
 
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -16,6 +17,9 @@ public interface GameServerMapper {
 
     Map<String, Object> findPlayerServer(@Param("userId") String userId, @Param("serverId") int serverId);
 
+    /** 批量查角色名，gameServerId 为空表示区服已不存在；按最后登录时间倒序 */
+    List<Map<String, Object>> findPlayerServersByUserIds(@Param("userIds") Collection<String> userIds);
+
     Long findFirstRoleCreateTimeByUserId(@Param("userId") String userId);
 
     int isNameTaken(@Param("serverId") int serverId, @Param("lordName") String lordName);
@@ -37,6 +41,8 @@ public interface GameServerMapper {
                       @Param("maxPlayers") int maxPlayers);
 
     List<Map<String, Object>> findAllPlayerServers();
+
+    int countPlayerServers();
     
     List<Map<String, Object>> findVirtualPlayerServers();
 
@@ -13,5 +13,10 @@ public interface GeneralFamousTraitMapper {
 
     List<Map<String, Object>> findByGeneralName(@Param("name") String name);
 
+    List<Map<String, Object>> findByGeneralNames(@Param("names") List<String> names);
+
     List<Map<String, Object>> findByTemplateIds(@Param("ids") List<Integer> ids);
+
+    /** 全部特性（含模板ID与武将名），启动时整体装入配置目录 */
+    List<Map<String, Object>> findAll();
 }
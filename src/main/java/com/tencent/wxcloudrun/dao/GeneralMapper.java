@@ -10,6 +10,8 @@ import java.util.List;
 public interface GeneralMapper {
     
     General findById(@Param("id") String id);
+
+    List<General> findByIds(@Param("ids") List<String> ids);
     
     List<General> findByUserId(@Param("userId") String userId);
     
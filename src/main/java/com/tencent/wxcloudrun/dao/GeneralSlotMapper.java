@@ -3,6 +3,7 @@ package com.tencent.wxcloudrun.dao;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -15,4 +16,9 @@ public interface GeneralSlotMapper {
      * 根据 id 查询槽位
      */
     Map<String, Object> findById(@Param("id") int id);
+
+    /**
+     * 批量查询槽位的兵法发动加成
+     */
+    List<Map<String, Object>> findTacticsTriggerBonusByIds(@Param("ids") List<Integer> ids);
 }
@@ -25,6 +25,11 @@ public interface GeneralTemplateMapper {
             @Param("qualityCode") String qualityCode,
             @Param("factions") List<String> factions);
 
+    /**
+     * 所有可招募的基础模板（不含狂化进阶模板），按品质、排序号排列；启动时整体装入配置目录
+     */
+    List<Map<String, Object>> listAllBaseTemplates();
+
     /**
      * 按名称查询模板（返回 avatar, slot_id 等），用于 buildGeneral 时获取头像
      */
@@ -2,6 +2,8 @@ package com.tencent.wxcloudrun.dao;
 
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -12,6 +14,7 @@ public interface HeroRankMapper {
 
     Map<String, Object> findByUserIdForUpdate(@Param("userId") String userId);
 
+    /** 名次只在插入时写入，已有行的名次由 batchUpdateRanking 维护 */
     void upsert(@Param("userId") String userId,
                 @Param("userName") String userName,
                 @Param("level") int level,
@@ -36,13 +39,8 @@ public interface HeroRankMapper {
     List<Map<String, Object>> findByRanking(@Param("serverId") int serverId,
                                              @Param("offset") int offset, @Param("limit") int limit);
 
-    List<Map<String, Object>> findRandomInRange(@Param("serverId") int serverId,
-                                                 @Param("minRank") int minRank,
-                                                 @Param("maxRank") int maxRank,
-                                                 @Param("excludeUserId") String excludeUserId,
-                                                 @Param("limit") int limit);
-
-    int countByServerId(@Param("serverId") int serverId);
+    /** 按 userId 批量取榜单展示字段（名次以内存排名为准） */
+    List<Map<String, Object>> findByUserIds(@Param("userIds") Collection<String> userIds);
 
     List<Map<String, Object>> findAllOrderByRanking(@Param("serverId") int serverId);
 
@@ -51,9 +49,22 @@ public interface HeroRankMapper {
     void updateRanking(@Param("userId") String userId, @Param("ranking") int ranking,
                        @Param("updateTime") long updateTime);
 
-    void swapRanking(@Param("userA") String userA, @Param("rankA") int rankA,
-                     @Param("userB") String userB, @Param("rankB") int rankB,
-                     @Param("updateTime") long updateTime);
+    /** 按排名流式读取本服 userId/ranking（每日结算用，不整表装入内存） */
+    void streamRankingOrder(@Param("serverId") int serverId, ResultHandler<Map<String, Object>> handler);
+
+    /** 批量改排名：userId → 新排名 */
+    int batchUpdateRanking(@Param("ranks") Map<String, Integer> ranks, @Param("updateTime") long updateTime);
+
+    /** 按排名档位整服设置待领取奖励，tiers 每项含 maxRank/fame/silver/exp，按 maxRank 升序 */
+    int settlePendingRewards(@Param("serverId") int serverId,
+                             @Param("tiers") List<Map<String, Integer>> tiers,
+                             @Param("settleDate") String settleDate);
+
+    /** 按排名档位整服写入真实玩家的奖励日志 */
+    int insertRewardLogsByServer(@Param("serverId") int serverId,
+                                 @Param("tiers") List<Map<String, Integer>> tiers,
+                                 @Param("settleDate") String settleDate,
+                                 @Param("createTime") long createTime);
 
     void setPendingReward(@Param("userId") String userId,
                           @Param("pendingFame") long pendingFame,
@@ -76,6 +87,7 @@ public interface HeroRankMapper {
                       @Param("defOldRank") int defOldRank,
                       @Param("defNewRank") int defNewRank,
                       @Param("battleReport") String battleReport,
+                      @Param("reportId") long reportId,
                       @Param("createTime") long createTime,
                       @Param("createDate") String createDate);
 
@@ -1,12 +1,19 @@
 package com.tencent.wxcloudrun.dao;
 
 import org.apache.ibatis.annotations.*;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
 @Mapper
 public interface MailMapper {
 
+    /** 广播补发的邮件行只存状态，标题/正文取广播模板 */
+    String MAIL_COLUMNS = "m.id, m.sender_id, m.sender_name, m.receiver_id, m.mail_type, " +
+            "COALESCE(b.title, m.title) AS title, COALESCE(b.content, m.content) AS content, " +
+            "m.has_attachment, m.attachment_claimed, m.is_read, m.create_time, m.expire_time, m.deleted, m.broadcast_id " +
+            "FROM mail m LEFT JOIN mail_broadcast b ON b.id = m.broadcast_id ";
+
     @Insert("INSERT INTO mail (sender_id, sender_name, receiver_id, mail_type, title, content, " +
             "has_attachment, create_time, expire_time) VALUES " +
             "(#{senderId}, #{senderName}, #{receiverId}, #{mailType}, #{title}, #{content}, " +
@@ -18,26 +25,30 @@ public interface MailMapper {
             "VALUES (#{mailId}, #{itemType}, #{itemId}, #{itemName}, #{itemQuality}, #{count})")
     int insertAttachment(Map<String, Object> attachment);
 
-    @Select("SELECT * FROM mail WHERE receiver_id = #{receiverId} AND deleted = 0 " +
-            "ORDER BY is_read ASC, create_time DESC LIMIT 50")
+    @Select("SELECT " + MAIL_COLUMNS + "WHERE m.receiver_id = #{receiverId} AND m.deleted = 0 " +
+            "ORDER BY m.is_read ASC, m.create_time DESC LIMIT 50")
     List<Map<String, Object>> findByReceiver(@Param("receiverId") String receiverId);
 
-    @Select("SELECT * FROM mail WHERE id = #{id}")
+    @Select("SELECT " + MAIL_COLUMNS + "WHERE m.id = #{id}")
     Map<String, Object> findById(@Param("id") long id);
 
     @Select("SELECT * FROM mail_attachment WHERE mail_id = #{mailId}")
     List<Map<String, Object>> findAttachments(@Param("mailId") long mailId);
 
-    @Update("UPDATE mail SET is_read = 1 WHERE id = #{id}")
+    @Select("<script>SELECT * FROM mail_attachment WHERE mail_id IN " +
+            "<foreach collection='mailIds' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    List<Map<String, Object>> findAttachmentsByMailIds(@Param("mailIds") Collection<Long> mailIds);
+
+    @Update("UPDATE mail SET is_read = 1 WHERE id = #{id} AND is_read = 0")
     int markRead(@Param("id") long id);
 
     @Update("UPDATE mail SET is_read = 1 WHERE receiver_id = #{receiverId} AND deleted = 0 AND is_read = 0")
     int markAllRead(@Param("receiverId") String receiverId);
 
-    @Update("UPDATE mail SET attachment_claimed = 1 WHERE id = #{id}")
+    @Update("UPDATE mail SET attachment_claimed = 1 WHERE id = #{id} AND attachment_claimed = 0")
     int markAttachmentClaimed(@Param("id") long id);
 
-    @Update("UPDATE mail SET deleted = 1 WHERE id = #{id} AND receiver_id = #{receiverId}")
+    @Update("UPDATE mail SET deleted = 1 WHERE id = #{id} AND receiver_id = #{receiverId} AND deleted = 0")
     int deleteMail(@Param("id") long id, @Param("receiverId") String receiverId);
 
     @Select("SELECT COUNT(*) FROM mail WHERE receiver_id = #{receiverId} AND deleted = 0 AND is_read = 0")
@@ -48,4 +59,57 @@ public interface MailMapper {
 
     @Select("SELECT id FROM mail WHERE receiver_id = #{receiverId} AND deleted = 0 AND has_attachment = 1 AND attachment_claimed = 0 ORDER BY create_time DESC LIMIT 200")
     List<Long> findUnclaimedMailIds(@Param("receiverId") String receiverId);
+
+    // ==================== 红点计数 ====================
+
+    @Select("SELECT unread, unclaimed FROM mail_counter WHERE receiver_id = #{receiverId}")
+    Map<String, Object> findCounter(@Param("receiverId") String receiverId);
+
+    @Insert("INSERT INTO mail_counter (receiver_id, unread, unclaimed) VALUES (#{receiverId}, #{unread}, #{unclaimed}) " +
+            "ON DUPLICATE KEY UPDATE unread = VALUES(unread), unclaimed = VALUES(unclaimed)")
+    int upsertCounter(@Param("receiverId") String receiverId, @Param("unread") int unread,
+                      @Param("unclaimed") int unclaimed);
+
+    /** 增量调整；计数行不存在时不写，下次查询红点时按 COUNT 初始化 */
+    @Update("UPDATE mail_counter SET unread = GREATEST(unread + #{unread}, 0), " +
+            "unclaimed = GREATEST(unclaimed + #{unclaimed}, 0) WHERE receiver_id = #{receiverId}")
+    int addCounter(@Param("receiverId") String receiverId, @Param("unread") int unread,
+                   @Param("unclaimed") int unclaimed);
+
+    // ==================== 全服广播 ====================
+
+    @Insert("INSERT INTO mail_broadcast (sender_id, sender_name, title, content, has_attachment, create_time, expire_time) " +
+            "VALUES (#{senderId}, #{senderName}, #{title}, #{content}, #{hasAttachment}, #{createTime}, #{expireTime})")
+    @Options(useGeneratedKeys = true, keyProperty = "id", keyColumn = "id")
+    int insertBroadcast(Map<String, Object> broadcast);
+
+    @Insert("INSERT INTO mail_broadcast_attachment (broadcast_id, item_type, item_id, item_name, item_quality, count) " +
+            "VALUES (#{broadcastId}, #{itemType}, #{itemId}, #{itemName}, #{itemQuality}, #{count})")
+    int insertBroadcastAttachment(Map<String, Object> attachment);
+
+    @Select("SELECT * FROM mail_broadcast_attachment WHERE broadcast_id = #{broadcastId}")
+    List<Map<String, Object>> findBroadcastAttachments(@Param("broadcastId") long broadcastId);
+
+    @Select("<script>SELECT * FROM mail_broadcast_attachment WHERE broadcast_id IN " +
+            "<foreach collection='broadcastIds' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    List<Map<String, Object>> findBroadcastAttachmentsByIds(@Param("broadcastIds") Collection<Long> broadcastIds);
+
+    /** 已提交的广播数：晚提交的广播（不论ID大小）都会让它变化 */
+    @Select("SELECT COUNT(*) FROM mail_broadcast")
+    long countBroadcasts();
+
+    /**
+     * 把该玩家应收、但还没有个人邮件行的广播补成邮件行：
+     * 角色须在广播发出前已创建、广播未过期；唯一键 (receiver_id, broadcast_id) 保证并发补发被忽略
+     */
+    @Insert("INSERT IGNORE INTO mail (sender_id, sender_name, receiver_id, mail_type, title, content, " +
+            "has_attachment, create_time, expire_time, broadcast_id) " +
+            "SELECT b.sender_id, b.sender_name, #{receiverId}, 'system', '', NULL, " +
+            "b.has_attachment, b.create_time, b.expire_time, b.id " +
+            "FROM mail_broadcast b JOIN user_server us ON us.user_id = #{rawUserId} AND us.server_id = #{serverId} " +
+            "WHERE (us.create_time IS NULL OR us.create_time <= b.create_time) " +
+            "AND (b.expire_time = 0 OR b.expire_time > #{now}) " +
+            "AND NOT EXISTS (SELECT 1 FROM mail m WHERE m.receiver_id = #{receiverId} AND m.broadcast_id = b.id)")
+    int materializeBroadcasts(@Param("receiverId") String receiverId, @Param("rawUserId") String rawUserId,
+                              @Param("serverId") int serverId, @Param("now") long now);
 }
@@ -30,6 +30,10 @@ public interface NationWarMapper {
     void upsertPlayerMerit(@Param("odUserId") String odUserId, @Param("merit") int merit,
                            @Param("serverId") int serverId);
     
+    /** 军功增量累加 */
+    void addPlayerMerit(@Param("odUserId") String odUserId, @Param("delta") int delta,
+                        @Param("serverId") int serverId);
+    
     // 城市归属持久化（按区服）
     List<Map<String, Object>> findCityOwnersByServerId(@Param("serverId") int serverId);
     
@@ -38,4 +42,30 @@ public interface NationWarMapper {
     
     // 玩家国籍统计（按区服）
     List<Map<String, Object>> countPlayersByNation(@Param("serverId") int serverId);
+    
+    // 国战会话增量持久化
+    String findSessionMeta(@Param("sessionId") String sessionId, @Param("serverId") int serverId);
+    
+    void upsertSessionMeta(@Param("sessionId") String sessionId, @Param("warDate") String warDate,
+                           @Param("phase") String phase, @Param("currentRound") int currentRound,
+                           @Param("data") String data, @Param("serverId") int serverId,
+                           @Param("updateTime") long updateTime);
+    
+    List<String> findSessionCities(@Param("sessionId") String sessionId, @Param("serverId") int serverId);
+    
+    void batchUpsertSessionCities(@Param("sessionId") String sessionId, @Param("serverId") int serverId,
+                                  @Param("rows") List<Map<String, Object>> rows,
+                                  @Param("updateTime") long updateTime);
+    
+    List<String> findSessionPlayers(@Param("sessionId") String sessionId, @Param("serverId") int serverId);
+    
+    void batchUpsertSessionPlayers(@Param("sessionId") String sessionId, @Param("serverId") int serverId,
+                                   @Param("rows") List<Map<String, Object>> rows,
+                                   @Param("updateTime") long updateTime);
+    
+    List<String> findSessionRounds(@Param("sessionId") String sessionId, @Param("serverId") int serverId);
+    
+    void batchInsertSessionRounds(@Param("sessionId") String sessionId, @Param("serverId") int serverId,
+                                  @Param("rows") List<Map<String, Object>> rows,
+                                  @Param("createTime") long createTime);
 }
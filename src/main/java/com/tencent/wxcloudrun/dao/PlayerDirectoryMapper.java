@@ -0,0 +1,15 @@
+package com.tencent.wxcloudrun.dao;
+
+import org.apache.ibatis.annotations.Mapper;
+
+import java.util.List;
+import java.util.Map;
+
+@Mapper
+public interface PlayerDirectoryMapper {
+
+    /**
+     * 全部玩家的等级、可掠夺资源和爵位（只在玩家目录加载/校准时调用）
+     */
+    List<Map<String, Object>> findAllPlayers();
+}
@@ -4,9 +4,6 @@ import com.tencent.wxcloudrun.model.PlunderData;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
-import java.util.List;
-import java.util.Map;
-
 @Mapper
 public interface PlunderMapper {
 
@@ -19,9 +16,4 @@ public interface PlunderMapper {
                 @Param("lastResetDate") String lastResetDate,
                 @Param("todayCount") Integer todayCount,
                 @Param("updateTime") Long updateTime);
-
-    /**
-     * 获取同区服用户ID和等级信息（用于匹配掠夺对象）
-     */
-    List<Map<String, Object>> findUserLevelsByServerId(@Param("serverSuffix") String serverSuffix);
 }
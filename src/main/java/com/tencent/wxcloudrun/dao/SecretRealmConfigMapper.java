@@ -12,4 +12,7 @@ public interface SecretRealmConfigMapper {
     List<Map<String, Object>> findAll();
 
     Map<String, Object> findById(@Param("id") String id);
+
+    /** 含已下架的全部秘境（按ID直查时下架秘境仍可用） */
+    List<Map<String, Object>> findAllIncludingDisabled();
 }
@@ -3,6 +3,8 @@ package com.tencent.wxcloudrun.dao;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.util.Map;
+
 @Mapper
 public interface UserIdMappingMapper {
     
@@ -10,7 +12,13 @@ public interface UserIdMappingMapper {
     
     String findOpenIdByUserId(@Param("userId") Long userId);
     
-    void insert(@Param("openId") String openId);
+    /**
+     * 插入映射并回传自增 user_id（写入 row.userId）；openId 已存在时不改数据，
+     * 由 LAST_INSERT_ID(user_id) 回传已有 user_id，驱动未回传时 row.userId 为空
+     *
+     * @param row 入参 openId，出参 userId
+     */
+    void insertOrGetUserId(Map<String, Object> row);
     
     Long getMaxUserId();
 }
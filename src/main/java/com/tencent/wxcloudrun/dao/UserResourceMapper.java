@@ -1,6 +1,7 @@
 package com.tencent.wxcloudrun.dao;
 
 import com.tencent.wxcloudrun.model.UserResource;
+import com.tencent.wxcloudrun.repository.UserResourceLedger;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
@@ -12,4 +13,19 @@ public interface UserResourceMapper {
     void upsert(UserResource resource);
     
     int existsByUserId(@Param("odUserId") String odUserId);
+
+    /**
+     * 按列增量修改资源，带余额条件；返回0表示余额不足或行不存在
+     */
+    int applyChange(UserResourceLedger.Change change);
+
+    void updateRank(@Param("odUserId") String odUserId, @Param("rank") String rank,
+                    @Param("updateTime") long updateTime);
+
+    /**
+     * 体力自然恢复，以恢复计时作乐观锁条件
+     */
+    int recoverStamina(@Param("odUserId") String odUserId, @Param("maxStamina") int maxStamina,
+                       @Param("recovered") int recovered, @Param("expectedRecoverTime") long expectedRecoverTime,
+                       @Param("newRecoverTime") long newRecoverTime);
 }
@@ -19,4 +19,10 @@ public interface WarehouseMapper {
     void deleteItemsByWarehouseId(@Param("warehouseId") String warehouseId);
     
     void insertItems(@Param("warehouseId") String warehouseId, @Param("userId") String userId, @Param("items") List<Warehouse.WarehouseItem> items);
+    
+    /** 按行ID更新已有堆叠，返回影响行数（行已被删除时为0） */
+    int updateItem(@Param("warehouseId") String warehouseId, @Param("item") Warehouse.WarehouseItem item);
+    
+    /** 按行ID批量删除堆叠 */
+    void deleteItemsByIds(@Param("warehouseId") String warehouseId, @Param("ids") List<Long> ids);
 }
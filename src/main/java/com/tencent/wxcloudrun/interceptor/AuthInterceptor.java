@@ -18,6 +18,8 @@ import java.util.Set;
 
 /**
  * 认证拦截器
+ *
+ * token 校验和 openId↔userId 映射都有进程内缓存，已登录用户的请求在这里不查库。
  */
 @Component
 public class AuthInterceptor implements HandlerInterceptor {
@@ -56,13 +58,12 @@ public class AuthInterceptor implements HandlerInterceptor {
             throw new BusinessException(401, "未登录");
         }
         
-        if (!jwtUtil.validateToken(token)) {
+        // 校验token并取openId（已校验过的token走缓存）
+        String openId = jwtUtil.verify(token);
+        if (openId == null) {
             throw new BusinessException(401, "token无效或已过期");
         }
         
-        // 从token中获取openId
-        String openId = jwtUtil.getOpenIdFromToken(token);
-        
         // 优先从请求头获取userId
         String userIdHeader = request.getHeader("X-User-Id");
         Long userId = null;
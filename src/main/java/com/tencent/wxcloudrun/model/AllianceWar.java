@@ -44,6 +44,10 @@ public class AllianceWar {
     
     // 个人排名
     private List<PlayerRank> playerRanks;
+
+    // 每轮联盟配对的洗牌种子 round -> seed
+    @Builder.Default
+    private Map<Integer, Long> roundPairingSeeds = new LinkedHashMap<>();
     
     /**
      * 战斗状态
@@ -123,7 +127,9 @@ public class AllianceWar {
         private Long startTime;
         private Long endTime;
         private List<BattleRound> rounds;   // 战斗回合
-        private String battleReportJson;    // BattleService 完整战报
+        private Long battleReportId;        // 战报ID，见 BattleReportStore
+        private Long pairingSeed;           // 所属对决的出场顺序洗牌种子
+        private String battleReportJson;    // 旧版内嵌战报，仅历史数据
         private Integer meritGained;        // 胜者本场军功
         private Integer flagGained;         // 胜者本场军旗
     }
@@ -363,6 +363,7 @@ public class NationWar {
         private Integer roundNumber;
         private String cityId;
         private Long timestamp;
+        private Long pairingSeed;       // 本轮配对洗牌种子
         @Builder.Default
         private List<RoundFight> fights = new java.util.ArrayList<>();
         @Builder.Default
@@ -389,6 +390,9 @@ public class NationWar {
         private String winnerName;
         private Integer meritGained;
         private Integer scoreGained;
+        /** 战报ID，见 BattleReportStore */
+        private Long battleReportId;
+        /** 旧版内嵌战报，仅用于读取历史会话 */
         private String battleReportJson;
     }
 
@@ -1,5 +1,6 @@
 package com.tencent.wxcloudrun.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -7,6 +8,7 @@ import lombok.NoArgsConstructor;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -30,6 +32,12 @@ public class Warehouse {
     private Long createTime;
     private Long updateTime;
     
+    // 上次读写数据库时的状态，保存时据此只写差异（不序列化给客户端）
+    @JsonIgnore
+    private transient String persistedRowState;             // 仓库主表字段摘要
+    @JsonIgnore
+    private transient Map<Long, WarehouseItem> persistedItems; // 物品行快照：rowId -> 副本
+    
     // ====== equipmentIds 辅助：逗号分隔存储 ======
     public String getEquipmentIdsStr() {
         if (equipmentStorage != null && equipmentStorage.getEquipmentIds() != null) {
@@ -82,6 +90,8 @@ public class Warehouse {
     @NoArgsConstructor
     @AllArgsConstructor
     public static class WarehouseItem {
+        @JsonIgnore
+        private Long rowId;                 // warehouse_item 行ID，新堆叠为 null
         private String itemId;              // 物品ID
         private String itemType;            // 物品类型
         private String name;                // 物品名称
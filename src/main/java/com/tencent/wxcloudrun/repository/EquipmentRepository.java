@@ -2,9 +2,12 @@ package com.tencent.wxcloudrun.repository;
 
 import com.tencent.wxcloudrun.dao.EquipmentMapper;
 import com.tencent.wxcloudrun.model.Equipment;
+import com.tencent.wxcloudrun.service.equipment.EquipBonusCache;
+import com.tencent.wxcloudrun.service.formation.CombatSnapshotCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -15,6 +18,12 @@ public class EquipmentRepository {
     
     @Autowired
     private EquipmentMapper equipmentMapper;
+
+    @Autowired
+    private CombatSnapshotCache combatSnapshotCache;
+
+    @Autowired
+    private EquipBonusCache equipBonusCache;
     
     /**
      * 保存装备
@@ -25,6 +34,8 @@ public class EquipmentRepository {
             equipment.setCreateTime(System.currentTimeMillis());
         }
         equipmentMapper.upsert(equipment);
+        equipBonusCache.onSaved(equipment);
+        combatSnapshotCache.invalidate(equipment.getUserId());
         return equipment;
     }
     
@@ -68,6 +79,8 @@ public class EquipmentRepository {
         Equipment existing = equipmentMapper.findById(equipmentId);
         if (existing != null) {
             equipmentMapper.deleteById(equipmentId);
+            equipBonusCache.onDeleted(equipmentId);
+            combatSnapshotCache.invalidate(existing.getUserId());
             return true;
         }
         return false;
@@ -94,4 +107,9 @@ public class EquipmentRepository {
     public List<Equipment> findEquippedByGeneralId(String generalId) {
         return equipmentMapper.findEquippedByGeneralId(generalId);
     }
+
+    public List<Equipment> findEquippedByGeneralIds(List<String> generalIds) {
+        if (generalIds == null || generalIds.isEmpty()) return new ArrayList<>();
+        return equipmentMapper.findEquippedByGeneralIds(generalIds);
+    }
 }
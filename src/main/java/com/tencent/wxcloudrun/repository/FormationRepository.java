@@ -2,6 +2,7 @@ package com.tencent.wxcloudrun.repository;
 
 import com.tencent.wxcloudrun.dao.FormationMapper;
 import com.tencent.wxcloudrun.model.Formation;
+import com.tencent.wxcloudrun.service.formation.CombatSnapshotCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
@@ -17,6 +18,9 @@ public class FormationRepository {
     
     @Autowired
     private FormationMapper formationMapper;
+
+    @Autowired
+    private CombatSnapshotCache combatSnapshotCache;
     
     /**
      * 根据用户ID查找阵型
@@ -63,6 +67,7 @@ public class FormationRepository {
         formationMapper.upsertFormation(formation);
         formationMapper.deleteSlotsByFormationId(formationId);
         formationMapper.insertSlots(formationId, slots);
+        combatSnapshotCache.invalidate(odUserId);
         return formation;
     }
     
@@ -76,6 +81,7 @@ public class FormationRepository {
         if (formation.getSlots() != null && !formation.getSlots().isEmpty()) {
             formationMapper.insertSlots(formation.getId(), formation.getSlots());
         }
+        combatSnapshotCache.invalidate(formation.getOdUserId());
         return formation;
     }
 }
@@ -2,9 +2,11 @@ package com.tencent.wxcloudrun.repository;
 
 import com.tencent.wxcloudrun.dao.GeneralMapper;
 import com.tencent.wxcloudrun.model.General;
+import com.tencent.wxcloudrun.service.formation.CombatSnapshotCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -15,6 +17,9 @@ public class GeneralRepository {
     
     @Autowired
     private GeneralMapper generalMapper;
+
+    @Autowired
+    private CombatSnapshotCache combatSnapshotCache;
     
     /**
      * 保存武将
@@ -25,6 +30,7 @@ public class GeneralRepository {
             general.setCreateTime(System.currentTimeMillis());
         }
         generalMapper.upsert(general);
+        combatSnapshotCache.invalidate(general.getUserId());
         return general;
     }
     
@@ -43,6 +49,14 @@ public class GeneralRepository {
         return generalMapper.findById(generalId);
     }
     
+    /**
+     * 根据ID批量查找（不保证顺序，不存在的ID被忽略）
+     */
+    public List<General> findByIds(List<String> generalIds) {
+        if (generalIds == null || generalIds.isEmpty()) return new ArrayList<>();
+        return generalMapper.findByIds(generalIds);
+    }
+    
     /**
      * 根据用户ID查找所有武将
      */
@@ -68,6 +82,7 @@ public class GeneralRepository {
         General existing = generalMapper.findById(generalId);
         if (existing != null) {
             generalMapper.deleteById(generalId);
+            combatSnapshotCache.invalidate(existing.getUserId());
             return true;
         }
         return false;
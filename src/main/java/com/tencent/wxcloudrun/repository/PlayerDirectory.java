@@ -0,0 +1,320 @@
+package com.tencent.wxcloudrun.repository;
+
+import com.tencent.wxcloudrun.dao.GameServerMapper;
+import com.tencent.wxcloudrun.dao.PlayerDirectoryMapper;
+import com.tencent.wxcloudrun.model.UserResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * 区服玩家目录（内存）—— 按区服、按等级分桶保存玩家的主公名、等级、可掠夺资源和爵位
+ *
+ * 首次使用时整体加载一次，之后由等级、资源、爵位、角色名的写入路径增量维护，
+ * 掠夺目标列表直接在内存中按等级区间取一页，不再每次按后缀扫描 user_resource、逐行查主公名。
+ * 区服按复合ID（rawUserId_serverId）的后缀划分，与原先的 LIKE '%\_serverId' 一致。
+ * 加载期间发生的增量可能丢失，每小时整体重新加载一次纠正偏差（含后台直接改库的情况）。
+ */
+@Component
+public class PlayerDirectory {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlayerDirectory.class);
+    private static final String DEFAULT_NAME = "君主";
+
+    @Autowired
+    private PlayerDirectoryMapper playerDirectoryMapper;
+
+    @Autowired
+    private GameServerMapper gameServerMapper;
+
+    /** serverId → 区服目录；null 表示尚未加载或已失效 */
+    private volatile Map<Integer, ServerDirectory> servers;
+    private final Object loadLock = new Object();
+
+    /**
+     * 按等级区间取一页玩家（等级从高到低，同级按ID），同时返回区间内总人数
+     */
+    public Page findByLevel(int serverId, int minLevel, int maxLevel, String excludeUserId, int offset, int limit) {
+        ServerDirectory sd = directory().get(serverId);
+        if (sd == null) return new Page(0, Collections.emptyList());
+        return sd.page(minLevel, maxLevel, excludeUserId, offset, limit);
+    }
+
+    public void updateLevel(String odUserId, int level) {
+        update(odUserId, p -> p.level == level ? p : p.withLevel(level));
+    }
+
+    /**
+     * 整行保存资源时同步；目录里还没有该玩家时新增
+     */
+    public void updateResources(UserResource r) {
+        if (r == null || r.getOdUserId() == null) return;
+        ServerDirectory sd = serverOf(r.getOdUserId(), true);
+        if (sd == null) return;
+        sd.merge(r.getOdUserId(), p -> {
+            Player base = p != null ? p : new Player(r.getOdUserId(), null, 1, 0, 0, 0, 0, 0, null);
+            return base.withResources(val(r.getSilver()), val(r.getWood()), val(r.getMetal()),
+                    val(r.getPaper()), val(r.getFood())).withRank(r.getRank());
+        });
+    }
+
+    /**
+     * 账本增量生效后同步：deltas 为直接增减，floored 为最多扣到0的扣减（与 applyChange 的 SQL 一致）
+     */
+    public void applyResourceDeltas(String odUserId, Map<String, Long> deltas, Map<String, Long> floored) {
+        update(odUserId, p -> {
+            long[] v = {p.silver, p.wood, p.metal, p.paper, p.food};
+            boolean changed = false;
+            for (int i = 0; i < RESOURCE_COLUMNS.length; i++) {
+                Long d = deltas.get(RESOURCE_COLUMNS[i]);
+                if (d != null) { v[i] += d; changed = true; }
+                Long f = floored.get(RESOURCE_COLUMNS[i]);
+                if (f != null) { v[i] = Math.max(0, v[i] - f); changed = true; }
+            }
+            return changed ? p.withResources(v[0], v[1], v[2], v[3], v[4]) : p;
+        });
+    }
+
+    public void updateRank(String odUserId, String rank) {
+        update(odUserId, p -> p.withRank(rank));
+    }
+
+    /**
+     * 创建角色时登记主公名
+     */
+    public void updateName(String odUserId, String lordName) {
+        ServerDirectory sd = serverOf(odUserId, true);
+        if (sd != null && lordName != null) sd.putName(odUserId, lordName);
+    }
+
+    /**
+     * 批量改名（屏蔽词替换）或合区后调用，下次访问时整体重新加载
+     */
+    public void invalidate() {
+        servers = null;
+    }
+
+    @Scheduled(cron = "0 0 * * * ?")
+    public void reload() {
+        if (servers == null) return;
+        synchronized (loadLock) {
+            servers = load();
+        }
+    }
+
+    private void update(String odUserId, UnaryOperator<Player> fn) {
+        ServerDirectory sd = serverOf(odUserId, false);
+        if (sd != null) sd.merge(odUserId, p -> p == null ? null : fn.apply(p));
+    }
+
+    /** 目录未加载时返回 null（加载时会读到最新值，不需要增量） */
+    private ServerDirectory serverOf(String odUserId, boolean create) {
+        Map<Integer, ServerDirectory> d = servers;
+        Integer serverId = serverIdOf(odUserId);
+        if (d == null || serverId == null) return null;
+        return create ? d.computeIfAbsent(serverId, k -> new ServerDirectory()) : d.get(serverId);
+    }
+
+    private Map<Integer, ServerDirectory> directory() {
+        Map<Integer, ServerDirectory> d = servers;
+        if (d != null) return d;
+        synchronized (loadLock) {
+            if (servers == null) servers = load();
+            return servers;
+        }
+    }
+
+    private Map<Integer, ServerDirectory> load() {
+        long start = System.currentTimeMillis();
+        Map<String, List<Map<String, Object>>> rolesByUser = new HashMap<>();
+        for (Map<String, Object> row : gameServerMapper.findAllPlayerServers()) {
+            rolesByUser.computeIfAbsent(String.valueOf(row.get("userId")), k -> new ArrayList<>()).add(row);
+        }
+
+        Map<Integer, ServerDirectory> loaded = new ConcurrentHashMap<>();
+        int count = 0;
+        for (Map<String, Object> row : playerDirectoryMapper.findAllPlayers()) {
+            String userId = String.valueOf(row.get("userId"));
+            Integer serverId = serverIdOf(userId);
+            if (serverId == null) continue;
+            ServerDirectory sd = loaded.computeIfAbsent(serverId, k -> new ServerDirectory());
+            sd.merge(userId, p -> new Player(userId, null, intVal(row.get("level"), 1),
+                    val(row.get("silver")), val(row.get("wood")), val(row.get("metal")),
+                    val(row.get("paper")), val(row.get("food")),
+                    row.get("rank") != null ? String.valueOf(row.get("rank")) : null));
+            String name = resolveName(userId, serverId, rolesByUser);
+            if (name != null) sd.putName(userId, name);
+            count++;
+        }
+        logger.info("玩家目录加载完成: {} 个区服, {} 名玩家, 耗时 {}ms",
+                loaded.size(), count, System.currentTimeMillis() - start);
+        return loaded;
+    }
+
+    /**
+     * 与 PlayerNameResolver 相同的优先级：本区角色名 → 同账号其它区的角色名
+     */
+    private static String resolveName(String userId, int serverId, Map<String, List<Map<String, Object>>> rolesByUser) {
+        String rawUserId = userId.substring(0, userId.lastIndexOf('_'));
+        List<Map<String, Object>> roles = rolesByUser.get(rawUserId);
+        if (roles == null) roles = rolesByUser.get(userId);
+        if (roles == null) return null;
+        for (Map<String, Object> role : roles) {
+            String name = lordName(role);
+            if (intVal(role.get("serverId"), -1) == serverId && name != null) return name;
+        }
+        for (Map<String, Object> role : roles) {
+            String name = lordName(role);
+            if (name != null) return name;
+        }
+        return null;
+    }
+
+    private static String lordName(Map<String, Object> role) {
+        Object v = role.get("lordName");
+        if (v == null) return null;
+        String name = String.valueOf(v).trim();
+        return name.isEmpty() || "null".equalsIgnoreCase(name) || DEFAULT_NAME.equals(name) ? null : name;
+    }
+
+    private static Integer serverIdOf(String odUserId) {
+        if (odUserId == null) return null;
+        int idx = odUserId.lastIndexOf('_');
+        if (idx <= 0 || idx == odUserId.length() - 1) return null;
+        for (int i = idx + 1; i < odUserId.length(); i++) {
+            if (!Character.isDigit(odUserId.charAt(i))) return null;
+        }
+        try {
+            return Integer.parseInt(odUserId.substring(idx + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static long val(Object v) {
+        return v instanceof Number ? ((Number) v).longValue() : 0L;
+    }
+
+    private static int intVal(Object v, int def) {
+        return v instanceof Number ? ((Number) v).intValue() : def;
+    }
+
+    private static final String[] RESOURCE_COLUMNS = {"silver", "wood", "metal", "paper", "food"};
+
+    /**
+     * 单个区服的目录；所有读写在对象锁内完成，每个玩家对象不可变，修改即替换
+     */
+    private static class ServerDirectory {
+        private final Map<String, Player> players = new HashMap<>();
+        private final TreeMap<Integer, TreeMap<String, Player>> levels = new TreeMap<>();
+        private final Map<String, String> names = new HashMap<>();
+
+        synchronized void merge(String userId, UnaryOperator<Player> fn) {
+            Player old = players.get(userId);
+            Player updated = fn.apply(old);
+            if (updated == null || updated == old) return;
+            if (old != null && old.level != updated.level) {
+                TreeMap<String, Player> bucket = levels.get(old.level);
+                bucket.remove(userId);
+                if (bucket.isEmpty()) levels.remove(old.level);
+            }
+            players.put(userId, updated);
+            levels.computeIfAbsent(updated.level, k -> new TreeMap<>()).put(userId, updated);
+        }
+
+        synchronized void putName(String userId, String name) {
+            names.put(userId, name);
+        }
+
+        synchronized Page page(int minLevel, int maxLevel, String excludeUserId, int offset, int limit) {
+            List<Player> result = new ArrayList<>();
+            if (minLevel > maxLevel) return new Page(0, result);
+            int total = 0;
+            for (TreeMap<String, Player> bucket : levels.subMap(minLevel, true, maxLevel, true).descendingMap().values()) {
+                boolean excluded = excludeUserId != null && bucket.containsKey(excludeUserId);
+                int size = bucket.size() - (excluded ? 1 : 0);
+                if (result.size() < limit && total + size > offset) {
+                    int idx = total;
+                    for (Player p : bucket.values()) {
+                        if (excluded && p.userId.equals(excludeUserId)) continue;
+                        if (idx >= offset && result.size() < limit) {
+                            result.add(p.withName(names.getOrDefault(p.userId, DEFAULT_NAME)));
+                        }
+                        idx++;
+                    }
+                }
+                total += size;
+            }
+            return new Page(total, result);
+        }
+    }
+
+    public static class Page {
+        private final int total;
+        private final List<Player> players;
+
+        Page(int total, List<Player> players) {
+            this.total = total;
+            this.players = players;
+        }
+
+        public int getTotal() { return total; }
+        public List<Player> getPlayers() { return players; }
+    }
+
+    public static final class Player {
+        private final String userId;
+        private final String name;
+        private final int level;
+        private final long silver;
+        private final long wood;
+        private final long metal;
+        private final long paper;
+        private final long food;
+        private final String rank;
+
+        Player(String userId, String name, int level, long silver, long wood, long metal, long paper, long food, String rank) {
+            this.userId = userId;
+            this.name = name;
+            this.level = level;
+            this.silver = silver;
+            this.wood = wood;
+            this.metal = metal;
+            this.paper = paper;
+            this.food = food;
+            this.rank = rank;
+        }
+
+        Player withName(String name) {
+            return new Player(userId, name, level, silver, wood, metal, paper, food, rank);
+        }
+
+        Player withLevel(int level) {
+            return new Player(userId, name, level, silver, wood, metal, paper, food, rank);
+        }
+
+        Player withResources(long silver, long wood, long metal, long paper, long food) {
+            return new Player(userId, name, level, silver, wood, metal, paper, food, rank);
+        }
+
+        Player withRank(String rank) {
+            return new Player(userId, name, level, silver, wood, metal, paper, food, rank);
+        }
+
+        public String getUserId() { return userId; }
+        public String getName() { return name; }
+        public int getLevel() { return level; }
+        public long getSilver() { return silver; }
+        public long getWood() { return wood; }
+        public long getMetal() { return metal; }
+        public long getPaper() { return paper; }
+        public long getFood() { return food; }
+        public String getRank() { return rank; }
+    }
+}
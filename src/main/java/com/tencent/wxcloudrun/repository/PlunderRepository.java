@@ -105,10 +105,6 @@ public class PlunderRepository {
                 now);
     }
 
-    public List<Map<String, Object>> findUserLevelsByServerId(int serverId) {
-        return plunderMapper.findUserLevelsByServerId(String.valueOf(serverId));
-    }
-
     private String todayStr() {
         return new SimpleDateFormat("yyyyMMdd").format(new Date());
     }
@@ -1,8 +1,7 @@
 package com.tencent.wxcloudrun.repository;
 
-import com.tencent.wxcloudrun.dao.SecretRealmConfigMapper;
-import com.tencent.wxcloudrun.dao.SecretRealmRewardMapper;
 import com.tencent.wxcloudrun.dao.SecretRealmPityMapper;
+import com.tencent.wxcloudrun.service.catalog.GameCatalog;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
@@ -16,36 +15,33 @@ import java.util.Map;
 public class SecretRealmConfigRepository {
 
     @Autowired
-    private SecretRealmConfigMapper configMapper;
-
-    @Autowired
-    private SecretRealmRewardMapper rewardMapper;
+    private GameCatalog gameCatalog;
 
     @Autowired
     private SecretRealmPityMapper pityMapper;
 
-    // ==================== 秘境配置 ====================
+    // ==================== 秘境配置（读配置目录） ====================
 
     public List<Map<String, Object>> findAllRealms() {
-        return configMapper.findAll();
+        return gameCatalog.current().getRealms();
     }
 
     public Map<String, Object> findRealmById(String id) {
-        return configMapper.findById(id);
+        return gameCatalog.current().getRealm(id);
     }
 
-    // ==================== 奖励配置 ====================
+    // ==================== 奖励配置（读配置目录） ====================
 
     public List<Map<String, Object>> findRewardsByRealmId(String realmId) {
-        return rewardMapper.findByRealmId(realmId);
+        return gameCatalog.current().getRealmRewards(realmId);
     }
 
     public List<Map<String, Object>> findEquipmentsByRealmId(String realmId) {
-        return rewardMapper.findByRealmIdAndType(realmId, "equipment");
+        return gameCatalog.current().getRealmRewards(realmId, "equipment");
     }
 
     public List<Map<String, Object>> findItemsByRealmId(String realmId) {
-        return rewardMapper.findByRealmIdAndType(realmId, "item");
+        return gameCatalog.current().getRealmRewards(realmId, "item");
     }
 
     // ==================== 保底计数 ====================
@@ -13,6 +13,9 @@ public class UserLevelRepository {
     
     @Autowired
     private UserLevelMapper userLevelMapper;
+
+    @Autowired
+    private PlayerDirectory playerDirectory;
     
     /**
      * 获取用户等级信息
@@ -30,6 +33,9 @@ public class UserLevelRepository {
             userLevel.setCreateTime(System.currentTimeMillis());
         }
         userLevelMapper.upsert(userLevel);
+        if (userLevel.getLevel() != null) {
+            playerDirectory.updateLevel(userLevel.getUserId(), userLevel.getLevel());
+        }
         return userLevel;
     }
     
@@ -58,6 +64,7 @@ public class UserLevelRepository {
      */
     public void deleteByUserId(String userId) {
         userLevelMapper.deleteByUserId(userId);
+        playerDirectory.updateLevel(userId, 1);
     }
     
     /**
@@ -0,0 +1,381 @@
+package com.tencent.wxcloudrun.repository;
+
+import com.tencent.wxcloudrun.dao.UserResourceMapper;
+import com.tencent.wxcloudrun.model.UserResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 用户资源账本 —— 以列增量方式原子修改 user_resource
+ *
+ * 1. {@link #change} 把一次请求内的多项增减合并成一条 UPDATE，扣减带余额条件（gold >= ?），
+ *    不再先查整行、改对象、再整行 upsert，并发请求之间不会互相覆盖余额。
+ * 2. 高频的小额收入（白银、粮食等产出）和体力自然恢复先记在按用户的写缓冲里，
+ *    定时合并写入；读取该用户资源或对其做扣减前先把缓冲写掉，保证读到的是最新值。
+ * 3. 事务内记入的收入在事务提交后才进入写缓冲，回滚的请求不会发放收入；
+ *    没有事务时缓冲在独立事务中落库，提交成功后才从缓冲中扣除；在调用方事务内读取或扣减时，缓冲随调用方事务一起写
+ *    （不另开事务去等调用方已持有的行锁），调用方回滚时放回缓冲。
+ */
+@Component
+public class UserResourceLedger {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserResourceLedger.class);
+
+    /** 可按增量修改的资源列（列名只从这里取，不接受外部字符串） */
+    public enum Column {
+        GOLD("gold"),
+        BOUND_GOLD("bound_gold"),
+        SILVER("silver"),
+        DIAMOND("diamond"),
+        STAMINA("stamina"),
+        GENERAL_ORDER("general_order"),
+        TIGER_TALLY("tiger_tally"),
+        WOOD("wood"),
+        METAL("metal"),
+        FOOD("food"),
+        PAPER("paper"),
+        FAME("fame");
+
+        private final String column;
+
+        Column(String column) {
+            this.column = column;
+        }
+    }
+
+    @Autowired
+    private UserResourceMapper userResourceMapper;
+
+    @Autowired
+    private PlayerDirectory playerDirectory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /** 写缓冲：userId → 尚未落库的增量 */
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+
+    /** 同一用户的缓冲同时只有一个线程在落库 */
+    private static final Object[] FLUSH_LOCKS = new Object[64];
+    static {
+        for (int i = 0; i < FLUSH_LOCKS.length; i++) FLUSH_LOCKS[i] = new Object();
+    }
+
+    private TransactionTemplate requiresNew;
+
+    @PostConstruct
+    public void init() {
+        requiresNew = new TransactionTemplate(transactionManager);
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public Change change(String odUserId) {
+        return new Change(odUserId);
+    }
+
+    /**
+     * 立即扣减单项资源，余额不足返回 false
+     */
+    public boolean consume(String odUserId, Column column, long amount) {
+        return change(odUserId).consume(column, amount).apply();
+    }
+
+    /**
+     * 立即增加单项资源
+     */
+    public void add(String odUserId, Column column, long amount) {
+        change(odUserId).add(column, amount).apply();
+    }
+
+    /**
+     * 记入写缓冲，稍后与该用户的其它缓冲增量合并写入（只用于收入类的小额累加）。
+     * 在事务内调用时等事务提交后才记入，回滚则不记。
+     */
+    public void addDeferred(String odUserId, Column column, long amount) {
+        if (amount == 0) return;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    buffer(odUserId, column, amount);
+                }
+            });
+        } else {
+            buffer(odUserId, column, amount);
+        }
+    }
+
+    private void buffer(String odUserId, Column column, long amount) {
+        pending.compute(odUserId, (k, p) -> {
+            if (p == null) p = new Pending();
+            p.deltas.merge(column, amount, Long::sum);
+            return p;
+        });
+    }
+
+    /**
+     * 记录一次体力自然恢复。落库时以恢复计时作条件，行已被整行保存覆盖过时自动放弃，不会重复加体力。
+     * 已有待写的恢复时：接着它的终点算的才累加；与它同一起点的（并发读到同一计时）取终点较晚的一份，不累加；其余丢弃。
+     */
+    public void deferStaminaRecover(String odUserId, long expectedRecoverTime, long newRecoverTime,
+                                    int recovered, int maxStamina) {
+        StaminaRecover next = new StaminaRecover(expectedRecoverTime, newRecoverTime, recovered, maxStamina);
+        pending.compute(odUserId, (k, p) -> {
+            if (p == null) p = new Pending();
+            p.recover = StaminaRecover.then(p.recover, next);
+            return p;
+        });
+    }
+
+    /**
+     * 写出该用户缓冲中的增量；读取或扣减该用户资源前调用。
+     * 没有事务时在独立事务中落库，提交成功后才从缓冲中扣除；失败时缓冲保持不变，等下次重试。
+     * 在调用方事务内时随该事务写（调用方可能已整行保存过该用户并持有行锁，另开事务会一直等锁），回滚时放回缓冲。
+     */
+    public void flush(String odUserId) {
+        if (odUserId == null || !pending.containsKey(odUserId)) return;
+        synchronized (FLUSH_LOCKS[(odUserId.hashCode() & 0x7fffffff) % FLUSH_LOCKS.length]) {
+            if (TransactionSynchronizationManager.isActualTransactionActive()
+                    && TransactionSynchronizationManager.isSynchronizationActive()) {
+                flushInTransaction(odUserId);
+                return;
+            }
+            Pending[] batch = new Pending[1];
+            pending.computeIfPresent(odUserId, (k, p) -> {
+                batch[0] = p.copy();
+                return p;
+            });
+            if (batch[0] == null) return;
+            try {
+                requiresNew.execute(status -> write(odUserId, batch[0]));
+            } catch (Exception e) {
+                logger.error("资源写缓冲落库失败，稍后重试: userId={}", odUserId, e);
+                return;
+            }
+            pending.computeIfPresent(odUserId, (k, p) -> p.subtract(batch[0]));
+        }
+    }
+
+    /** 把缓冲移出后随当前事务写入，事务没有提交时放回；调用方持有该用户的落库锁 */
+    private void flushInTransaction(String odUserId) {
+        Pending batch = pending.remove(odUserId);
+        if (batch == null) return;
+        try {
+            write(odUserId, batch);
+        } catch (Exception e) {
+            logger.error("资源写缓冲落库失败，稍后重试: userId={}", odUserId, e);
+            restore(odUserId, batch);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) restore(odUserId, batch);
+            }
+        });
+    }
+
+    private void restore(String odUserId, Pending batch) {
+        pending.merge(odUserId, batch, (current, b) -> current.restore(b));
+    }
+
+    private Void write(String odUserId, Pending p) {
+        if (!p.deltas.isEmpty()) {
+            Change c = change(odUserId);
+            for (Map.Entry<Column, Long> e : p.deltas.entrySet()) c.add(e.getKey(), e.getValue());
+            c.execute();
+        }
+        if (p.recover != null) {
+            StaminaRecover r = p.recover;
+            userResourceMapper.recoverStamina(odUserId, r.maxStamina, r.recovered, r.expectedTime, r.newTime);
+        }
+        return null;
+    }
+
+    @Scheduled(cron = "*/2 * * * * ?")
+    public void flushAll() {
+        for (String odUserId : new ArrayList<>(pending.keySet())) {
+            flush(odUserId);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushAll();
+        if (!pending.isEmpty()) logger.warn("停机时仍有 {} 个用户的资源增量未能写入", pending.size());
+    }
+
+    /**
+     * 一次请求内对同一用户的资源修改，apply 时合并为一条 UPDATE
+     */
+    public class Change {
+        private final String odUserId;
+        private final Map<String, Long> deltas = new LinkedHashMap<>();
+        private final Map<String, Long> floored = new LinkedHashMap<>();
+        private final Map<String, Long> required = new LinkedHashMap<>();
+        private Integer staminaAdd;
+        private int staminaOverMax;
+        private long updateTime;
+
+        private Change(String odUserId) {
+            this.odUserId = odUserId;
+        }
+
+        public Change add(Column column, long amount) {
+            if (amount != 0) deltas.merge(column.column, amount, Long::sum);
+            return this;
+        }
+
+        /** 扣减，余额不足时整条修改不生效 */
+        public Change consume(Column column, long amount) {
+            if (amount <= 0) return this;
+            deltas.merge(column.column, -amount, Long::sum);
+            required.merge(column.column, amount, Long::sum);
+            return this;
+        }
+
+        /** 尽量扣减，最多扣到0（如被掠夺方的资源损失） */
+        public Change deduct(Column column, long amount) {
+            if (amount > 0) floored.merge(column.column, amount, Long::sum);
+            return this;
+        }
+
+        /** 增加体力，最多到 体力上限 + overMax */
+        public Change addStamina(int amount, int overMax) {
+            this.staminaAdd = (staminaAdd != null ? staminaAdd : 0) + amount;
+            this.staminaOverMax = overMax;
+            return this;
+        }
+
+        /**
+         * 执行修改。先写掉该用户的写缓冲，保证余额条件基于最新值。
+         * @return 是否生效（有扣减且余额不足时为 false）
+         */
+        public boolean apply() {
+            flush(odUserId);
+            return execute();
+        }
+
+        private boolean execute() {
+            if (isEmpty()) return true;
+            for (String column : floored.keySet()) {
+                if (deltas.containsKey(column)) {
+                    throw new IllegalStateException("同一资源不能同时增减和保底扣减: " + column);
+                }
+            }
+            if (staminaAdd != null) {
+                // 体力增减合并成一个值，和上限一起算，不对 stamina 列赋值两次
+                Long staminaDelta = deltas.remove(Column.STAMINA.column);
+                if (staminaDelta != null) staminaAdd += staminaDelta.intValue();
+            }
+            updateTime = System.currentTimeMillis();
+            if (userResourceMapper.applyChange(this) > 0) return applied();
+            // 行不存在时按默认资源初始化后重试一次
+            if (userResourceMapper.existsByUserId(odUserId) == 0) {
+                UserResource resource = UserResource.createDefault(odUserId);
+                resource.setCreateTime(updateTime);
+                resource.setUpdateTime(updateTime);
+                userResourceMapper.upsert(resource);
+                playerDirectory.updateResources(resource);
+                return userResourceMapper.applyChange(this) > 0 && applied();
+            }
+            return false;
+        }
+
+        private boolean applied() {
+            playerDirectory.applyResourceDeltas(odUserId, deltas, floored);
+            return true;
+        }
+
+        private boolean isEmpty() {
+            return deltas.isEmpty() && floored.isEmpty() && staminaAdd == null;
+        }
+
+        public String getOdUserId() { return odUserId; }
+        public Map<String, Long> getDeltas() { return deltas; }
+        public Map<String, Long> getFloored() { return floored; }
+        public Map<String, Long> getRequired() { return required; }
+        public Integer getStaminaAdd() { return staminaAdd; }
+        public int getStaminaOverMax() { return staminaOverMax; }
+        public long getUpdateTime() { return updateTime; }
+    }
+
+    private static class Pending {
+        final Map<Column, Long> deltas = new EnumMap<>(Column.class);
+        StaminaRecover recover;
+
+        /**
+         * 放回未能提交的一批（它比当前缓冲里的增量更早记入）
+         */
+        Pending restore(Pending earlier) {
+            earlier.deltas.forEach((c, v) -> deltas.merge(c, v, Long::sum));
+            recover = StaminaRecover.then(earlier.recover, recover);
+            return this;
+        }
+
+        Pending copy() {
+            Pending p = new Pending();
+            p.deltas.putAll(deltas);
+            p.recover = recover;
+            return p;
+        }
+
+        /**
+         * 扣除已落库的部分，落库期间新记入的增量保留；全部扣完返回 null
+         */
+        Pending subtract(Pending written) {
+            written.deltas.forEach((c, v) -> {
+                if (deltas.merge(c, -v, Long::sum) == 0L) deltas.remove(c);
+            });
+            if (recover == written.recover) {
+                recover = null;
+            } else if (recover != null && written.recover != null && recover.expectedTime == written.recover.expectedTime) {
+                // 落库期间又累加了恢复：起点接到已写入的计时之后
+                recover = new StaminaRecover(written.recover.newTime, recover.newTime,
+                        recover.recovered - written.recover.recovered, recover.maxStamina);
+            }
+            return deltas.isEmpty() && recover == null ? null : this;
+        }
+    }
+
+    private static class StaminaRecover {
+        /**
+         * 合并两次恢复（prev 在前）：接着 prev 的终点算的才累加；与 prev 同一起点的（并发读到同一计时）
+         * 是同一段时间，取终点较晚的一份，不累加；其余丢弃 next
+         */
+        static StaminaRecover then(StaminaRecover prev, StaminaRecover next) {
+            if (prev == null) return next;
+            if (next == null) return prev;
+            if (next.expectedTime == prev.newTime) {
+                return new StaminaRecover(prev.expectedTime, next.newTime, prev.recovered + next.recovered, next.maxStamina);
+            }
+            if (next.expectedTime == prev.expectedTime && next.newTime > prev.newTime) return next;
+            return prev;
+        }
+
+        final long expectedTime;
+        final long newTime;
+        final int recovered;
+        final int maxStamina;
+
+        StaminaRecover(long expectedTime, long newTime, int recovered, int maxStamina) {
+            this.expectedTime = expectedTime;
+            this.newTime = newTime;
+            this.recovered = recovered;
+            this.maxStamina = maxStamina;
+        }
+    }
+}
@@ -13,11 +13,18 @@ public class UserResourceRepository {
     
     @Autowired
     private UserResourceMapper userResourceMapper;
+
+    @Autowired
+    private UserResourceLedger userResourceLedger;
+
+    @Autowired
+    private PlayerDirectory playerDirectory;
     
     /**
-     * 根据用户ID获取资源
+     * 根据用户ID获取资源（先写掉该用户在账本写缓冲中的增量）
      */
     public UserResource findByUserId(String odUserId) {
+        userResourceLedger.flush(odUserId);
         return userResourceMapper.findByUserId(odUserId);
     }
     
@@ -30,9 +37,18 @@ public class UserResourceRepository {
             resource.setCreateTime(System.currentTimeMillis());
         }
         userResourceMapper.upsert(resource);
+        playerDirectory.updateResources(resource);
         return resource;
     }
     
+    /**
+     * 只更新爵位
+     */
+    public void updateRank(String odUserId, String rank) {
+        userResourceMapper.updateRank(odUserId, rank, System.currentTimeMillis());
+        playerDirectory.updateRank(odUserId, rank);
+    }
+    
     /**
      * 初始化用户资源
      */
@@ -46,6 +62,7 @@ public class UserResourceRepository {
         resource.setCreateTime(System.currentTimeMillis());
         resource.setUpdateTime(System.currentTimeMillis());
         userResourceMapper.upsert(resource);
+        playerDirectory.updateResources(resource);
         return resource;
     }
     
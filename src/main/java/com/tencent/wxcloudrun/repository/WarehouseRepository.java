@@ -1,11 +1,18 @@
 package com.tencent.wxcloudrun.repository;
 
 import com.tencent.wxcloudrun.dao.WarehouseMapper;
+import com.tencent.wxcloudrun.exception.BusinessException;
 import com.tencent.wxcloudrun.model.Warehouse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -29,6 +36,11 @@ public class WarehouseRepository {
         if (warehouse != null) {
             String idsStr = warehouseMapper.getEquipmentIdsStr(userId);
             warehouse.setEquipmentIdsStr(idsStr);
+            // 过滤掉 LEFT JOIN 没有物品时产生的空项
+            if (warehouse.getItemStorage() != null && warehouse.getItemStorage().getItems() != null) {
+                warehouse.getItemStorage().getItems().removeIf(i -> i == null || i.getItemId() == null);
+            }
+            markPersisted(warehouse);
         }
         return warehouse;
     }
@@ -65,23 +77,118 @@ public class WarehouseRepository {
             .build();
         
         warehouseMapper.upsertWarehouse(warehouse);
+        markPersisted(warehouse);
         return warehouse;
     }
     
     /**
-     * 保存仓库
+     * 保存仓库：与读取时的快照比对，只写变化的主表字段和物品堆叠，
+     * 新堆叠批量插入、变化的堆叠按行ID逐行更新（行已不存在时视为冲突）、消失的堆叠批量删除；没有变化时不访问数据库
      */
+    @Transactional
     public Warehouse save(Warehouse warehouse) {
+        List<Warehouse.WarehouseItem> added = new ArrayList<>();
+        List<Warehouse.WarehouseItem> changed = new ArrayList<>();
+        List<Long> removed = new ArrayList<>();
+        diffItems(warehouse, added, changed, removed);
+        
+        String rowState = rowState(warehouse);
+        boolean rowChanged = !rowState.equals(warehouse.getPersistedRowState());
+        if (!rowChanged && added.isEmpty() && changed.isEmpty() && removed.isEmpty()) {
+            return warehouse;
+        }
+        
         warehouse.setUpdateTime(System.currentTimeMillis());
         warehouseMapper.upsertWarehouse(warehouse);
-        warehouseMapper.deleteItemsByWarehouseId(warehouse.getId());
-        if (warehouse.getItemStorage() != null && warehouse.getItemStorage().getItems() != null
-                && !warehouse.getItemStorage().getItems().isEmpty()) {
-            warehouseMapper.insertItems(warehouse.getId(), warehouse.getUserId(), warehouse.getItemStorage().getItems());
+        if (!removed.isEmpty()) {
+            warehouseMapper.deleteItemsByIds(warehouse.getId(), removed);
         }
+        for (Warehouse.WarehouseItem item : changed) {
+            // 堆叠已被并发请求删除：不重新插入，整次保存作废
+            if (warehouseMapper.updateItem(warehouse.getId(), item) == 0) {
+                throw new BusinessException(409, "仓库数据已变化，请刷新后重试");
+            }
+        }
+        if (!added.isEmpty()) {
+            warehouseMapper.insertItems(warehouse.getId(), warehouse.getUserId(), added);
+        }
+        markPersisted(warehouse);
         return warehouse;
     }
     
+    /**
+     * 比对当前物品与快照：没有行ID（或行ID不在快照里）的是新堆叠，
+     * 内容与快照不同的是变化堆叠，快照里有但当前没有的是被删除的堆叠
+     */
+    private void diffItems(Warehouse warehouse, List<Warehouse.WarehouseItem> added,
+                           List<Warehouse.WarehouseItem> changed, List<Long> removed) {
+        Map<Long, Warehouse.WarehouseItem> persisted = warehouse.getPersistedItems();
+        if (persisted == null) persisted = new HashMap<>();
+        Set<Long> seen = new HashSet<>();
+        
+        if (warehouse.getItemStorage() != null && warehouse.getItemStorage().getItems() != null) {
+            for (Warehouse.WarehouseItem item : warehouse.getItemStorage().getItems()) {
+                if (item == null || item.getItemId() == null) continue;
+                Long rowId = item.getRowId();
+                if (rowId == null || !persisted.containsKey(rowId)) {
+                    item.setRowId(null);
+                    added.add(item);
+                } else if (seen.add(rowId) && !item.equals(persisted.get(rowId))) {
+                    changed.add(item);
+                }
+            }
+        }
+        for (Long rowId : persisted.keySet()) {
+            if (!seen.contains(rowId)) removed.add(rowId);
+        }
+    }
+    
+    /**
+     * 记录当前状态为已持久化，作为下次保存的比对基准
+     */
+    private void markPersisted(Warehouse warehouse) {
+        warehouse.setPersistedRowState(rowState(warehouse));
+        Map<Long, Warehouse.WarehouseItem> snapshot = new HashMap<>();
+        if (warehouse.getItemStorage() != null && warehouse.getItemStorage().getItems() != null) {
+            for (Warehouse.WarehouseItem item : warehouse.getItemStorage().getItems()) {
+                if (item != null && item.getRowId() != null) {
+                    snapshot.put(item.getRowId(), copyItem(item));
+                }
+            }
+        }
+        warehouse.setPersistedItems(snapshot);
+    }
+    
+    private static String rowState(Warehouse warehouse) {
+        Warehouse.EquipmentStorage es = warehouse.getEquipmentStorage();
+        Warehouse.ItemStorage is = warehouse.getItemStorage();
+        StringBuilder sb = new StringBuilder();
+        if (es != null) {
+            sb.append(es.getCapacity()).append('|').append(es.getExpandTimes()).append('|').append(es.getUsedSlots());
+        }
+        sb.append('|').append(warehouse.getEquipmentIdsStr()).append('|');
+        if (is != null) {
+            sb.append(is.getCapacity()).append('|').append(is.getExpandTimes()).append('|').append(is.getUsedSlots());
+        }
+        return sb.toString();
+    }
+    
+    private static Warehouse.WarehouseItem copyItem(Warehouse.WarehouseItem item) {
+        return Warehouse.WarehouseItem.builder()
+            .rowId(item.getRowId())
+            .itemId(item.getItemId())
+            .itemType(item.getItemType())
+            .name(item.getName())
+            .icon(item.getIcon())
+            .quality(item.getQuality())
+            .count(item.getCount())
+            .maxStack(item.getMaxStack())
+            .description(item.getDescription())
+            .usable(item.getUsable())
+            .bound(item.getBound())
+            .build();
+    }
+    
     public int getExpandCost(int expandTimes) {
         if (expandTimes >= MAX_EXPAND_TIMES) { return -1; }
         return 100 * (int) Math.pow(2, expandTimes);
@@ -6,22 +6,42 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * 统一从 user_server.lord_name 解析玩家显示名称。
  * 供 BossWar、Plunder、Supply、Market、Alliance、NationWar 等模块共用。
+ *
+ * 解析结果放在有上限的 LRU 缓存里（10 分钟过期）；列表接口用 {@link #resolveAll} 一次 IN 查询补齐未命中的名称。
+ * 创建角色、屏蔽词改名、合区时由调用方使缓存失效。
  */
 @Component
 public class PlayerNameResolver {
 
     private static final Logger logger = LoggerFactory.getLogger(PlayerNameResolver.class);
     private static final String DEFAULT_NAME = "君主";
+    private static final int CACHE_MAX_SIZE = 20000;
+    private static final long CACHE_TTL_MS = 10 * 60 * 1000L;
 
     @Autowired
     private GameServerMapper gameServerMapper;
 
+    /** 复合 userId → 名称，按访问顺序淘汰；所有访问在对象锁内 */
+    private final LinkedHashMap<String, CachedName> cache = new LinkedHashMap<String, CachedName>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedName> eldest) {
+            return size() > CACHE_MAX_SIZE;
+        }
+    };
+
     /**
      * 从复合 userId（格式 rawUserId_serverId）解析主公名称。
      * 优先拆分复合ID精确查询，失败时尝试用原始ID模糊匹配。
@@ -30,33 +50,169 @@ public class PlayerNameResolver {
         if (compositeUserId == null) return DEFAULT_NAME;
         compositeUserId = compositeUserId.trim();
         if (compositeUserId.isEmpty() || "null".equalsIgnoreCase(compositeUserId)) return DEFAULT_NAME;
+
+        String cached = getCached(compositeUserId);
+        if (cached != null) return cached;
         try {
-            int idx = compositeUserId.lastIndexOf('_');
-            String rawUserId = compositeUserId;
-            if (idx > 0) {
-                rawUserId = compositeUserId.substring(0, idx);
-                String serverPart = compositeUserId.substring(idx + 1);
-                if (isNumeric(serverPart)) {
-                    int serverId = Integer.parseInt(serverPart);
-                    Map<String, Object> ps = gameServerMapper.findPlayerServer(rawUserId, serverId);
-                    String name = extractLordName(ps);
-                    if (isValidName(name)) return name;
-                }
+            String name = lookup(compositeUserId);
+            putCached(compositeUserId, name);
+            return name;
+        } catch (Exception e) {
+            logger.debug("解析主公名称失败: {}", compositeUserId);
+        }
+        return DEFAULT_NAME;
+    }
+
+    /**
+     * 批量解析，返回 复合userId → 名称（保持传入顺序，无效ID为默认名）。
+     * 缓存未命中的ID合并成一次查询，解析规则与 {@link #resolve} 相同。
+     */
+    public Map<String, String> resolveAll(Collection<String> compositeUserIds) {
+        Map<String, String> result = new LinkedHashMap<>();
+        if (compositeUserIds == null || compositeUserIds.isEmpty()) return result;
+
+        List<String> misses = new ArrayList<>();
+        for (String id : compositeUserIds) {
+            if (id == null || result.containsKey(id)) continue;
+            String key = id.trim();
+            if (key.isEmpty() || "null".equalsIgnoreCase(key)) {
+                result.put(id, DEFAULT_NAME);
+                continue;
+            }
+            String cached = getCached(key);
+            if (cached != null) {
+                result.put(id, cached);
+            } else {
+                result.put(id, DEFAULT_NAME);
+                misses.add(id);
             }
+        }
+        if (misses.isEmpty()) return result;
 
-            String name = firstLordName(gameServerMapper.findPlayerServers(compositeUserId));
-            if (isValidName(name)) return name;
+        Set<String> queryIds = new LinkedHashSet<>();
+        for (String id : misses) {
+            String key = id.trim();
+            queryIds.add(key);
+            queryIds.add(rawUserId(key));
+        }
+        try {
+            Map<String, List<Map<String, Object>>> rowsByUser = new HashMap<>();
+            for (Map<String, Object> row : gameServerMapper.findPlayerServersByUserIds(queryIds)) {
+                rowsByUser.computeIfAbsent(String.valueOf(row.get("userId")), k -> new ArrayList<>()).add(row);
+            }
+            for (String id : misses) {
+                String key = id.trim();
+                String name = pick(key, rowsByUser);
+                putCached(key, name);
+                result.put(id, name);
+            }
+        } catch (Exception e) {
+            logger.debug("批量解析主公名称失败: {}", misses.size(), e);
+        }
+        return result;
+    }
+
+    /**
+     * 某个账号创建角色后调用，清掉该账号所有区服的缓存名称
+     */
+    public synchronized void invalidateUser(String rawUserId) {
+        if (rawUserId == null) return;
+        String prefix = rawUserId + "_";
+        Iterator<String> it = cache.keySet().iterator();
+        while (it.hasNext()) {
+            String key = it.next();
+            if (key.equals(rawUserId) || key.startsWith(prefix)) it.remove();
+        }
+    }
+
+    /**
+     * 批量改名、合区后调用
+     */
+    public synchronized void invalidateAll() {
+        cache.clear();
+    }
 
-            if (!rawUserId.equals(compositeUserId)) {
-                name = firstLordName(gameServerMapper.findPlayerServers(rawUserId));
+    private synchronized String getCached(String key) {
+        CachedName c = cache.get(key);
+        if (c == null) return null;
+        if (System.currentTimeMillis() - c.time > CACHE_TTL_MS) {
+            cache.remove(key);
+            return null;
+        }
+        return c.name;
+    }
+
+    private synchronized void putCached(String key, String name) {
+        cache.put(key, new CachedName(name, System.currentTimeMillis()));
+    }
+
+    private String lookup(String compositeUserId) {
+        int idx = compositeUserId.lastIndexOf('_');
+        String rawUserId = compositeUserId;
+        if (idx > 0) {
+            rawUserId = compositeUserId.substring(0, idx);
+            String serverPart = compositeUserId.substring(idx + 1);
+            if (isNumeric(serverPart)) {
+                int serverId = Integer.parseInt(serverPart);
+                Map<String, Object> ps = gameServerMapper.findPlayerServer(rawUserId, serverId);
+                String name = extractLordName(ps);
                 if (isValidName(name)) return name;
             }
-        } catch (Exception e) {
-            logger.debug("解析主公名称失败: {}", compositeUserId);
+        }
+
+        String name = firstLordName(gameServerMapper.findPlayerServers(compositeUserId));
+        if (isValidName(name)) return name;
+
+        if (!rawUserId.equals(compositeUserId)) {
+            name = firstLordName(gameServerMapper.findPlayerServers(rawUserId));
+            if (isValidName(name)) return name;
+        }
+        return DEFAULT_NAME;
+    }
+
+    /**
+     * 在批量查询结果上按 {@link #lookup} 的顺序取名：本区角色 → 复合ID本身 → 原始ID的其它区服角色
+     */
+    private String pick(String compositeUserId, Map<String, List<Map<String, Object>>> rowsByUser) {
+        String rawUserId = rawUserId(compositeUserId);
+        if (!rawUserId.equals(compositeUserId)) {
+            String serverPart = compositeUserId.substring(rawUserId.length() + 1);
+            if (isNumeric(serverPart)) {
+                String serverId = String.valueOf(Integer.parseInt(serverPart));
+                for (Map<String, Object> row : rowsByUser.getOrDefault(rawUserId, new ArrayList<>())) {
+                    if (serverId.equals(String.valueOf(row.get("serverId")))) {
+                        String name = extractLordName(row);
+                        if (isValidName(name)) return name;
+                    }
+                }
+            }
+        }
+
+        String name = firstLordNameOnLiveServer(rowsByUser.get(compositeUserId));
+        if (isValidName(name)) return name;
+
+        if (!rawUserId.equals(compositeUserId)) {
+            name = firstLordNameOnLiveServer(rowsByUser.get(rawUserId));
+            if (isValidName(name)) return name;
         }
         return DEFAULT_NAME;
     }
 
+    private String rawUserId(String compositeUserId) {
+        int idx = compositeUserId.lastIndexOf('_');
+        return idx > 0 ? compositeUserId.substring(0, idx) : compositeUserId;
+    }
+
+    /** 对应 findPlayerServers：只看仍存在的区服 */
+    private String firstLordNameOnLiveServer(List<Map<String, Object>> rows) {
+        if (rows == null) return null;
+        List<Map<String, Object>> live = new ArrayList<>();
+        for (Map<String, Object> row : rows) {
+            if (row.get("gameServerId") != null) live.add(row);
+        }
+        return firstLordName(live);
+    }
+
     private String firstLordName(List<Map<String, Object>> servers) {
         if (servers == null || servers.isEmpty()) return null;
         for (Map<String, Object> server : servers) {
@@ -85,4 +241,14 @@ public class PlayerNameResolver {
         }
         return true;
     }
+
+    private static class CachedName {
+        final String name;
+        final long time;
+
+        CachedName(String name, long time) {
+            this.name = name;
+            this.time = time;
+        }
+    }
 }
@@ -0,0 +1,144 @@
+package com.tencent.wxcloudrun.service;
+
+import com.tencent.wxcloudrun.exception.BusinessException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按玩家的频率限制与冷却，供聊天、联盟Boss、掠夺、坊市挂牌等接口共用。
+ *
+ * 1. 频率限制是令牌桶：每 intervalMs 恢复一个令牌，最多攒 burst 个。每个 (桶名, key) 只存一个 AtomicLong
+ *    （令牌全部恢复的时刻），放行/拒绝用 CAS 判定，不加锁
+ * 2. 冷却沿用同一结构，存的是冷却结束时刻
+ * 3. 令牌已恢复满、冷却已结束的条目每分钟回收一次。回收瞬间恰好有请求时，最多多放行一次
+ * 4. 每个桶累计放行/拒绝次数，由 {@link #getMetrics} 给管理接口查看
+ *
+ * 状态只在本实例内存里，多实例部署时每个实例各自计数。
+ */
+@Component
+public class RateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateLimiter.class);
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * 取一个令牌；不足时返回 false
+     */
+    public boolean tryAcquire(String bucketName, String key, long intervalMs, int burst) {
+        Bucket bucket = bucket(bucketName);
+        AtomicLong full = bucket.entry(key);
+        long now = System.currentTimeMillis();
+        long tolerance = (Math.max(1, burst) - 1) * intervalMs;
+        while (true) {
+            long current = full.get();
+            long base = Math.max(current, now);
+            if (base - now > tolerance) {
+                bucket.rejected.increment();
+                return false;
+            }
+            if (full.compareAndSet(current, base + intervalMs)) {
+                bucket.allowed.increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 同 {@link #tryAcquire}，令牌不足时抛出 BusinessException(400, message)
+     */
+    public void acquire(String bucketName, String key, long intervalMs, int burst, String message) {
+        if (!tryAcquire(bucketName, key, intervalMs, burst)) {
+            throw new BusinessException(400, message);
+        }
+    }
+
+    /**
+     * 冷却剩余毫秒数（0 表示可以行动），计入放行/拒绝统计；仅用于展示时用 {@link #peekCooldown}
+     */
+    public long checkCooldown(String bucketName, String key) {
+        Bucket bucket = bucket(bucketName);
+        long remain = remaining(bucket, key);
+        if (remain > 0) {
+            bucket.rejected.increment();
+        } else {
+            bucket.allowed.increment();
+        }
+        return remain;
+    }
+
+    public long peekCooldown(String bucketName, String key) {
+        return remaining(bucket(bucketName), key);
+    }
+
+    /**
+     * 从现在起进入冷却；已有更长的冷却时保留原冷却
+     */
+    public void startCooldown(String bucketName, String key, long cooldownMs) {
+        long until = System.currentTimeMillis() + cooldownMs;
+        bucket(bucketName).entry(key).accumulateAndGet(until, Math::max);
+    }
+
+    /**
+     * 各桶当前条目数与累计放行/拒绝次数
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> result = new TreeMap<>();
+        for (Map.Entry<String, Bucket> e : buckets.entrySet()) {
+            Bucket bucket = e.getValue();
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("activeKeys", bucket.entries.size());
+            item.put("allowed", bucket.allowed.sum());
+            item.put("rejected", bucket.rejected.sum());
+            result.put(e.getKey(), item);
+        }
+        return result;
+    }
+
+    @Scheduled(cron = "0 * * * * ?")
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        for (Bucket bucket : buckets.values()) {
+            int before = bucket.entries.size();
+            bucket.entries.values().removeIf(v -> v.get() <= now);
+            removed += before - bucket.entries.size();
+        }
+        if (removed > 1000) logger.info("回收过期限流条目 {} 个", removed);
+    }
+
+    private long remaining(Bucket bucket, String key) {
+        AtomicLong until = bucket.entries.get(key);
+        if (until == null) return 0L;
+        return Math.max(0L, until.get() - System.currentTimeMillis());
+    }
+
+    private Bucket bucket(String name) {
+        Bucket bucket = buckets.get(name);
+        return bucket != null ? bucket : buckets.computeIfAbsent(name, k -> new Bucket());
+    }
+
+    private static final class Bucket {
+        /** key → 令牌全部恢复（或冷却结束）的时刻 */
+        final ConcurrentHashMap<String, AtomicLong> entries = new ConcurrentHashMap<>();
+        final LongAdder allowed = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+
+        AtomicLong entry(String key) {
+            AtomicLong existing = entries.get(key);
+            if (existing != null) return existing;
+            AtomicLong created = new AtomicLong(0L);
+            existing = entries.putIfAbsent(key, created);
+            return existing != null ? existing : created;
+        }
+    }
+}
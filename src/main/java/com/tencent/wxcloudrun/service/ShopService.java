@@ -1,12 +1,12 @@
 package com.tencent.wxcloudrun.service;
 
 import com.tencent.wxcloudrun.dao.ItemMapper;
-import com.tencent.wxcloudrun.dao.ShopMapper;
 import com.tencent.wxcloudrun.exception.BusinessException;
 import com.tencent.wxcloudrun.model.Item;
 import com.tencent.wxcloudrun.model.Shop;
 import com.tencent.wxcloudrun.model.UserResource;
 import com.tencent.wxcloudrun.model.Warehouse;
+import com.tencent.wxcloudrun.service.catalog.GameCatalog;
 import com.tencent.wxcloudrun.service.warehouse.WarehouseService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,7 +28,7 @@ public class ShopService {
     private static final Logger logger = LoggerFactory.getLogger(ShopService.class);
     
     @Autowired
-    private ShopMapper shopMapper;
+    private GameCatalog gameCatalog;
     
     @Autowired
     private ItemMapper itemMapper;
@@ -40,15 +40,15 @@ public class ShopService {
     private WarehouseService warehouseService;
     
     /**
-     * 获取商品列表
+     * 获取商品列表（配置目录中的只读列表）
      * @param tab 商品分类（classify），为空或"all"时返回全部
      */
     public List<Shop> getShopGoods(String tab) {
         List<Shop> goods;
         if (tab == null || tab.isEmpty() || "all".equalsIgnoreCase(tab)) {
-            goods = shopMapper.findAll();
+            goods = gameCatalog.current().getShopGoods();
         } else {
-            goods = shopMapper.findByClassify(tab);
+            goods = gameCatalog.current().getShopGoodsByClassify(tab);
         }
         logger.info("【商城】getShopGoods tab={}, 返回商品数={}", tab, goods != null ? goods.size() : 0);
         return goods;
@@ -67,7 +67,7 @@ public class ShopService {
         }
         
         // 查询商品
-        Shop goods = shopMapper.findById(goodsId);
+        Shop goods = gameCatalog.current().getShopGoodsById(goodsId);
         if (goods == null) {
             throw new BusinessException(400, "商品不存在");
         }
@@ -1,51 +1,34 @@
 package com.tencent.wxcloudrun.service;
 
-import com.tencent.wxcloudrun.dao.SuitConfigMapper;
 import com.tencent.wxcloudrun.model.Equipment;
 import com.tencent.wxcloudrun.repository.EquipmentRepository;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.tencent.wxcloudrun.service.catalog.GameCatalog;
+import com.tencent.wxcloudrun.service.equipment.EquipBonus;
+import com.tencent.wxcloudrun.service.equipment.EquipBonusCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.tencent.wxcloudrun.config.EquipmentConfig;
 
-import javax.annotation.PostConstruct;
 import java.util.*;
 
 @Service
 public class SuitConfigService {
 
-    private static final Logger logger = LoggerFactory.getLogger(SuitConfigService.class);
-    private static final int MAX_ENHANCE_LEVEL = 20;
-    private static final double EARLY_LEVEL_BONUS_PER_LEVEL = 1.0 / 11.0; // +1 ~ +7
-    private static final double LATE_LEVEL_BONUS_PER_LEVEL = 2.0 / 11.0;  // +8 ~ +20
-    private static final int BOOST_START_LEVEL = 8;
-    private static final int[] ENHANCE_SP_ADD = {
-            0,0,0,1,1,2,2,3,4,5,6,7,8,9,10,11,12,13,14,15
-    };
-
     @Autowired
-    private SuitConfigMapper suitConfigMapper;
+    private GameCatalog gameCatalog;
 
     @Autowired
     private EquipmentRepository equipmentRepository;
 
-    private List<Map<String, Object>> allSuits = new ArrayList<>();
-
-    @PostConstruct
-    public void init() {
-        try {
-            allSuits = suitConfigMapper.findAll();
-            if (allSuits == null) allSuits = new ArrayList<>();
-            logger.info("加载套装配置 {} 条", allSuits.size());
-        } catch (Exception e) {
-            logger.warn("加载suit_config失败(表可能不存在): {}", e.getMessage());
-        }
-    }
+    @Autowired
+    private EquipBonusCache equipBonusCache;
 
+    /**
+     * 套装配置随配置目录整体重新装载
+     */
     public void reload() {
-        init();
+        gameCatalog.reload();
     }
 
     /**
@@ -83,13 +66,7 @@ public class SuitConfigService {
     }
 
     private Map<String, Object> findSuitBySetId(String setId) {
-        for (Map<String, Object> suit : allSuits) {
-            String suitName = getStr(suit, "name");
-            if (suitName != null && (suitName.equals(setId) || suitName.equals(setId + "套装"))) {
-                return suit;
-            }
-        }
-        return null;
+        return gameCatalog.current().getSuitBySetId(setId);
     }
 
     /**
@@ -152,106 +129,18 @@ public class SuitConfigService {
     }
 
     /**
-     * 计算武将装备+套装的总加成
+     * 武将装备+套装的总加成（读缓存，装备变化时增量更新）
      */
-    public Map<String, Integer> calculateTotalEquipBonus(String generalId) {
-        Map<String, Integer> bonus = new HashMap<>();
-        bonus.put("attack", 0); bonus.put("defense", 0); bonus.put("valor", 0);
-        bonus.put("command", 0); bonus.put("hp", 0); bonus.put("mobility", 0);
-        bonus.put("dodge", 0); bonus.put("hit", 0);
-
-        List<Equipment> equips = equipmentRepository.findEquippedByGeneralId(generalId);
-        if (equips == null) return bonus;
-
-        for (Equipment eq : equips) {
-            if (eq.getBaseAttributes() != null) {
-                Equipment.Attributes a = eq.getBaseAttributes();
-                bonus.merge("attack", safe(a.getAttack()), Integer::sum);
-                bonus.merge("defense", safe(a.getDefense()), Integer::sum);
-                bonus.merge("valor", safe(a.getValor()), Integer::sum);
-                bonus.merge("command", safe(a.getCommand()), Integer::sum);
-                bonus.merge("hp", safe(a.getHp()), Integer::sum);
-                bonus.merge("mobility", safe(a.getMobility()), Integer::sum);
-                if (a.getDodge() != null) bonus.merge("dodge", a.getDodge().intValue(), Integer::sum);
-            }
-            if (eq.getBonusAttributes() != null) {
-                Equipment.Attributes a = eq.getBonusAttributes();
-                bonus.merge("attack", safe(a.getAttack()), Integer::sum);
-                bonus.merge("defense", safe(a.getDefense()), Integer::sum);
-                bonus.merge("valor", safe(a.getValor()), Integer::sum);
-                bonus.merge("command", safe(a.getCommand()), Integer::sum);
-                bonus.merge("hp", safe(a.getHp()), Integer::sum);
-                bonus.merge("mobility", safe(a.getMobility()), Integer::sum);
-                if (a.getDodge() != null) bonus.merge("dodge", a.getDodge().intValue(), Integer::sum);
-            }
-            Equipment.Attributes enhance = calculateRealtimeEnhance(eq);
-            if (enhance != null) {
-                Equipment.Attributes a = enhance;
-                bonus.merge("attack", safe(a.getAttack()), Integer::sum);
-                bonus.merge("defense", safe(a.getDefense()), Integer::sum);
-                bonus.merge("valor", safe(a.getValor()), Integer::sum);
-                bonus.merge("command", safe(a.getCommand()), Integer::sum);
-                bonus.merge("hp", safe(a.getHp()), Integer::sum);
-                bonus.merge("mobility", safe(a.getMobility()), Integer::sum);
-                if (a.getDodge() != null) bonus.merge("dodge", a.getDodge().intValue(), Integer::sum);
-            }
-        }
-
-        Map<String, Integer> setCounts = countEquippedSets(equips);
-        Map<String, Double> qualityRates = calcSetQualityRate(equips);
-        for (Map.Entry<String, Integer> entry : setCounts.entrySet()) {
-            String setId = entry.getKey();
-            int count = entry.getValue();
-            if (count < 3) continue;
-
-            Map<String, Object> suit = findSuitBySetId(setId);
-            if (suit == null) continue;
-
-            double qRate = qualityRates.getOrDefault(setId, 1.0);
-            bonus.merge("attack", (int)(getInt(suit, "gen_att") * qRate), Integer::sum);
-            bonus.merge("defense", (int)(getInt(suit, "gen_def") * qRate), Integer::sum);
-
-            if (count >= 6) {
-                bonus.merge("valor", (int)(getInt(suit, "gen_for") * qRate), Integer::sum);
-                bonus.merge("command", (int)(getInt(suit, "gen_leader") * qRate), Integer::sum);
-                bonus.merge("hp", (int)(getInt(suit, "army_life") * qRate), Integer::sum);
-                bonus.merge("mobility", (int)(getInt(suit, "army_sp") * qRate), Integer::sum);
-                bonus.merge("hit", (int)(getInt(suit, "army_hit") * qRate), Integer::sum);
-                bonus.merge("dodge", (int)(getInt(suit, "army_mis") * qRate), Integer::sum);
-            }
-        }
-
-        return bonus;
+    public EquipBonus calculateTotalEquipBonus(String generalId) {
+        return equipBonusCache.get(generalId);
     }
 
-    private int safe(Integer v) { return v != null ? v : 0; }
-
-    private Equipment.Attributes calculateRealtimeEnhance(Equipment eq) {
-        if (eq == null || eq.getBaseAttributes() == null) return null;
-        int level = eq.getEnhanceLevel() != null ? eq.getEnhanceLevel() : 0;
-        if (level <= 0) return null;
-
-        int clampedLevel = Math.min(level, MAX_ENHANCE_LEVEL);
-        double bonusRate = calculateEnhanceBonusRate(clampedLevel);
-        int spAdd = ENHANCE_SP_ADD[clampedLevel - 1];
-        Equipment.Attributes base = eq.getBaseAttributes();
-
-        return Equipment.Attributes.builder()
-                .attack((int) (safe(base.getAttack()) * bonusRate))
-                .defense((int) (safe(base.getDefense()) * bonusRate))
-                .valor((int) (safe(base.getValor()) * bonusRate))
-                .command((int) (safe(base.getCommand()) * bonusRate))
-                .hp((int) (safe(base.getHp()) * bonusRate))
-                .mobility((int) (safe(base.getMobility()) * bonusRate) + spAdd)
-                .build();
-    }
-
-    private double calculateEnhanceBonusRate(int level) {
-        if (level <= 0) return 0D;
-        if (level < BOOST_START_LEVEL) return level * EARLY_LEVEL_BONUS_PER_LEVEL;
-        double earlyBonus = (BOOST_START_LEVEL - 1) * EARLY_LEVEL_BONUS_PER_LEVEL;
-        int boostedLevels = level - (BOOST_START_LEVEL - 1);
-        return earlyBonus + boostedLevels * LATE_LEVEL_BONUS_PER_LEVEL;
+    /**
+     * 批量取多个武将的装备+套装加成，未缓存的一次查出（阵型整体加载用）
+     * 返回 generalId → 加成，没有装备的武将为 {@link EquipBonus#ZERO}
+     */
+    public Map<String, EquipBonus> calculateTotalEquipBonus(List<String> generalIds) {
+        return equipBonusCache.get(generalIds);
     }
 
     private String buildDesc(int att, int def, int vl, int cmd, int hp, int sp, int hit, int mis) {
@@ -3,6 +3,7 @@ package com.tencent.wxcloudrun.service;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import com.tencent.wxcloudrun.config.WechatConfig;
+import com.tencent.wxcloudrun.util.KeywordMatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -13,12 +14,29 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import javax.annotation.PreDestroy;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * UGC 内容审核：本地关键词 + 微信 msg_sec_check
+ *
+ * 1. 关键词预编译成 Aho-Corasick 自动机，配置串变化时才重建
+ * 2. 微信审核的明确结论（通过/87014）放在有上限的 LRU 缓存里，相同文本不重复请求
+ * 3. 聊天等高频场景用 {@link #containsBlockedKeywordLocal} 同步拦截，再用 {@link #reviewAsync} 后台复核，
+ *    相同文本的并发复核合并为一次请求（msg_sec_check 没有批量接口）
+ */
 @Service
 public class UgcModerationService {
 
@@ -32,6 +50,24 @@ public class UgcModerationService {
     private final AtomicReference<String> accessTokenCache = new AtomicReference<>();
     private final AtomicLong accessTokenExpireAt = new AtomicLong(0L);
 
+    private static final int VERDICT_CACHE_MAX = 10000;
+    private static final long VERDICT_TTL_MS = 60 * 60 * 1000L;
+
+    /** 当前关键词配置编译出的自动机；配置串变化时重建 */
+    private volatile CompiledKeywords compiledKeywords;
+
+    /** 文本 → 微信审核结论，按访问顺序淘汰；所有访问在对象锁内 */
+    private final LinkedHashMap<String, Verdict> verdictCache = new LinkedHashMap<String, Verdict>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Verdict> eldest) {
+            return size() > VERDICT_CACHE_MAX;
+        }
+    };
+
+    /** 正在复核的文本 → 命中后的回调；同一文本只发一次请求 */
+    private final Map<String, List<Runnable>> reviewsInFlight = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor reviewExecutor = createReviewExecutor();
+
     @Value("${ugc.moderation.enabled:true}")
     private boolean enabled;
 
@@ -72,8 +108,84 @@ public class UgcModerationService {
     }
 
     public List<String> getBlockedKeywords() {
-        if (blockedKeywordsRaw == null || blockedKeywordsRaw.trim().isEmpty()) return Collections.emptyList();
-        String[] arr = blockedKeywordsRaw.split("[,，]");
+        return keywordMatcher().getKeywords();
+    }
+
+    public boolean containsBlockedKeyword(String text) {
+        if (!enabled) return false;
+        if (text == null || text.isEmpty()) return false;
+        if (keywordMatcher().matches(text)) {
+            return true;
+        }
+        return containsBlockedKeywordByWechat(text);
+    }
+
+    /**
+     * 只用本地词库和已缓存的微信审核结论判断，不发起网络请求
+     */
+    public boolean containsBlockedKeywordLocal(String text) {
+        if (!enabled) return false;
+        if (text == null || text.isEmpty()) return false;
+        if (keywordMatcher().matches(text)) return true;
+        Boolean cached = cachedVerdict(text.trim());
+        return cached != null && cached;
+    }
+
+    /**
+     * 后台用微信内容安全接口复核，判定违规（或接口失败且配置为 fail-close）时回调 onBlocked。
+     * 已有缓存结论时直接处理；复核线程繁忙时放弃本次复核
+     */
+    public void reviewAsync(String text, Runnable onBlocked) {
+        if (!enabled || !wechatEnabled || text == null) return;
+        String content = text.trim();
+        if (content.isEmpty()) return;
+        Boolean cached = cachedVerdict(content);
+        if (cached != null) {
+            if (cached) runQuietly(onBlocked);
+            return;
+        }
+        boolean[] first = {false};
+        reviewsInFlight.compute(content, (k, callbacks) -> {
+            if (callbacks == null) {
+                callbacks = new ArrayList<>();
+                first[0] = true;
+            }
+            callbacks.add(onBlocked);
+            return callbacks;
+        });
+        if (!first[0]) return;
+        try {
+            reviewExecutor.execute(() -> {
+                boolean blocked = containsBlockedKeywordByWechat(content);
+                List<Runnable> callbacks = reviewsInFlight.remove(content);
+                if (blocked && callbacks != null) {
+                    for (Runnable r : callbacks) runQuietly(r);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            reviewsInFlight.remove(content);
+            log.debug("内容复核队列已满，跳过: {}", content.length());
+        }
+    }
+
+    @PreDestroy
+    public void shutdownReviewExecutor() {
+        reviewExecutor.shutdownNow();
+    }
+
+    private KeywordMatcher keywordMatcher() {
+        CompiledKeywords c = compiledKeywords;
+        String raw = blockedKeywordsRaw == null ? "" : blockedKeywordsRaw;
+        if (c == null || !c.raw.equals(raw)) {
+            c = new CompiledKeywords(raw, KeywordMatcher.of(splitKeywords(raw)));
+            compiledKeywords = c;
+        }
+        return c.matcher;
+    }
+
+    private static List<String> splitKeywords(String raw) {
+        if (raw == null || raw.trim().isEmpty()) return Collections.emptyList();
+        String[] arr = raw.split("[,，]");
         List<String> result = new ArrayList<>();
         for (String s : arr) {
             if (s == null) continue;
@@ -83,30 +195,46 @@ public class UgcModerationService {
         return result;
     }
 
-    public boolean containsBlockedKeyword(String text) {
-        if (!enabled) return false;
-        if (text == null || text.isEmpty()) return false;
-        if (containsBlockedKeywordLocal(text)) {
-            return true;
+    private synchronized Boolean cachedVerdict(String content) {
+        Verdict v = verdictCache.get(content);
+        if (v == null) return null;
+        if (System.currentTimeMillis() - v.time > VERDICT_TTL_MS) {
+            verdictCache.remove(content);
+            return null;
         }
-        return containsBlockedKeywordByWechat(text);
+        return v.blocked;
     }
 
-    private boolean containsBlockedKeywordLocal(String text) {
-        String lower = text == null ? "" : text.toLowerCase();
-        for (String kw : getBlockedKeywords()) {
-            if (kw.isEmpty()) continue;
-            if (lower.contains(kw.toLowerCase())) {
-                return true;
-            }
+    private synchronized void cacheVerdict(String content, boolean blocked) {
+        verdictCache.put(content, new Verdict(blocked, System.currentTimeMillis()));
+    }
+
+    private static ThreadPoolExecutor createReviewExecutor() {
+        AtomicInteger seq = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(500), r -> {
+                    Thread t = new Thread(r, "ugc-review-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private void runQuietly(Runnable r) {
+        try {
+            r.run();
+        } catch (Exception e) {
+            log.warn("内容复核回调失败", e);
         }
-        return false;
     }
 
     private boolean containsBlockedKeywordByWechat(String text) {
         if (!wechatEnabled) return false;
         String content = text == null ? "" : text.trim();
         if (content.isEmpty()) return false;
+        Boolean cached = cachedVerdict(content);
+        if (cached != null) return cached;
         if (!isWechatConfigReady()) {
             if (!wechatFailOpen) return true;
             return false;
@@ -133,10 +261,12 @@ public class UgcModerationService {
             JSONObject resp = JSON.parseObject(response.getBody());
             int errCode = resp == null ? -1 : resp.getIntValue("errcode");
             if (errCode == 0) {
+                cacheVerdict(content, false);
                 return false;
             }
             // 87014: 内容含有违法违规内容，需拦截
             if (errCode == 87014) {
+                cacheVerdict(content, true);
                 return true;
             }
             log.warn("微信内容安全接口返回异常，errcode={}, errmsg={}", errCode,
@@ -209,4 +339,24 @@ public class UgcModerationService {
         if (v == null || v.trim().isEmpty()) return def;
         return v.trim();
     }
+
+    private static final class CompiledKeywords {
+        final String raw;
+        final KeywordMatcher matcher;
+
+        CompiledKeywords(String raw, KeywordMatcher matcher) {
+            this.raw = raw;
+            this.matcher = matcher;
+        }
+    }
+
+    private static final class Verdict {
+        final boolean blocked;
+        final long time;
+
+        Verdict(boolean blocked, long time) {
+            this.blocked = blocked;
+            this.time = time;
+        }
+    }
 }
@@ -6,17 +6,36 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * 用户ID管理服务
  * 负责维护openId到userId的映射关系（数据库存储）
+ *
+ * 映射只增不改，查到的结果双向缓存在内存里（有上限，超过时清空后按需重新查库），
+ * 认证拦截器每个请求都会用到。
  */
 @Service
 public class UserIdService {
     
     private static final Logger logger = LoggerFactory.getLogger(UserIdService.class);
     
+    /** 每个方向缓存的映射上限 */
+    private static final int MAX_CACHED_MAPPINGS = 100000;
+
+    /** 新建映射的分段锁，按 openId 哈希取一把 */
+    private static final Object[] CREATION_LOCKS = new Object[64];
+    static {
+        for (int i = 0; i < CREATION_LOCKS.length; i++) CREATION_LOCKS[i] = new Object();
+    }
+
     @Autowired
     private UserIdMappingMapper userIdMappingMapper;
+
+    private final Map<String, Long> userIdByOpenId = new ConcurrentHashMap<>();
+    private final Map<Long, String> openIdByUserId = new ConcurrentHashMap<>();
     
     /**
      * 获取或创建用户ID
@@ -31,28 +50,39 @@ public class UserIdService {
         }
         
         // 先检查是否已存在
-        Long userId = userIdMappingMapper.findUserIdByOpenId(openId);
+        Long userId = getUserId(openId);
         if (userId != null) {
             logger.debug("找到已有用户ID: openId={}, userId={}", openId, userId);
             return userId;
         }
         
-        // 不存在则创建新的userId（使用数据库自增ID）
-        synchronized (this) {
-            // 双重检查，防止并发创建
-            userId = userIdMappingMapper.findUserIdByOpenId(openId);
+        // 不存在则创建（数据库自增ID）。同一 openId 的并发首登在同一条锁上排队，不同 openId 互不阻塞
+        synchronized (creationLock(openId)) {
+            userId = userIdByOpenId.get(openId);
             if (userId != null) {
                 return userId;
             }
-            
-            // 插入新记录，使用数据库自增ID
-            userIdMappingMapper.insert(openId);
-            userId = userIdMappingMapper.findUserIdByOpenId(openId);
+
+            Map<String, Object> row = new HashMap<>();
+            row.put("openId", openId);
+            userIdMappingMapper.insertOrGetUserId(row);
+            Object generated = row.get("userId");
+            if (generated instanceof Number) {
+                userId = ((Number) generated).longValue();
+            } else {
+                // 已被其他实例抢先创建，驱动没有回传自增值时再查一次
+                userId = userIdMappingMapper.findUserIdByOpenId(openId);
+            }
+            remember(openId, userId);
             
             logger.info("创建新用户ID: openId={}, userId={}", openId, userId);
             return userId;
         }
     }
+
+    private Object creationLock(String openId) {
+        return CREATION_LOCKS[(openId.hashCode() & 0x7fffffff) % CREATION_LOCKS.length];
+    }
     
     /**
      * 根据openId获取userId
@@ -61,7 +91,12 @@ public class UserIdService {
      * @return 用户ID，如果不存在返回null
      */
     public Long getUserId(String openId) {
-        return userIdMappingMapper.findUserIdByOpenId(openId);
+        if (openId == null) return null;
+        Long userId = userIdByOpenId.get(openId);
+        if (userId != null) return userId;
+        userId = userIdMappingMapper.findUserIdByOpenId(openId);
+        remember(openId, userId);
+        return userId;
     }
     
     /**
@@ -71,7 +106,12 @@ public class UserIdService {
      * @return openId，如果不存在返回null
      */
     public String getOpenId(Long userId) {
-        return userIdMappingMapper.findOpenIdByUserId(userId);
+        if (userId == null) return null;
+        String openId = openIdByUserId.get(userId);
+        if (openId != null) return openId;
+        openId = userIdMappingMapper.findOpenIdByUserId(userId);
+        remember(openId, userId);
+        return openId;
     }
     
     /**
@@ -81,8 +121,17 @@ public class UserIdService {
      * @return 是否有效
      */
     public boolean isValidUserId(Long userId) {
-        if (userId == null) return false;
-        String openId = userIdMappingMapper.findOpenIdByUserId(userId);
-        return openId != null;
+        return getOpenId(userId) != null;
+    }
+
+    private void remember(String openId, Long userId) {
+        if (openId == null || userId == null) return;
+        if (userIdByOpenId.size() >= MAX_CACHED_MAPPINGS || openIdByUserId.size() >= MAX_CACHED_MAPPINGS) {
+            logger.info("openId/userId 映射缓存达到上限 {}，清空", MAX_CACHED_MAPPINGS);
+            userIdByOpenId.clear();
+            openIdByUserId.clear();
+        }
+        userIdByOpenId.put(openId, userId);
+        openIdByUserId.put(userId, openId);
     }
 }
@@ -2,6 +2,8 @@ package com.tencent.wxcloudrun.service;
 
 import com.tencent.wxcloudrun.exception.BusinessException;
 import com.tencent.wxcloudrun.model.UserResource;
+import com.tencent.wxcloudrun.repository.UserResourceLedger;
+import com.tencent.wxcloudrun.repository.UserResourceLedger.Column;
 import com.tencent.wxcloudrun.repository.UserResourceRepository;
 import com.tencent.wxcloudrun.service.level.LevelService;
 import org.slf4j.Logger;
@@ -11,6 +13,9 @@ import org.springframework.stereotype.Service;
 
 /**
  * 用户资源服务
+ *
+ * 单项资源的增减都走 {@link UserResourceLedger} 的列增量更新，不再整行读改写；
+ * 白银、粮食等产出类收入记入写缓冲合并落库。
  */
 @Service
 public class UserResourceService {
@@ -23,6 +28,9 @@ public class UserResourceService {
     
     @Autowired
     private UserResourceRepository resourceRepository;
+
+    @Autowired
+    private UserResourceLedger ledger;
     
     @Autowired @org.springframework.context.annotation.Lazy
     private LevelService levelService;
@@ -59,9 +67,10 @@ public class UserResourceService {
             if (ticks > 0) {
                 int recovered = ticks * STAMINA_RECOVER_AMOUNT;
                 int newStamina = Math.min(maxStam, current + recovered);
+                long newRecoverTime = lastRecover + (long) ticks * STAMINA_RECOVER_INTERVAL;
                 resource.setStamina(newStamina);
-                resource.setLastStaminaRecoverTime(lastRecover + (long) ticks * STAMINA_RECOVER_INTERVAL);
-                resourceRepository.save(resource);
+                resource.setLastStaminaRecoverTime(newRecoverTime);
+                ledger.deferStaminaRecover(resource.getOdUserId(), lastRecover, newRecoverTime, recovered, maxStam);
             }
         } else {
             resource.setLastStaminaRecoverTime(now);
@@ -72,13 +81,10 @@ public class UserResourceService {
      * 消耗黄金
      */
     public boolean consumeGold(String odUserId, long amount) {
-        UserResource resource = getUserResource(odUserId);
-        if (resource.getGold() < amount) {
+        if (!ledger.consume(odUserId, Column.GOLD, amount)) {
             return false;
         }
-        resource.setGold(resource.getGold() - amount);
-        resourceRepository.save(resource);
-        logger.info("用户 {} 消耗黄金 {}, 剩余 {}", odUserId, amount, resource.getGold());
+        logger.info("用户 {} 消耗黄金 {}", odUserId, amount);
         return true;
     }
     
@@ -86,10 +92,8 @@ public class UserResourceService {
      * 增加黄金
      */
     public void addGold(String odUserId, long amount) {
-        UserResource resource = getUserResource(odUserId);
-        resource.setGold(resource.getGold() + amount);
-        resourceRepository.save(resource);
-        logger.info("用户 {} 增加黄金 {}, 现有 {}", odUserId, amount, resource.getGold());
+        ledger.add(odUserId, Column.GOLD, amount);
+        logger.info("用户 {} 增加黄金 {}", odUserId, amount);
     }
 
     /**
@@ -108,11 +112,8 @@ public class UserResourceService {
      * 增加绑金
      */
     public void addBoundGold(String odUserId, long amount) {
-        UserResource resource = getUserResource(odUserId);
-        long cur = resource.getBoundGold() != null ? resource.getBoundGold() : 0L;
-        resource.setBoundGold(cur + amount);
-        resourceRepository.save(resource);
-        logger.info("用户 {} 增加绑金 {}, 现有 {}", odUserId, amount, resource.getBoundGold());
+        ledger.add(odUserId, Column.BOUND_GOLD, amount);
+        logger.info("用户 {} 增加绑金 {}", odUserId, amount);
     }
 
     /**
@@ -121,78 +122,60 @@ public class UserResourceService {
      * @return [0]=是否成功, [1]=本次消耗的绑金数, [2]=本次消耗的普通黄金数
      */
     public long[] consumeGoldPreferBound(String odUserId, long amount) {
-        UserResource resource = getUserResource(odUserId);
-        long bound = resource.getBoundGold() != null ? resource.getBoundGold() : 0L;
-        long gold  = resource.getGold() != null ? resource.getGold() : 0L;
-        if (bound + gold < amount) {
-            return new long[]{0, 0, 0};
+        // 按读到的余额拆分绑金/黄金，两项带条件一起扣；期间余额被并发改动导致不足时重新拆分
+        for (int attempt = 0; attempt < 3; attempt++) {
+            UserResource resource = getUserResource(odUserId);
+            long bound = resource.getBoundGold() != null ? resource.getBoundGold() : 0L;
+            long gold  = resource.getGold() != null ? resource.getGold() : 0L;
+            if (bound + gold < amount) {
+                return new long[]{0, 0, 0};
+            }
+            long boundUsed = Math.min(bound, amount);
+            long goldUsed  = amount - boundUsed;
+            if (ledger.change(odUserId).consume(Column.BOUND_GOLD, boundUsed).consume(Column.GOLD, goldUsed).apply()) {
+                logger.info("用户 {} 消耗黄金 {}(绑金{} + 普通黄金{}), 剩余 绑金{} 黄金{}",
+                        odUserId, amount, boundUsed, goldUsed, bound - boundUsed, gold - goldUsed);
+                return new long[]{1, boundUsed, goldUsed};
+            }
         }
-        long boundUsed = Math.min(bound, amount);
-        long goldUsed  = amount - boundUsed;
-        resource.setBoundGold(bound - boundUsed);
-        resource.setGold(gold - goldUsed);
-        resourceRepository.save(resource);
-        logger.info("用户 {} 消耗黄金 {}(绑金{} + 普通黄金{}), 剩余 绑金{} 黄金{}",
-                odUserId, amount, boundUsed, goldUsed, resource.getBoundGold(), resource.getGold());
-        return new long[]{1, boundUsed, goldUsed};
+        return new long[]{0, 0, 0};
     }
 
     /**
      * 消耗白银
      */
     public boolean consumeSilver(String odUserId, long amount) {
-        UserResource resource = getUserResource(odUserId);
-        if (resource.getSilver() < amount) {
-            return false;
-        }
-        resource.setSilver(resource.getSilver() - amount);
-        resourceRepository.save(resource);
-        return true;
+        return ledger.consume(odUserId, Column.SILVER, amount);
     }
     
     /**
      * 增加白银
      */
     public void addSilver(String odUserId, long amount) {
-        UserResource resource = getUserResource(odUserId);
-        resource.setSilver(resource.getSilver() + amount);
-        resourceRepository.save(resource);
+        ledger.addDeferred(odUserId, Column.SILVER, amount);
     }
 
     /** 增加粮食 */
     public void addFood(String odUserId, long amount) {
-        UserResource resource = getUserResource(odUserId);
-        resource.setFood((resource.getFood() != null ? resource.getFood() : 0L) + amount);
-        resourceRepository.save(resource);
+        ledger.addDeferred(odUserId, Column.FOOD, amount);
     }
 
     /** 增加木材 */
     public void addWood(String odUserId, long amount) {
-        UserResource resource = getUserResource(odUserId);
-        resource.setWood((resource.getWood() != null ? resource.getWood() : 0L) + amount);
-        resourceRepository.save(resource);
+        ledger.addDeferred(odUserId, Column.WOOD, amount);
     }
 
     /** 增加纸张 */
     public void addPaper(String odUserId, long amount) {
-        UserResource resource = getUserResource(odUserId);
-        resource.setPaper((resource.getPaper() != null ? resource.getPaper() : 0L) + amount);
-        resourceRepository.save(resource);
+        ledger.addDeferred(odUserId, Column.PAPER, amount);
     }
 
     public boolean consumePaper(String odUserId, long amount) {
-        UserResource resource = getUserResource(odUserId);
-        long current = resource.getPaper() != null ? resource.getPaper() : 0L;
-        if (current < amount) return false;
-        resource.setPaper(current - amount);
-        resourceRepository.save(resource);
-        return true;
+        return ledger.consume(odUserId, Column.PAPER, amount);
     }
 
     public void addMetal(String odUserId, long amount) {
-        UserResource resource = getUserResource(odUserId);
-        resource.setMetal((resource.getMetal() != null ? resource.getMetal() : 0L) + amount);
-        resourceRepository.save(resource);
+        ledger.addDeferred(odUserId, Column.METAL, amount);
     }
 
     /**
@@ -200,29 +183,17 @@ public class UserResourceService {
      */
     public void addTigerTally(String odUserId, int amount) {
         if (amount <= 0) return;
-        UserResource resource = getUserResource(odUserId);
-        int current = resource.getTigerTally() != null ? resource.getTigerTally() : 0;
-        resource.setTigerTally(current + amount);
-        resourceRepository.save(resource);
+        ledger.add(odUserId, Column.TIGER_TALLY, amount);
     }
 
     public boolean consumeMetal(String odUserId, long amount) {
-        UserResource resource = getUserResource(odUserId);
-        long current = resource.getMetal() != null ? resource.getMetal() : 0L;
-        if (current < amount) return false;
-        resource.setMetal(current - amount);
-        resourceRepository.save(resource);
-        return true;
+        return ledger.consume(odUserId, Column.METAL, amount);
     }
 
     /** 消耗粮食 */
     public boolean consumeFood(String odUserId, long amount) {
-        UserResource resource = getUserResource(odUserId);
-        long current = resource.getFood() != null ? resource.getFood() : 0L;
-        if (current < amount) { return false; }
-        resource.setFood(current - amount);
-        resourceRepository.save(resource);
-        logger.info("用户 {} 消耗粮食 {}, 剩余 {}", odUserId, amount, resource.getFood());
+        if (!ledger.consume(odUserId, Column.FOOD, amount)) { return false; }
+        logger.info("用户 {} 消耗粮食 {}", odUserId, amount);
         return true;
     }
 
@@ -230,58 +201,38 @@ public class UserResourceService {
      * 消耗钻石
      */
     public boolean consumeDiamond(String odUserId, long amount) {
-        UserResource resource = getUserResource(odUserId);
-        if (resource.getDiamond() < amount) {
-            return false;
-        }
-        resource.setDiamond(resource.getDiamond() - amount);
-        resourceRepository.save(resource);
-        return true;
+        return ledger.consume(odUserId, Column.DIAMOND, amount);
     }
     
     /**
      * 增加钻石
      */
     public void addDiamond(String odUserId, long amount) {
-        UserResource resource = getUserResource(odUserId);
-        resource.setDiamond(resource.getDiamond() + amount);
-        resourceRepository.save(resource);
+        ledger.add(odUserId, Column.DIAMOND, amount);
     }
     
     /**
      * 消耗体力
      */
     public boolean consumeStamina(String odUserId, int amount) {
-        UserResource resource = getUserResource(odUserId);
-        if (resource.getStamina() < amount) {
-            return false;
-        }
-        resource.setStamina(resource.getStamina() - amount);
-        resourceRepository.save(resource);
-        return true;
+        // 先结算自然恢复，扣减条件才能算上恢复的体力
+        getUserResource(odUserId);
+        return ledger.consume(odUserId, Column.STAMINA, amount);
     }
     
     /**
      * 增加体力
      */
     public void addStamina(String odUserId, int amount) {
-        UserResource resource = getUserResource(odUserId);
-        int newStamina = Math.min(resource.getMaxStamina() + 50, resource.getStamina() + amount); // 可以超过上限50
-        resource.setStamina(newStamina);
-        resourceRepository.save(resource);
+        getUserResource(odUserId);
+        ledger.change(odUserId).addStamina(amount, 50).apply(); // 可以超过上限50
     }
     
     /**
      * 消耗将令
      */
     public boolean consumeGeneralOrder(String odUserId, int amount) {
-        UserResource resource = getUserResource(odUserId);
-        if (resource.getGeneralOrder() < amount) {
-            return false;
-        }
-        resource.setGeneralOrder(resource.getGeneralOrder() - amount);
-        resourceRepository.save(resource);
-        return true;
+        return ledger.consume(odUserId, Column.GENERAL_ORDER, amount);
     }
     
     /**
@@ -349,13 +300,16 @@ public class UserResourceService {
      * 增加声望
      */
     public void addFame(String odUserId, long amount) {
-        UserResource resource = getUserResource(odUserId);
-        resource.setFame(resource.getFame() + amount);
+        ledger.add(odUserId, Column.FAME, amount);
         
-        // 更新爵位
+        // 爵位由声望推导，按加完后的声望重算；只在爵位变化时写回
+        UserResource resource = resourceRepository.findByUserId(odUserId);
+        if (resource == null) return;
+        String before = resource.getRank();
         updateRank(resource);
-        
-        resourceRepository.save(resource);
+        if (!java.util.Objects.equals(before, resource.getRank())) {
+            resourceRepository.updateRank(odUserId, resource.getRank());
+        }
     }
     
     /**
@@ -11,8 +11,11 @@ import com.tencent.wxcloudrun.service.UserResourceService;
 import com.tencent.wxcloudrun.service.SuitConfigService;
 import com.tencent.wxcloudrun.service.battle.BattleCalculator;
 import com.tencent.wxcloudrun.service.battle.BattleService;
+import com.tencent.wxcloudrun.service.equipment.EquipBonusCache;
+import com.tencent.wxcloudrun.service.formation.CombatSnapshotCache;
 import com.tencent.wxcloudrun.service.formation.FormationService;
 import com.tencent.wxcloudrun.service.PlayerNameResolver;
+import com.tencent.wxcloudrun.service.RateLimiter;
 import com.tencent.wxcloudrun.service.chat.ChatService;
 import com.tencent.wxcloudrun.service.mail.MailService;
 import com.tencent.wxcloudrun.service.warehouse.WarehouseService;
@@ -43,6 +46,9 @@ public class AllianceBossService {
     private static final int SQUAD_SIZE = 6;
     private static final int SQUAD_SOLDIERS_PER_UNIT = 1000;
     private static final int BASE_COOLDOWN_SEC = 90;
+    private static final String COOLDOWN_BUCKET = "allianceBoss.cooldown";
+    private static final String ATTACK_RATE_BUCKET = "allianceBoss.attack";
+    private static final long ATTACK_RATE_INTERVAL_MS = 1000;
     private static final double DROP_RATE = 0.20;
     private static final long LAST_HIT_REWARD_GOLD = 0L;
     private static final long LAST_HIT_REWARD_SILVER = 0L;
@@ -109,13 +115,15 @@ public class AllianceBossService {
 
     private final Random random = new Random();
     private final Map<Integer, ConcurrentLinkedQueue<int[]>> woundedPools = new ConcurrentHashMap<>();
-    private final Map<String, Long> cooldownUntilByUser = new ConcurrentHashMap<>();
 
     @Autowired private AllianceBossMapper bossMapper;
     @Autowired private AllianceMapper allianceMapper;
     @Autowired private EquipmentMapper equipmentMapper;
+    @Autowired private CombatSnapshotCache combatSnapshotCache;
+    @Autowired private EquipBonusCache equipBonusCache;
     @Autowired private UserResourceService userResourceService;
     @Autowired private BattleService battleService;
+    @Autowired private RateLimiter rateLimiter;
     @Autowired private FormationService formationService;
     @Autowired private SuitConfigService suitConfigService;
     @Autowired private WarehouseService warehouseService;
@@ -294,7 +302,9 @@ public class AllianceBossService {
             totalValue += value;
             consumedNames.add(eq.getName());
             equipmentMapper.deleteById(eqId);
+            equipBonusCache.onDeleted(eqId);
         }
+        if (!consumedNames.isEmpty()) combatSnapshotCache.invalidate(userId);
 
         if (totalValue <= 0) {
             throw new BusinessException(400, "没有可喂养的装备(需绿色品质以上)");
@@ -373,6 +383,8 @@ public class AllianceBossService {
 
     @Transactional
     public Map<String, Object> attack(String userId) {
+        // 连点在拿 Boss 行锁之前就挡掉
+        rateLimiter.acquire(ATTACK_RATE_BUCKET, userId, ATTACK_RATE_INTERVAL_MS, 2, "操作太频繁，请稍后再试");
         AllianceContext ctx = requireAllianceContext(userId);
         ensureAllianceBossLoaded(ctx.serverId, ctx.allianceId);
         Map<String, Object> boss = bossMapper.findCurrentBossByServerAndAllianceForUpdate(ctx.serverId, ctx.allianceId);
@@ -380,8 +392,9 @@ public class AllianceBossService {
             throw new BusinessException(500, "Boss数据异常");
         }
         int cycleId = getCycleId(boss);
-        long cdRemain = currentCooldownSec(userId, ctx.serverId, ctx.allianceId, cycleId);
-        if (cdRemain > 0) {
+        long cdRemainMs = rateLimiter.checkCooldown(COOLDOWN_BUCKET, cooldownKey(userId, ctx.serverId, ctx.allianceId, cycleId));
+        if (cdRemainMs > 0) {
+            long cdRemain = (cdRemainMs + 999) / 1000;
             throw new BusinessException(400, "正在休整中，还需等待" + cdRemain + "秒");
         }
         reconcileBossHpConfig(boss);
@@ -466,7 +479,7 @@ public class AllianceBossService {
 
         int roundsUsed = report.rounds.size();
         long cooldownMs = BASE_COOLDOWN_SEC * 1000L + roundsUsed * 10_000L;
-        cooldownUntilByUser.put(cooldownKey(userId, ctx.serverId, ctx.allianceId, cycleId), System.currentTimeMillis() + cooldownMs);
+        rateLimiter.startCooldown(COOLDOWN_BUCKET, cooldownKey(userId, ctx.serverId, ctx.allianceId, cycleId), cooldownMs);
 
         if (!squadWiped) {
             pool.offer(squadSoldiers);
@@ -522,14 +535,7 @@ public class AllianceBossService {
     }
 
     private long currentCooldownSec(String userId, int serverId, String allianceId, int cycleId) {
-        String key = cooldownKey(userId, serverId, allianceId, cycleId);
-        Long until = cooldownUntilByUser.get(key);
-        if (until == null) return 0L;
-        long remainMs = until - System.currentTimeMillis();
-        if (remainMs <= 0) {
-            cooldownUntilByUser.remove(key);
-            return 0L;
-        }
+        long remainMs = rateLimiter.peekCooldown(COOLDOWN_BUCKET, cooldownKey(userId, serverId, allianceId, cycleId));
         return (remainMs + 999) / 1000;
     }
 
@@ -12,7 +12,9 @@ import com.tencent.wxcloudrun.model.AllianceWar.*;
 import com.tencent.wxcloudrun.model.General;
 import com.tencent.wxcloudrun.service.PlayerNameResolver;
 import com.tencent.wxcloudrun.service.SuitConfigService;
+import com.tencent.wxcloudrun.service.equipment.EquipBonus;
 import com.tencent.wxcloudrun.service.battle.BattleCalculator;
+import com.tencent.wxcloudrun.service.battle.BattleReportStore;
 import com.tencent.wxcloudrun.service.battle.BattleService;
 import com.tencent.wxcloudrun.service.formation.FormationService;
 import com.tencent.wxcloudrun.service.mail.MailService;
@@ -26,6 +28,7 @@ import javax.annotation.PostConstruct;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.LinkedHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 
 /**
@@ -45,6 +48,9 @@ public class AllianceWarService {
     @Autowired
     private BattleService battleService;
 
+    @Autowired
+    private BattleReportStore battleReportStore;
+
     @Autowired
     private FormationService formationService;
 
@@ -583,7 +589,10 @@ public class AllianceWarService {
         }
 
         int round = todayWar.getCurrentRound() != null ? todayWar.getCurrentRound() : 1;
-        Collections.shuffle(aliveAlliances, new Random());
+        long pairingSeed = ThreadLocalRandom.current().nextLong();
+        if (todayWar.getRoundPairingSeeds() == null) todayWar.setRoundPairingSeeds(new LinkedHashMap<>());
+        todayWar.getRoundPairingSeeds().put(round, pairingSeed);
+        Collections.shuffle(aliveAlliances, new Random(pairingSeed));
         log.info("盟战第{}轮结算，活跃联盟: {}", round, aliveAlliances.size());
 
         for (int i = 0; i < aliveAlliances.size(); i += 2) {
@@ -617,13 +626,16 @@ public class AllianceWarService {
     private void runAllianceDuel(String allianceA, String allianceB, int round) {
         List<WarParticipant> sideA = getAliveAllianceParticipants(allianceA);
         List<WarParticipant> sideB = getAliveAllianceParticipants(allianceB);
-        Collections.shuffle(sideA, new Random());
-        Collections.shuffle(sideB, new Random());
+        long pairingSeed = ThreadLocalRandom.current().nextLong();
+        Random pairingRandom = new Random(pairingSeed);
+        Collections.shuffle(sideA, pairingRandom);
+        Collections.shuffle(sideB, pairingRandom);
 
         while (!sideA.isEmpty() && !sideB.isEmpty()) {
             WarParticipant p1 = sideA.get(0);
             WarParticipant p2 = sideB.get(0);
             WarBattle battle = createBattle(round, p1, p2);
+            battle.setPairingSeed(pairingSeed);
             simulateBattle(battle, p1, p2, round);
             todayWar.getBattles().add(battle);
             if (!isParticipantAlive(p1)) sideA.remove(0);
@@ -654,7 +666,8 @@ public class AllianceWarService {
         List<BattleCalculator.BattleUnit> sideA = buildWarParticipantUnits(p1);
         List<BattleCalculator.BattleUnit> sideB = buildWarParticipantUnits(p2);
         BattleService.BattleReport report = battleService.fight(sideA, sideB, 20);
-        battle.setBattleReportJson(JSON.toJSONString(report));
+        battle.setBattleReportId(battleReportStore.save(BattleReportStore.TYPE_ALLIANCE_WAR,
+                AllianceService.extractServerId(p1.getOdUserId()), report));
         battle.setEndTime(System.currentTimeMillis());
         battle.setPlayer1Score(report.victoryA ? 1 : 0);
         battle.setPlayer2Score(report.victoryA ? 0 : 1);
@@ -1273,7 +1286,7 @@ public class AllianceWarService {
                         General g = generals.get(i);
                         String key = g.getId() != null ? String.valueOf(g.getId()) : g.getName();
                         int remaining = p.getRemainingSoldiers().getOrDefault(key, 0);
-                        Map<String, Integer> eq = suitConfigService.calculateTotalEquipBonus(g.getId());
+                        EquipBonus eq = suitConfigService.calculateTotalEquipBonus(g.getId());
                         int rawTier = g.getSoldierTier() != null ? g.getSoldierTier() : 1;
                         int sRank = g.getSoldierRank() != null ? g.getSoldierRank() : 1;
                         int tier = Math.max(rawTier, sRank);
@@ -1291,9 +1304,9 @@ public class AllianceWarService {
                                 g.getAttrDodge() != null ? (int) Math.round(g.getAttrDodge()) : 5,
                                 g.getAttrMobility() != null ? g.getAttrMobility() : 15,
                                 troopType, tier, sc, maxSc, formLv,
-                                eq.getOrDefault("attack", 0), eq.getOrDefault("defense", 0),
-                                eq.getOrDefault("mobility", eq.getOrDefault("speed", 0)), eq.getOrDefault("hit", 0),
-                                eq.getOrDefault("dodge", 0), 0, 0, 0);
+                                eq.attack, eq.defense,
+                                eq.mobility, eq.hit,
+                                eq.dodge, 0, 0, 0);
                         u.position = i;
                         generalService.applyFamousTraitsToUnit(u, g.getName(), troopType);
 
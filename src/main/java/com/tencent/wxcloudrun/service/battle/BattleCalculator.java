@@ -1,6 +1,7 @@
 package com.tencent.wxcloudrun.service.battle;
 
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * 统一战斗计算器
@@ -21,7 +22,10 @@ import java.util.*;
  */
 public class BattleCalculator {
 
-    private static final Random random = new Random();
+    /** 对象版公式只作为单次计算/展示用，战斗结算走 BattleKernel；这里用线程本地随机数，避免全局 Random 争用 */
+    private static Random random() {
+        return ThreadLocalRandom.current();
+    }
 
     /** 击杀倍率：控制战斗节奏，目标5~8回合内分出胜负 */
     public static final double DEFENSE_FACTOR = 1.25;
@@ -243,7 +247,7 @@ public class BattleCalculator {
 
     public static boolean isDodge(int attackerHit, int targetDodge) {
         double netDodge = Math.min(50, Math.max(0, targetDodge - attackerHit));
-        return random.nextDouble() * 100 < netDodge;
+        return random().nextDouble() * 100 < netDodge;
     }
 
     // ==================== 核心伤害计算 ====================
@@ -271,7 +275,7 @@ public class BattleCalculator {
         double typeBonus = getTypeBonus(attacker.troopType, target.troopType);
         double valorBonus = getValorBonus(attacker.valor);
         double commandReduction = getCommandReduction(target.command);
-        double randomFactor = 0.95 + random.nextDouble() * 0.10;
+        double randomFactor = 0.95 + random().nextDouble() * 0.10;
         double yanhangBonus = 1.0;
         double defendReduceMul = 1.0;
 
@@ -322,7 +326,7 @@ public class BattleCalculator {
 
         int rawSoldierLoss;
         if (finalDamage <= 0) {
-            rawSoldierLoss = 1 + random.nextInt(5);
+            rawSoldierLoss = 1 + random().nextInt(5);
         } else {
             rawSoldierLoss = Math.max(1, (int) Math.ceil(finalDamage * KILL_MULTIPLIER / Math.max(1, soldierLife)));
         }
@@ -364,12 +368,12 @@ public class BattleCalculator {
         }
     }
 
-    private static double calcYanhangReflect(int level) {
+    static double calcYanhangReflect(int level) {
         int lv = Math.max(1, Math.min(10, level));
         return 3.0 + (30.0 - 3.0) * (lv - 1) / 9.0;
     }
 
-    private static double calcYanhangArcherBonus(int level) {
+    static double calcYanhangArcherBonus(int level) {
         int lv = Math.max(1, Math.min(10, level));
         return 5.0 + (50.0 - 5.0) * (lv - 1) / 9.0;
     }
@@ -487,7 +491,7 @@ public class BattleCalculator {
 
         // ===== 主动兵法发动判定 =====
         double triggerRate = (attacker.tacticsTriggerRate + attacker.tacticsTriggerBonus) * attacker.tacticsTriggerMultiplier;
-        boolean triggered = random.nextDouble() * 100 < triggerRate;
+        boolean triggered = random().nextDouble() * 100 < triggerRate;
 
         if (!triggered) {
             result.damages.add(calcDamage(attacker, target));
@@ -541,7 +545,7 @@ public class BattleCalculator {
                         if (e.troopType == 3 && e.soldierCount > 0) archers.add(e);
                     }
                 }
-                BattleUnit actualTarget = archers.isEmpty() ? target : archers.get(random.nextInt(archers.size()));
+                BattleUnit actualTarget = archers.isEmpty() ? target : archers.get(random().nextInt(archers.size()));
                 int origAtk = attacker.totalAttack;
                 attacker.totalAttack = origAtk + bonusAtk;
                 DamageResult dr = calcDamage(attacker, actualTarget);
@@ -629,7 +633,7 @@ public class BattleCalculator {
 
     public static boolean rollCounter(BattleUnit counterUnit) {
         double rate = (counterUnit.tacticsTriggerRate + counterUnit.tacticsTriggerBonus) * counterUnit.tacticsTriggerMultiplier / 100.0;
-        return random.nextDouble() < Math.min(0.50, rate);
+        return random().nextDouble() < Math.min(0.50, rate);
     }
 
     public static DamageResult calcCounterDamage(BattleUnit defender, BattleUnit attacker) {
@@ -679,6 +683,39 @@ public class BattleCalculator {
         public BattleUnit() {
             this.soldierLife = 240;
         }
+
+        /** 复制全部字段（战斗快照模板取用时使用，战斗会修改 soldierCount） */
+        public BattleUnit copy() {
+            BattleUnit u = new BattleUnit();
+            u.totalAttack = totalAttack;
+            u.totalDefense = totalDefense;
+            u.valor = valor;
+            u.command = command;
+            u.dodge = dodge;
+            u.hit = hit;
+            u.mobility = mobility;
+            u.troopType = troopType;
+            u.soldierTier = soldierTier;
+            u.soldierCount = soldierCount;
+            u.maxSoldierCount = maxSoldierCount;
+            u.soldierLife = soldierLife;
+            u.traitDmgBonus = traitDmgBonus;
+            u.traitDamageResist = traitDamageResist;
+            u.traitLifePct = traitLifePct;
+            u.traitImmuneAmbush = traitImmuneAmbush;
+            u.targetSoldierLife = targetSoldierLife;
+            u.position = position;
+            u.name = name;
+            u.level = level;
+            u.tacticsId = tacticsId;
+            u.tacticsName = tacticsName;
+            u.tacticsLevel = tacticsLevel;
+            u.tacticsTriggerRate = tacticsTriggerRate;
+            u.tacticsEffectValue = tacticsEffectValue;
+            u.tacticsTriggerBonus = tacticsTriggerBonus;
+            u.tacticsTriggerMultiplier = tacticsTriggerMultiplier;
+            return u;
+        }
     }
 
     public static class DamageResult {
@@ -0,0 +1,494 @@
+package com.tencent.wxcloudrun.service.battle;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * 战斗内核 —— 基于原始类型数组的回合制战斗结算
+ *
+ * 公式与 {@link BattleCalculator#calcDamage}/{@link BattleCalculator#calcDamageWithTactics} 逐条对应，区别在于:
+ *   - 单位属性平铺在 int[]/double[] 中（下标 0..nA-1 为A方，其余为B方），兵法ID预先转成整数编码
+ *   - 每次攻击的命中结果写入预分配的缓冲区，结算过程不创建 DamageResult/TacticsResult 等临时对象
+ *   - 随机数来自调用方传入的 SplittableRandom，不再争用全局 Random
+ *   - 战报通过 {@link BattleListener} 输出，不需要战报时传 NONE
+ *
+ * 实例不是线程安全的，由 BattleService 按线程复用；数组只在单位数变多时扩容。
+ */
+final class BattleKernel {
+
+    // ==================== 兵法编码 ====================
+
+    static final int T_NONE = 0;
+    static final int T_INFANTRY_1 = 1;   // 方圆阵
+    static final int T_INFANTRY_2 = 2;   // 长蛇阵
+    static final int T_INFANTRY_3 = 3;   // 雁行阵
+    static final int T_INFANTRY_4 = 4;   // 偃月阵
+    static final int T_INFANTRY_5 = 5;   // 却月阵
+    static final int T_ARCHER_1 = 6;     // 连射
+    static final int T_ARCHER_2 = 7;     // 长虹贯日
+    static final int T_ARCHER_3 = 8;     // 落月弓
+    static final int T_CAVALRY_1 = 9;    // 铁骑冲锋
+    static final int T_CAVALRY_2 = 10;   // 声东击西
+    static final int T_CAVALRY_3 = 11;   // 以逸待劳
+    static final int T_CAVALRY_4 = 12;   // 战神突击
+    static final int T_SPECIAL_LVBU = 13;
+    static final int T_OTHER = 14;
+
+    static int tacticsCode(String tacticsId) {
+        if (tacticsId == null || tacticsId.isEmpty()) return T_NONE;
+        switch (tacticsId) {
+            case "t_infantry_1": return T_INFANTRY_1;
+            case "t_infantry_2": return T_INFANTRY_2;
+            case "t_infantry_3": return T_INFANTRY_3;
+            case "t_infantry_4": return T_INFANTRY_4;
+            case "t_infantry_5": return T_INFANTRY_5;
+            case "t_archer_1": return T_ARCHER_1;
+            case "t_archer_2": return T_ARCHER_2;
+            case "t_archer_3": return T_ARCHER_3;
+            case "t_cavalry_1": return T_CAVALRY_1;
+            case "t_cavalry_2": return T_CAVALRY_2;
+            case "t_cavalry_3": return T_CAVALRY_3;
+            case "t_cavalry_4": return T_CAVALRY_4;
+            case "t_special_lvbu": return T_SPECIAL_LVBU;
+            default: return T_OTHER;
+        }
+    }
+
+    // ==================== 单位属性 ====================
+
+    private int n;
+    private int nA;
+    private int[] atk = new int[0];
+    private int[] def = new int[0];
+    private int[] valor = new int[0];
+    private int[] command = new int[0];
+    private int[] dodge = new int[0];
+    private int[] hit = new int[0];
+    private int[] mobility = new int[0];
+    private int[] troop = new int[0];
+    private int[] soldiers = new int[0];
+    private int[] tableLife = new int[0];     // 兵种表单兵生命（calcDamage 按兵种表取值，不用 BattleUnit.soldierLife）
+    private int[] targetLife = new int[0];
+    private int[] traitDmg = new int[0];
+    private int[] traitResist = new int[0];
+    private double[] traitLifePct = new double[0];
+    private boolean[] immuneAmbush = new boolean[0];
+    private int[] position = new int[0];
+    private int[] tactic = new int[0];
+    private int[] tacticsLevel = new int[0];
+    private double[] trigger = new double[0];  // (触发率 + 加成) × 倍率
+    private double[] effect = new double[0];
+    private int[] order = new int[0];
+
+    // ==================== 单次行动缓冲 ====================
+
+    private int[] alive = new int[0];
+    private int aliveCount;
+
+    private int[] hitTarget = new int[0];
+    private int[] hitLoss = new int[0];
+    private int[] hitRaw = new int[0];
+    private int[] hitReflect = new int[0];
+    private boolean[] hitDodge = new boolean[0];
+    private int hitCount;
+
+    private boolean actTriggered;
+    private String actDesc;
+    private int actSpecial;
+
+    private SplittableRandom rng;
+
+    int size() { return n; }
+
+    int sideASize() { return nA; }
+
+    /**
+     * 载入双方单位（只读取，不修改传入对象）
+     */
+    void load(List<BattleCalculator.BattleUnit> sideA, List<BattleCalculator.BattleUnit> sideB) {
+        nA = sideA.size();
+        n = nA + sideB.size();
+        ensureCapacity(n);
+        for (int i = 0; i < n; i++) {
+            BattleCalculator.BattleUnit u = i < nA ? sideA.get(i) : sideB.get(i - nA);
+            atk[i] = u.totalAttack;
+            def[i] = u.totalDefense;
+            valor[i] = u.valor;
+            command[i] = u.command;
+            dodge[i] = u.dodge;
+            hit[i] = u.hit;
+            mobility[i] = u.mobility;
+            troop[i] = u.troopType;
+            soldiers[i] = u.soldierCount;
+            tableLife[i] = BattleCalculator.getSoldierLife(u.troopType, u.soldierTier);
+            targetLife[i] = u.targetSoldierLife;
+            traitDmg[i] = u.traitDmgBonus;
+            traitResist[i] = u.traitDamageResist;
+            traitLifePct[i] = u.traitLifePct;
+            immuneAmbush[i] = u.traitImmuneAmbush;
+            position[i] = u.position;
+            tactic[i] = tacticsCode(u.tacticsId);
+            tacticsLevel[i] = u.tacticsLevel;
+            trigger[i] = (u.tacticsTriggerRate + u.tacticsTriggerBonus) * u.tacticsTriggerMultiplier;
+            effect[i] = u.tacticsEffectValue;
+        }
+        // 按机动降序的稳定排序（与原先 List.sort 的行动顺序一致）
+        for (int i = 0; i < n; i++) {
+            int idx = i;
+            int j = i - 1;
+            while (j >= 0 && mobility[order[j]] < mobility[idx]) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = idx;
+        }
+    }
+
+    /** 把战后兵力写回单位对象 */
+    void writeBack(List<BattleCalculator.BattleUnit> sideA, List<BattleCalculator.BattleUnit> sideB) {
+        for (int i = 0; i < n; i++) {
+            BattleCalculator.BattleUnit u = i < nA ? sideA.get(i) : sideB.get(i - nA);
+            u.soldierCount = soldiers[i];
+        }
+    }
+
+    boolean sideADead() { return allDead(0, nA); }
+
+    boolean sideBDead() { return allDead(nA, n); }
+
+    int remaining(boolean sideA) {
+        int from = sideA ? 0 : nA;
+        int to = sideA ? nA : n;
+        int sum = 0;
+        for (int i = from; i < to; i++) sum += Math.max(0, soldiers[i]);
+        return sum;
+    }
+
+    /**
+     * 执行战斗，返回实际进行的回合数
+     */
+    int run(int maxRounds, SplittableRandom random, BattleListener listener) {
+        this.rng = random;
+        int roundNum = 0;
+        try {
+            while (roundNum < maxRounds) {
+                roundNum++;
+                listener.roundStart(roundNum);
+
+                for (int k = 0; k < n; k++) {
+                    int a = order[k];
+                    if (soldiers[a] <= 0) continue;
+
+                    boolean attackerIsA = a < nA;
+                    collectAlive(attackerIsA ? nA : 0, attackerIsA ? n : nA);
+                    if (aliveCount == 0) break;
+
+                    int target = pickTarget(a);
+                    hitCount = 0;
+                    attack(a, target);
+
+                    // 以逸待劳打断判定：攻击方触发声东击西时，检查防守方全队是否有人装备以逸待劳
+                    int counterUnit = actTriggered ? findCounterUnit(a) : -1;
+                    boolean countered = counterUnit >= 0
+                            && rng.nextDouble() < Math.min(0.50, trigger[counterUnit] / 100.0);
+
+                    if (countered) {
+                        listener.interrupted(a, target, counterUnit, soldiers[target]);
+                        int s = calc(counterUnit, a, 0);
+                        if (!hitDodge[s]) {
+                            int loss = Math.max(1, (int) (hitLoss[s] * Math.max(0.3, effect[counterUnit] / 100.0)));
+                            hitLoss[s] = Math.min(loss, soldiers[a]);
+                            soldiers[a] = Math.max(0, soldiers[a] - hitLoss[s]);
+                        }
+                        listener.counter(counterUnit, a, hitLoss[s], soldiers[a], hitDodge[s]);
+                    } else {
+                        listener.action(a, target, actTriggered, actDesc, actSpecial);
+                        for (int h = 0; h < hitCount; h++) {
+                            int t = hitTarget[h];
+                            if (!hitDodge[h]) {
+                                soldiers[t] = Math.max(0, soldiers[t] - hitLoss[h]);
+                            }
+                            listener.hit(t, hitLoss[h], soldiers[t], hitDodge[h]);
+                            // 防守方反伤（却月阵/雁行阵）
+                            if (hitReflect[h] > 0 && soldiers[a] > 0) {
+                                int reflectLoss = Math.min(hitReflect[h], soldiers[a]);
+                                soldiers[a] = Math.max(0, soldiers[a] - reflectLoss);
+                                listener.reflect(t, a, reflectLoss, soldiers[a]);
+                            }
+                        }
+                        listener.actionEnd();
+                    }
+
+                    if (sideADead() || sideBDead()) break;
+                }
+
+                listener.roundEnd(roundNum);
+                if (sideADead() || sideBDead()) break;
+            }
+        } finally {
+            this.rng = null;
+        }
+        return roundNum;
+    }
+
+    // ==================== 目标选择 ====================
+
+    private void collectAlive(int from, int to) {
+        aliveCount = 0;
+        for (int i = from; i < to; i++) {
+            if (soldiers[i] > 0) alive[aliveCount++] = i;
+        }
+    }
+
+    /** 同排优先，其次阵位最小（0,2,4 为上排；1,3,5 为下排） */
+    private int pickTarget(int a) {
+        int row = Math.floorMod(position[a], 2);
+        int best = -1;
+        for (int k = 0; k < aliveCount; k++) {
+            int e = alive[k];
+            if (Math.floorMod(position[e], 2) == row && (best < 0 || position[e] < position[best])) best = e;
+        }
+        if (best >= 0) return best;
+        for (int k = 0; k < aliveCount; k++) {
+            int e = alive[k];
+            if (best < 0 || position[e] < position[best]) best = e;
+        }
+        return best;
+    }
+
+    private int findCounterUnit(int a) {
+        if (tactic[a] != T_CAVALRY_2) return -1;
+        for (int k = 0; k < aliveCount; k++) {
+            int d = alive[k];
+            if (soldiers[d] > 0 && tactic[d] == T_CAVALRY_3) return d;
+        }
+        return -1;
+    }
+
+    // ==================== 兵法 ====================
+
+    private void attack(int a, int t) {
+        actTriggered = false;
+        actDesc = null;
+        actSpecial = -1;
+
+        int tid = tactic[a];
+        if (tid == T_NONE || tid <= T_INFANTRY_5) {
+            calc(a, t, 0);
+            return;
+        }
+
+        // 弓兵被动: 落月弓
+        if (tid == T_ARCHER_3) {
+            calcBoosted(a, t, 1.0 + effect[a] / 100.0);
+            return;
+        }
+
+        // 主动兵法发动判定
+        boolean triggered = rng.nextDouble() * 100 < trigger[a];
+        if (!triggered || (tid == T_CAVALRY_2 && immuneAmbush[t])) {
+            calc(a, t, 0);
+            return;
+        }
+
+        // 声东击西：敌方无存活弓兵时不触发
+        int archerCount = 0;
+        if (tid == T_CAVALRY_2) {
+            for (int k = 0; k < aliveCount; k++) {
+                if (troop[alive[k]] == 3) archerCount++;
+            }
+            if (archerCount == 0) {
+                calc(a, t, 0);
+                return;
+            }
+        }
+
+        actTriggered = true;
+        switch (tid) {
+            case T_CAVALRY_1:
+                calcBoosted(a, t, 1.0 + effect[a] / 200.0);
+                actDesc = "铁骑冲锋！";
+                break;
+            case T_CAVALRY_2: {
+                actDesc = "声东击西！攻击敌方弓兵";
+                int pick = rng.nextInt(archerCount);
+                int actual = t;
+                for (int k = 0; k < aliveCount; k++) {
+                    if (troop[alive[k]] == 3 && pick-- == 0) { actual = alive[k]; break; }
+                }
+                calcBoosted(a, actual, 1.0 + effect[a] / 200.0);
+                actSpecial = actual;
+                break;
+            }
+            case T_CAVALRY_4:
+                actDesc = "战神突击！贯穿攻击";
+                calcRow(a, t, effect[a] / 100.0);
+                break;
+            case T_ARCHER_1:
+                actDesc = "连射！发动两次攻击";
+                calc(a, t, 0);
+                calc(a, t, 0);
+                break;
+            case T_ARCHER_2:
+            case T_SPECIAL_LVBU:
+                actDesc = tid == T_SPECIAL_LVBU ? "战神突击！" : "长虹贯日！";
+                calcRow(a, t, effect[a] / 100.0);
+                break;
+            default:
+                calc(a, t, 0);
+                break;
+        }
+    }
+
+    /** 攻击加成 (int) effect，兵损再乘 mul（落月弓/铁骑冲锋/声东击西） */
+    private void calcBoosted(int a, int t, double mul) {
+        int s = calc(a, t, (int) effect[a]);
+        hitLoss[s] = Math.max(1, (int) (hitLoss[s] * mul));
+        hitLoss[s] = Math.max(1, Math.min(hitLoss[s], soldiers[t]));
+    }
+
+    /** 同排全体按比例伤害（战神突击/长虹贯日） */
+    private void calcRow(int a, int t, double ratio) {
+        int row = Math.floorMod(position[t], 2);
+        int before = hitCount;
+        for (int k = 0; k < aliveCount; k++) {
+            int e = alive[k];
+            if (soldiers[e] > 0 && Math.floorMod(position[e], 2) == row) {
+                int s = calc(a, e, 0);
+                hitLoss[s] = applyRatioBeforeCap(s, ratio, soldiers[e]);
+            }
+        }
+        if (hitCount == before) calc(a, t, 0);
+    }
+
+    private int applyRatioBeforeCap(int s, double ratio, int targetSoldierCount) {
+        if (hitDodge[s] || targetSoldierCount <= 0) return 0;
+        int baseLoss = hitRaw[s] > 0 ? hitRaw[s] : hitLoss[s];
+        int scaledLoss = Math.max(1, (int) Math.ceil(baseLoss * Math.max(0, ratio)));
+        return Math.min(scaledLoss, targetSoldierCount);
+    }
+
+    // ==================== 核心伤害 ====================
+
+    /**
+     * 对应 BattleCalculator.calcDamage，结果写入命中缓冲并返回槽位
+     */
+    private int calc(int a, int t, int atkBonus) {
+        int s = hitCount++;
+        hitTarget[s] = t;
+        hitReflect[s] = 0;
+
+        int targetDodge = dodge[t];
+        // 长蛇阵：提升闪避
+        if (tactic[t] == T_INFANTRY_2) targetDodge += (int) effect[t];
+        double netDodge = Math.min(50, Math.max(0, targetDodge - hit[a]));
+        if (rng.nextDouble() * 100 < netDodge) {
+            hitDodge[s] = true;
+            hitLoss[s] = 0;
+            hitRaw[s] = 0;
+            return s;
+        }
+        hitDodge[s] = false;
+
+        double netDamage = Math.max(0, (double) (atk[a] + atkBonus) - def[t] * BattleCalculator.DEFENSE_FACTOR);
+        double finalDamage = netDamage
+                * BattleCalculator.getTypeBonus(troop[a], troop[t])
+                * BattleCalculator.getValorBonus(valor[a])
+                * (1.0 - BattleCalculator.getCommandReduction(command[t]))
+                * (0.95 + rng.nextDouble() * 0.10);
+
+        // 雁行阵：增强对弓兵伤害
+        if (tactic[a] == T_INFANTRY_3 && tacticsLevel[a] > 0 && troop[t] == 3) {
+            finalDamage *= 1.0 + BattleCalculator.calcYanhangArcherBonus(tacticsLevel[a]) / 100.0;
+        }
+
+        finalDamage += traitDmg[a];
+        if (traitResist[t] > 0) {
+            finalDamage = Math.max(0, finalDamage - traitResist[t]);
+        }
+
+        int baseSoldierLife = targetLife[a] > 0 ? targetLife[a] : tableLife[t];
+        int soldierLife = (int) (baseSoldierLife * (1.0 + traitLifePct[t] / 100.0));
+
+        // 步兵被动兵法：防御方减伤
+        if (finalDamage > 0) {
+            switch (tactic[t]) {
+                case T_INFANTRY_1:
+                case T_INFANTRY_4:
+                    finalDamage *= Math.max(tactic[t] == T_INFANTRY_1 ? 0.3 : 0.2, 1.0 - effect[t] / 100.0);
+                    break;
+                case T_INFANTRY_3:
+                    if (troop[a] == 2) finalDamage *= Math.max(0.2, 1.0 - effect[t] / 100.0);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        int rawSoldierLoss;
+        if (finalDamage <= 0) {
+            rawSoldierLoss = 1 + rng.nextInt(5);
+        } else {
+            rawSoldierLoss = Math.max(1, (int) Math.ceil(finalDamage * BattleCalculator.KILL_MULTIPLIER / Math.max(1, soldierLife)));
+        }
+        int soldierLoss = soldiers[t] > 0 ? Math.max(1, Math.min(rawSoldierLoss, soldiers[t])) : 0;
+        hitLoss[s] = soldierLoss;
+        hitRaw[s] = rawSoldierLoss;
+
+        // 却月阵/雁行阵：受击反伤
+        if (soldierLoss > 0 && soldiers[a] > 0) {
+            double reflectRate = 0;
+            if (tactic[t] == T_INFANTRY_5) {
+                reflectRate = effect[t] / 100.0;
+            } else if (tactic[t] == T_INFANTRY_3 && tacticsLevel[t] > 0) {
+                reflectRate = BattleCalculator.calcYanhangReflect(tacticsLevel[t]) / 100.0;
+            }
+            if (reflectRate > 0) {
+                int reflect = Math.max(1, (int) Math.round(soldierLoss * reflectRate));
+                hitReflect[s] = Math.min(reflect, Math.max(0, soldiers[a]));
+            }
+        }
+        return s;
+    }
+
+    private boolean allDead(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (soldiers[i] > 0) return false;
+        }
+        return true;
+    }
+
+    private void ensureCapacity(int size) {
+        if (atk.length >= size) return;
+        int cap = Math.max(size, 16);
+        atk = Arrays.copyOf(atk, cap);
+        def = Arrays.copyOf(def, cap);
+        valor = Arrays.copyOf(valor, cap);
+        command = Arrays.copyOf(command, cap);
+        dodge = Arrays.copyOf(dodge, cap);
+        hit = Arrays.copyOf(hit, cap);
+        mobility = Arrays.copyOf(mobility, cap);
+        troop = Arrays.copyOf(troop, cap);
+        soldiers = Arrays.copyOf(soldiers, cap);
+        tableLife = Arrays.copyOf(tableLife, cap);
+        targetLife = Arrays.copyOf(targetLife, cap);
+        traitDmg = Arrays.copyOf(traitDmg, cap);
+        traitResist = Arrays.copyOf(traitResist, cap);
+        traitLifePct = Arrays.copyOf(traitLifePct, cap);
+        immuneAmbush = Arrays.copyOf(immuneAmbush, cap);
+        position = Arrays.copyOf(position, cap);
+        tactic = Arrays.copyOf(tactic, cap);
+        tacticsLevel = Arrays.copyOf(tacticsLevel, cap);
+        trigger = Arrays.copyOf(trigger, cap);
+        effect = Arrays.copyOf(effect, cap);
+        order = Arrays.copyOf(order, cap);
+        alive = Arrays.copyOf(alive, cap);
+        // 单次行动最多: 同排全体命中(≤敌方人数) 或 连射2次，再加1次反击
+        hitTarget = Arrays.copyOf(hitTarget, cap + 2);
+        hitLoss = Arrays.copyOf(hitLoss, cap + 2);
+        hitRaw = Arrays.copyOf(hitRaw, cap + 2);
+        hitReflect = Arrays.copyOf(hitReflect, cap + 2);
+        hitDodge = Arrays.copyOf(hitDodge, cap + 2);
+    }
+}
@@ -0,0 +1,39 @@
+package com.tencent.wxcloudrun.service.battle;
+
+/**
+ * 战斗过程监听 —— BattleKernel 在结算时回调，用于按需生成战报
+ *
+ * 单位一律用内核下标表示：0..nA-1 为A方，nA..n-1 为B方（各自保持传入列表的顺序）。
+ * 不需要战报的服务端模拟直接用 {@link #NONE}，整场战斗不会产生任何日志对象。
+ *
+ * 一次普通行动的回调顺序: action → (hit → reflect?)* → actionEnd
+ * 声东击西被打断时:        interrupted → counter
+ */
+public interface BattleListener {
+
+    BattleListener NONE = new BattleListener() {};
+
+    default void roundStart(int roundNum) {}
+
+    /**
+     * @param triggered     是否发动了主动兵法
+     * @param effectDesc    兵法效果描述，未发动时为 null
+     * @param specialTarget 声东击西实际攻击的弓兵下标，没有则为 -1
+     */
+    default void action(int attacker, int target, boolean triggered, String effectDesc, int specialTarget) {}
+
+    default void hit(int target, int soldierLoss, int targetRemaining, boolean dodge) {}
+
+    /** 却月阵/雁行阵受击反伤 */
+    default void reflect(int from, int to, int soldierLoss, int targetRemaining) {}
+
+    default void actionEnd() {}
+
+    /** 声东击西被以逸待劳打断，本次行动无伤害 */
+    default void interrupted(int attacker, int target, int counterUnit, int targetRemaining) {}
+
+    /** 以逸待劳反击发动者 */
+    default void counter(int from, int to, int soldierLoss, int targetRemaining, boolean dodge) {}
+
+    default void roundEnd(int roundNum) {}
+}
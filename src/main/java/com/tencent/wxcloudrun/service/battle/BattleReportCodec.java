@@ -0,0 +1,449 @@
+package com.tencent.wxcloudrun.service.battle;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 战报紧凑二进制编码
+ *
+ * 布局（整体再做一次 deflate 压缩）:
+ *   version
+ *   字符串表: 单位名/兵法名/效果描述只写一次，后续按下标引用（0 表示 null）
+ *   头部:     victoryA, totalRounds, sideARemaining, sideBRemaining
+ *   单位表:   sideASummary, sideBSummary
+ *   回合:     roundNum + actions，每个 action 一个标志位字节 + varint 字段 + hits
+ *
+ * 整数统一用 varint（可能为负的下标用 zigzag），double 直接写 8 字节。
+ * decode(encode(r)) 与 r 字段逐一相等，可以直接还原成 {@link BattleService.BattleReport} 返回给客户端。
+ *
+ * 开战快照（encodeSnapshot）用同样的字符串表 + varint 布局:
+ *   version, 字符串表, seed, maxRounds, 双方单位全部战斗属性（兵力取开战兵力）
+ */
+public final class BattleReportCodec {
+
+    private static final int VERSION = 1;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private static final int A_SIDE_A = 1;
+    private static final int A_DODGE = 1 << 1;
+    private static final int A_TACTICS = 1 << 2;
+    private static final int A_COUNTER = 1 << 3;
+
+    private static final int H_DODGE = 1;
+    private static final int H_CRIT = 1 << 1;
+    private static final int H_COUNTER = 1 << 2;
+
+    private BattleReportCodec() {}
+
+    public static byte[] encode(BattleService.BattleReport report) {
+        StringTable strings = new StringTable();
+        Buf body = new Buf();
+
+        body.writeBool(report.victoryA);
+        body.writeVarint(report.totalRounds);
+        body.writeVarint(report.sideARemaining);
+        body.writeVarint(report.sideBRemaining);
+        writeUnits(body, strings, report.sideASummary);
+        writeUnits(body, strings, report.sideBSummary);
+
+        List<BattleService.RoundLog> rounds = report.rounds != null ? report.rounds : Collections.emptyList();
+        body.writeVarint(rounds.size());
+        for (BattleService.RoundLog r : rounds) {
+            body.writeVarint(r.roundNum);
+            body.writeVarint(r.actions.size());
+            for (BattleService.ActionLog a : r.actions) {
+                int flags = (a.attackerIsA ? A_SIDE_A : 0) | (a.isDodge ? A_DODGE : 0)
+                        | (a.tacticsTriggered ? A_TACTICS : 0) | (a.isCounter ? A_COUNTER : 0);
+                body.writeVarint(flags);
+                body.writeVarint(strings.ref(a.attackerName));
+                body.writeVarint(strings.ref(a.targetName));
+                body.writeSigned(a.attackerIdx);
+                body.writeSigned(a.targetIdx);
+                body.writeVarint(a.soldierLoss);
+                body.writeVarint(strings.ref(a.tacticsName));
+                body.writeVarint(strings.ref(a.effectDesc));
+                body.writeVarint(strings.ref(a.specialTarget));
+                if (a.hits == null) {
+                    body.writeVarint(0);
+                    continue;
+                }
+                body.writeVarint(a.hits.size() + 1);
+                for (BattleService.HitDetail h : a.hits) {
+                    body.writeVarint((h.isDodge ? H_DODGE : 0) | (h.isCrit ? H_CRIT : 0) | (h.isCounter ? H_COUNTER : 0));
+                    body.writeVarint(h.soldierLoss);
+                    body.writeVarint(h.targetRemaining);
+                    body.writeSigned(h.targetIdx);
+                    body.writeVarint(strings.ref(h.targetName));
+                }
+            }
+        }
+
+        Buf out = new Buf();
+        out.writeVarint(VERSION);
+        writeStrings(out, strings);
+        out.write(body.buf, 0, body.len);
+        return deflate(out.buf, out.len);
+    }
+
+    public static BattleService.BattleReport decode(byte[] data) {
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(data))) {
+            Reader r = new Reader(in);
+            int version = r.readVarint();
+            if (version != VERSION) throw new IllegalStateException("不支持的战报版本: " + version);
+
+            String[] strings = readStrings(r);
+
+            BattleService.BattleReport report = new BattleService.BattleReport();
+            report.victoryA = r.readBool();
+            report.totalRounds = r.readVarint();
+            report.sideARemaining = r.readVarint();
+            report.sideBRemaining = r.readVarint();
+            report.sideASummary = readUnits(r, strings);
+            report.sideBSummary = readUnits(r, strings);
+
+            int roundCount = r.readVarint();
+            report.rounds = new ArrayList<>(roundCount);
+            for (int i = 0; i < roundCount; i++) {
+                BattleService.RoundLog round = new BattleService.RoundLog();
+                round.roundNum = r.readVarint();
+                int actionCount = r.readVarint();
+                for (int j = 0; j < actionCount; j++) {
+                    BattleService.ActionLog a = new BattleService.ActionLog();
+                    int flags = r.readVarint();
+                    a.attackerIsA = (flags & A_SIDE_A) != 0;
+                    a.isDodge = (flags & A_DODGE) != 0;
+                    a.tacticsTriggered = (flags & A_TACTICS) != 0;
+                    a.isCounter = (flags & A_COUNTER) != 0;
+                    a.attackerName = strings[r.readVarint()];
+                    a.targetName = strings[r.readVarint()];
+                    a.attackerIdx = r.readSigned();
+                    a.targetIdx = r.readSigned();
+                    a.soldierLoss = r.readVarint();
+                    a.tacticsName = strings[r.readVarint()];
+                    a.effectDesc = strings[r.readVarint()];
+                    a.specialTarget = strings[r.readVarint()];
+                    int hitCount = r.readVarint() - 1;
+                    if (hitCount >= 0) {
+                        a.hits = new ArrayList<>(hitCount);
+                        for (int k = 0; k < hitCount; k++) {
+                            BattleService.HitDetail h = new BattleService.HitDetail();
+                            int hf = r.readVarint();
+                            h.isDodge = (hf & H_DODGE) != 0;
+                            h.isCrit = (hf & H_CRIT) != 0;
+                            h.isCounter = (hf & H_COUNTER) != 0;
+                            h.soldierLoss = r.readVarint();
+                            h.targetRemaining = r.readVarint();
+                            h.targetIdx = r.readSigned();
+                            h.targetName = strings[r.readVarint()];
+                            a.hits.add(h);
+                        }
+                    }
+                    round.actions.add(a);
+                }
+                report.rounds.add(round);
+            }
+            return report;
+        } catch (IOException e) {
+            throw new IllegalStateException("战报解码失败", e);
+        }
+    }
+
+    static byte[] encodeSnapshot(BattleSnapshot snapshot) {
+        StringTable strings = new StringTable();
+        Buf body = new Buf();
+        body.writeLong(snapshot.seed);
+        body.writeVarint(snapshot.maxRounds);
+        writeSnapshotUnits(body, strings, snapshot.sideA, snapshot.soldiersA);
+        writeSnapshotUnits(body, strings, snapshot.sideB, snapshot.soldiersB);
+
+        Buf out = new Buf();
+        out.writeVarint(SNAPSHOT_VERSION);
+        writeStrings(out, strings);
+        out.write(body.buf, 0, body.len);
+        return deflate(out.buf, out.len);
+    }
+
+    static BattleSnapshot decodeSnapshot(byte[] data) {
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(data))) {
+            Reader r = new Reader(in);
+            int version = r.readVarint();
+            if (version != SNAPSHOT_VERSION) throw new IllegalStateException("不支持的快照版本: " + version);
+            String[] strings = readStrings(r);
+            long seed = r.readLong();
+            int maxRounds = r.readVarint();
+            List<BattleCalculator.BattleUnit> sideA = readSnapshotUnits(r, strings);
+            List<BattleCalculator.BattleUnit> sideB = readSnapshotUnits(r, strings);
+            return new BattleSnapshot(seed, maxRounds, sideA, sideB);
+        } catch (IOException e) {
+            throw new IllegalStateException("战斗快照解码失败", e);
+        }
+    }
+
+    private static void writeSnapshotUnits(Buf body, StringTable strings,
+                                           List<BattleCalculator.BattleUnit> units, int[] soldiers) {
+        body.writeVarint(units.size());
+        for (int i = 0; i < units.size(); i++) {
+            BattleCalculator.BattleUnit u = units.get(i);
+            body.writeVarint(strings.ref(u.name));
+            body.writeVarint(strings.ref(u.tacticsId));
+            body.writeVarint(strings.ref(u.tacticsName));
+            body.writeSigned(u.totalAttack);
+            body.writeSigned(u.totalDefense);
+            body.writeSigned(u.valor);
+            body.writeSigned(u.command);
+            body.writeSigned(u.dodge);
+            body.writeSigned(u.hit);
+            body.writeSigned(u.mobility);
+            body.writeSigned(u.troopType);
+            body.writeSigned(u.soldierTier);
+            body.writeSigned(soldiers[i]);
+            body.writeSigned(u.maxSoldierCount);
+            body.writeSigned(u.soldierLife);
+            body.writeSigned(u.traitDmgBonus);
+            body.writeSigned(u.traitDamageResist);
+            body.writeSigned(u.targetSoldierLife);
+            body.writeSigned(u.position);
+            body.writeSigned(u.level);
+            body.writeSigned(u.tacticsLevel);
+            body.writeBool(u.traitImmuneAmbush);
+            body.writeDouble(u.traitLifePct);
+            body.writeDouble(u.tacticsTriggerRate);
+            body.writeDouble(u.tacticsEffectValue);
+            body.writeDouble(u.tacticsTriggerBonus);
+            body.writeDouble(u.tacticsTriggerMultiplier);
+        }
+    }
+
+    private static List<BattleCalculator.BattleUnit> readSnapshotUnits(Reader r, String[] strings) throws IOException {
+        int count = r.readVarint();
+        List<BattleCalculator.BattleUnit> units = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            BattleCalculator.BattleUnit u = new BattleCalculator.BattleUnit();
+            u.name = strings[r.readVarint()];
+            u.tacticsId = strings[r.readVarint()];
+            u.tacticsName = strings[r.readVarint()];
+            u.totalAttack = r.readSigned();
+            u.totalDefense = r.readSigned();
+            u.valor = r.readSigned();
+            u.command = r.readSigned();
+            u.dodge = r.readSigned();
+            u.hit = r.readSigned();
+            u.mobility = r.readSigned();
+            u.troopType = r.readSigned();
+            u.soldierTier = r.readSigned();
+            u.soldierCount = r.readSigned();
+            u.maxSoldierCount = r.readSigned();
+            u.soldierLife = r.readSigned();
+            u.traitDmgBonus = r.readSigned();
+            u.traitDamageResist = r.readSigned();
+            u.targetSoldierLife = r.readSigned();
+            u.position = r.readSigned();
+            u.level = r.readSigned();
+            u.tacticsLevel = r.readSigned();
+            u.traitImmuneAmbush = r.readBool();
+            u.traitLifePct = r.readDouble();
+            u.tacticsTriggerRate = r.readDouble();
+            u.tacticsEffectValue = r.readDouble();
+            u.tacticsTriggerBonus = r.readDouble();
+            u.tacticsTriggerMultiplier = r.readDouble();
+            units.add(u);
+        }
+        return units;
+    }
+
+    private static void writeStrings(Buf out, StringTable strings) {
+        out.writeVarint(strings.values.size());
+        for (String s : strings.values) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            out.writeVarint(b.length);
+            out.write(b, 0, b.length);
+        }
+    }
+
+    private static String[] readStrings(Reader r) throws IOException {
+        int stringCount = r.readVarint();
+        String[] strings = new String[stringCount + 1];
+        for (int i = 1; i <= stringCount; i++) {
+            byte[] b = r.readBytes(r.readVarint());
+            strings[i] = new String(b, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    private static void writeUnits(Buf body, StringTable strings, List<BattleService.UnitSummary> units) {
+        if (units == null) {
+            body.writeVarint(0);
+            return;
+        }
+        body.writeVarint(units.size() + 1);
+        for (BattleService.UnitSummary u : units) {
+            body.writeVarint(strings.ref(u.name));
+            body.writeVarint(u.soldierCount);
+            body.writeVarint(u.maxSoldierCount);
+            body.writeVarint(u.troopType);
+            body.writeVarint(u.soldierTier);
+            body.writeVarint(u.level);
+            body.writeSigned(u.position);
+            body.writeVarint(strings.ref(u.tacticsId));
+            body.writeVarint(strings.ref(u.tacticsName));
+            body.writeVarint(u.tacticsLevel);
+            body.writeDouble(u.tacticsTriggerRate);
+            body.writeDouble(u.tacticsEffectValue);
+        }
+    }
+
+    private static List<BattleService.UnitSummary> readUnits(Reader r, String[] strings) throws IOException {
+        int count = r.readVarint() - 1;
+        if (count < 0) return null;
+        List<BattleService.UnitSummary> units = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = strings[r.readVarint()];
+            int soldierCount = r.readVarint();
+            int maxSoldierCount = r.readVarint();
+            int troopType = r.readVarint();
+            int soldierTier = r.readVarint();
+            int level = r.readVarint();
+            int position = r.readSigned();
+            BattleService.UnitSummary u = new BattleService.UnitSummary(
+                    name, soldierCount, maxSoldierCount, troopType, soldierTier, level, position);
+            u.tacticsId = strings[r.readVarint()];
+            u.tacticsName = strings[r.readVarint()];
+            u.tacticsLevel = r.readVarint();
+            u.tacticsTriggerRate = r.readDouble();
+            u.tacticsEffectValue = r.readDouble();
+            units.add(u);
+        }
+        return units;
+    }
+
+    private static byte[] deflate(byte[] buf, int len) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.max(64, len / 4));
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(bos, deflater)) {
+            out.write(buf, 0, len);
+        } catch (IOException e) {
+            throw new IllegalStateException("战报压缩失败", e);
+        } finally {
+            deflater.end();
+        }
+        return bos.toByteArray();
+    }
+
+    // ==================== 编码工具 ====================
+
+    private static final class StringTable {
+        private final Map<String, Integer> index = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int ref(String s) {
+            if (s == null) return 0;
+            Integer idx = index.get(s);
+            if (idx != null) return idx;
+            values.add(s);
+            index.put(s, values.size());
+            return values.size();
+        }
+    }
+
+    private static final class Buf {
+        private byte[] buf = new byte[1024];
+        private int len;
+
+        void ensure(int extra) {
+            if (len + extra > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + extra));
+        }
+
+        void write(byte[] b, int off, int n) {
+            ensure(n);
+            System.arraycopy(b, off, buf, len, n);
+            len += n;
+        }
+
+        void writeBool(boolean v) {
+            writeVarint(v ? 1 : 0);
+        }
+
+        void writeVarint(int v) {
+            ensure(5);
+            while ((v & ~0x7F) != 0) {
+                buf[len++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[len++] = (byte) v;
+        }
+
+        void writeSigned(int v) {
+            writeVarint((v << 1) ^ (v >> 31));
+        }
+
+        void writeDouble(double d) {
+            writeLong(Double.doubleToLongBits(d));
+        }
+
+        void writeLong(long bits) {
+            ensure(8);
+            for (int i = 0; i < 8; i++) {
+                buf[len++] = (byte) (bits >>> (56 - i * 8));
+            }
+        }
+    }
+
+    private static final class Reader {
+        private final InputStream in;
+
+        Reader(InputStream in) { this.in = in; }
+
+        int readByte() throws IOException {
+            int b = in.read();
+            if (b < 0) throw new IOException("战报数据截断");
+            return b;
+        }
+
+        boolean readBool() throws IOException {
+            return readVarint() != 0;
+        }
+
+        int readVarint() throws IOException {
+            int result = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                result |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return result;
+            }
+            throw new IOException("varint格式错误");
+        }
+
+        int readSigned() throws IOException {
+            int v = readVarint();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        double readDouble() throws IOException {
+            return Double.longBitsToDouble(readLong());
+        }
+
+        long readLong() throws IOException {
+            long bits = 0;
+            for (int i = 0; i < 8; i++) bits = (bits << 8) | readByte();
+            return bits;
+        }
+
+        byte[] readBytes(int n) throws IOException {
+            byte[] b = new byte[n];
+            int off = 0;
+            while (off < n) {
+                int read = in.read(b, off, n - off);
+                if (read < 0) throw new IOException("战报数据截断");
+                off += read;
+            }
+            return b;
+        }
+    }
+}
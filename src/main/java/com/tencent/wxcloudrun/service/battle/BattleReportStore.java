@@ -0,0 +1,167 @@
+package com.tencent.wxcloudrun.service.battle;
+
+import com.tencent.wxcloudrun.dao.BattleReportMapper;
+import com.tencent.wxcloudrun.exception.BusinessException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 战报存储服务 —— 国战、联盟战、英雄榜共用
+ *
+ * 每场战斗只保存开战快照（双方单位属性 + 随机种子）和结算结果，不保存过程日志；
+ * 客户端通过 /battle-report/{id} 拉取时用快照重新结算生成完整战报，
+ * 并与保存的结算结果比对，保证回放与当时的战斗一致。
+ * 早期按 {@link BattleReportCodec} 整份编码的战报（payload 非空）直接解码返回。
+ */
+@Service
+public class BattleReportStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(BattleReportStore.class);
+
+    public static final String TYPE_NATION_WAR = "nationwar";
+    public static final String TYPE_ALLIANCE_WAR = "alliancewar";
+    public static final String TYPE_HERO_RANK = "herorank";
+
+    /** 战报保留30天 */
+    private static final long RETENTION_MS = 30L * 24 * 3600 * 1000;
+    private static final int PURGE_BATCH = 5000;
+
+    @Autowired
+    private BattleReportMapper battleReportMapper;
+
+    @Autowired
+    private BattleService battleService;
+
+    /**
+     * 保存战报，返回战报ID；保存失败返回 null（战报只用于回放，不影响战斗结算）。
+     * 必须在 fight 之后、修改参战单位之前调用。
+     */
+    public Long save(String reportType, int serverId, BattleService.BattleReport report) {
+        if (report == null) return null;
+        try {
+            Map<String, Object> row = new HashMap<>();
+            row.put("reportType", reportType);
+            row.put("serverId", serverId);
+            if (report.snapshot != null) {
+                row.put("payload", null);
+                row.put("snapshot", BattleReportCodec.encodeSnapshot(report.snapshot));
+            } else {
+                row.put("payload", BattleReportCodec.encode(report));
+                row.put("snapshot", null);
+            }
+            row.put("seed", report.seed);
+            row.put("victoryA", report.victoryA ? 1 : 0);
+            row.put("totalRounds", report.totalRounds);
+            row.put("sideARemaining", report.sideARemaining);
+            row.put("sideBRemaining", report.sideBRemaining);
+            row.put("rawSize", estimateRawSize(report));
+            row.put("createTime", System.currentTimeMillis());
+            battleReportMapper.insertReport(row);
+            Object id = row.get("id");
+            return id instanceof Number ? ((Number) id).longValue() : null;
+        } catch (Exception e) {
+            logger.warn("保存战报失败: type={}, serverId={}", reportType, serverId, e);
+            return null;
+        }
+    }
+
+    public BattleService.BattleReport load(long reportId) {
+        Map<String, Object> row = findRow(reportId);
+        byte[] payload = (byte[]) row.get("payload");
+        if (payload != null) return BattleReportCodec.decode(payload);
+
+        BattleService.BattleReport replayed = battleService.replay((byte[]) row.get("snapshot"));
+        if (!sameOutcome(row, replayed)) {
+            logger.warn("战报回放结果与原结算不一致: reportId={}", reportId);
+            throw new BusinessException("战斗规则已调整，该战报无法回放");
+        }
+        return replayed;
+    }
+
+    /**
+     * 回放校验：用快照和种子重新结算，与保存的结算结果逐项比对
+     */
+    public Map<String, Object> verify(long reportId) {
+        Map<String, Object> row = findRow(reportId);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("reportId", reportId);
+        result.put("seed", toLong(row.get("seed")));
+        result.put("stored", outcome(toInt(row.get("victoryA")) == 1, toInt(row.get("totalRounds")),
+                toInt(row.get("sideARemaining")), toInt(row.get("sideBRemaining"))));
+        if (row.get("snapshot") == null) {
+            result.put("replayable", false);
+            return result;
+        }
+        BattleService.BattleReport replayed = battleService.replay((byte[]) row.get("snapshot"));
+        result.put("replayable", true);
+        result.put("replayed", outcome(replayed.victoryA, replayed.totalRounds,
+                replayed.sideARemaining, replayed.sideBRemaining));
+        result.put("match", sameOutcome(row, replayed));
+        return result;
+    }
+
+    @Scheduled(cron = "0 30 4 * * ?")
+    public void purgeExpired() {
+        long before = System.currentTimeMillis() - RETENTION_MS;
+        int total = 0;
+        int deleted;
+        do {
+            deleted = battleReportMapper.deleteBefore(before, PURGE_BATCH);
+            total += deleted;
+        } while (deleted >= PURGE_BATCH);
+        if (total > 0) logger.info("清理过期战报 {} 条", total);
+    }
+
+    private Map<String, Object> findRow(long reportId) {
+        Map<String, Object> row = battleReportMapper.findById(reportId);
+        if (row == null || (row.get("payload") == null && row.get("snapshot") == null)) {
+            throw new BusinessException(404, "战报不存在或已过期");
+        }
+        return row;
+    }
+
+    private static boolean sameOutcome(Map<String, Object> row, BattleService.BattleReport r) {
+        return (toInt(row.get("victoryA")) == 1) == r.victoryA
+                && toInt(row.get("totalRounds")) == r.totalRounds
+                && toInt(row.get("sideARemaining")) == r.sideARemaining
+                && toInt(row.get("sideBRemaining")) == r.sideBRemaining;
+    }
+
+    private static Map<String, Object> outcome(boolean victoryA, int totalRounds, int sideARemaining, int sideBRemaining) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("victoryA", victoryA);
+        m.put("totalRounds", totalRounds);
+        m.put("sideARemaining", sideARemaining);
+        m.put("sideBRemaining", sideBRemaining);
+        return m;
+    }
+
+    private static int toInt(Object v) {
+        if (v instanceof Boolean) return (Boolean) v ? 1 : 0;
+        return v instanceof Number ? ((Number) v).intValue() : 0;
+    }
+
+    private static long toLong(Object v) {
+        return v instanceof Number ? ((Number) v).longValue() : 0L;
+    }
+
+    /** 粗略估算原先整体JSON的大小，只用于观察压缩效果 */
+    private static int estimateRawSize(BattleService.BattleReport report) {
+        int size = 200;
+        if (report.rounds != null) {
+            for (BattleService.RoundLog r : report.rounds) {
+                for (BattleService.ActionLog a : r.actions) {
+                    size += 260 + (a.hits != null ? a.hits.size() * 120 : 0);
+                }
+            }
+        }
+        return size;
+    }
+}
@@ -3,175 +3,66 @@ package com.tencent.wxcloudrun.service.battle;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * 统一战斗编排服务 —— 多单位回合制战斗
  *
  * 支持: 1v1、阵型vs阵型、阵型vsBoss 等所有战斗场景
+ * 结算由 {@link BattleKernel} 在原始类型数组上完成，需要战报时由 ReportRecorder 记录过程
  */
 @Service
 public class BattleService {
 
     private static final int DEFAULT_MAX_ROUNDS = 20;
 
+    /** 每个线程复用一个战斗内核，结算全程无锁、不争用全局随机数 */
+    private static final ThreadLocal<BattleKernel> KERNELS = ThreadLocal.withInitial(BattleKernel::new);
+    private static final ThreadLocal<SplittableRandom> RANDOMS =
+            ThreadLocal.withInitial(() -> new SplittableRandom(ThreadLocalRandom.current().nextLong()));
+
     /**
      * 执行一场完整战斗
      *
      * @param sideA     A方单位列表（玩家方）
      * @param sideB     B方单位列表（敌方/Boss）
      * @param maxRounds 最大回合数，超过则A方判负
-     * @return BattleReport 完整战报
+     * @return BattleReport 完整战报（带本场种子，可回放）
      */
     public BattleReport fight(List<BattleCalculator.BattleUnit> sideA,
                               List<BattleCalculator.BattleUnit> sideB,
                               int maxRounds) {
-        if (maxRounds <= 0) maxRounds = DEFAULT_MAX_ROUNDS;
-
-        // 标记阵营
-        Map<BattleCalculator.BattleUnit, Boolean> isSideA = new HashMap<>();
-        for (BattleCalculator.BattleUnit u : sideA) isSideA.put(u, true);
-        for (BattleCalculator.BattleUnit u : sideB) isSideA.put(u, false);
-
-        // 按 mobility 降序排序（速度快的先行动）
-        List<BattleCalculator.BattleUnit> allUnits = new ArrayList<>();
-        allUnits.addAll(sideA);
-        allUnits.addAll(sideB);
-        allUnits.sort((a, b) -> b.mobility - a.mobility);
-
-        List<RoundLog> rounds = new ArrayList<>();
-        int roundNum = 0;
-
-        while (roundNum < maxRounds) {
-            roundNum++;
-            RoundLog roundLog = new RoundLog();
-            roundLog.roundNum = roundNum;
-
-            for (BattleCalculator.BattleUnit attacker : allUnits) {
-                if (attacker.soldierCount <= 0) continue;
-
-                boolean attackerIsA = Boolean.TRUE.equals(isSideA.get(attacker));
-                List<BattleCalculator.BattleUnit> enemies = attackerIsA ? sideB : sideA;
-                List<BattleCalculator.BattleUnit> aliveEnemies = enemies.stream()
-                        .filter(e -> e.soldierCount > 0).collect(Collectors.toList());
-
-                if (aliveEnemies.isEmpty()) break;
-
-                BattleCalculator.BattleUnit target = pickTarget(attacker, aliveEnemies);
-
-                BattleCalculator.TacticsResult tr = BattleCalculator.calcDamageWithTactics(
-                        attacker, target, aliveEnemies);
-
-                // 以逸待劳打断判定：攻击方触发声东击西时，检查防守方全队是否有人装备以逸待劳
-                BattleCalculator.BattleUnit counterUnit = BattleCalculator.findCounterUnit(aliveEnemies, attacker, tr.triggered);
-                boolean countered = counterUnit != null && BattleCalculator.rollCounter(counterUnit);
-
-                ActionLog action = new ActionLog();
-                action.attackerName = attacker.name;
-                action.targetName = target.name;
-                action.attackerIsA = attackerIsA;
-                action.attackerIdx = attackerIsA ? sideA.indexOf(attacker) : sideB.indexOf(attacker);
-                action.targetIdx = attackerIsA ? sideB.indexOf(target) : sideA.indexOf(target);
-                action.hits = new ArrayList<>();
-
-                if (countered && counterUnit != null) {
-                    action.tacticsTriggered = true;
-                    action.tacticsName = tr.tacticsName;
-                    action.effectDesc = "声东击西被" + counterUnit.name + "以逸待劳打断！";
-                    HitDetail hit = new HitDetail();
-                    hit.soldierLoss = 0;
-                    hit.targetRemaining = target.soldierCount;
-                    action.hits.add(hit);
-                } else {
-                    action.tacticsTriggered = tr.triggered;
-                    action.tacticsName = tr.tacticsName;
-                    action.effectDesc = tr.effectDesc;
-                    action.specialTarget = tr.specialTarget;
-                    List<ActionLog> reflectActions = new ArrayList<>();
-                    for (BattleCalculator.DamageResult dr : tr.damages) {
-                        BattleCalculator.BattleUnit actualTarget = dr.targetUnit != null ? dr.targetUnit : target;
-                        HitDetail hit = new HitDetail();
-                        hit.isDodge = dr.isDodge;
-                        hit.soldierLoss = dr.soldierLoss;
-                        hit.isCrit = dr.isCrit;
-                        if (!dr.isDodge) {
-                            actualTarget.soldierCount = Math.max(0, actualTarget.soldierCount - dr.soldierLoss);
-                        }
-                        hit.targetRemaining = actualTarget.soldierCount;
-                        hit.targetIdx = attackerIsA ? sideB.indexOf(actualTarget) : sideA.indexOf(actualTarget);
-                        hit.targetName = actualTarget.name;
-                        action.hits.add(hit);
-
-                        // 防守方反伤（却月阵/雁行阵）
-                        if (dr.reflectLoss > 0 && attacker.soldierCount > 0) {
-                            int reflectLoss = Math.min(dr.reflectLoss, attacker.soldierCount);
-                            attacker.soldierCount = Math.max(0, attacker.soldierCount - reflectLoss);
-                            ActionLog reflectAction = new ActionLog();
-                            reflectAction.attackerName = actualTarget.name;
-                            reflectAction.targetName = attacker.name;
-                            reflectAction.attackerIsA = !attackerIsA;
-                            reflectAction.attackerIdx = attackerIsA ? sideB.indexOf(actualTarget) : sideA.indexOf(actualTarget);
-                            reflectAction.targetIdx = attackerIsA ? sideA.indexOf(attacker) : sideB.indexOf(attacker);
-                            reflectAction.isCounter = true;
-                            reflectAction.effectDesc = "反伤";
-                            reflectAction.hits = new ArrayList<>();
-                            HitDetail reflectHit = new HitDetail();
-                            reflectHit.soldierLoss = reflectLoss;
-                            reflectHit.targetRemaining = attacker.soldierCount;
-                            reflectHit.targetIdx = reflectAction.targetIdx;
-                            reflectHit.targetName = attacker.name;
-                            reflectHit.isCounter = true;
-                            reflectAction.hits.add(reflectHit);
-                            reflectActions.add(reflectAction);
-                        }
-                    }
-                    if (!reflectActions.isEmpty()) {
-                        roundLog.actions.addAll(reflectActions);
-                    }
-                }
-
-                roundLog.actions.add(action);
-
-                // 以逸待劳反击：打断声东击西后，由装备以逸待劳的武将对发动者造成伤害
-                if (countered && counterUnit != null) {
-                    BattleCalculator.DamageResult counterDr = BattleCalculator.calcCounterDamage(counterUnit, attacker);
-                    ActionLog counterAction = new ActionLog();
-                    counterAction.attackerName = counterUnit.name;
-                    counterAction.targetName = attacker.name;
-                    counterAction.attackerIsA = !attackerIsA;
-                    counterAction.attackerIdx = attackerIsA ? sideB.indexOf(counterUnit) : sideA.indexOf(counterUnit);
-                    counterAction.targetIdx = attackerIsA ? sideA.indexOf(attacker) : sideB.indexOf(attacker);
-                    counterAction.isCounter = true;
-                    counterAction.hits = new ArrayList<>();
-
-                    HitDetail counterHit = new HitDetail();
-                    counterHit.isDodge = counterDr.isDodge;
-                    counterHit.soldierLoss = counterDr.soldierLoss;
-                    counterHit.isCounter = true;
-                    if (!counterDr.isDodge) {
-                        attacker.soldierCount = Math.max(0, attacker.soldierCount - counterDr.soldierLoss);
-                    }
-                    counterHit.targetRemaining = attacker.soldierCount;
-                    counterAction.hits.add(counterHit);
-                    roundLog.actions.add(counterAction);
-                }
+        return fight(sideA, sideB, maxRounds, RANDOMS.get().nextLong());
+    }
 
-                if (sideAAllDead(sideA) || sideAAllDead(sideB)) break;
-            }
+    public BattleReport fight(List<BattleCalculator.BattleUnit> sideA,
+                              List<BattleCalculator.BattleUnit> sideB) {
+        return fight(sideA, sideB, DEFAULT_MAX_ROUNDS);
+    }
 
-            rounds.add(roundLog);
-            if (sideAAllDead(sideA) || sideAAllDead(sideB)) break;
-        }
+    /**
+     * 按指定种子执行战斗，相同单位 + 相同种子得到完全相同的战报
+     */
+    public BattleReport fight(List<BattleCalculator.BattleUnit> sideA,
+                              List<BattleCalculator.BattleUnit> sideB,
+                              int maxRounds, long seed) {
+        if (maxRounds <= 0) maxRounds = DEFAULT_MAX_ROUNDS;
 
-        boolean bAllDead = sideAAllDead(sideB);
-        boolean aAllDead = sideAAllDead(sideA);
+        BattleKernel kernel = KERNELS.get();
+        kernel.load(sideA, sideB);
+        BattleSnapshot snapshot = new BattleSnapshot(seed, maxRounds, sideA, sideB);
+        ReportRecorder recorder = new ReportRecorder(sideA, sideB);
+        int roundNum = kernel.run(maxRounds, new SplittableRandom(seed), recorder);
+        kernel.writeBack(sideA, sideB);
 
         BattleReport report = new BattleReport();
-        report.victoryA = bAllDead && !aAllDead;
+        report.seed = seed;
+        report.snapshot = snapshot;
+        report.victoryA = kernel.sideBDead() && !kernel.sideADead();
         report.totalRounds = roundNum;
-        report.rounds = rounds;
-        report.sideARemaining = sideA.stream().mapToInt(u -> Math.max(0, u.soldierCount)).sum();
-        report.sideBRemaining = sideB.stream().mapToInt(u -> Math.max(0, u.soldierCount)).sum();
+        report.rounds = recorder.rounds;
+        report.sideARemaining = kernel.remaining(true);
+        report.sideBRemaining = kernel.remaining(false);
 
         report.sideASummary = new ArrayList<>();
         for (BattleCalculator.BattleUnit u : sideA) {
@@ -185,29 +76,169 @@ public class BattleService {
         return report;
     }
 
-    public BattleReport fight(List<BattleCalculator.BattleUnit> sideA,
-                              List<BattleCalculator.BattleUnit> sideB) {
-        return fight(sideA, sideB, DEFAULT_MAX_ROUNDS);
+    /**
+     * 只结算胜负、不生成战报（NPC 之间的战斗等服务端模拟）。
+     * 战后兵力同样写回单位的 soldierCount。
+     *
+     * @return A方是否获胜
+     */
+    public boolean simulate(List<BattleCalculator.BattleUnit> sideA,
+                            List<BattleCalculator.BattleUnit> sideB,
+                            int maxRounds) {
+        return simulate(sideA, sideB, maxRounds, RANDOMS.get());
+    }
+
+    /**
+     * 按指定种子模拟，胜负和战后兵力与同种子的 fight 完全一致
+     */
+    public boolean simulate(List<BattleCalculator.BattleUnit> sideA,
+                            List<BattleCalculator.BattleUnit> sideB,
+                            int maxRounds, long seed) {
+        return simulate(sideA, sideB, maxRounds, new SplittableRandom(seed));
+    }
+
+    private boolean simulate(List<BattleCalculator.BattleUnit> sideA,
+                             List<BattleCalculator.BattleUnit> sideB,
+                             int maxRounds, SplittableRandom random) {
+        BattleKernel kernel = KERNELS.get();
+        kernel.load(sideA, sideB);
+        kernel.run(maxRounds > 0 ? maxRounds : DEFAULT_MAX_ROUNDS, random, BattleListener.NONE);
+        kernel.writeBack(sideA, sideB);
+        return kernel.sideBDead() && !kernel.sideADead();
     }
 
-    private BattleCalculator.BattleUnit pickTarget(BattleCalculator.BattleUnit attacker,
-                                                    List<BattleCalculator.BattleUnit> aliveEnemies) {
-        // 阵位规则: 0~5 按列存储(0,2,4为上排；1,3,5为下排)
-        // 行判定必须按 position % 2，保证“同行优先攻击”是同一横排
-        int atkRow = Math.floorMod(attacker.position, 2);
-        List<BattleCalculator.BattleUnit> sameRow = aliveEnemies.stream()
-                .filter(e -> Math.floorMod(e.position, 2) == atkRow).collect(Collectors.toList());
-        List<BattleCalculator.BattleUnit> pool = sameRow.isEmpty() ? aliveEnemies : sameRow;
-        return pool.stream().min(Comparator.comparingInt(e -> e.position)).orElse(aliveEnemies.get(0));
+    /**
+     * 用保存的开战快照（单位属性 + 种子）重新结算，得到与当时完全相同的战报
+     */
+    public BattleReport replay(byte[] snapshotData) {
+        BattleSnapshot snapshot = BattleReportCodec.decodeSnapshot(snapshotData);
+        return fight(snapshot.sideA, snapshot.sideB, snapshot.maxRounds, snapshot.seed);
     }
 
-    private boolean sideAAllDead(List<BattleCalculator.BattleUnit> side) {
-        return side.stream().noneMatch(u -> u.soldierCount > 0);
+    /**
+     * 把内核回调还原成 RoundLog/ActionLog/HitDetail 战报（结构与内核化之前完全一致）
+     */
+    private static final class ReportRecorder implements BattleListener {
+        private final List<BattleCalculator.BattleUnit> sideA;
+        private final List<BattleCalculator.BattleUnit> sideB;
+        private final int nA;
+        private final List<RoundLog> rounds = new ArrayList<>();
+        private final List<ActionLog> reflectActions = new ArrayList<>();
+        private RoundLog round;
+        private ActionLog action;
+
+        ReportRecorder(List<BattleCalculator.BattleUnit> sideA, List<BattleCalculator.BattleUnit> sideB) {
+            this.sideA = sideA;
+            this.sideB = sideB;
+            this.nA = sideA.size();
+        }
+
+        private BattleCalculator.BattleUnit unit(int idx) {
+            return idx < nA ? sideA.get(idx) : sideB.get(idx - nA);
+        }
+
+        private int sideIdx(int idx) {
+            return idx < nA ? idx : idx - nA;
+        }
+
+        private ActionLog newAction(int attacker, int target) {
+            ActionLog a = new ActionLog();
+            a.attackerName = unit(attacker).name;
+            a.targetName = unit(target).name;
+            a.attackerIsA = attacker < nA;
+            a.attackerIdx = sideIdx(attacker);
+            a.targetIdx = sideIdx(target);
+            a.hits = new ArrayList<>();
+            return a;
+        }
+
+        @Override
+        public void roundStart(int roundNum) {
+            round = new RoundLog();
+            round.roundNum = roundNum;
+        }
+
+        @Override
+        public void action(int attacker, int target, boolean triggered, String effectDesc, int specialTarget) {
+            action = newAction(attacker, target);
+            action.tacticsTriggered = triggered;
+            action.tacticsName = triggered ? unit(attacker).tacticsName : null;
+            action.effectDesc = effectDesc;
+            action.specialTarget = specialTarget >= 0 ? unit(specialTarget).name : null;
+        }
+
+        @Override
+        public void hit(int target, int soldierLoss, int targetRemaining, boolean dodge) {
+            HitDetail hit = new HitDetail();
+            hit.isDodge = dodge;
+            hit.soldierLoss = soldierLoss;
+            hit.targetRemaining = targetRemaining;
+            hit.targetIdx = sideIdx(target);
+            hit.targetName = unit(target).name;
+            action.hits.add(hit);
+        }
+
+        @Override
+        public void reflect(int from, int to, int soldierLoss, int targetRemaining) {
+            ActionLog reflectAction = newAction(from, to);
+            reflectAction.isCounter = true;
+            reflectAction.effectDesc = "反伤";
+            HitDetail reflectHit = new HitDetail();
+            reflectHit.soldierLoss = soldierLoss;
+            reflectHit.targetRemaining = targetRemaining;
+            reflectHit.targetIdx = reflectAction.targetIdx;
+            reflectHit.targetName = reflectAction.targetName;
+            reflectHit.isCounter = true;
+            reflectAction.hits.add(reflectHit);
+            reflectActions.add(reflectAction);
+        }
+
+        @Override
+        public void actionEnd() {
+            // 反伤记录排在本次攻击之前（与原战报顺序一致）
+            round.actions.addAll(reflectActions);
+            reflectActions.clear();
+            round.actions.add(action);
+            action = null;
+        }
+
+        @Override
+        public void interrupted(int attacker, int target, int counterUnit, int targetRemaining) {
+            ActionLog a = newAction(attacker, target);
+            a.tacticsTriggered = true;
+            a.tacticsName = unit(attacker).tacticsName;
+            a.effectDesc = "声东击西被" + unit(counterUnit).name + "以逸待劳打断！";
+            HitDetail hit = new HitDetail();
+            hit.soldierLoss = 0;
+            hit.targetRemaining = targetRemaining;
+            a.hits.add(hit);
+            round.actions.add(a);
+        }
+
+        @Override
+        public void counter(int from, int to, int soldierLoss, int targetRemaining, boolean dodge) {
+            ActionLog counterAction = newAction(from, to);
+            counterAction.isCounter = true;
+            HitDetail counterHit = new HitDetail();
+            counterHit.isDodge = dodge;
+            counterHit.soldierLoss = soldierLoss;
+            counterHit.isCounter = true;
+            counterHit.targetRemaining = targetRemaining;
+            counterAction.hits.add(counterHit);
+            round.actions.add(counterAction);
+        }
+
+        @Override
+        public void roundEnd(int roundNum) {
+            rounds.add(round);
+            round = null;
+        }
     }
 
     // ==================== 数据类 ====================
 
     public static class BattleReport {
+        public long seed;           // 本场随机种子，配合开战快照可完整回放
         public boolean victoryA;
         public int totalRounds;
         public List<RoundLog> rounds;
@@ -215,6 +246,8 @@ public class BattleService {
         public int sideBRemaining;
         public List<UnitSummary> sideASummary;
         public List<UnitSummary> sideBSummary;
+        /** 开战时的单位快照，只在服务端保存战报时使用，不下发客户端 */
+        transient BattleSnapshot snapshot;
 
         public List<String> toBattleLog(String sideALabel, String sideBLabel) {
             List<String> log = new ArrayList<>();
@@ -0,0 +1,36 @@
+package com.tencent.wxcloudrun.service.battle;
+
+import java.util.List;
+
+/**
+ * 开战快照：种子 + 回合上限 + 双方单位开战时的属性
+ *
+ * 结算只会改动单位的 soldierCount，所以这里直接引用单位列表并另存开战兵力，
+ * 编码时用开战兵力替换当前兵力，不必逐个复制单位。
+ * 因此快照需要在战斗结束后、调用方再修改单位之前编码（BattleReportStore.save 紧跟在 fight 之后）。
+ */
+final class BattleSnapshot {
+
+    final long seed;
+    final int maxRounds;
+    final List<BattleCalculator.BattleUnit> sideA;
+    final List<BattleCalculator.BattleUnit> sideB;
+    final int[] soldiersA;
+    final int[] soldiersB;
+
+    BattleSnapshot(long seed, int maxRounds,
+                   List<BattleCalculator.BattleUnit> sideA, List<BattleCalculator.BattleUnit> sideB) {
+        this.seed = seed;
+        this.maxRounds = maxRounds;
+        this.sideA = sideA;
+        this.sideB = sideB;
+        this.soldiersA = soldiers(sideA);
+        this.soldiersB = soldiers(sideB);
+    }
+
+    private static int[] soldiers(List<BattleCalculator.BattleUnit> side) {
+        int[] s = new int[side.size()];
+        for (int i = 0; i < s.length; i++) s[i] = side.get(i).soldierCount;
+        return s;
+    }
+}
@@ -0,0 +1,339 @@
+package com.tencent.wxcloudrun.service.catalog;
+
+import com.tencent.wxcloudrun.config.GeneralConfig;
+import com.tencent.wxcloudrun.config.GeneralConfig.GeneralTemplate;
+import com.tencent.wxcloudrun.model.Shop;
+
+import java.util.*;
+
+/**
+ * 配置目录的一份只读快照：武将模板、名将特性、爵位、套装、商城商品、秘境奖池
+ *
+ * 每类数据装载成一个分区，装载后不再修改（集合与行 Map 均为只读视图），可被任意线程并发读取。
+ * 热更新时整体构建新快照再替换引用，读方要么看到旧快照要么看到新快照。
+ */
+public final class CatalogSnapshot {
+
+    private static final List<String> COMMON_FACTIONS = Arrays.asList("群", "虚构");
+
+    private final long version;
+    private final long loadedAt;
+    private final Templates templates;
+    private final Peerage peerage;
+    private final Suits suits;
+    private final ShopGoods shopGoods;
+    private final Realms realms;
+
+    CatalogSnapshot(long version, Templates templates, Peerage peerage, Suits suits,
+                    ShopGoods shopGoods, Realms realms) {
+        this.version = version;
+        this.loadedAt = System.currentTimeMillis();
+        this.templates = templates;
+        this.peerage = peerage;
+        this.suits = suits;
+        this.shopGoods = shopGoods;
+        this.realms = realms;
+    }
+
+    static CatalogSnapshot empty() {
+        return new CatalogSnapshot(0, Templates.EMPTY, Peerage.EMPTY, Suits.EMPTY, ShopGoods.EMPTY, Realms.EMPTY);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    Templates templates() { return templates; }
+    Peerage peerage() { return peerage; }
+    Suits suits() { return suits; }
+    ShopGoods shopGoods() { return shopGoods; }
+    Realms realms() { return realms; }
+
+    // ==================== 武将模板 / 名将特性 ====================
+
+    /** 某品质的全部基础模板（按排序号） */
+    public List<GeneralTemplate> getTemplates(String quality) {
+        return templates.byQuality.getOrDefault(quality, Collections.emptyList());
+    }
+
+    /** 某品质下本国 + 群 + 虚构的模板 */
+    public List<GeneralTemplate> getRecruitableTemplates(String quality, String faction) {
+        List<GeneralTemplate> indexed = templates.recruitable.get(quality + "|" + faction);
+        if (indexed != null) return indexed;
+        // 没有该势力的模板，只剩群/虚构
+        List<GeneralTemplate> result = new ArrayList<>();
+        for (GeneralTemplate t : getTemplates(quality)) {
+            if (COMMON_FACTIONS.contains(t.faction)) result.add(t);
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /** 武将名 → 特性行（traitName/traitDesc/effectType/effectValue/troopRestrict/sortOrder） */
+    public List<Map<String, Object>> getTraits(String generalName) {
+        return templates.traitsByName.getOrDefault(generalName, Collections.emptyList());
+    }
+
+    /** 武将名 → 编译好的特性效果，无特性时为 {@link TraitEffects#NONE} */
+    public TraitEffects getTraitEffects(String generalName) {
+        TraitEffects effects = generalName == null ? null : templates.effectsByName.get(generalName);
+        return effects != null ? effects : TraitEffects.NONE;
+    }
+
+    // ==================== 爵位 ====================
+
+    /** 爵位配置行，按 sort_order */
+    public List<Map<String, Object>> getPeerageRows() {
+        return peerage.rows;
+    }
+
+    /** 声望、等级都满足的最高爵位 */
+    public String peerageFor(long fame, int level) {
+        String result = "平民";
+        for (PeerageRule rule : peerage.rules) {
+            if (fame >= rule.fameRequired && level >= rule.levelRequired) result = rule.rankName;
+        }
+        return result;
+    }
+
+    // ==================== 套装 ====================
+
+    /** 按装备 setId 查套装（名称等于 setId 或 setId + "套装"） */
+    public Map<String, Object> getSuitBySetId(String setId) {
+        return setId == null ? null : suits.bySetId.get(setId);
+    }
+
+    public List<Map<String, Object>> getSuits() {
+        return suits.rows;
+    }
+
+    // ==================== 商城 ====================
+
+    public List<Shop> getShopGoods() {
+        return shopGoods.all;
+    }
+
+    public List<Shop> getShopGoodsByClassify(String classify) {
+        return shopGoods.byClassify.getOrDefault(classify, Collections.emptyList());
+    }
+
+    public Shop getShopGoodsById(Long id) {
+        return id == null ? null : shopGoods.byId.get(id);
+    }
+
+    // ==================== 秘境 ====================
+
+    /** 启用中的秘境，按 sort_order */
+    public List<Map<String, Object>> getRealms() {
+        return realms.enabled;
+    }
+
+    /** 按ID取秘境（含已下架） */
+    public Map<String, Object> getRealm(String realmId) {
+        return realms.byId.get(realmId);
+    }
+
+    public List<Map<String, Object>> getRealmRewards(String realmId) {
+        return realms.rewards.getOrDefault(realmId, Collections.emptyList());
+    }
+
+    public List<Map<String, Object>> getRealmRewards(String realmId, String rewardType) {
+        return realms.rewardsByType.getOrDefault(realmId + "|" + rewardType, Collections.emptyList());
+    }
+
+    // ==================== 分区 ====================
+
+    static final class Templates {
+        static final Templates EMPTY = new Templates(Collections.emptyList(), Collections.emptyList());
+
+        final Map<String, List<GeneralTemplate>> byQuality;
+        /** 品质|势力 → 本国 + 群 + 虚构 */
+        final Map<String, List<GeneralTemplate>> recruitable;
+        final Map<String, List<Map<String, Object>>> traitsByName;
+        final Map<String, TraitEffects> effectsByName;
+        final int templateCount;
+        final int traitCount;
+
+        /**
+         * @param templateRows listAllBaseTemplates 的结果
+         * @param traitRows    general_famous_trait 全表（含 templateId、generalName）；
+         *                     按武将名索引时同名的进阶模板特性一并归入，与按名字联表查询一致
+         */
+        Templates(List<Map<String, Object>> templateRows, List<Map<String, Object>> traitRows) {
+            List<GeneralTemplate> all = GeneralConfig.buildGeneralTemplates(templateRows, traitRows);
+            Map<String, List<GeneralTemplate>> grouped = new LinkedHashMap<>();
+            Set<String> factions = new LinkedHashSet<>();
+            for (GeneralTemplate t : all) {
+                grouped.computeIfAbsent(t.quality, k -> new ArrayList<>()).add(t);
+                factions.add(t.faction);
+            }
+            Map<String, List<GeneralTemplate>> recruitableIndex = new HashMap<>();
+            for (Map.Entry<String, List<GeneralTemplate>> e : grouped.entrySet()) {
+                for (String faction : factions) {
+                    List<GeneralTemplate> list = new ArrayList<>();
+                    for (GeneralTemplate t : e.getValue()) {
+                        if (faction.equals(t.faction) || COMMON_FACTIONS.contains(t.faction)) list.add(t);
+                    }
+                    recruitableIndex.put(e.getKey() + "|" + faction, Collections.unmodifiableList(list));
+                }
+                e.setValue(Collections.unmodifiableList(e.getValue()));
+            }
+            this.byQuality = Collections.unmodifiableMap(grouped);
+            this.recruitable = Collections.unmodifiableMap(recruitableIndex);
+
+            Map<String, List<Map<String, Object>>> byName = new HashMap<>();
+            int traits = 0;
+            for (Map<String, Object> row : traitRows) {
+                Object name = row.get("generalName");
+                if (name == null) continue;
+                byName.computeIfAbsent(String.valueOf(name), k -> new ArrayList<>()).add(readOnly(row));
+                traits++;
+            }
+            Map<String, TraitEffects> effects = new HashMap<>();
+            for (Map.Entry<String, List<Map<String, Object>>> e : byName.entrySet()) {
+                e.setValue(Collections.unmodifiableList(e.getValue()));
+                effects.put(e.getKey(), TraitEffects.compile(e.getValue()));
+            }
+            this.traitsByName = Collections.unmodifiableMap(byName);
+            this.effectsByName = Collections.unmodifiableMap(effects);
+            this.templateCount = all.size();
+            this.traitCount = traits;
+        }
+    }
+
+    static final class PeerageRule {
+        final String rankName;
+        final long fameRequired;
+        final int levelRequired;
+
+        PeerageRule(String rankName, long fameRequired, int levelRequired) {
+            this.rankName = rankName;
+            this.fameRequired = fameRequired;
+            this.levelRequired = levelRequired;
+        }
+    }
+
+    static final class Peerage {
+        static final Peerage EMPTY = new Peerage(Collections.emptyList());
+
+        final List<Map<String, Object>> rows;
+        final PeerageRule[] rules;
+
+        Peerage(List<Map<String, Object>> peerageRows) {
+            this.rows = readOnlyRows(peerageRows);
+            this.rules = new PeerageRule[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                Map<String, Object> row = rows.get(i);
+                rules[i] = new PeerageRule((String) row.get("rankName"),
+                        ((Number) row.get("fameRequired")).longValue(),
+                        ((Number) row.get("levelRequired")).intValue());
+            }
+        }
+    }
+
+    static final class Suits {
+        static final Suits EMPTY = new Suits(Collections.emptyList());
+
+        final List<Map<String, Object>> rows;
+        /** setId → 套装；同一 setId 命中多条时取表中靠前的一条 */
+        final Map<String, Map<String, Object>> bySetId;
+
+        Suits(List<Map<String, Object>> suitRows) {
+            this.rows = readOnlyRows(suitRows);
+            Map<String, Map<String, Object>> index = new HashMap<>();
+            for (Map<String, Object> suit : rows) {
+                Object name = suit.get("name");
+                if (name == null) continue;
+                String suitName = String.valueOf(name);
+                index.putIfAbsent(suitName, suit);
+                if (suitName.endsWith("套装")) {
+                    index.putIfAbsent(suitName.substring(0, suitName.length() - 2), suit);
+                }
+            }
+            this.bySetId = Collections.unmodifiableMap(index);
+        }
+    }
+
+    static final class ShopGoods {
+        static final ShopGoods EMPTY = new ShopGoods(Collections.emptyList());
+
+        final List<Shop> all;
+        final Map<Long, Shop> byId;
+        final Map<String, List<Shop>> byClassify;
+
+        ShopGoods(List<Shop> goods) {
+            this.all = Collections.unmodifiableList(new ArrayList<>(goods));
+            Map<Long, Shop> ids = new HashMap<>();
+            Map<String, List<Shop>> classify = new HashMap<>();
+            for (Shop s : all) {
+                if (s.getId() != null) ids.put(s.getId(), s);
+                if (s.getClassify() != null) classify.computeIfAbsent(s.getClassify(), k -> new ArrayList<>()).add(s);
+            }
+            for (Map.Entry<String, List<Shop>> e : classify.entrySet()) {
+                e.setValue(Collections.unmodifiableList(e.getValue()));
+            }
+            this.byId = Collections.unmodifiableMap(ids);
+            this.byClassify = Collections.unmodifiableMap(classify);
+        }
+    }
+
+    static final class Realms {
+        static final Realms EMPTY = new Realms(Collections.emptyList(), Collections.emptyList());
+
+        final List<Map<String, Object>> enabled;
+        final Map<String, Map<String, Object>> byId;
+        final Map<String, List<Map<String, Object>>> rewards;
+        /** realmId|rewardType → 奖池 */
+        final Map<String, List<Map<String, Object>>> rewardsByType;
+        final int rewardCount;
+
+        /**
+         * @param configRows 全部秘境（含已下架），按 sort_order
+         * @param rewardRows 启用中的奖励，按 realm_id、sort_order
+         */
+        Realms(List<Map<String, Object>> configRows, List<Map<String, Object>> rewardRows) {
+            List<Map<String, Object>> active = new ArrayList<>();
+            Map<String, Map<String, Object>> ids = new HashMap<>();
+            for (Map<String, Object> row : readOnlyRows(configRows)) {
+                ids.put(String.valueOf(row.get("id")), row);
+                Object status = row.get("status");
+                if (Boolean.TRUE.equals(status) || status instanceof Number && ((Number) status).intValue() == 1) {
+                    active.add(row);
+                }
+            }
+            Map<String, List<Map<String, Object>>> byRealm = new HashMap<>();
+            Map<String, List<Map<String, Object>>> byType = new HashMap<>();
+            List<Map<String, Object>> rewardList = readOnlyRows(rewardRows);
+            for (Map<String, Object> row : rewardList) {
+                String realmId = String.valueOf(row.get("realm_id"));
+                byRealm.computeIfAbsent(realmId, k -> new ArrayList<>()).add(row);
+                byType.computeIfAbsent(realmId + "|" + row.get("reward_type"), k -> new ArrayList<>()).add(row);
+            }
+            for (Map<String, List<Map<String, Object>>> m : Arrays.asList(byRealm, byType)) {
+                for (Map.Entry<String, List<Map<String, Object>>> e : m.entrySet()) {
+                    e.setValue(Collections.unmodifiableList(e.getValue()));
+                }
+            }
+            this.enabled = Collections.unmodifiableList(active);
+            this.byId = Collections.unmodifiableMap(ids);
+            this.rewards = Collections.unmodifiableMap(byRealm);
+            this.rewardsByType = Collections.unmodifiableMap(byType);
+            this.rewardCount = rewardList.size();
+        }
+    }
+
+    private static Map<String, Object> readOnly(Map<String, Object> row) {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(row));
+    }
+
+    private static List<Map<String, Object>> readOnlyRows(List<Map<String, Object>> rows) {
+        List<Map<String, Object>> result = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            if (row != null) result.add(readOnly(row));
+        }
+        return Collections.unmodifiableList(result);
+    }
+}
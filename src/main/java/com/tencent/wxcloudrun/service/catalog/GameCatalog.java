@@ -0,0 +1,120 @@
+package com.tencent.wxcloudrun.service.catalog;
+
+import com.tencent.wxcloudrun.dao.GeneralFamousTraitMapper;
+import com.tencent.wxcloudrun.dao.GeneralTemplateMapper;
+import com.tencent.wxcloudrun.dao.PeerageConfigMapper;
+import com.tencent.wxcloudrun.dao.SecretRealmConfigMapper;
+import com.tencent.wxcloudrun.dao.SecretRealmRewardMapper;
+import com.tencent.wxcloudrun.dao.ShopMapper;
+import com.tencent.wxcloudrun.dao.SuitConfigMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * 静态配置目录 —— 启动时把武将模板、名将特性、爵位、套装、商城商品、秘境奖池整体装入只读快照
+ *
+ * 1. 热路径（招募、战斗特性、爵位计算、套装加成、商城、秘境探索）只读 {@link #current()}，不再查库
+ * 2. {@link #reload()} 重新装载并原子替换快照，版本号 +1；由管理接口触发
+ * 3. 某一类装载失败时沿用上一版该类数据（启动时为空），其余类照常更新，失败项在结果里返回
+ */
+@Component
+public class GameCatalog {
+
+    private static final Logger logger = LoggerFactory.getLogger(GameCatalog.class);
+
+    @Autowired
+    private GeneralTemplateMapper generalTemplateMapper;
+    @Autowired
+    private GeneralFamousTraitMapper generalFamousTraitMapper;
+    @Autowired
+    private PeerageConfigMapper peerageConfigMapper;
+    @Autowired
+    private SuitConfigMapper suitConfigMapper;
+    @Autowired
+    private ShopMapper shopMapper;
+    @Autowired
+    private SecretRealmConfigMapper secretRealmConfigMapper;
+    @Autowired
+    private SecretRealmRewardMapper secretRealmRewardMapper;
+
+    private volatile CatalogSnapshot snapshot = CatalogSnapshot.empty();
+
+    @PostConstruct
+    public void init() {
+        reload();
+    }
+
+    public CatalogSnapshot current() {
+        return snapshot;
+    }
+
+    /**
+     * 重新装载全部配置并替换快照
+     *
+     * @return 新快照概况，另含装载失败（沿用旧数据）的类别
+     */
+    public synchronized Map<String, Object> reload() {
+        long start = System.currentTimeMillis();
+        CatalogSnapshot previous = snapshot;
+        List<String> failed = new ArrayList<>();
+
+        CatalogSnapshot.Templates templates = load("templates", failed, previous.templates(),
+                () -> new CatalogSnapshot.Templates(rows(generalTemplateMapper.listAllBaseTemplates()),
+                        rows(generalFamousTraitMapper.findAll())));
+        CatalogSnapshot.Peerage peerage = load("peerage", failed, previous.peerage(),
+                () -> new CatalogSnapshot.Peerage(rows(peerageConfigMapper.findAllPeerage())));
+        CatalogSnapshot.Suits suits = load("suits", failed, previous.suits(),
+                () -> new CatalogSnapshot.Suits(rows(suitConfigMapper.findAll())));
+        CatalogSnapshot.ShopGoods shopGoods = load("shop", failed, previous.shopGoods(),
+                () -> new CatalogSnapshot.ShopGoods(rows(shopMapper.findAll())));
+        CatalogSnapshot.Realms realms = load("secretRealm", failed, previous.realms(),
+                () -> new CatalogSnapshot.Realms(rows(secretRealmConfigMapper.findAllIncludingDisabled()),
+                        rows(secretRealmRewardMapper.findAllEnabled())));
+
+        CatalogSnapshot next = new CatalogSnapshot(previous.getVersion() + 1, templates, peerage, suits, shopGoods, realms);
+        snapshot = next;
+
+        Map<String, Object> result = describe();
+        result.put("failed", failed);
+        logger.info("配置目录装载完成 v{}，耗时{}ms: {}", next.getVersion(), System.currentTimeMillis() - start, result);
+        return result;
+    }
+
+    /**
+     * 当前快照概况（不重新装载）
+     */
+    public Map<String, Object> describe() {
+        CatalogSnapshot s = snapshot;
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("version", s.getVersion());
+        result.put("loadedAt", s.getLoadedAt());
+        result.put("templates", s.templates().templateCount);
+        result.put("traits", s.templates().traitCount);
+        result.put("peerage", s.peerage().rows.size());
+        result.put("suits", s.suits().rows.size());
+        result.put("shopGoods", s.shopGoods().all.size());
+        result.put("secretRealms", s.realms().byId.size());
+        result.put("secretRealmRewards", s.realms().rewardCount);
+        return result;
+    }
+
+    private <T> T load(String name, List<String> failed, T fallback, Supplier<T> loader) {
+        try {
+            return loader.get();
+        } catch (Exception e) {
+            logger.warn("配置目录装载 {} 失败，沿用上一版: {}", name, e.getMessage());
+            failed.add(name);
+            return fallback;
+        }
+    }
+
+    private static <T> List<T> rows(List<T> rows) {
+        return rows != null ? rows : Collections.<T>emptyList();
+    }
+}
@@ -0,0 +1,136 @@
+package com.tencent.wxcloudrun.service.catalog;
+
+import com.tencent.wxcloudrun.service.battle.BattleCalculator;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一个武将名下全部名将特性编译后的效果向量
+ *
+ * 装载配置目录时按兵种各汇总一份（下标 1 步 / 2 骑 / 3 弓，0 给未知兵种）：
+ * 限定兵种的特性只计入对应兵种，不限兵种的计入全部。
+ * 战斗时按兵种取出 {@link Vector} 直接累加，不再逐行解析特性 Map、匹配 effectType。
+ */
+public final class TraitEffects {
+
+    /** 没有任何特性 */
+    public static final TraitEffects NONE = new TraitEffects(new Vector[]{Vector.EMPTY, Vector.EMPTY, Vector.EMPTY, Vector.EMPTY});
+
+    private static final int TROOP_SLOTS = 4;
+
+    private static final int ATTACK = 0;
+    private static final int DEFENSE = 1;
+    private static final int DAMAGE = 2;
+    private static final int DAMAGE_RESIST = 3;
+    private static final int LIFE_PCT = 4;
+    private static final int MOBILITY = 5;
+    private static final int DODGE = 6;
+    private static final int SOLDIER_COUNT = 7;
+    private static final int DOUBLE_TACTICS = 8;
+    private static final int IMMUNE_AMBUSH = 9;
+    private static final int FIELDS = 10;
+
+    private final Vector[] byTroop;
+
+    private TraitEffects(Vector[] byTroop) {
+        this.byTroop = byTroop;
+    }
+
+    /** 某兵种生效的特性汇总 */
+    public Vector forTroop(int troopType) {
+        return byTroop[troopType > 0 && troopType < TROOP_SLOTS ? troopType : 0];
+    }
+
+    /**
+     * @param traitRows 同一武将名的特性行（effectType/effectValue/troopRestrict）
+     */
+    static TraitEffects compile(List<Map<String, Object>> traitRows) {
+        if (traitRows == null || traitRows.isEmpty()) return NONE;
+        int[][] sums = new int[TROOP_SLOTS][FIELDS];
+        for (Map<String, Object> t : traitRows) {
+            int field = fieldOf((String) t.get("effectType"));
+            if (field < 0) continue;
+            int value = t.get("effectValue") instanceof Number ? ((Number) t.get("effectValue")).intValue() : 0;
+            int restrict = t.get("troopRestrict") instanceof Number ? ((Number) t.get("troopRestrict")).intValue() : 0;
+            for (int troop = 0; troop < TROOP_SLOTS; troop++) {
+                if (restrict != 0 && restrict != troop) continue;
+                if (field == DOUBLE_TACTICS || field == IMMUNE_AMBUSH) {
+                    sums[troop][field] = 1;
+                } else {
+                    sums[troop][field] += value;
+                }
+            }
+        }
+        Vector[] vectors = new Vector[TROOP_SLOTS];
+        for (int troop = 0; troop < TROOP_SLOTS; troop++) vectors[troop] = new Vector(sums[troop]);
+        return new TraitEffects(vectors);
+    }
+
+    private static int fieldOf(String effectType) {
+        if (effectType == null) return -1;
+        switch (effectType) {
+            case "soldier_damage": case "troop_damage":  return DAMAGE;
+            case "army_attack":    case "troop_attack":  return ATTACK;
+            case "army_defense":   case "troop_defense": return DEFENSE;
+            case "damage_resist":   return DAMAGE_RESIST;
+            case "soldier_life_pct": return LIFE_PCT;
+            case "army_mobility":   return MOBILITY;
+            case "army_dodge":      return DODGE;
+            case "soldier_count":   return SOLDIER_COUNT;
+            case "tactics_prob": case "troop_tactics": return DOUBLE_TACTICS;
+            case "immune_ambush":   return IMMUNE_AMBUSH;
+            default: return -1;
+        }
+    }
+
+    /**
+     * 单兵种的特性汇总，字段只读
+     */
+    public static final class Vector {
+        static final Vector EMPTY = new Vector(new int[FIELDS]);
+
+        public final int attack;
+        public final int defense;
+        public final int damage;
+        public final int damageResist;
+        public final int lifePct;
+        public final int mobility;
+        public final int dodge;
+        public final int soldierCount;
+        /** 兵法发动概率翻倍 */
+        public final boolean doubleTactics;
+        public final boolean immuneAmbush;
+
+        private Vector(int[] v) {
+            this.attack = v[ATTACK];
+            this.defense = v[DEFENSE];
+            this.damage = v[DAMAGE];
+            this.damageResist = v[DAMAGE_RESIST];
+            this.lifePct = v[LIFE_PCT];
+            this.mobility = v[MOBILITY];
+            this.dodge = v[DODGE];
+            this.soldierCount = v[SOLDIER_COUNT];
+            this.doubleTactics = v[DOUBLE_TACTICS] != 0;
+            this.immuneAmbush = v[IMMUNE_AMBUSH] != 0;
+        }
+
+        /**
+         * 叠加到战斗单位上：加兵同时提高当前兵力和满编
+         */
+        public void applyTo(BattleCalculator.BattleUnit unit) {
+            if (this == EMPTY) return;
+            unit.totalAttack += attack;
+            unit.totalDefense += defense;
+            unit.traitDmgBonus += damage;
+            unit.traitDamageResist += damageResist;
+            unit.traitLifePct += lifePct;
+            unit.mobility += mobility;
+            unit.dodge += dodge;
+            unit.soldierCount += soldierCount;
+            unit.maxSoldierCount += soldierCount;
+            if (doubleTactics) unit.tacticsTriggerMultiplier = 2.0;
+            unit.traitImmuneAmbush = immuneAmbush;
+        }
+    }
+}
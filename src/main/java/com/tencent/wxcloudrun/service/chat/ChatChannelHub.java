@@ -0,0 +1,253 @@
+package com.tencent.wxcloudrun.service.chat;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 聊天频道内存环形缓冲 —— 每个 (区服, 频道, 国家/联盟) 一个，私聊按 (区服, 玩家) 一个
+ *
+ * 首次访问时从库里预载最近一批消息，之后由发送路径追加；轮询、最近消息直接读内存，
+ * 只有 since 早于缓冲覆盖范围（冷启动、消息被挤出）时才回落到数据库。
+ * 追加消息时唤醒在该缓冲上挂起的长轮询。
+ * 缓冲只覆盖本实例发出的消息；30 分钟无人访问的缓冲会被回收，下次访问重新预载。
+ */
+@Component
+public class ChatChannelHub {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatChannelHub.class);
+
+    static final int CHANNEL_CAPACITY = 200;
+    static final int PRIVATE_CAPACITY = 50;
+    private static final long IDLE_EVICT_MS = 30 * 60 * 1000L;
+
+    private final Map<String, ChannelBuffer> buffers = new ConcurrentHashMap<>();
+
+    static String channelKey(int serverId, String channel, String scopeId) {
+        return serverId + "|" + channel + "|" + (scopeId == null ? "" : scopeId);
+    }
+
+    /**
+     * 取缓冲；不存在时创建并用 loader 预载（按时间倒序的最近消息）。预载中的缓冲返回 null，调用方直接查库
+     */
+    ChannelBuffer get(String key, int capacity, Supplier<List<Map<String, Object>>> loader) {
+        ChannelBuffer existing = buffers.get(key);
+        if (existing != null) return existing.isLoaded() ? existing.touch() : null;
+
+        ChannelBuffer created = new ChannelBuffer(capacity);
+        existing = buffers.putIfAbsent(key, created);
+        if (existing != null) return existing.isLoaded() ? existing.touch() : null;
+        try {
+            created.load(loader.get());
+            return created;
+        } catch (Exception e) {
+            buffers.remove(key, created);
+            logger.warn("聊天缓冲预载失败: {}", key, e);
+            return null;
+        }
+    }
+
+    /**
+     * 追加到已存在的缓冲；缓冲不存在时不创建（之后首次访问会从库里预载到这条）
+     */
+    void append(String key, Map<String, Object> message) {
+        ChannelBuffer buffer = buffers.get(key);
+        if (buffer != null) buffer.append(message);
+    }
+
+    /**
+     * 替换缓冲中某条消息的内容（内容复核未通过时撤回）
+     */
+    void replaceContent(String key, String senderId, long createTime, String content) {
+        ChannelBuffer buffer = buffers.get(key);
+        if (buffer != null) buffer.replaceContent(senderId, createTime, content);
+    }
+
+    /**
+     * 屏蔽词清洗、合区等直接改库后调用，所有缓冲下次访问时重新预载
+     */
+    public void clear() {
+        buffers.clear();
+    }
+
+    @Scheduled(cron = "0 */10 * * * ?")
+    public void evictIdle() {
+        long deadline = System.currentTimeMillis() - IDLE_EVICT_MS;
+        int before = buffers.size();
+        buffers.values().removeIf(b -> b.idleSince(deadline));
+        int removed = before - buffers.size();
+        if (removed > 0) logger.info("回收空闲聊天缓冲 {} 个，剩余 {}", removed, buffers.size());
+    }
+
+    /**
+     * 单个频道的环形缓冲；消息 Map 写入后不再修改，读出时复制
+     */
+    static final class ChannelBuffer {
+        private final Map<String, Object>[] ring;
+        private int head;
+        private int size;
+        /** 缓冲完整覆盖 createTime > floor 的全部消息 */
+        private long floor = Long.MAX_VALUE;
+        private boolean loaded;
+        private final List<Map<String, Object>> pending = new ArrayList<>();
+        private final List<Runnable> waiters = new ArrayList<>();
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        @SuppressWarnings("unchecked")
+        ChannelBuffer(int capacity) {
+            this.ring = new Map[capacity];
+        }
+
+        synchronized boolean isLoaded() {
+            return loaded;
+        }
+
+        ChannelBuffer touch() {
+            lastAccess = System.currentTimeMillis();
+            return this;
+        }
+
+        synchronized boolean idleSince(long deadline) {
+            return lastAccess < deadline && waiters.isEmpty();
+        }
+
+        /**
+         * @param recentDesc 最近的消息（倒序，库里的加上尚未落库的），条数不足容量说明已是全部历史
+         */
+        synchronized void load(List<Map<String, Object>> recentDesc) {
+            List<Map<String, Object>> rows = new ArrayList<>();
+            Set<String> keys = new HashSet<>();
+            if (recentDesc != null) {
+                for (Map<String, Object> row : recentDesc) {
+                    if (keys.add(messageKey(row))) rows.add(row);
+                }
+            }
+            if (rows.size() > ring.length) rows = rows.subList(0, ring.length);
+            floor = rows.size() < ring.length ? Long.MIN_VALUE : createTime(rows.get(rows.size() - 1));
+            List<Map<String, Object>> ascending = new ArrayList<>(rows);
+            Collections.reverse(ascending);
+            for (Map<String, Object> row : ascending) push(new LinkedHashMap<>(row));
+            // 预载期间发出的消息可能已经包含在预载结果里
+            for (Map<String, Object> msg : pending) {
+                if (keys.add(messageKey(msg))) push(msg);
+            }
+            pending.clear();
+            loaded = true;
+        }
+
+        void append(Map<String, Object> message) {
+            List<Runnable> wake;
+            synchronized (this) {
+                if (!loaded) {
+                    pending.add(message);
+                    return;
+                }
+                push(message);
+                if (waiters.isEmpty()) return;
+                wake = new ArrayList<>(waiters);
+                waiters.clear();
+            }
+            for (Runnable r : wake) {
+                try {
+                    r.run();
+                } catch (Exception e) {
+                    logger.warn("唤醒聊天长轮询失败", e);
+                }
+            }
+        }
+
+        /**
+         * createTime > sinceTime 的消息（正序，最多 limit 条）；缓冲未覆盖到 sinceTime 时返回 null
+         */
+        synchronized List<Map<String, Object>> since(long sinceTime, int limit) {
+            if (sinceTime < floor) return null;
+            List<Map<String, Object>> result = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                Map<String, Object> msg = at(i);
+                if (createTime(msg) > sinceTime) result.add(msg);
+            }
+            result.sort(Comparator.comparingLong(ChannelBuffer::createTime));
+            return copy(result.size() > limit ? result.subList(0, limit) : result);
+        }
+
+        /**
+         * 最近 limit 条（正序）；缓冲里不够且不是全部历史时返回 null
+         */
+        synchronized List<Map<String, Object>> recent(int limit) {
+            if (size < limit && floor != Long.MIN_VALUE) return null;
+            List<Map<String, Object>> result = new ArrayList<>();
+            for (int i = Math.max(0, size - limit); i < size; i++) result.add(at(i));
+            return copy(result);
+        }
+
+        /**
+         * 同 {@link #since}；没有新消息时在同一把锁内登记 waiter，保证不会漏掉之后追加的消息
+         */
+        synchronized List<Map<String, Object>> sinceOrWait(long sinceTime, int limit, Runnable waiter) {
+            List<Map<String, Object>> msgs = since(sinceTime, limit);
+            if (msgs != null && msgs.isEmpty()) waiters.add(waiter);
+            return msgs;
+        }
+
+        synchronized void replaceContent(String senderId, long createTime, String content) {
+            for (int i = 0; i < size; i++) {
+                int idx = (head - size + i + ring.length) % ring.length;
+                Map<String, Object> msg = ring[idx];
+                if (createTime(msg) == createTime && senderId.equals(msg.get("senderId"))) {
+                    Map<String, Object> replaced = new HashMap<>(msg);
+                    replaced.put("content", content);
+                    ring[idx] = replaced;
+                }
+            }
+            for (int i = 0; i < pending.size(); i++) {
+                Map<String, Object> msg = pending.get(i);
+                if (createTime(msg) == createTime && senderId.equals(msg.get("senderId"))) {
+                    Map<String, Object> replaced = new HashMap<>(msg);
+                    replaced.put("content", content);
+                    pending.set(i, replaced);
+                }
+            }
+        }
+
+        synchronized void removeWaiter(Runnable waiter) {
+            waiters.remove(waiter);
+        }
+
+        private void push(Map<String, Object> msg) {
+            if (size == ring.length) {
+                // 挤出最旧的一条，覆盖范围随之后移
+                floor = Math.max(floor, createTime(ring[head]));
+            } else {
+                size++;
+            }
+            ring[head] = msg;
+            head = (head + 1) % ring.length;
+        }
+
+        /** 第 i 旧的消息 */
+        private Map<String, Object> at(int i) {
+            return ring[(head - size + i + ring.length) % ring.length];
+        }
+
+        private static List<Map<String, Object>> copy(List<Map<String, Object>> msgs) {
+            List<Map<String, Object>> result = new ArrayList<>(msgs.size());
+            for (Map<String, Object> m : msgs) result.add(new HashMap<>(m));
+            return result;
+        }
+
+        /** 消息落库前没有 id，按发送者 + 时间 + 内容识别同一条消息 */
+        private static String messageKey(Map<String, Object> msg) {
+            return msg.get("senderId") + "|" + createTime(msg) + "|" + msg.get("content");
+        }
+
+        private static long createTime(Map<String, Object> msg) {
+            Object v = msg.get("createTime");
+            return v instanceof Number ? ((Number) v).longValue() : 0L;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.tencent.wxcloudrun.service.chat;
+
+import com.tencent.wxcloudrun.dao.ChatMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 聊天消息异步落库 —— 发送路径只把消息放进有界队列，后台线程按批多行 INSERT 写入 chat_message
+ *
+ * 1. 队列满时 {@link #submit} 最多等待 {@link #OFFER_TIMEOUT_MS}，仍满则返回 false，由调用方拒绝发言或改为同步写入
+ * 2. 批量写入失败时逐条重试，单条仍失败的记错误日志后丢弃
+ * 3. 停机时先停后台线程，再把队列剩余消息同步写完；入队与停机标记互斥，停机后提交的消息改为同步写，不会留在队列里
+ * 4. 尚未落库的消息可通过 {@link #unflushed} 取到，聊天缓冲预载时与库里的消息合并
+ * 5. 写库都在 writeLock 内：{@link #flush} 返回时，调用前提交的消息（包括后台线程已取走、正在写的一批）都已写入
+ */
+@Component
+public class ChatMessageWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatMessageWriter.class);
+
+    private static final int QUEUE_CAPACITY = 5000;
+    private static final int BATCH_SIZE = 200;
+    private static final long OFFER_TIMEOUT_MS = 200;
+
+    @Autowired
+    private ChatMapper chatMapper;
+
+    private final BlockingQueue<Long> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    /** 序号 → 消息行，入队时登记、写入后移除；队列里只放序号 */
+    private final Map<Long, Map<String, Object>> unflushed = new ConcurrentHashMap<>();
+    private final AtomicLong seq = new AtomicLong();
+    private volatile boolean running;
+    /** 入队持读锁，停机改 running 持写锁：写锁拿到后不会再有消息进入队列 */
+    private final ReadWriteLock submitLock = new ReentrantReadWriteLock();
+    /** 后台线程写一批与 flush 互斥 */
+    private final Object writeLock = new Object();
+    private Thread worker;
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        worker = new Thread(this::runLoop, "chat-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * 提交一条消息行（字段同 insertChatMessage）；队列满且等待超时返回 false
+     */
+    public boolean submit(Map<String, Object> row) {
+        submitLock.readLock().lock();
+        try {
+            if (running) return enqueue(row);
+        } finally {
+            submitLock.readLock().unlock();
+        }
+        // 已停机：直接同步写
+        write(Collections.singletonList(row));
+        return true;
+    }
+
+    private boolean enqueue(Map<String, Object> row) {
+        long id = seq.incrementAndGet();
+        unflushed.put(id, row);
+        try {
+            if (queue.offer(id, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 等待入队期间已被 flush 写掉的不算拒绝
+        if (unflushed.remove(id) == null) return true;
+        logger.warn("聊天写入队列已满({})，拒绝消息: sender={}", QUEUE_CAPACITY, row.get("senderId"));
+        return false;
+    }
+
+    /**
+     * 已提交但尚未写入数据库的消息行
+     */
+    List<Map<String, Object>> unflushed() {
+        return new ArrayList<>(unflushed.values());
+    }
+
+    /**
+     * 立即把队列中的消息写完（合区、屏蔽词清洗等直接改库前调用）
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            // 按登记表而不是队列取：后台线程已从队列取走但还没拿到锁的那批也在这里写掉，它拿到锁后会跳过
+            List<Long> ids = new ArrayList<>(unflushed.keySet());
+            Collections.sort(ids);
+            writeIds(ids);
+        }
+    }
+
+    private void runLoop() {
+        List<Long> ids = new ArrayList<>(BATCH_SIZE);
+        while (running) {
+            try {
+                Long first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) continue;
+                ids.add(first);
+                queue.drainTo(ids, BATCH_SIZE - 1);
+                writeIds(ids);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                logger.error("聊天写入线程异常", e);
+            } finally {
+                ids.clear();
+            }
+        }
+    }
+
+    private void writeIds(List<Long> ids) {
+        synchronized (writeLock) {
+            for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+                List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + BATCH_SIZE));
+                List<Map<String, Object>> rows = new ArrayList<>(chunk.size());
+                for (Long id : chunk) {
+                    Map<String, Object> row = unflushed.get(id);
+                    if (row != null) rows.add(row);
+                }
+                write(rows);
+                for (Long id : chunk) unflushed.remove(id);
+            }
+        }
+    }
+
+    private void write(List<Map<String, Object>> rows) {
+        if (rows.isEmpty()) return;
+        try {
+            chatMapper.insertMessages(rows);
+        } catch (Exception e) {
+            logger.warn("聊天消息批量写入失败，逐条重试: {} 条", rows.size(), e);
+            for (Map<String, Object> row : rows) {
+                try {
+                    chatMapper.insertChatMessage(row);
+                } catch (Exception ex) {
+                    logger.error("聊天消息写入失败，已丢弃: sender={}, channel={}",
+                            row.get("senderId"), row.get("channel"), ex);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        submitLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            submitLock.writeLock().unlock();
+        }
+        if (worker != null) {
+            try {
+                worker.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        int remaining = queue.size();
+        flush();
+        if (remaining > 0) logger.info("停机时写入剩余聊天消息 {} 条", remaining);
+    }
+}
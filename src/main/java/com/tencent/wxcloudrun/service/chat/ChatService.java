@@ -3,6 +3,7 @@ package com.tencent.wxcloudrun.service.chat;
 import com.tencent.wxcloudrun.dao.ChatMapper;
 import com.tencent.wxcloudrun.exception.BusinessException;
 import com.tencent.wxcloudrun.service.PlayerNameResolver;
+import com.tencent.wxcloudrun.service.RateLimiter;
 import com.tencent.wxcloudrun.service.UgcModerationService;
 import com.tencent.wxcloudrun.service.alliance.AllianceService;
 import com.tencent.wxcloudrun.service.nationwar.NationWarService;
@@ -13,6 +14,8 @@ import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 @Service
 public class ChatService {
@@ -20,11 +23,13 @@ public class ChatService {
     private static final Logger logger = LoggerFactory.getLogger(ChatService.class);
     private static final int MAX_MSG_LENGTH = 200;
     private static final long MIN_SEND_INTERVAL = 2000;
-
-    private final Map<String, Long> lastSendTime = new HashMap<>();
+    private static final int POLL_LIMIT = 50;
 
     @Autowired private ChatMapper chatMapper;
+    @Autowired private ChatChannelHub chatChannelHub;
+    @Autowired private ChatMessageWriter chatMessageWriter;
     @Autowired private PlayerNameResolver playerNameResolver;
+    @Autowired private RateLimiter rateLimiter;
     @Autowired private UgcModerationService ugcModerationService;
     @Autowired @Lazy private NationWarService nationWarService;
     @Autowired @Lazy private AllianceService allianceService;
@@ -51,16 +56,13 @@ public class ChatService {
         if (content.length() > MAX_MSG_LENGTH) {
             throw new BusinessException(400, "消息不能超过" + MAX_MSG_LENGTH + "字");
         }
-        if (ugcModerationService.containsBlockedKeyword(content)) {
+        // 本地词库同步拦截；微信内容安全在消息发出后异步复核，命中则撤回
+        if (ugcModerationService.containsBlockedKeywordLocal(content)) {
             throw new BusinessException(400, ugcModerationService.buildBlockedNotice("聊天内容"));
         }
 
+        rateLimiter.acquire("chat.send", userId, MIN_SEND_INTERVAL, 1, "发言太频繁，请稍后再试");
         long now = System.currentTimeMillis();
-        Long last = lastSendTime.get(userId);
-        if (last != null && now - last < MIN_SEND_INTERVAL) {
-            throw new BusinessException(400, "发言太频繁，请稍后再试");
-        }
-        lastSendTime.put(userId, now);
 
         if (channel == null || channel.isEmpty()) channel = "world";
         int serverId = extractServerId(userId);
@@ -83,8 +85,14 @@ public class ChatService {
         }
 
         String senderName = ugcModerationService.maskIfBlockedName(userName);
-        chatMapper.insertMessageFull(userId, senderName, channel, content.trim(),
+        Map<String, Object> message = submitMessage(userId, senderName, channel, content.trim(),
                 serverId, now, targetId, nationId, allianceId);
+        publish(message, serverId, channel, targetId, nationId, allianceId);
+        String finalChannel = channel;
+        String finalNationId = nationId;
+        String finalAllianceId = allianceId;
+        ugcModerationService.reviewAsync(content.trim(), () -> retractMessage(userId, now, serverId,
+                finalChannel, targetId, finalNationId, finalAllianceId));
 
         Map<String, Object> result = new HashMap<>();
         result.put("success", true);
@@ -95,61 +103,53 @@ public class ChatService {
     public List<Map<String, Object>> getRecent(String userId, String channel, int limit) {
         if (channel == null || channel.isEmpty()) channel = "world";
         if (limit <= 0 || limit > 100) limit = 30;
-        int serverId = extractServerId(userId);
 
-        List<Map<String, Object>> msgs;
-        switch (channel) {
-            case "nation": {
-                String nationId = getPlayerNation(userId);
-                msgs = chatMapper.findRecentByNation(serverId, nationId, limit);
-                break;
-            }
-            case "alliance": {
-                String allianceId = getPlayerAlliance(userId);
-                msgs = chatMapper.findRecentByAlliance(serverId, allianceId, limit);
-                break;
-            }
-            case "private": {
-                msgs = chatMapper.findRecentPrivate(serverId, userId, limit);
-                break;
-            }
-            default:
-                msgs = chatMapper.findRecent(channel, serverId, limit);
-                break;
-        }
-        normalizeSenderNames(msgs);
+        ChannelRef ref = channelRef(userId, channel);
+        ChatChannelHub.ChannelBuffer buffer = buffer(ref);
+        List<Map<String, Object>> cached = buffer != null ? buffer.recent(limit) : null;
+        if (cached != null) return cached;
+
+        List<Map<String, Object>> msgs = loadRecent(ref, limit);
         Collections.reverse(msgs);
         return msgs;
     }
 
     public List<Map<String, Object>> poll(String userId, String channel, long sinceTime) {
         if (channel == null || channel.isEmpty()) channel = "world";
-        int serverId = extractServerId(userId);
+        ChannelRef ref = channelRef(userId, channel);
+        ChatChannelHub.ChannelBuffer buffer = buffer(ref);
+        List<Map<String, Object>> cached = buffer != null ? buffer.since(sinceTime, POLL_LIMIT) : null;
+        return cached != null ? cached : loadSince(ref, sinceTime);
+    }
 
-        switch (channel) {
-            case "nation": {
-                String nationId = getPlayerNation(userId);
-                List<Map<String, Object>> result = chatMapper.pollByNation(serverId, nationId, sinceTime, 50);
-                normalizeSenderNames(result);
-                return result;
-            }
-            case "alliance": {
-                String allianceId = getPlayerAlliance(userId);
-                List<Map<String, Object>> result = chatMapper.pollByAlliance(serverId, allianceId, sinceTime, 50);
-                normalizeSenderNames(result);
-                return result;
-            }
-            case "private": {
-                List<Map<String, Object>> result = chatMapper.pollPrivate(serverId, userId, sinceTime, 50);
-                normalizeSenderNames(result);
-                return result;
-            }
-            default: {
-                List<Map<String, Object>> result = chatMapper.findSince(channel, serverId, sinceTime, 50);
-                normalizeSenderNames(result);
-                return result;
+    /**
+     * 长轮询：sinceTime 之后有新消息时回调一次（可能就在本次调用里同步回调）。
+     * 返回取消函数，请求超时或结束时调用；频道没有内存缓冲时返回 null，调用方应直接应答
+     */
+    public Runnable awaitMessages(String userId, String channel, long sinceTime,
+                                  Consumer<List<Map<String, Object>>> callback) {
+        if (channel == null || channel.isEmpty()) channel = "world";
+        ChannelRef ref = channelRef(userId, channel);
+        ChatChannelHub.ChannelBuffer buffer = buffer(ref);
+        if (buffer == null) return null;
+
+        AtomicBoolean done = new AtomicBoolean(false);
+        Runnable waiter = new Runnable() {
+            @Override
+            public void run() {
+                if (done.get()) return;
+                List<Map<String, Object>> msgs = buffer.sinceOrWait(sinceTime, POLL_LIMIT, this);
+                if (msgs != null && msgs.isEmpty()) return;
+                if (done.compareAndSet(false, true)) {
+                    callback.accept(msgs != null ? msgs : loadSince(ref, sinceTime));
+                }
             }
-        }
+        };
+        waiter.run();
+        return () -> {
+            done.set(true);
+            buffer.removeWaiter(waiter);
+        };
     }
 
     /**
@@ -170,6 +170,10 @@ public class ChatService {
         int serverId = extractServerId(userId);
         List<Map<String, Object>> contacts = chatMapper.findPrivateContacts(serverId, userId, 20);
         if (contacts != null) {
+            // 先整批解析一次，逐行取名时直接命中缓存
+            List<String> contactIds = new ArrayList<>();
+            for (Map<String, Object> c : contacts) contactIds.add(String.valueOf(c.get("contactId")));
+            playerNameResolver.resolveAll(contactIds);
             for (Map<String, Object> c : contacts) {
                 String contactId = String.valueOf(c.get("contactId"));
                 c.put("contactName", resolveDisplayName(contactId, String.valueOf(c.get("contactName"))));
@@ -185,8 +189,9 @@ public class ChatService {
     public void sendSystemMessage(int serverId, String channel, String content) {
         if (content == null || content.trim().isEmpty()) return;
         if (channel == null || channel.isEmpty()) channel = "world";
-        chatMapper.insertMessageFull("SYSTEM", "系统公告", channel, content.trim(),
+        Map<String, Object> message = submitMessage("SYSTEM", "系统公告", channel, content.trim(),
                 serverId, System.currentTimeMillis(), null, null, null);
+        publish(message, serverId, channel, null, null, null);
         logger.info("系统公告 serverId={}: {}", serverId, content);
     }
 
@@ -194,6 +199,192 @@ public class ChatService {
         return chatMapper.findActiveAnnouncements(System.currentTimeMillis());
     }
 
+    /**
+     * 交给异步写入队列，返回立即写入内存缓冲的消息。
+     * 队列满时玩家发言直接拒绝，系统公告改为同步写入
+     */
+    private Map<String, Object> submitMessage(String senderId, String senderName, String channel, String content,
+                                              int serverId, long createTime, String targetId,
+                                              String nationId, String allianceId) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("senderId", senderId);
+        row.put("senderName", senderName);
+        row.put("channel", channel);
+        row.put("content", content);
+        row.put("serverId", serverId);
+        row.put("createTime", createTime);
+        row.put("targetId", targetId);
+        row.put("nationId", nationId);
+        row.put("allianceId", allianceId);
+        if (!chatMessageWriter.submit(row)) {
+            if (isPlayerSender(senderId)) throw new BusinessException(400, "聊天繁忙，请稍后再试");
+            chatMapper.insertChatMessage(row);
+        }
+        return toMessage(row);
+    }
+
+    /**
+     * 消息行 → 与轮询查询返回字段一致的消息（落库前没有 id）
+     */
+    private Map<String, Object> toMessage(Map<String, Object> row) {
+        String senderId = String.valueOf(row.get("senderId"));
+        Map<String, Object> message = new HashMap<>();
+        message.put("senderId", senderId);
+        message.put("senderName", resolveDisplayName(senderId, String.valueOf(row.get("senderName"))));
+        message.put("channel", row.get("channel"));
+        message.put("content", row.get("content"));
+        message.put("createTime", row.get("createTime"));
+        if (row.get("targetId") != null) message.put("targetId", row.get("targetId"));
+        return message;
+    }
+
+    /**
+     * 写入对应频道的内存缓冲并唤醒长轮询；私聊同时写入双方的缓冲
+     */
+    private void publish(Map<String, Object> message, int serverId, String channel,
+                         String targetId, String nationId, String allianceId) {
+        String senderId = String.valueOf(message.get("senderId"));
+        for (String key : bufferKeys(serverId, channel, senderId, targetId, nationId, allianceId)) {
+            chatChannelHub.append(key, message);
+        }
+    }
+
+    /**
+     * 异步复核判定违规后撤回：库里和内存缓冲中的内容都替换为屏蔽文案
+     */
+    private void retractMessage(String senderId, long createTime, int serverId, String channel,
+                                String targetId, String nationId, String allianceId) {
+        String mask = ugcModerationService.getContentMask();
+        chatMessageWriter.flush();
+        chatMapper.maskMessage(senderId, createTime, mask);
+        for (String key : bufferKeys(serverId, channel, senderId, targetId, nationId, allianceId)) {
+            chatChannelHub.replaceContent(key, senderId, createTime, mask);
+        }
+        logger.info("聊天内容复核未通过，已撤回: sender={}, channel={}", senderId, channel);
+    }
+
+    private List<String> bufferKeys(int serverId, String channel, String senderId,
+                                    String targetId, String nationId, String allianceId) {
+        switch (channel) {
+            case "nation":
+                return Collections.singletonList(ChatChannelHub.channelKey(serverId, channel, nationId));
+            case "alliance":
+                return Collections.singletonList(ChatChannelHub.channelKey(serverId, channel, allianceId));
+            case "private": {
+                List<String> keys = new ArrayList<>();
+                keys.add(ChatChannelHub.channelKey(serverId, channel, senderId));
+                if (targetId != null && !targetId.equals(senderId)) {
+                    keys.add(ChatChannelHub.channelKey(serverId, channel, targetId));
+                }
+                return keys;
+            }
+            default:
+                return Collections.singletonList(ChatChannelHub.channelKey(serverId, channel, null));
+        }
+    }
+
+    /**
+     * 玩家在某频道上对应的缓冲位置：国家/联盟频道按所属国家/联盟，私聊按玩家本人
+     */
+    private ChannelRef channelRef(String userId, String channel) {
+        int serverId = extractServerId(userId);
+        switch (channel) {
+            case "nation":
+                return new ChannelRef(serverId, channel, getPlayerNation(userId), userId);
+            case "alliance":
+                return new ChannelRef(serverId, channel, getPlayerAlliance(userId), userId);
+            case "private":
+                return new ChannelRef(serverId, channel, userId, userId);
+            default:
+                return new ChannelRef(serverId, channel, null, userId);
+        }
+    }
+
+    /** 国家/联盟未确定时不走缓冲，按原逻辑查库 */
+    private ChatChannelHub.ChannelBuffer buffer(ChannelRef ref) {
+        boolean scoped = "nation".equals(ref.channel) || "alliance".equals(ref.channel);
+        if (scoped && (ref.scopeId == null || ref.scopeId.isEmpty())) return null;
+        boolean isPrivate = "private".equals(ref.channel);
+        int capacity = isPrivate ? ChatChannelHub.PRIVATE_CAPACITY : ChatChannelHub.CHANNEL_CAPACITY;
+        return chatChannelHub.get(ChatChannelHub.channelKey(ref.serverId, ref.channel, ref.scopeId), capacity,
+                () -> withUnflushed(ref, loadRecent(ref, capacity), capacity));
+    }
+
+    /**
+     * 预载时补上还在写入队列里的本频道消息（按时间倒序，最多 limit 条；与库里重复的由缓冲去重）
+     */
+    private List<Map<String, Object>> withUnflushed(ChannelRef ref, List<Map<String, Object>> recentDesc, int limit) {
+        List<Map<String, Object>> merged = new ArrayList<>();
+        for (Map<String, Object> row : chatMessageWriter.unflushed()) {
+            if (inChannel(ref, row)) merged.add(toMessage(row));
+        }
+        if (merged.isEmpty()) return recentDesc;
+        if (recentDesc != null) merged.addAll(recentDesc);
+        merged.sort((a, b) -> Long.compare(timeOf(b), timeOf(a)));
+        return merged;
+    }
+
+    private boolean inChannel(ChannelRef ref, Map<String, Object> row) {
+        if (!ref.channel.equals(row.get("channel"))) return false;
+        if (!String.valueOf(ref.serverId).equals(String.valueOf(row.get("serverId")))) return false;
+        switch (ref.channel) {
+            case "nation":
+                return Objects.equals(ref.scopeId, row.get("nationId"));
+            case "alliance":
+                return Objects.equals(ref.scopeId, row.get("allianceId"));
+            case "private":
+                return ref.userId.equals(row.get("senderId")) || ref.userId.equals(row.get("targetId"));
+            default:
+                return true;
+        }
+    }
+
+    private static long timeOf(Map<String, Object> msg) {
+        Object v = msg.get("createTime");
+        return v instanceof Number ? ((Number) v).longValue() : 0L;
+    }
+
+    /** 冷启动预载：最近 limit 条（倒序） */
+    private List<Map<String, Object>> loadRecent(ChannelRef ref, int limit) {
+        List<Map<String, Object>> msgs;
+        switch (ref.channel) {
+            case "nation":
+                msgs = chatMapper.findRecentByNation(ref.serverId, ref.scopeId, limit);
+                break;
+            case "alliance":
+                msgs = chatMapper.findRecentByAlliance(ref.serverId, ref.scopeId, limit);
+                break;
+            case "private":
+                msgs = chatMapper.findRecentPrivate(ref.serverId, ref.userId, limit);
+                break;
+            default:
+                msgs = chatMapper.findRecent(ref.channel, ref.serverId, limit);
+                break;
+        }
+        normalizeSenderNames(msgs);
+        return msgs;
+    }
+
+    private List<Map<String, Object>> loadSince(ChannelRef ref, long sinceTime) {
+        List<Map<String, Object>> result;
+        switch (ref.channel) {
+            case "nation":
+                result = chatMapper.pollByNation(ref.serverId, ref.scopeId, sinceTime, POLL_LIMIT);
+                break;
+            case "alliance":
+                result = chatMapper.pollByAlliance(ref.serverId, ref.scopeId, sinceTime, POLL_LIMIT);
+                break;
+            case "private":
+                result = chatMapper.pollPrivate(ref.serverId, ref.userId, sinceTime, POLL_LIMIT);
+                break;
+            default:
+                result = chatMapper.findSince(ref.channel, ref.serverId, sinceTime, POLL_LIMIT);
+                break;
+        }
+        normalizeSenderNames(result);
+        return result;
+    }
+
     private String getPlayerNation(String userId) {
         try {
             return nationWarService.getPlayerNation(userId);
@@ -215,17 +406,29 @@ public class ChatService {
     }
 
     private void normalizeSenderNames(List<Map<String, Object>> msgs) {
-        if (msgs == null) return;
+        if (msgs == null || msgs.isEmpty()) return;
+        List<String> senderIds = new ArrayList<>();
         for (Map<String, Object> msg : msgs) {
             if (msg == null) continue;
             String senderId = String.valueOf(msg.get("senderId"));
+            if (isPlayerSender(senderId)) senderIds.add(senderId);
+        }
+        Map<String, String> names = playerNameResolver.resolveAll(senderIds);
+        for (Map<String, Object> msg : msgs) {
+            if (msg == null) continue;
             String senderName = String.valueOf(msg.get("senderName"));
-            msg.put("senderName", resolveDisplayName(senderId, senderName));
+            String name = names.get(String.valueOf(msg.get("senderId")));
+            if (name != null && !name.isEmpty() && !"君主".equals(name)) senderName = name;
+            msg.put("senderName", senderName);
         }
     }
 
+    private boolean isPlayerSender(String userId) {
+        return userId != null && !userId.isEmpty() && !"SYSTEM".equals(userId) && !userId.startsWith("NPC_");
+    }
+
     private String resolveDisplayName(String userId, String fallback) {
-        if (userId == null || userId.isEmpty() || "SYSTEM".equals(userId) || userId.startsWith("NPC_")) {
+        if (!isPlayerSender(userId)) {
             return fallback;
         }
         try {
@@ -234,4 +437,18 @@ public class ChatService {
         } catch (Exception ignore) { }
         return fallback;
     }
+
+    private static final class ChannelRef {
+        final int serverId;
+        final String channel;
+        final String scopeId;
+        final String userId;
+
+        ChannelRef(int serverId, String channel, String scopeId, String userId) {
+            this.serverId = serverId;
+            this.channel = channel;
+            this.scopeId = scopeId;
+            this.userId = userId;
+        }
+    }
 }
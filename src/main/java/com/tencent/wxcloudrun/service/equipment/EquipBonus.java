@@ -0,0 +1,48 @@
+package com.tencent.wxcloudrun.service.equipment;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 武将装备 + 套装的属性加成汇总（只读）
+ */
+public final class EquipBonus {
+
+    public static final EquipBonus ZERO = new EquipBonus(0, 0, 0, 0, 0, 0, 0, 0);
+
+    public final int attack;
+    public final int defense;
+    public final int valor;
+    public final int command;
+    public final int hp;
+    public final int mobility;
+    public final int dodge;
+    public final int hit;
+
+    public EquipBonus(int attack, int defense, int valor, int command, int hp, int mobility, int dodge, int hit) {
+        this.attack = attack;
+        this.defense = defense;
+        this.valor = valor;
+        this.command = command;
+        this.hp = hp;
+        this.mobility = mobility;
+        this.dodge = dodge;
+        this.hit = hit;
+    }
+
+    /**
+     * 转成 属性名 → 数值（武将详情等接口返回用）
+     */
+    public Map<String, Integer> toMap() {
+        Map<String, Integer> m = new HashMap<>();
+        m.put("attack", attack);
+        m.put("defense", defense);
+        m.put("valor", valor);
+        m.put("command", command);
+        m.put("hp", hp);
+        m.put("mobility", mobility);
+        m.put("dodge", dodge);
+        m.put("hit", hit);
+        return m;
+    }
+}
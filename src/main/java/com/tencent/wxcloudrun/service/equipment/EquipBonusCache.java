@@ -0,0 +1,390 @@
+package com.tencent.wxcloudrun.service.equipment;
+
+import com.tencent.wxcloudrun.config.EquipmentConfig;
+import com.tencent.wxcloudrun.dao.EquipmentMapper;
+import com.tencent.wxcloudrun.model.Equipment;
+import com.tencent.wxcloudrun.service.catalog.CatalogSnapshot;
+import com.tencent.wxcloudrun.service.catalog.GameCatalog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 武将装备加成缓存（按武将）
+ *
+ * 1. 每个武将缓存已穿戴装备逐件折算好的属性块（基础 + 附加 + 强化），以及加上套装效果后的汇总 {@link EquipBonus}；
+ *    读取直接返回汇总，首次读取时才查库（批量读取一次查一批武将）
+ * 2. {@link com.tencent.wxcloudrun.repository.EquipmentRepository} 保存/删除装备时按件增量更新：
+ *    从原武将移除、加入新武将，只重算这两名武将（最多 6 件）。穿戴、卸下、强化、洗练、融合、转移都走这里
+ * 3. 套装配置热更新后，读取时发现配置目录版本变了，就用已缓存的属性块重算汇总，不查库
+ * 4. 每个武将一个版本号，查库期间有写入时丢弃查到的结果（同 CombatSnapshotCache）；
+ *    在事务内写入时，事务结束（提交或回滚）后再丢弃涉及武将的缓存：提交前并发查库读到的是旧数据，不能留在新版本下
+ */
+@Component
+public class EquipBonusCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(EquipBonusCache.class);
+
+    /** 30分钟没有读取的武将清出内存 */
+    private static final long IDLE_EXPIRE_MS = 30 * 60 * 1000L;
+
+    private static final int MAX_ENHANCE_LEVEL = 20;
+    private static final double EARLY_LEVEL_BONUS_PER_LEVEL = 1.0 / 11.0; // +1 ~ +7
+    private static final double LATE_LEVEL_BONUS_PER_LEVEL = 2.0 / 11.0;  // +8 ~ +20
+    private static final int BOOST_START_LEVEL = 8;
+    private static final int[] ENHANCE_SP_ADD = {
+            0,0,0,1,1,2,2,3,4,5,6,7,8,9,10,11,12,13,14,15
+    };
+
+    private static final int ATTACK = 0;
+    private static final int DEFENSE = 1;
+    private static final int VALOR = 2;
+    private static final int COMMAND = 3;
+    private static final int HP = 4;
+    private static final int MOBILITY = 5;
+    private static final int DODGE = 6;
+    private static final int STATS = 7;
+
+    @Autowired
+    private EquipmentMapper equipmentMapper;
+
+    @Autowired
+    private GameCatalog gameCatalog;
+
+    private final Map<String, Loadout> loadouts = new ConcurrentHashMap<>();
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    /** 已缓存武将身上的装备：equipmentId → generalId */
+    private final Map<String, String> equippedOn = new ConcurrentHashMap<>();
+
+    /**
+     * 武将当前的装备加成，没有装备时为 {@link EquipBonus#ZERO}
+     */
+    public EquipBonus get(String generalId) {
+        if (generalId == null) return EquipBonus.ZERO;
+        Loadout loadout = loadouts.get(generalId);
+        if (loadout == null) {
+            loadout = load(Collections.singletonList(generalId)).get(generalId);
+        }
+        return totals(generalId, loadout);
+    }
+
+    /**
+     * 批量读取，未缓存的武将一次查库；每个 generalId 都有结果
+     */
+    public Map<String, EquipBonus> get(List<String> generalIds) {
+        Map<String, EquipBonus> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String id : generalIds) {
+            if (id == null) continue;
+            Loadout loadout = loadouts.get(id);
+            if (loadout != null) {
+                result.put(id, totals(id, loadout));
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (Map.Entry<String, Loadout> e : load(missing).entrySet()) {
+                result.put(e.getKey(), totals(e.getKey(), e.getValue()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 装备已写库：从原武将移除、按新状态加入穿戴的武将
+     */
+    public void onSaved(Equipment equipment) {
+        if (equipment == null || equipment.getId() == null) return;
+        String next = Boolean.TRUE.equals(equipment.getEquipped()) ? equipment.getEquippedGeneralId() : null;
+        String prev;
+        synchronized (this) {
+            prev = detach(equipment.getId());
+            if (next != null) {
+                bump(next);
+                Loadout loadout = loadouts.get(next);
+                if (loadout != null) {
+                    loadouts.put(next, loadout.with(equipment.getId(), Piece.of(equipment), gameCatalog.current()));
+                    equippedOn.put(equipment.getId(), next);
+                }
+            }
+        }
+        discardAfterTransaction(prev, next);
+    }
+
+    /**
+     * 装备已删除
+     */
+    public void onDeleted(String equipmentId) {
+        if (equipmentId == null) return;
+        String prev;
+        synchronized (this) {
+            prev = detach(equipmentId);
+        }
+        discardAfterTransaction(prev, null);
+    }
+
+    /**
+     * 直接批量改库（如解雇武将时整体卸下）后调用，下次读取重新查库
+     */
+    public void invalidate(String generalId) {
+        if (generalId == null) return;
+        discard(generalId);
+        discardAfterTransaction(generalId, null);
+    }
+
+    private synchronized void discard(String generalId) {
+        if (generalId == null) return;
+        bump(generalId);
+        Loadout loadout = loadouts.remove(generalId);
+        if (loadout != null) {
+            for (String equipmentId : loadout.pieces.keySet()) equippedOn.remove(equipmentId, generalId);
+        }
+    }
+
+    @Scheduled(cron = "0 */10 * * * ?")
+    public synchronized void evictIdle() {
+        long expireBefore = System.currentTimeMillis() - IDLE_EXPIRE_MS;
+        int evicted = 0;
+        Iterator<Map.Entry<String, Loadout>> it = loadouts.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Loadout> e = it.next();
+            if (e.getValue().lastAccessTime >= expireBefore) continue;
+            it.remove();
+            for (String equipmentId : e.getValue().pieces.keySet()) equippedOn.remove(equipmentId, e.getKey());
+            evicted++;
+        }
+        if (evicted > 0) logger.debug("清理闲置武将装备加成 {} 个", evicted);
+    }
+
+    // ==================== 内部 ====================
+
+    /** 从当前所在的已缓存武将身上移除，返回该武将（不在缓存中时为 null）；调用方持有锁 */
+    private String detach(String equipmentId) {
+        String prev = equippedOn.remove(equipmentId);
+        if (prev != null) {
+            bump(prev);
+            Loadout loadout = loadouts.get(prev);
+            if (loadout != null) loadouts.put(prev, loadout.without(equipmentId, gameCatalog.current()));
+        }
+        return prev;
+    }
+
+    private void bump(String generalId) {
+        versions.merge(generalId, 1L, Long::sum);
+    }
+
+    private long version(String generalId) {
+        Long v = versions.get(generalId);
+        return v != null ? v : 0L;
+    }
+
+    /**
+     * 增量更新先于提交生效；事务结束后不论提交还是回滚都丢弃涉及的武将，下次读取按库里的数据重建。
+     * 提交后也要丢弃：提交前并发查库的结果拿到的是写入后的版本号，却是旧数据
+     */
+    private void discardAfterTransaction(String prev, String next) {
+        if ((prev == null && next == null) || !TransactionSynchronizationManager.isSynchronizationActive()) return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                discard(prev);
+                discard(next);
+            }
+        });
+    }
+
+    private Map<String, Loadout> load(List<String> generalIds) {
+        Map<String, Long> loadVersions = new HashMap<>();
+        Map<String, Map<String, Piece>> pieces = new LinkedHashMap<>();
+        for (String id : generalIds) {
+            loadVersions.put(id, version(id));
+            pieces.put(id, new LinkedHashMap<>());
+        }
+        List<Equipment> equips = equipmentMapper.findEquippedByGeneralIds(generalIds);
+        if (equips != null) {
+            for (Equipment eq : equips) {
+                Map<String, Piece> list = pieces.get(eq.getEquippedGeneralId());
+                if (list != null) list.put(eq.getId(), Piece.of(eq));
+            }
+        }
+
+        CatalogSnapshot catalog = gameCatalog.current();
+        Map<String, Loadout> result = new HashMap<>();
+        synchronized (this) {
+            for (Map.Entry<String, Map<String, Piece>> e : pieces.entrySet()) {
+                String id = e.getKey();
+                Loadout cached = loadouts.get(id);
+                if (cached != null) {
+                    // 同一武将被并发加载过，以已缓存的为准
+                    result.put(id, cached);
+                    continue;
+                }
+                Loadout loaded = new Loadout(e.getValue(), catalog);
+                result.put(id, loaded);
+                // 查库期间有写入，结果可能过时，只用这一次不入缓存
+                if (version(id) != loadVersions.get(id)) continue;
+                loadouts.put(id, loaded);
+                for (String equipmentId : loaded.pieces.keySet()) equippedOn.put(equipmentId, id);
+            }
+        }
+        return result;
+    }
+
+    private EquipBonus totals(String generalId, Loadout loadout) {
+        if (loadout == null) return EquipBonus.ZERO;
+        loadout.lastAccessTime = System.currentTimeMillis();
+        CatalogSnapshot catalog = gameCatalog.current();
+        if (loadout.catalogVersion == catalog.getVersion()) return loadout.totals;
+        // 套装配置已热更新，用缓存的属性块重算
+        Loadout refreshed = loadout.recompute(catalog);
+        loadouts.replace(generalId, loadout, refreshed);
+        return refreshed.totals;
+    }
+
+    /**
+     * 单件装备折算后的属性块
+     */
+    static final class Piece {
+        final int[] stats;
+        final String setId;
+        final double qualityRate;
+
+        private Piece(int[] stats, String setId, double qualityRate) {
+            this.stats = stats;
+            this.setId = setId;
+            this.qualityRate = qualityRate;
+        }
+
+        static Piece of(Equipment eq) {
+            int[] stats = new int[STATS];
+            add(stats, eq.getBaseAttributes());
+            add(stats, eq.getBonusAttributes());
+            addEnhance(stats, eq);
+
+            Equipment.SetInfo si = eq.getSetInfo();
+            String setId = si != null && si.getSetId() != null && !si.getSetId().isEmpty() ? si.getSetId() : null;
+            int qv = eq.getQualityValue() != null && eq.getQualityValue() > 0 ? eq.getQualityValue() : 1;
+            double rate = EquipmentConfig.getEquipQualityLevel(qv).attrRate / 10000.0;
+            return new Piece(stats, setId, rate);
+        }
+
+        private static void add(int[] stats, Equipment.Attributes a) {
+            if (a == null) return;
+            stats[ATTACK] += safe(a.getAttack());
+            stats[DEFENSE] += safe(a.getDefense());
+            stats[VALOR] += safe(a.getValor());
+            stats[COMMAND] += safe(a.getCommand());
+            stats[HP] += safe(a.getHp());
+            stats[MOBILITY] += safe(a.getMobility());
+            if (a.getDodge() != null) stats[DODGE] += a.getDodge().intValue();
+        }
+
+        /** 强化加成按基础属性实时折算 */
+        private static void addEnhance(int[] stats, Equipment eq) {
+            Equipment.Attributes base = eq.getBaseAttributes();
+            int level = eq.getEnhanceLevel() != null ? eq.getEnhanceLevel() : 0;
+            if (base == null || level <= 0) return;
+            int clampedLevel = Math.min(level, MAX_ENHANCE_LEVEL);
+            double bonusRate = enhanceBonusRate(clampedLevel);
+            stats[ATTACK] += (int) (safe(base.getAttack()) * bonusRate);
+            stats[DEFENSE] += (int) (safe(base.getDefense()) * bonusRate);
+            stats[VALOR] += (int) (safe(base.getValor()) * bonusRate);
+            stats[COMMAND] += (int) (safe(base.getCommand()) * bonusRate);
+            stats[HP] += (int) (safe(base.getHp()) * bonusRate);
+            stats[MOBILITY] += (int) (safe(base.getMobility()) * bonusRate) + ENHANCE_SP_ADD[clampedLevel - 1];
+        }
+
+        private static double enhanceBonusRate(int level) {
+            if (level < BOOST_START_LEVEL) return level * EARLY_LEVEL_BONUS_PER_LEVEL;
+            double earlyBonus = (BOOST_START_LEVEL - 1) * EARLY_LEVEL_BONUS_PER_LEVEL;
+            int boostedLevels = level - (BOOST_START_LEVEL - 1);
+            return earlyBonus + boostedLevels * LATE_LEVEL_BONUS_PER_LEVEL;
+        }
+
+        private static int safe(Integer v) {
+            return v != null ? v : 0;
+        }
+    }
+
+    /**
+     * 单个武将的已穿戴装备及汇总；装备变化时整体替换
+     */
+    static final class Loadout {
+        final Map<String, Piece> pieces;
+        final EquipBonus totals;
+        final long catalogVersion;
+        volatile long lastAccessTime = System.currentTimeMillis();
+
+        Loadout(Map<String, Piece> pieces, CatalogSnapshot catalog) {
+            this.pieces = pieces;
+            this.totals = sum(pieces.values(), catalog);
+            this.catalogVersion = catalog.getVersion();
+        }
+
+        Loadout with(String equipmentId, Piece piece, CatalogSnapshot catalog) {
+            Map<String, Piece> next = new LinkedHashMap<>(pieces);
+            next.put(equipmentId, piece);
+            return new Loadout(next, catalog);
+        }
+
+        Loadout without(String equipmentId, CatalogSnapshot catalog) {
+            if (!pieces.containsKey(equipmentId)) return this;
+            Map<String, Piece> next = new LinkedHashMap<>(pieces);
+            next.remove(equipmentId);
+            return new Loadout(next, catalog);
+        }
+
+        Loadout recompute(CatalogSnapshot catalog) {
+            return new Loadout(pieces, catalog);
+        }
+
+        private static EquipBonus sum(Collection<Piece> pieces, CatalogSnapshot catalog) {
+            int[] s = new int[STATS];
+            int hit = 0;
+            Map<String, double[]> sets = null; // setId → {件数, 品质系数之和}
+            for (Piece p : pieces) {
+                for (int i = 0; i < STATS; i++) s[i] += p.stats[i];
+                if (p.setId == null) continue;
+                if (sets == null) sets = new HashMap<>();
+                double[] agg = sets.computeIfAbsent(p.setId, k -> new double[2]);
+                agg[0]++;
+                agg[1] += p.qualityRate;
+            }
+            if (sets != null) {
+                for (Map.Entry<String, double[]> e : sets.entrySet()) {
+                    int count = (int) e.getValue()[0];
+                    if (count < 3) continue;
+                    Map<String, Object> suit = catalog.getSuitBySetId(e.getKey());
+                    if (suit == null) continue;
+                    // 同套装装备的品质缩放取平均
+                    double qRate = e.getValue()[1] / count;
+                    s[ATTACK] += (int) (getInt(suit, "gen_att") * qRate);
+                    s[DEFENSE] += (int) (getInt(suit, "gen_def") * qRate);
+                    if (count >= 6) {
+                        s[VALOR] += (int) (getInt(suit, "gen_for") * qRate);
+                        s[COMMAND] += (int) (getInt(suit, "gen_leader") * qRate);
+                        s[HP] += (int) (getInt(suit, "army_life") * qRate);
+                        s[MOBILITY] += (int) (getInt(suit, "army_sp") * qRate);
+                        hit += (int) (getInt(suit, "army_hit") * qRate);
+                        s[DODGE] += (int) (getInt(suit, "army_mis") * qRate);
+                    }
+                }
+            }
+            if (pieces.isEmpty()) return EquipBonus.ZERO;
+            return new EquipBonus(s[ATTACK], s[DEFENSE], s[VALOR], s[COMMAND], s[HP], s[MOBILITY], s[DODGE], hit);
+        }
+
+        private static int getInt(Map<String, Object> m, String key) {
+            Object v = m.get(key);
+            return v instanceof Number ? ((Number) v).intValue() : 0;
+        }
+    }
+}
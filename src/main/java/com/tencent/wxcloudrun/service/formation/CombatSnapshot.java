@@ -0,0 +1,103 @@
+package com.tencent.wxcloudrun.service.formation;
+
+import com.tencent.wxcloudrun.service.battle.BattleCalculator;
+
+import java.util.List;
+
+/**
+ * 玩家阵型的战斗快照 —— 阵型中每个武将组装战斗单位所需的全部属性
+ *
+ * 武将、装备、兵法、名将特性都已折算成基本类型字段，战斗时直接复制，不再查库。
+ * 快照一经放入 {@link CombatSnapshotCache} 即只读，阵型/武将/装备/兵法变化或配置目录重新装载时整份作废重建。
+ */
+public class CombatSnapshot {
+
+    final long version;
+    /** 构建时的配置目录版本（名将特性、套装等取自配置目录） */
+    final long catalogVersion;
+    volatile long lastAccessTime;
+
+    /** 按阵型槽位顺序 */
+    private final List<CombatGeneral> slotOrder;
+    /** 按出手顺序（同 FormationService.getBattleOrder：机动高的在前，相同按槽位） */
+    private final List<CombatGeneral> battleOrder;
+
+    CombatSnapshot(long version, long catalogVersion, List<CombatGeneral> slotOrder, List<CombatGeneral> battleOrder) {
+        this.version = version;
+        this.catalogVersion = catalogVersion;
+        this.slotOrder = slotOrder;
+        this.battleOrder = battleOrder;
+        this.lastAccessTime = System.currentTimeMillis();
+    }
+
+    public List<CombatGeneral> getSlotOrder() {
+        return slotOrder;
+    }
+
+    public List<CombatGeneral> getBattleOrder() {
+        return battleOrder;
+    }
+
+    /**
+     * 单个武将的战斗属性（武将四维已按默认值补齐，装备/特性已汇总）
+     */
+    public static class CombatGeneral {
+        public String key;              // 武将ID，没有ID时用名字（国战剩余兵力的key）
+        public String generalId;
+        public String name;
+        public Integer level;
+        public int slotIndex;
+
+        public int attack;
+        public int defense;
+        public int valor;
+        public int command;
+        public int dodge;
+        public int mobility;
+        public int troopType;
+        public int soldierTier;
+        public int soldierCount;        // 建快照时武将的当前兵力
+        public int maxSoldierCount;
+
+        public int equipAttack;
+        public int equipDefense;
+        public int equipMobility;
+        public int equipHit;
+        public int equipDodge;
+
+        public int traitAttack;
+        public int traitDefense;
+        public int traitDamage;
+        public int traitDamageResist;
+        public double traitLifePct;
+        public boolean traitImmuneAmbush;
+        public int traitMobility;
+        public int traitDodge;
+        public int traitSoldierCount;
+        public double traitTacticsMultiplier = 1.0;
+
+        public double tacticsTriggerBonus;
+        public String tacticsId;
+        public String tacticsName;
+        public int tacticsLevel;
+        public double tacticsEffectValue;
+        public double tacticsTriggerRate;
+
+        /** 排出手顺序用的机动：武将原始机动 + 装备机动 */
+        int orderMobility;
+        /** 常规战斗用的单位模板，取用时复制 */
+        BattleCalculator.BattleUnit prototype;
+
+        /** 把兵法属性写到战斗单位上 */
+        public void applyTactics(BattleCalculator.BattleUnit u) {
+            u.tacticsTriggerBonus = tacticsTriggerBonus;
+            if (tacticsId != null) {
+                u.tacticsId = tacticsId;
+                u.tacticsName = tacticsName;
+                u.tacticsLevel = tacticsLevel;
+                u.tacticsEffectValue = tacticsEffectValue;
+                u.tacticsTriggerRate = tacticsTriggerRate;
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.tencent.wxcloudrun.service.formation;
+
+import com.tencent.wxcloudrun.service.catalog.GameCatalog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 战斗快照缓存（按用户）
+ *
+ * 构建快照前为用户取一个版本号（全局递增，没有时新分配），阵型、武将、装备、兵法的写入路径调用 {@link #invalidate}
+ * 移除版本号并丢弃快照；放入时版本号已不是当前值（或已被移除）则丢弃，避免构建期间的修改被旧快照覆盖。
+ * 在事务内失效时，事务结束后再失效一次：提交前并发构建读到的仍是旧数据，不能留在新版本下。
+ * 版本号随快照一起清理，闲置清理后不再占内存。
+ * 快照还记录构建时的配置目录版本，配置热更新后旧快照视为未命中。
+ */
+@Component
+public class CombatSnapshotCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(CombatSnapshotCache.class);
+
+    /** 30分钟没有参战的快照清出内存 */
+    private static final long IDLE_EXPIRE_MS = 30 * 60 * 1000L;
+
+    @Autowired
+    private GameCatalog gameCatalog;
+
+    private final AtomicLong versionSeq = new AtomicLong();
+    /** userId → 当前版本号；没有记录的用户上一份构建一律作废 */
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    private final Map<String, CombatSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    public CombatSnapshot get(String userId) {
+        if (userId == null) return null;
+        CombatSnapshot snapshot = snapshots.get(userId);
+        if (snapshot == null) return null;
+        if (!isCurrent(userId, snapshot)) {
+            snapshots.remove(userId, snapshot);
+            return null;
+        }
+        snapshot.lastAccessTime = System.currentTimeMillis();
+        return snapshot;
+    }
+
+    /** 构建快照前取当前版本号，没有时分配一个新的 */
+    public long version(String userId) {
+        return versions.computeIfAbsent(userId, k -> versionSeq.incrementAndGet());
+    }
+
+    private boolean isCurrent(String userId, CombatSnapshot snapshot) {
+        Long v = versions.get(userId);
+        return v != null && v == snapshot.version && snapshot.catalogVersion == catalogVersion();
+    }
+
+    /** 当前配置目录版本，构建快照前与 {@link #version} 一起取 */
+    public long catalogVersion() {
+        return gameCatalog.current().getVersion();
+    }
+
+    void put(String userId, CombatSnapshot snapshot) {
+        if (userId == null || !isCurrent(userId, snapshot)) return;
+        snapshots.put(userId, snapshot);
+        if (!isCurrent(userId, snapshot)) {
+            snapshots.remove(userId, snapshot);
+        }
+    }
+
+    /**
+     * 用户的阵型、武将、装备或兵法发生变化
+     */
+    public void invalidate(String userId) {
+        if (userId == null) return;
+        discard(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    discard(userId);
+                }
+            });
+        }
+    }
+
+    private void discard(String userId) {
+        versions.remove(userId);
+        snapshots.remove(userId);
+    }
+
+    @Scheduled(cron = "0 */10 * * * ?")
+    public void evictIdle() {
+        long expireBefore = System.currentTimeMillis() - IDLE_EXPIRE_MS;
+        int before = snapshots.size();
+        snapshots.values().removeIf(s -> s.lastAccessTime < expireBefore);
+        // 没有快照的版本号一并清掉；正在构建的那份放入时发现版本号不在了，按未命中处理
+        versions.keySet().removeIf(userId -> !snapshots.containsKey(userId));
+        int evicted = before - snapshots.size();
+        if (evicted > 0) logger.debug("清理闲置战斗快照 {} 个", evicted);
+    }
+}
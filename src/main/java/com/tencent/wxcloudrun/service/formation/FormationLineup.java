@@ -0,0 +1,61 @@
+package com.tencent.wxcloudrun.service.formation;
+
+import com.tencent.wxcloudrun.model.Formation;
+import com.tencent.wxcloudrun.model.General;
+import com.tencent.wxcloudrun.service.catalog.TraitEffects;
+import com.tencent.wxcloudrun.service.equipment.EquipBonus;
+
+import java.util.*;
+
+/**
+ * 一次性加载好的阵型阵容：槽位上的武将及其装备加成、名将特性、兵法
+ * 由 {@link FormationLineupLoader} 按固定次数的批量查询组装
+ */
+public class FormationLineup {
+
+    private final Formation formation;
+    /** 按槽位顺序，只包含武将存在的槽位 */
+    private final List<Member> members;
+    private final Map<Integer, Member> bySlot = new HashMap<>();
+
+    FormationLineup(Formation formation, List<Member> members) {
+        this.formation = formation;
+        this.members = members;
+        for (Member m : members) bySlot.put(m.slotIndex, m);
+    }
+
+    public Formation getFormation() {
+        return formation;
+    }
+
+    public List<Member> getMembers() {
+        return members;
+    }
+
+    /** 槽位为空或武将已不存在时返回 null */
+    public Member getMember(int slotIndex) {
+        return bySlot.get(slotIndex);
+    }
+
+    public static class Member {
+        final int slotIndex;
+        final General general;
+        EquipBonus equipBonus = EquipBonus.ZERO;
+        TraitEffects traitEffects = TraitEffects.NONE;
+        int tacticsTriggerBonus;
+        /** 武将携带的兵法实例（user_tactics_instance 行），未携带或未拥有时为 null */
+        Map<String, Object> ownedTactics;
+
+        Member(int slotIndex, General general) {
+            this.slotIndex = slotIndex;
+            this.general = general;
+        }
+
+        public int getSlotIndex() { return slotIndex; }
+        public General getGeneral() { return general; }
+        public EquipBonus getEquipBonus() { return equipBonus; }
+        public TraitEffects getTraitEffects() { return traitEffects; }
+        public int getTacticsTriggerBonus() { return tacticsTriggerBonus; }
+        public Map<String, Object> getOwnedTactics() { return ownedTactics; }
+    }
+}
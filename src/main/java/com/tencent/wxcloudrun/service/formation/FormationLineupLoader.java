@@ -0,0 +1,136 @@
+package com.tencent.wxcloudrun.service.formation;
+
+import com.tencent.wxcloudrun.dao.UserTacticsMapper;
+import com.tencent.wxcloudrun.model.Formation;
+import com.tencent.wxcloudrun.model.General;
+import com.tencent.wxcloudrun.repository.GeneralRepository;
+import com.tencent.wxcloudrun.service.SuitConfigService;
+import com.tencent.wxcloudrun.service.equipment.EquipBonus;
+import com.tencent.wxcloudrun.service.general.GeneralService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * 阵容批量加载
+ *
+ * 6个槽位的武将、槽位兵法加成、兵法实例各只查一次，装备加成取自缓存（未缓存的一次查出），名将特性取自配置目录，
+ * 不再按武将逐个 findById / 查装备 / 查兵法。
+ */
+@Component
+public class FormationLineupLoader {
+
+    @Autowired
+    private GeneralRepository generalRepository;
+
+    @Autowired
+    private SuitConfigService suitConfigService;
+
+    @Autowired
+    private GeneralService generalService;
+
+    @Autowired
+    private UserTacticsMapper userTacticsMapper;
+
+    /**
+     * 只加载武将和装备加成（阵型展示、出手顺序）
+     */
+    public FormationLineup loadWithEquipment(Formation formation) {
+        List<FormationLineup.Member> members = loadMembers(formation);
+        fillEquipBonus(members);
+        return new FormationLineup(formation, members);
+    }
+
+    /**
+     * 加载战斗所需的全部数据：武将、装备加成、名将特性、槽位兵法加成、携带兵法
+     */
+    public FormationLineup loadForBattle(Formation formation) {
+        List<FormationLineup.Member> members = loadMembers(formation);
+        fillEquipBonus(members);
+        fillTraits(members);
+        fillTactics(members);
+        return new FormationLineup(formation, members);
+    }
+
+    private List<FormationLineup.Member> loadMembers(Formation formation) {
+        List<String> ids = new ArrayList<>();
+        for (Formation.FormationSlot slot : formation.getSlots()) {
+            if (slot.getGeneralId() != null) ids.add(slot.getGeneralId());
+        }
+        Map<String, General> generals = new HashMap<>();
+        for (General g : generalRepository.findByIds(ids)) {
+            generals.put(g.getId(), g);
+        }
+
+        List<FormationLineup.Member> members = new ArrayList<>();
+        for (Formation.FormationSlot slot : formation.getSlots()) {
+            if (slot.getGeneralId() == null) continue;
+            General g = generals.get(slot.getGeneralId());
+            if (g == null) continue;
+            members.add(new FormationLineup.Member(slot.getIndex(), g));
+        }
+        return members;
+    }
+
+    private void fillEquipBonus(List<FormationLineup.Member> members) {
+        if (members.isEmpty()) return;
+        List<String> ids = new ArrayList<>();
+        for (FormationLineup.Member m : members) ids.add(m.general.getId());
+        Map<String, EquipBonus> bonus = suitConfigService.calculateTotalEquipBonus(ids);
+        for (FormationLineup.Member m : members) {
+            EquipBonus b = bonus.get(m.general.getId());
+            if (b != null) m.equipBonus = b;
+        }
+    }
+
+    private void fillTraits(List<FormationLineup.Member> members) {
+        for (FormationLineup.Member m : members) {
+            m.traitEffects = generalService.getTraitEffects(m.general.getName());
+        }
+    }
+
+    private void fillTactics(List<FormationLineup.Member> members) {
+        Set<Integer> slotIds = new LinkedHashSet<>();
+        Set<String> tacticsOwners = new LinkedHashSet<>();
+        for (FormationLineup.Member m : members) {
+            General g = m.general;
+            if (g.getSlotId() != null && g.getSlotId() > 0) slotIds.add(g.getSlotId());
+            if (g.getTacticsId() != null) tacticsOwners.add(g.getUserId());
+        }
+
+        if (!slotIds.isEmpty()) {
+            Map<Integer, Integer> triggerBonus = generalService.getTacticsTriggerBonus(new ArrayList<>(slotIds));
+            for (FormationLineup.Member m : members) {
+                Integer slotId = m.general.getSlotId();
+                if (slotId != null && slotId > 0) m.tacticsTriggerBonus = triggerBonus.getOrDefault(slotId, 0);
+            }
+        }
+
+        // 阵型里的武将同属一个用户，这里通常只查一次
+        Map<String, List<Map<String, Object>>> ownedByUser = new HashMap<>();
+        for (String userId : tacticsOwners) {
+            List<Map<String, Object>> owned = userTacticsMapper.findByUserId(userId);
+            ownedByUser.put(userId, owned != null ? owned : Collections.<Map<String, Object>>emptyList());
+        }
+        for (FormationLineup.Member m : members) {
+            String tacticsId = m.general.getTacticsId();
+            if (tacticsId == null) continue;
+            m.ownedTactics = resolveOwned(ownedByUser.get(m.general.getUserId()), tacticsId);
+        }
+    }
+
+    /**
+     * 与 UserTacticsMapper.findByUserIdAndTacticsId 相同的匹配规则：
+     * 优先按实例ID匹配，其次按兵法模板ID匹配最新获得的一个（findByUserId 已按获得时间倒序）
+     */
+    private static Map<String, Object> resolveOwned(List<Map<String, Object>> owned, String tacticsId) {
+        if (owned == null) return null;
+        Map<String, Object> byTemplate = null;
+        for (Map<String, Object> row : owned) {
+            if (tacticsId.equals(String.valueOf(row.get("instanceId")))) return row;
+            if (byTemplate == null && tacticsId.equals(String.valueOf(row.get("tacticsId")))) byTemplate = row;
+        }
+        return byTemplate;
+    }
+}
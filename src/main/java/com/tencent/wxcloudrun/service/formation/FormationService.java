@@ -9,7 +9,8 @@ import com.tencent.wxcloudrun.repository.EquipmentRepository;
 import com.tencent.wxcloudrun.repository.FormationRepository;
 import com.tencent.wxcloudrun.repository.GeneralRepository;
 import com.tencent.wxcloudrun.service.battle.BattleCalculator;
-import com.tencent.wxcloudrun.dao.UserTacticsMapper;
+import com.tencent.wxcloudrun.service.catalog.TraitEffects;
+import com.tencent.wxcloudrun.service.equipment.EquipBonus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -35,17 +36,14 @@ public class FormationService {
     @Autowired
     private EquipmentRepository equipmentRepository;
 
-    @Autowired
-    private com.tencent.wxcloudrun.service.SuitConfigService suitConfigService;
-
     @Autowired
     private TacticsConfig tacticsConfig;
 
     @Autowired
-    private UserTacticsMapper userTacticsMapper;
+    private CombatSnapshotCache combatSnapshotCache;
 
     @Autowired
-    private com.tencent.wxcloudrun.service.general.GeneralService generalService;
+    private FormationLineupLoader formationLineupLoader;
 
     
     /**
@@ -64,6 +62,7 @@ public class FormationService {
      */
     public Map<String, Object> getFormationDetail(String odUserId) {
         Formation formation = getFormation(odUserId);
+        FormationLineup lineup = formationLineupLoader.loadWithEquipment(formation);
         
         // 获取阵型中的武将详情
         List<Map<String, Object>> slotDetails = new ArrayList<>();
@@ -73,8 +72,9 @@ public class FormationService {
             slotInfo.put("position", slot.getIndex());
             
             if (slot.getGeneralId() != null) {
-                General general = generalRepository.findById(slot.getGeneralId());
-                if (general != null) {
+                FormationLineup.Member member = lineup.getMember(slot.getIndex());
+                if (member != null) {
+                    General general = member.getGeneral();
                     slotInfo.put("generalId", general.getId());
                     slotInfo.put("generalName", general.getName());
                     slotInfo.put("quality", general.getQualityName());
@@ -104,11 +104,11 @@ public class FormationService {
                     slotInfo.put("formationLevel", formationLevel);
                     
                     // 装备加成
-                    Map<String, Integer> equipBonus = calculateEquipmentBonus(general.getId());
-                    slotInfo.put("equipAttack", equipBonus.getOrDefault("attack", 0));
-                    slotInfo.put("equipDefense", equipBonus.getOrDefault("defense", 0));
-                    slotInfo.put("equipHp", equipBonus.getOrDefault("hp", 0));
-                    slotInfo.put("equipMobility", equipBonus.getOrDefault("mobility", 0));
+                    EquipBonus equipBonus = member.getEquipBonus();
+                    slotInfo.put("equipAttack", equipBonus.attack);
+                    slotInfo.put("equipDefense", equipBonus.defense);
+                    slotInfo.put("equipHp", equipBonus.hp);
+                    slotInfo.put("equipMobility", equipBonus.mobility);
                     
                     slotInfo.put("empty", false);
                 } else {
@@ -271,23 +271,18 @@ public class FormationService {
      * 包含装备加成
      */
     public List<General> getBattleOrder(String odUserId) {
-        Formation formation = getFormation(odUserId);
+        FormationLineup lineup = formationLineupLoader.loadWithEquipment(getFormation(odUserId));
         
         List<General> generals = new ArrayList<>();
-        for (Formation.FormationSlot slot : formation.getSlots()) {
-            if (slot.getGeneralId() != null) {
-                General general = generalRepository.findById(slot.getGeneralId());
-                if (general != null) {
-                    // 临时存储槽位索引用于排序
-                    general.setExp((long) slot.getIndex()); // 借用exp字段临时存储索引
-                    
-                    // 计算装备加成
-                    Map<String, Integer> equipBonus = calculateEquipmentBonus(general.getId());
-                    general.setEquipmentBonus(equipBonus);
-                    
-                    generals.add(general);
-                }
-            }
+        for (FormationLineup.Member member : lineup.getMembers()) {
+            General general = member.getGeneral();
+            // 临时存储槽位索引用于排序
+            general.setExp((long) member.getSlotIndex()); // 借用exp字段临时存储索引
+            
+            // 装备加成
+            general.setEquipmentBonus(member.getEquipBonus().toMap());
+            
+            generals.add(general);
         }
         
         // 按机动性降序，机动性相同时按槽位索引升序
@@ -306,13 +301,6 @@ public class FormationService {
         return generals;
     }
     
-    /**
-     * 计算武将的装备加成
-     */
-    private Map<String, Integer> calculateEquipmentBonus(String generalId) {
-        return suitConfigService.calculateTotalEquipBonus(generalId);
-    }
-    
     /**
      * 获取阵型中的所有武将ID列表
      */
@@ -326,126 +314,147 @@ public class FormationService {
 
     /**
      * 从用户阵型构建完整的战斗单位列表（含装备加成、兵法、天赋等）
+     * 单位从战斗快照复制，快照失效时才重新查库组装
      */
     public List<BattleCalculator.BattleUnit> buildPlayerBattleUnits(String odUserId) {
-        Formation formation = getFormation(odUserId);
+        CombatSnapshot snapshot = getCombatSnapshot(odUserId);
         List<BattleCalculator.BattleUnit> units = new ArrayList<>();
+        for (CombatSnapshot.CombatGeneral cg : snapshot.getSlotOrder()) {
+            units.add(cg.prototype.copy());
+        }
 
-        for (Formation.FormationSlot slot : formation.getSlots()) {
-            if (slot.getGeneralId() == null) continue;
-            General g = generalRepository.findById(slot.getGeneralId());
-            if (g == null) continue;
-
-            int level = g.getLevel() != null ? g.getLevel() : 1;
-            int rawTier = g.getSoldierTier() != null ? g.getSoldierTier() : 1;
-            int rankTier = g.getSoldierRank() != null ? g.getSoldierRank() : 1;
-            int tier = Math.max(rawTier, rankTier);
-            int troopType = BattleCalculator.parseTroopType(g.getTroopType());
-            int maxSoldiers = g.getSoldierMaxCount() != null ? g.getSoldierMaxCount() : 100;
-            int formLv = BattleCalculator.maxPeopleToFormationLevel(maxSoldiers);
-            int sc = g.getSoldierCount() != null ? g.getSoldierCount() : maxSoldiers;
+        if (units.isEmpty()) {
+            BattleCalculator.BattleUnit fallback = BattleCalculator.assembleBattleUnit(
+                    "默认武将", 1, 100, 50, 10, 10, 0, 15,
+                    1, 1, 100, 100, 1, 0, 0, 0, 0, 0, 0, 0, 0);
+            fallback.position = 0;
+            units.add(fallback);
+        }
 
-            Map<String, Integer> eq = calculateEquipmentBonus(g.getId());
+        return units;
+    }
 
-            // 加载名将特性并应用到战斗属性
-            int traitAtkBonus = 0, traitDefBonus = 0, traitDmgBonus = 0;
-            int traitDamageResist = 0, traitSoldierCount = 0;
-            double traitLifePct = 0;
-            boolean traitImmuneAmbush = false;
-            double traitTacticsMultiplier = 1.0;
+    /**
+     * 获取用户的战斗快照，缓存失效时按当前阵型重建
+     */
+    public CombatSnapshot getCombatSnapshot(String odUserId) {
+        CombatSnapshot cached = combatSnapshotCache.get(odUserId);
+        if (cached != null) return cached;
 
-            List<Map<String, Object>> traits = generalService.loadFamousTraitData(g.getName());
-            for (Map<String, Object> t : traits) {
-                String effectType = (String) t.get("effectType");
-                int effectValue = t.get("effectValue") != null ? ((Number) t.get("effectValue")).intValue() : 0;
-                int troopR = t.get("troopRestrict") != null ? ((Number) t.get("troopRestrict")).intValue() : 0;
-                boolean troopMatch = (troopR == 0 || troopR == troopType);
+        // 先取版本号再查库：构建期间数据有变化时，这份快照不会进入缓存
+        long version = combatSnapshotCache.version(odUserId);
+        long catalogVersion = combatSnapshotCache.catalogVersion();
+        CombatSnapshot snapshot = loadCombatSnapshot(odUserId, version, catalogVersion);
+        combatSnapshotCache.put(odUserId, snapshot);
+        return snapshot;
+    }
 
-                if (!troopMatch) continue;
+    private CombatSnapshot loadCombatSnapshot(String odUserId, long version, long catalogVersion) {
+        FormationLineup lineup = formationLineupLoader.loadForBattle(getFormation(odUserId));
+        List<CombatSnapshot.CombatGeneral> slotOrder = new ArrayList<>();
+        for (FormationLineup.Member member : lineup.getMembers()) {
+            slotOrder.add(buildCombatGeneral(member));
+        }
 
-                switch (effectType) {
-                    case "soldier_damage":  traitDmgBonus += effectValue; break;
-                    case "troop_damage":    traitDmgBonus += effectValue; break;
-                    case "army_attack":     traitAtkBonus += effectValue; break;
-                    case "troop_attack":    traitAtkBonus += effectValue; break;
-                    case "army_defense":    traitDefBonus += effectValue; break;
-                    case "troop_defense":   traitDefBonus += effectValue; break;
-                    case "damage_resist":   traitDamageResist += effectValue; break;
-                    case "soldier_life_pct": traitLifePct += effectValue; break;
-                    case "army_mobility":   break; // 下面单独处理
-                    case "army_dodge":      break;
-                    case "soldier_count":   traitSoldierCount += effectValue; break;
-                    case "tactics_prob":    traitTacticsMultiplier = 2.0; break;
-                    case "troop_tactics":   traitTacticsMultiplier = 2.0; break;
-                    case "immune_ambush":   traitImmuneAmbush = true; break;
-                }
+        // 出手顺序与 getBattleOrder 一致：机动（含装备）高的在前，相同时槽位小的在前
+        List<CombatSnapshot.CombatGeneral> battleOrder = new ArrayList<>(slotOrder);
+        battleOrder.sort((a, b) -> {
+            if (a.orderMobility != b.orderMobility) {
+                return b.orderMobility - a.orderMobility;
             }
+            return a.slotIndex - b.slotIndex;
+        });
 
-            int adjustedMaxSoldiers = maxSoldiers + traitSoldierCount;
-            int adjustedSc = Math.min(sc + traitSoldierCount, adjustedMaxSoldiers);
-            int adjustedFormLv = BattleCalculator.maxPeopleToFormationLevel(adjustedMaxSoldiers);
+        return new CombatSnapshot(version, catalogVersion,
+                Collections.unmodifiableList(slotOrder), Collections.unmodifiableList(battleOrder));
+    }
 
-            BattleCalculator.BattleUnit u = BattleCalculator.assembleBattleUnit(
-                    g.getName(), level,
-                    g.getAttrAttack() != null ? g.getAttrAttack() : 100,
-                    g.getAttrDefense() != null ? g.getAttrDefense() : 50,
-                    g.getAttrValor() != null ? g.getAttrValor() : 10,
-                    g.getAttrCommand() != null ? g.getAttrCommand() : 10,
-                    g.getAttrDodge() != null ? (int) Math.round(g.getAttrDodge()) : 5,
-                    g.getAttrMobility() != null ? g.getAttrMobility() : 15,
-                    troopType, tier, adjustedSc, adjustedMaxSoldiers, adjustedFormLv,
-                    eq.getOrDefault("attack", 0), eq.getOrDefault("defense", 0),
-                    eq.getOrDefault("mobility", eq.getOrDefault("speed", 0)), eq.getOrDefault("hit", 0),
-                    eq.getOrDefault("dodge", 0),
-                    traitAtkBonus, traitDefBonus, traitDmgBonus);
-            u.position = slot.getIndex();
-            u.traitDamageResist = traitDamageResist;
-            u.traitLifePct = traitLifePct;
-            u.traitImmuneAmbush = traitImmuneAmbush;
+    private CombatSnapshot.CombatGeneral buildCombatGeneral(FormationLineup.Member member) {
+        General g = member.getGeneral();
+        CombatSnapshot.CombatGeneral cg = new CombatSnapshot.CombatGeneral();
+        cg.key = g.getId() != null ? String.valueOf(g.getId()) : g.getName();
+        cg.generalId = g.getId();
+        cg.name = g.getName();
+        cg.level = g.getLevel();
+        cg.slotIndex = member.getSlotIndex();
 
-            // 名将特性中的机动和闪避加成
-            for (Map<String, Object> t : traits) {
-                String effectType = (String) t.get("effectType");
-                int effectValue = t.get("effectValue") != null ? ((Number) t.get("effectValue")).intValue() : 0;
-                int troopR = t.get("troopRestrict") != null ? ((Number) t.get("troopRestrict")).intValue() : 0;
-                if (troopR != 0 && troopR != troopType) continue;
-                if ("army_mobility".equals(effectType)) u.mobility += effectValue;
-                if ("army_dodge".equals(effectType)) u.dodge += effectValue;
-            }
+        cg.attack = g.getAttrAttack() != null ? g.getAttrAttack() : 100;
+        cg.defense = g.getAttrDefense() != null ? g.getAttrDefense() : 50;
+        cg.valor = g.getAttrValor() != null ? g.getAttrValor() : 10;
+        cg.command = g.getAttrCommand() != null ? g.getAttrCommand() : 10;
+        cg.dodge = g.getAttrDodge() != null ? (int) Math.round(g.getAttrDodge()) : 5;
+        cg.mobility = g.getAttrMobility() != null ? g.getAttrMobility() : 15;
 
-            u.tacticsTriggerMultiplier = traitTacticsMultiplier;
-            if (g.getSlotId() != null && g.getSlotId() > 0) {
-                u.tacticsTriggerBonus = generalService.getTacticsTriggerBonus(g.getSlotId());
-            }
-            if (g.getTacticsId() != null) {
-                Map<String, Object> owned = userTacticsMapper.findByUserIdAndTacticsId(
-                        g.getUserId(), g.getTacticsId());
-                if (owned != null) {
-                    String templateId = String.valueOf(owned.get("tacticsId"));
-                    TacticsConfig.TacticsTemplate tt = tacticsConfig.getById(templateId);
-                    if (tt != null) {
-                        int tLevel = ((Number) owned.get("level")).intValue();
-                        u.tacticsId = tt.getId();
-                        u.tacticsName = tt.getName();
-                        u.tacticsLevel = tLevel;
-                        u.tacticsEffectValue = TacticsConfig.calcEffect(tt, tLevel);
-                        u.tacticsTriggerRate = TacticsConfig.calcTriggerRate(tt, tLevel);
-                    }
-                }
-            }
+        int rawTier = g.getSoldierTier() != null ? g.getSoldierTier() : 1;
+        int rankTier = g.getSoldierRank() != null ? g.getSoldierRank() : 1;
+        cg.soldierTier = Math.max(rawTier, rankTier);
+        cg.troopType = BattleCalculator.parseTroopType(g.getTroopType());
+        cg.maxSoldierCount = g.getSoldierMaxCount() != null ? g.getSoldierMaxCount() : 100;
+        cg.soldierCount = g.getSoldierCount() != null ? g.getSoldierCount() : cg.maxSoldierCount;
 
-            units.add(u);
-        }
+        EquipBonus eq = member.getEquipBonus();
+        cg.equipAttack = eq.attack;
+        cg.equipDefense = eq.defense;
+        cg.equipMobility = eq.mobility;
+        cg.equipHit = eq.hit;
+        cg.equipDodge = eq.dodge;
+        cg.orderMobility = (g.getAttrMobility() != null ? g.getAttrMobility() : 0) + eq.mobility;
 
-        if (units.isEmpty()) {
-            BattleCalculator.BattleUnit fallback = BattleCalculator.assembleBattleUnit(
-                    "默认武将", 1, 100, 50, 10, 10, 0, 15,
-                    1, 1, 100, 100, 1, 0, 0, 0, 0, 0, 0, 0, 0);
-            fallback.position = 0;
-            units.add(fallback);
+        // 名将特性：取该兵种的预编译汇总
+        TraitEffects.Vector traits = member.getTraitEffects().forTroop(cg.troopType);
+        cg.traitAttack = traits.attack;
+        cg.traitDefense = traits.defense;
+        cg.traitDamage = traits.damage;
+        cg.traitDamageResist = traits.damageResist;
+        cg.traitLifePct = traits.lifePct;
+        cg.traitMobility = traits.mobility;
+        cg.traitDodge = traits.dodge;
+        cg.traitSoldierCount = traits.soldierCount;
+        if (traits.doubleTactics) cg.traitTacticsMultiplier = 2.0;
+        cg.traitImmuneAmbush = traits.immuneAmbush;
+
+        cg.tacticsTriggerBonus = member.getTacticsTriggerBonus();
+        Map<String, Object> owned = member.getOwnedTactics();
+        if (owned != null) {
+            String templateId = String.valueOf(owned.get("tacticsId"));
+            TacticsConfig.TacticsTemplate tt = tacticsConfig.getById(templateId);
+            if (tt != null) {
+                int tLevel = ((Number) owned.get("level")).intValue();
+                cg.tacticsId = tt.getId();
+                cg.tacticsName = tt.getName();
+                cg.tacticsLevel = tLevel;
+                cg.tacticsEffectValue = TacticsConfig.calcEffect(tt, tLevel);
+                cg.tacticsTriggerRate = TacticsConfig.calcTriggerRate(tt, tLevel);
+            }
         }
 
-        return units;
+        cg.prototype = assemblePrototype(cg);
+        return cg;
+    }
+
+    /**
+     * 常规战斗的单位模板：特性加兵同时提高满编和当前兵力（不超过满编）
+     */
+    private static BattleCalculator.BattleUnit assemblePrototype(CombatSnapshot.CombatGeneral cg) {
+        int adjustedMaxSoldiers = cg.maxSoldierCount + cg.traitSoldierCount;
+        int adjustedSc = Math.min(cg.soldierCount + cg.traitSoldierCount, adjustedMaxSoldiers);
+        int adjustedFormLv = BattleCalculator.maxPeopleToFormationLevel(adjustedMaxSoldiers);
+
+        BattleCalculator.BattleUnit u = BattleCalculator.assembleBattleUnit(
+                cg.name, cg.level != null ? cg.level : 1,
+                cg.attack, cg.defense, cg.valor, cg.command, cg.dodge, cg.mobility,
+                cg.troopType, cg.soldierTier, adjustedSc, adjustedMaxSoldiers, adjustedFormLv,
+                cg.equipAttack, cg.equipDefense, cg.equipMobility, cg.equipHit, cg.equipDodge,
+                cg.traitAttack, cg.traitDefense, cg.traitDamage);
+        u.position = cg.slotIndex;
+        u.traitDamageResist = cg.traitDamageResist;
+        u.traitLifePct = cg.traitLifePct;
+        u.traitImmuneAmbush = cg.traitImmuneAmbush;
+        u.mobility += cg.traitMobility;
+        u.dodge += cg.traitDodge;
+        u.tacticsTriggerMultiplier = cg.traitTacticsMultiplier;
+        cg.applyTactics(u);
+        return u;
     }
 }
 
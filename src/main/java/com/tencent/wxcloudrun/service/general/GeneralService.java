@@ -1,12 +1,14 @@
 package com.tencent.wxcloudrun.service.general;
 
 import com.tencent.wxcloudrun.dao.EquipmentMapper;
-import com.tencent.wxcloudrun.dao.GeneralFamousTraitMapper;
 import com.tencent.wxcloudrun.dao.GeneralSlotMapper;
 import com.tencent.wxcloudrun.dao.GeneralTemplateMapper;
 import com.tencent.wxcloudrun.model.General;
 import com.tencent.wxcloudrun.repository.GeneralRepository;
 import com.tencent.wxcloudrun.service.battle.BattleCalculator;
+import com.tencent.wxcloudrun.service.catalog.GameCatalog;
+import com.tencent.wxcloudrun.service.catalog.TraitEffects;
+import com.tencent.wxcloudrun.service.equipment.EquipBonusCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -44,7 +46,10 @@ public class GeneralService {
     @Autowired
     private GeneralTemplateMapper generalTemplateMapper;
     @Autowired
-    private GeneralFamousTraitMapper generalFamousTraitMapper;
+    private GameCatalog gameCatalog;
+
+    @Autowired
+    private EquipBonusCache equipBonusCache;
 
     public List<General> getUserGenerals(String userId) {
         return generalRepository.findByUserId(userId);
@@ -153,78 +158,38 @@ public class GeneralService {
     }
     
     /**
-     * 按武将名从 general_famous_trait 加载独立具名特性（APK 风格）
+     * 按武将名取独立具名特性（APK 风格），数据来自配置目录
      * 返回格式: ["战神：属下士兵伤害＋500", "赤兔飞将：骑兵兵法发动概率增加"]
      */
     public List<String> loadFamousTraits(String generalName) {
         List<String> result = new ArrayList<>();
         if (generalName == null || generalName.isEmpty()) return result;
-        try {
-            List<Map<String, Object>> rows = generalFamousTraitMapper.findByGeneralName(generalName);
-            if (rows != null) {
-                for (Map<String, Object> row : rows) {
-                    String name = (String) row.get("traitName");
-                    String desc = (String) row.get("traitDesc");
-                    result.add(name + "：" + desc);
-                }
-            }
-        } catch (Exception e) {
-            logger.warn("查询名将特性失败: name={}", generalName, e);
+        for (Map<String, Object> row : gameCatalog.current().getTraits(generalName)) {
+            result.add(row.get("traitName") + "：" + row.get("traitDesc"));
         }
         return result;
     }
 
     /**
-     * 按武将名加载特性的结构化数据（用于战斗计算）
+     * 按武将名取特性的结构化数据（用于战斗计算），返回只读列表
      */
     public List<Map<String, Object>> loadFamousTraitData(String generalName) {
         if (generalName == null || generalName.isEmpty()) return Collections.emptyList();
-        try {
-            List<Map<String, Object>> rows = generalFamousTraitMapper.findByGeneralName(generalName);
-            return rows != null ? rows : Collections.emptyList();
-        } catch (Exception e) {
-            logger.warn("查询名将特性数据失败: name={}", generalName, e);
-            return Collections.emptyList();
-        }
+        return gameCatalog.current().getTraits(generalName);
+    }
+
+    /**
+     * 按武将名取编译好的特性效果（按兵种汇总），无特性时为 {@link TraitEffects#NONE}
+     */
+    public TraitEffects getTraitEffects(String generalName) {
+        return gameCatalog.current().getTraitEffects(generalName);
     }
 
     /**
      * 将名将特性加成应用到已构建的 BattleUnit 上（供各战斗场景统一调用）
      */
     public void applyFamousTraitsToUnit(BattleCalculator.BattleUnit unit, String generalName, int troopType) {
-        List<Map<String, Object>> traits = loadFamousTraitData(generalName);
-        if (traits.isEmpty()) return;
-
-        int traitAtkBonus = 0, traitDefBonus = 0, traitDmgBonus = 0;
-        int traitDamageResist = 0;
-        double traitLifePct = 0;
-        boolean traitImmuneAmbush = false;
-
-        for (Map<String, Object> t : traits) {
-            String effectType = (String) t.get("effectType");
-            int effectValue = t.get("effectValue") != null ? ((Number) t.get("effectValue")).intValue() : 0;
-            int troopR = t.get("troopRestrict") != null ? ((Number) t.get("troopRestrict")).intValue() : 0;
-            if (troopR != 0 && troopR != troopType) continue;
-
-            switch (effectType) {
-                case "soldier_damage": case "troop_damage":  traitDmgBonus += effectValue; break;
-                case "army_attack":    case "troop_attack":  traitAtkBonus += effectValue; break;
-                case "army_defense":   case "troop_defense": traitDefBonus += effectValue; break;
-                case "damage_resist":   traitDamageResist += effectValue; break;
-                case "soldier_life_pct": traitLifePct += effectValue; break;
-                case "army_mobility":   unit.mobility += effectValue; break;
-                case "army_dodge":      unit.dodge += effectValue; break;
-                case "soldier_count":   unit.soldierCount += effectValue; unit.maxSoldierCount += effectValue; break;
-                case "tactics_prob": case "troop_tactics": unit.tacticsTriggerMultiplier = 2.0; break;
-                case "immune_ambush":   traitImmuneAmbush = true; break;
-            }
-        }
-        unit.totalAttack += traitAtkBonus;
-        unit.totalDefense += traitDefBonus;
-        unit.traitDmgBonus += traitDmgBonus;
-        unit.traitDamageResist += traitDamageResist;
-        unit.traitLifePct += traitLifePct;
-        unit.traitImmuneAmbush = traitImmuneAmbush;
+        getTraitEffects(generalName).forTroop(troopType).applyTo(unit);
     }
 
     /**
@@ -312,6 +277,21 @@ public class GeneralService {
         return toInt(slot.get("tacticsTriggerBonus"));
     }
 
+    /**
+     * 批量查询槽位的兵法发动加成，返回 slotId → 加成（查不到的槽位不在结果中）
+     */
+    public Map<Integer, Integer> getTacticsTriggerBonus(List<Integer> slotIds) {
+        Map<Integer, Integer> result = new HashMap<>();
+        if (slotIds == null || slotIds.isEmpty()) return result;
+        List<Map<String, Object>> rows = generalSlotMapper.findTacticsTriggerBonusByIds(slotIds);
+        if (rows != null) {
+            for (Map<String, Object> row : rows) {
+                result.put(toInt(row.get("id")), toInt(row.get("tacticsTriggerBonus")));
+            }
+        }
+        return result;
+    }
+
 
     /**
      * 兼容旧接口 - 无 slotId 时的降级计算（用于初始化等场景）
@@ -454,6 +434,7 @@ public class GeneralService {
             throw new RuntimeException("武将已锁定，无法解雇");
         }
         equipmentMapper.unequipByGeneralId(generalId);
+        equipBonusCache.invalidate(generalId);
         generalRepository.delete(generalId);
         logger.info("解雇武将: userId={}, generalId={}, name={}", userId, generalId, general.getName());
         return true;
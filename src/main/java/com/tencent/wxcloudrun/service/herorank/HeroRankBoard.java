@@ -0,0 +1,318 @@
+package com.tencent.wxcloudrun.service.herorank;
+
+import com.tencent.wxcloudrun.dao.HeroRankMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 英雄榜内存排名 —— 每个区服一份 名次→玩家 数组 + 玩家→名次 索引
+ *
+ * 1. 首次访问时按 ranking 从库里流式装载，尚未写回的名次以待写表为准，按顺序重排为 1..N（与库里不一致的记入待写）；
+ *    装载不写库，也不占用 boards 的 compute 锁
+ * 2. 查名次、区间随机对手、前 N 名都只读内存；挑战胜利时等挑战事务提交后再在内存里校验并互换名次
+ * 3. 名次变更记入待写表（同一玩家只保留最新名次），后台线程每 500ms 批量写回 hero_rank.ranking；
+ *    库仍是重启后的恢复来源，中途宕机最多丢最近一批互换。写回在独立事务里，提交后才移出待写表
+ * 4. 每日结算、补 NPC、合区等直接改库时，先 {@link #flush} 再 {@link #invalidate}，下次访问重新装载
+ *
+ * 排名只在本实例内存里，多实例部署时英雄榜请求需落到同一实例。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HeroRankBoard {
+
+    private static final long FLUSH_INTERVAL_MS = 500;
+    private static final int WRITE_BATCH = 500;
+
+    private final HeroRankMapper heroRankMapper;
+    private final PlatformTransactionManager transactionManager;
+
+    private final Map<Integer, ServerBoard> boards = new ConcurrentHashMap<>();
+    /** 每服一把装载锁：同一服只装载一次，invalidate 等进行中的装载结束后再丢弃 */
+    private final Map<Integer, Object> loadLocks = new ConcurrentHashMap<>();
+    /** userId → 尚未写回的最新名次 */
+    private final Map<String, Integer> dirty = new ConcurrentHashMap<>();
+    private volatile boolean running;
+    private Thread worker;
+    private TransactionTemplate requiresNew;
+
+    @PostConstruct
+    public void start() {
+        requiresNew = new TransactionTemplate(transactionManager);
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        running = true;
+        worker = new Thread(this::runLoop, "hero-rank-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /** 玩家当前名次，不在榜上返回 0 */
+    public int rankOf(int serverId, String userId) {
+        return board(serverId).rankOf(userId);
+    }
+
+    public int size(int serverId) {
+        return board(serverId).size();
+    }
+
+    /** 前 n 名的 userId（按名次） */
+    public List<String> top(int serverId, int n) {
+        return board(serverId).range(1, n);
+    }
+
+    /** [minRank, maxRank] 内随机取最多 limit 个 userId（不含 excludeUserId，按名次排序） */
+    public List<String> randomInRange(int serverId, int minRank, int maxRank, String excludeUserId, int limit) {
+        return board(serverId).sample(minRank, maxRank, excludeUserId, limit);
+    }
+
+    /**
+     * 追加到榜尾，返回名次；已在榜上时返回现有名次。新玩家的名次随其 hero_rank 行一起插入，不进待写表
+     */
+    public int append(int serverId, String userId) {
+        return board(serverId).append(userId);
+    }
+
+    /**
+     * 两人仍分别位于 rankA/rankB 时互换名次并记入待写表；名次已被其他挑战改变时返回 false
+     */
+    private boolean swap(int serverId, String userA, int rankA, String userB, int rankB) {
+        if (!board(serverId).swap(userA, rankA, userB, rankB)) return false;
+        dirty.put(userA, rankB);
+        dirty.put(userB, rankA);
+        return true;
+    }
+
+    /**
+     * 当前事务提交后再互换名次（没有事务时立即互换），回滚时内存名次不动。
+     * 提交时名次已被其他挑战改变则不互换，并按内存名次重新写回两人的 ranking，覆盖挑战事务写入的名次
+     */
+    public void swapAfterCommit(int serverId, String userA, int rankA, String userB, int rankB) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            swapOrRestore(serverId, userA, rankA, userB, rankB);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                swapOrRestore(serverId, userA, rankA, userB, rankB);
+            }
+        });
+    }
+
+    private void swapOrRestore(int serverId, String userA, int rankA, String userB, int rankB) {
+        if (swap(serverId, userA, rankA, userB, rankB)) return;
+        log.warn("[英雄榜] 提交时名次已变化，不互换: serverId={}, {}#{} <-> {}#{}", serverId, userA, rankA, userB, rankB);
+        ServerBoard board = board(serverId);
+        int currentA = board.rankOf(userA);
+        int currentB = board.rankOf(userB);
+        if (currentA > 0) dirty.put(userA, currentA);
+        if (currentB > 0) dirty.put(userB, currentB);
+    }
+
+    /**
+     * 立即写回所有待写名次（独立事务，不加入调用方事务）；写失败的留在待写表，下次重试
+     */
+    public synchronized void flush() {
+        if (dirty.isEmpty()) return;
+        Map<String, Integer> snapshot = new LinkedHashMap<>(dirty);
+        Map<String, Integer> batch = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Integer> e : snapshot.entrySet()) {
+            batch.put(e.getKey(), e.getValue());
+            if (batch.size() >= WRITE_BATCH) {
+                write(batch, now);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) write(batch, now);
+    }
+
+    /** 丢弃某服的内存排名，下次访问重新装载 */
+    public void invalidate(int serverId) {
+        synchronized (loadLock(serverId)) {
+            boards.remove(serverId);
+        }
+    }
+
+    private void write(Map<String, Integer> batch, long now) {
+        try {
+            requiresNew.execute(status -> heroRankMapper.batchUpdateRanking(batch, now));
+            // 写期间又变了的保留，下一轮再写
+            for (Map.Entry<String, Integer> e : batch.entrySet()) dirty.remove(e.getKey(), e.getValue());
+        } catch (Exception e) {
+            log.warn("[英雄榜] 名次写回失败，稍后重试: {} 条", batch.size(), e);
+        }
+    }
+
+    private ServerBoard board(int serverId) {
+        ServerBoard board = boards.get(serverId);
+        if (board != null) return board;
+        synchronized (loadLock(serverId)) {
+            board = boards.get(serverId);
+            if (board == null) {
+                board = load(serverId);
+                boards.put(serverId, board);
+            }
+            return board;
+        }
+    }
+
+    private Object loadLock(int serverId) {
+        return loadLocks.computeIfAbsent(serverId, k -> new Object());
+    }
+
+    /**
+     * 按库里的顺序装载，待写表里还没写回的名次优先（调用方可能在事务或提交回调里，这里不写库）
+     */
+    private ServerBoard load(int serverId) {
+        long start = System.currentTimeMillis();
+        List<LoadedRow> rows = new ArrayList<>();
+        heroRankMapper.streamRankingOrder(serverId, ctx -> {
+            Map<String, Object> row = ctx.getResultObject();
+            String userId = String.valueOf(row.get("userId"));
+            Object current = row.get("ranking");
+            rows.add(new LoadedRow(userId, current instanceof Number ? ((Number) current).intValue() : 0,
+                    dirty.get(userId), rows.size() + 1));
+        });
+        rows.sort(LoadedRow.ORDER);
+
+        ServerBoard board = new ServerBoard();
+        int fixed = 0;
+        for (LoadedRow row : rows) {
+            int rank = board.append(row.userId);
+            if (row.stored != rank || row.pending != null) dirty.put(row.userId, rank);
+            if (row.stored != rank) fixed++;
+        }
+        log.info("[英雄榜] serverId={} 装载内存排名 {} 条，校正 {} 条，耗时{}ms",
+                serverId, board.size(), fixed, System.currentTimeMillis() - start);
+        return board;
+    }
+
+    /** 装载时的一行：有待写名次的按待写名次排，其余按库里的先后 */
+    private static final class LoadedRow {
+        static final Comparator<LoadedRow> ORDER = Comparator
+                .comparingInt((LoadedRow r) -> r.pending != null ? r.pending : r.position)
+                .thenComparingInt(r -> r.pending != null ? 0 : 1)
+                .thenComparingInt(r -> r.position);
+
+        final String userId;
+        final int stored;
+        final Integer pending;
+        final int position;
+
+        LoadedRow(String userId, int stored, Integer pending, int position) {
+            this.userId = userId;
+            this.stored = stored;
+            this.pending = pending;
+            this.position = position;
+        }
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                Thread.sleep(FLUSH_INTERVAL_MS);
+                flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("[英雄榜] 名次写回线程异常", e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (worker != null) {
+            try {
+                worker.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        int remaining = dirty.size();
+        flush();
+        if (remaining > 0) log.info("[英雄榜] 停机时写回名次 {} 条", remaining);
+    }
+
+    /**
+     * 单服排名：byRank.get(i) 是第 i+1 名；所有访问在对象锁内
+     */
+    static final class ServerBoard {
+        private final List<String> byRank = new ArrayList<>();
+        private final Map<String, Integer> rankOf = new HashMap<>();
+
+        synchronized int size() {
+            return byRank.size();
+        }
+
+        synchronized int rankOf(String userId) {
+            Integer rank = rankOf.get(userId);
+            return rank != null ? rank : 0;
+        }
+
+        synchronized int append(String userId) {
+            Integer existing = rankOf.get(userId);
+            if (existing != null) return existing;
+            byRank.add(userId);
+            rankOf.put(userId, byRank.size());
+            return byRank.size();
+        }
+
+        synchronized boolean swap(String userA, int rankA, String userB, int rankB) {
+            if (rankOf(userA) != rankA || rankOf(userB) != rankB) return false;
+            byRank.set(rankA - 1, userB);
+            byRank.set(rankB - 1, userA);
+            rankOf.put(userA, rankB);
+            rankOf.put(userB, rankA);
+            return true;
+        }
+
+        synchronized List<String> range(int fromRank, int toRank) {
+            int from = Math.max(1, fromRank);
+            int to = Math.min(byRank.size(), toRank);
+            if (from > to) return new ArrayList<>();
+            return new ArrayList<>(byRank.subList(from - 1, to));
+        }
+
+        synchronized List<String> sample(int minRank, int maxRank, String excludeUserId, int limit) {
+            int from = Math.max(1, minRank);
+            int to = Math.min(byRank.size(), maxRank);
+            if (from > to || limit <= 0) return new ArrayList<>();
+            int excluded = excludeUserId != null ? rankOf(excludeUserId) : 0;
+            int candidates = to - from + 1 - (excluded >= from && excluded <= to ? 1 : 0);
+
+            List<Integer> ranks = new ArrayList<>();
+            if (candidates <= limit) {
+                for (int r = from; r <= to; r++) if (r != excluded) ranks.add(r);
+            } else {
+                // 区间远大于 limit，随机挑不重复的名次
+                Set<Integer> picked = new HashSet<>();
+                ThreadLocalRandom rng = ThreadLocalRandom.current();
+                while (picked.size() < limit) {
+                    int r = from + rng.nextInt(to - from + 1);
+                    if (r != excluded) picked.add(r);
+                }
+                ranks.addAll(picked);
+                Collections.sort(ranks);
+            }
+            List<String> result = new ArrayList<>(ranks.size());
+            for (int r : ranks) result.add(byRank.get(r - 1));
+            return result;
+        }
+    }
+}
@@ -4,7 +4,6 @@ import com.tencent.wxcloudrun.config.TacticsConfig;
 import com.tencent.wxcloudrun.config.TacticsConfig.TacticsTemplate;
 import com.tencent.wxcloudrun.dao.GameServerMapper;
 import com.tencent.wxcloudrun.dao.HeroRankMapper;
-import com.tencent.wxcloudrun.dao.PeerageConfigMapper;
 import com.tencent.wxcloudrun.dao.RewardIssueLogMapper;
 import com.tencent.wxcloudrun.dao.UserTacticsMapper;
 import com.tencent.wxcloudrun.model.General;
@@ -12,10 +11,13 @@ import com.tencent.wxcloudrun.model.UserResource;
 import com.tencent.wxcloudrun.service.formation.FormationService;
 import com.tencent.wxcloudrun.service.general.GeneralService;
 import com.tencent.wxcloudrun.service.SuitConfigService;
+import com.tencent.wxcloudrun.service.equipment.EquipBonus;
 import com.tencent.wxcloudrun.service.UserResourceService;
 import com.tencent.wxcloudrun.service.level.LevelService;
 import com.tencent.wxcloudrun.service.battle.BattleCalculator;
+import com.tencent.wxcloudrun.service.battle.BattleReportStore;
 import com.tencent.wxcloudrun.service.battle.BattleService;
+import com.tencent.wxcloudrun.service.catalog.GameCatalog;
 import com.tencent.wxcloudrun.service.nationwar.NationWarService;
 import com.tencent.wxcloudrun.service.PlayerNameResolver;
 import lombok.RequiredArgsConstructor;
@@ -28,6 +30,9 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * 英雄榜 V2 — 排名互换制（匹配APK设计）
@@ -45,9 +50,10 @@ import java.util.*;
 public class HeroRankService {
 
     private final HeroRankMapper heroRankMapper;
-    private final PeerageConfigMapper peerageConfigMapper;
+    private final GameCatalog gameCatalog;
     private final GameServerMapper gameServerMapper;
     private final BattleService battleService;
+    private final BattleReportStore battleReportStore;
     private final FormationService formationService;
     private final GeneralService generalService;
     private final SuitConfigService suitConfigService;
@@ -58,6 +64,8 @@ public class HeroRankService {
     private final NationWarService nationWarService;
     private final RewardIssueLogMapper rewardIssueLogMapper;
     private final PlayerNameResolver playerNameResolver;
+    private final HeroRankSettlement heroRankSettlement;
+    private final HeroRankBoard heroRankBoard;
 
     @org.springframework.beans.factory.annotation.Autowired @org.springframework.context.annotation.Lazy
     private com.tencent.wxcloudrun.service.dailytask.DailyTaskService dailyTaskService;
@@ -96,6 +104,9 @@ public class HeroRankService {
         {1000, 500, 5000, 3000},
     };
 
+    /** 1000 名以后的奖励（声望/白银/经验） */
+    private static final int[] DEFAULT_RANK_REWARD = {500, 5000, 3000};
+
     private static final int[] WIN_FAME = {500, 450, 400, 350, 300, 260, 220, 180, 140, 100};
 
     // ==================== 区服ID提取 ====================
@@ -125,7 +136,7 @@ public class HeroRankService {
      * NPC的user_id格式: npc_hero_s{serverId}_{序号}
      */
     public void ensureNpcExists(int serverId) {
-        int count = heroRankMapper.countByServerId(serverId);
+        int count = heroRankBoard.size(serverId);
         if (count >= NPC_COUNT) return;
 
         log.info("初始化英雄榜NPC: serverId={}, 现有{}条，需{}条", serverId, count, NPC_COUNT);
@@ -144,6 +155,7 @@ public class HeroRankService {
             heroRankMapper.upsert(npcId, name, level, power, fame, peerage, i, nation,
                 0, 0, 0, "", 0, 0, 0, 0, 1, "", now, serverId);
         }
+        heroRankBoard.invalidate(serverId);
         log.info("英雄榜NPC初始化完成 serverId={}, 共{}条", serverId, NPC_COUNT);
     }
 
@@ -163,24 +175,22 @@ public class HeroRankService {
         resetIfNewDay(userId);
 
         Map<String, Object> me = heroRankMapper.findByUserId(userId);
+        int myRanking = heroRankBoard.rankOf(serverId, userId);
         if (me != null) {
             me.put("userName", resolveDisplayName(str(me, "userId"), str(me, "userName")));
+            me.put("ranking", myRanking);
         }
-        int myRanking = getInt(me, "ranking");
-        int total = heroRankMapper.countByServerId(serverId);
+        int total = heroRankBoard.size(serverId);
 
-        List<Map<String, Object>> list;
+        List<String> ids;
         if (myRanking <= DISPLAY_COUNT) {
-            list = heroRankMapper.findByRanking(serverId, 0, DISPLAY_COUNT);
+            ids = heroRankBoard.top(serverId, DISPLAY_COUNT);
         } else {
             int minRank = Math.max(1, (int)(myRanking * 0.8));
-            list = heroRankMapper.findRandomInRange(serverId, minRank, myRanking, userId, DISPLAY_COUNT);
-        }
-        if (list != null) {
-            for (Map<String, Object> row : list) {
-                row.put("userName", resolveDisplayName(str(row, "userId"), str(row, "userName")));
-            }
+            ids = heroRankBoard.randomInRange(serverId, minRank, myRanking, userId, DISPLAY_COUNT);
         }
+        List<Map<String, Object>> list = loadRankRows(serverId, ids);
+        resolveDisplayNames(list, "userId", "userName");
 
         long lastTime = getLong(me, "lastChallengeTime");
         long cdRemain = Math.max(0, CHALLENGE_CD_MS - (System.currentTimeMillis() - lastTime));
@@ -225,8 +235,10 @@ public class HeroRankService {
             throw new RuntimeException("挑战冷却中");
         }
 
-        int myRank = getInt(me, "ranking");
-        int targetRank = getInt(target, "ranking");
+        int serverId = extractServerId(userId);
+        int myRank = heroRankBoard.rankOf(serverId, userId);
+        int targetRank = heroRankBoard.rankOf(serverId, targetId);
+        if (targetRank == 0) throw new RuntimeException("对手不存在");
         if (myRank <= targetRank) {
             throw new RuntimeException("只能挑战排名高于自己的对手");
         }
@@ -252,7 +264,6 @@ public class HeroRankService {
         if (victory) {
             myNewRank = targetRank;
             targetNewRank = myRank;
-            heroRankMapper.swapRanking(userId, myRank, targetId, targetRank, now);
 
             int todayWins = getInt(me, "todayWins") + 1;
 
@@ -283,18 +294,21 @@ public class HeroRankService {
         }
 
         String today = new SimpleDateFormat("yyyyMMdd").format(new Date());
-        String reportJson = null;
-        try {
-            reportJson = JSON.writeValueAsString(report);
-        } catch (Exception e) {
-            log.warn("序列化战报失败: {}", e.getMessage());
-        }
+        Long reportId = battleReportStore.save(BattleReportStore.TYPE_HERO_RANK, extractServerId(userId), report);
         heroRankMapper.insertBattle(
             userId, meName, getInt(me, "level"),
             targetId, targetName, getInt(target, "level"),
             victory, fameGain,
             myRank, myNewRank, targetRank, targetNewRank,
-            reportJson, now, today);
+            null, reportId != null ? reportId : 0L, now, today);
+
+        // 对手名次已被别人改变则整笔回滚；内存名次等事务提交后再互换，回滚时不留下互换
+        if (victory) {
+            if (heroRankBoard.rankOf(serverId, userId) != myRank || heroRankBoard.rankOf(serverId, targetId) != targetRank) {
+                throw new RuntimeException("排名已变化，请刷新后重试");
+            }
+            heroRankBoard.swapAfterCommit(serverId, userId, myRank, targetId, targetRank);
+        }
 
         syncPower(userId);
         dailyTaskService.incrementTask(userId, "herorank");
@@ -310,6 +324,7 @@ public class HeroRankService {
         result.put("todayChallenge", todayChallenge + 1);
         result.put("maxDaily", maxDaily + todayPurchased);
         result.put("cdRemainMs", CHALLENGE_CD_MS);
+        result.put("battleReportId", reportId);
         try {
             result.put("battleReport", JSON.convertValue(report, Map.class));
         } catch (Exception e) {
@@ -423,12 +438,8 @@ public class HeroRankService {
 
     public List<Map<String, Object>> getRecords(String userId) {
         List<Map<String, Object>> records = heroRankMapper.findBattlesByUser(userId, 30);
-        if (records != null) {
-            for (Map<String, Object> r : records) {
-                r.put("attackerName", resolveDisplayName(str(r, "attackerId"), str(r, "attackerName")));
-                r.put("defenderName", resolveDisplayName(str(r, "defenderId"), str(r, "defenderName")));
-            }
-        }
+        resolveDisplayNames(records, "attackerId", "attackerName");
+        resolveDisplayNames(records, "defenderId", "defenderName");
         return records;
     }
 
@@ -436,6 +447,10 @@ public class HeroRankService {
     public Map<String, Object> getBattleReport(long battleId) {
         Map<String, Object> row = heroRankMapper.findBattleReportById(battleId);
         if (row == null) throw new RuntimeException("战报不存在");
+        long reportId = getLong(row, "reportId");
+        if (reportId > 0) {
+            return JSON.convertValue(battleReportStore.load(reportId), Map.class);
+        }
         String json = str(row, "battleReport");
         if (json == null || json.isEmpty()) throw new RuntimeException("战报数据为空");
         try {
@@ -447,38 +462,73 @@ public class HeroRankService {
 
     // ==================== 每日结算（21:00） ====================
 
+    /** 同时结算的区服数上限，避免零点整库并发写 */
+    private static final int SETTLE_PARALLELISM = 4;
+
     @Scheduled(cron = "0 0 0 * * ?")
     public void dailySettle() {
         log.info("[英雄榜] 开始每日结算（按区服）");
+        long start = System.currentTimeMillis();
         List<Map<String, Object>> servers = gameServerMapper.findAllServers();
+        if (servers == null || servers.isEmpty()) return;
         String today = new SimpleDateFormat("yyyyMMdd").format(new Date());
         long now = System.currentTimeMillis();
+        List<Map<String, Integer>> tiers = rewardTiers();
 
-        for (Map<String, Object> server : servers) {
-            int sid = ((Number) server.get("id")).intValue();
-            if (!tryMarkIssued("HERO_RANK_DAILY_SETTLE", today, "SERVER_" + sid, sid, "")) {
-                log.info("[英雄榜] serverId={} 今日已结算，跳过", sid);
-                continue;
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(SETTLE_PARALLELISM, servers.size()));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Map<String, Object> server : servers) {
+                int sid = ((Number) server.get("id")).intValue();
+                futures.add(pool.submit(() -> settleServer(sid, tiers, today, now)));
             }
-            List<Map<String, Object>> all = heroRankMapper.findAllOrderByRanking(sid);
-
-            for (int i = 0; i < all.size(); i++) {
-                Map<String, Object> entry = all.get(i);
-                String uid = str(entry, "userId");
-                int rank = i + 1;
-                heroRankMapper.updateRanking(uid, rank, now);
-
-                int[] reward = getRewardForRank(rank);
-                heroRankMapper.setPendingReward(uid, reward[0], reward[1], reward[2], today);
-
-                if (!uid.startsWith("npc_hero_")) {
-                    heroRankMapper.insertRewardLog(uid, rank, reward[0], reward[1], today, now);
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (Exception e) {
+                    log.error("[英雄榜] 结算任务异常", e);
                 }
             }
-            log.info("[英雄榜] serverId={} 结算完成，处理{}条", sid, all.size());
+        } finally {
+            pool.shutdown();
+        }
+        log.info("[英雄榜] 每日结算结束，{} 个区服，总耗时 {}ms", servers.size(), System.currentTimeMillis() - start);
+    }
+
+    private void settleServer(int sid, List<Map<String, Integer>> tiers, String today, long now) {
+        if (!tryMarkIssued("HERO_RANK_DAILY_SETTLE", today, "SERVER_" + sid, sid, "")) {
+            log.info("[英雄榜] serverId={} 今日已结算，跳过", sid);
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            // 结算按库里的名次发奖，先写回内存名次；结算可能校正名次，之后重新装载
+            heroRankBoard.flush();
+            int count = heroRankSettlement.settleServer(sid, tiers, today, now);
+            heroRankBoard.invalidate(sid);
+            log.info("[英雄榜] serverId={} 结算完成，处理{}条，耗时{}ms", sid, count, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("[英雄榜] serverId={} 结算失败，耗时{}ms", sid, System.currentTimeMillis() - start, e);
         }
     }
 
+    /** 与 getRewardForRank 相同的档位，最后一档兜底 1000 名以后 */
+    private static List<Map<String, Integer>> rewardTiers() {
+        List<Map<String, Integer>> tiers = new ArrayList<>();
+        for (int[] r : RANK_REWARDS) tiers.add(rewardTier(r[0], r[1], r[2], r[3]));
+        tiers.add(rewardTier(Integer.MAX_VALUE, DEFAULT_RANK_REWARD[0], DEFAULT_RANK_REWARD[1], DEFAULT_RANK_REWARD[2]));
+        return tiers;
+    }
+
+    private static Map<String, Integer> rewardTier(int maxRank, int fame, int silver, int exp) {
+        Map<String, Integer> tier = new HashMap<>();
+        tier.put("maxRank", maxRank);
+        tier.put("fame", fame);
+        tier.put("silver", silver);
+        tier.put("exp", exp);
+        return tier;
+    }
+
     // ==================== 同步战力 ====================
 
     public void syncPower(String userId) {
@@ -500,8 +550,8 @@ public class HeroRankService {
                 int cmd = g.getAttrCommand() != null ? g.getAttrCommand() : 0;
                 totalPower += atk + def + val + cmd;
 
-                Map<String, Integer> eq = suitConfigService.calculateTotalEquipBonus(gid);
-                totalPower += eq.getOrDefault("attack", 0) + eq.getOrDefault("defense", 0);
+                EquipBonus eq = suitConfigService.calculateTotalEquipBonus(gid);
+                totalPower += eq.attack + eq.defense;
             }
         } catch (Exception e) {
             log.warn("同步战力异常: {}", e.getMessage());
@@ -532,7 +582,7 @@ public class HeroRankService {
         String nation = getPlayerNation(userId);
         int level = levelService.getUserLevel(userId).getLevel();
         int power = level * 500;
-        int ranking = heroRankMapper.countByServerId(serverId) + 1;
+        int ranking = heroRankBoard.append(serverId, userId);
 
         heroRankMapper.upsert(userId, name, level, power, 0, "平民", ranking, nation,
             0, 0, 0, "", 0, 0, 0, 0, 1, "", System.currentTimeMillis(), serverId);
@@ -546,12 +596,32 @@ public class HeroRankService {
 
     private String resolveDisplayName(String userId, String fallback) {
         if (userId == null || userId.isEmpty() || userId.startsWith("npc_hero_")) {
-            return (fallback == null || fallback.isEmpty()) ? "君主" : fallback;
+            return displayName(null, fallback);
         }
         try {
-            String resolved = playerNameResolver.resolve(userId);
-            if (resolved != null && !resolved.isEmpty() && !"君主".equals(resolved)) return resolved;
+            return displayName(playerNameResolver.resolve(userId), fallback);
         } catch (Exception ignore) { }
+        return displayName(null, fallback);
+    }
+
+    /**
+     * 列表版：整批玩家名一次解析，避免逐行查询
+     */
+    private void resolveDisplayNames(List<Map<String, Object>> rows, String idKey, String nameKey) {
+        if (rows == null || rows.isEmpty()) return;
+        List<String> ids = new ArrayList<>();
+        for (Map<String, Object> row : rows) {
+            String id = str(row, idKey);
+            if (!id.isEmpty() && !id.startsWith("npc_hero_")) ids.add(id);
+        }
+        Map<String, String> names = playerNameResolver.resolveAll(ids);
+        for (Map<String, Object> row : rows) {
+            row.put(nameKey, displayName(names.get(str(row, idKey)), str(row, nameKey)));
+        }
+    }
+
+    private static String displayName(String resolved, String fallback) {
+        if (resolved != null && !resolved.isEmpty() && !"君主".equals(resolved)) return resolved;
         return (fallback == null || fallback.isEmpty()) ? "君主" : fallback;
     }
 
@@ -583,16 +653,7 @@ public class HeroRankService {
     }
 
     public String calcPeerage(long fame, int level) {
-        List<Map<String, Object>> configs = peerageConfigMapper.findAllPeerage();
-        String result = "平民";
-        for (Map<String, Object> cfg : configs) {
-            long fameReq = ((Number) cfg.get("fameRequired")).longValue();
-            int levelReq = ((Number) cfg.get("levelRequired")).intValue();
-            if (fame >= fameReq && level >= levelReq) {
-                result = (String) cfg.get("rankName");
-            }
-        }
-        return result;
+        return gameCatalog.current().peerageFor(fame, level);
     }
 
     private List<BattleCalculator.BattleUnit> buildPlayerUnits(String userId) {
@@ -603,7 +664,7 @@ public class HeroRankService {
                 General g = generalService.getGeneralById(gid);
                 if (g == null) continue;
 
-                Map<String, Integer> eq = suitConfigService.calculateTotalEquipBonus(gid);
+                EquipBonus eq = suitConfigService.calculateTotalEquipBonus(gid);
                 int lvl = g.getLevel() != null ? g.getLevel() : 1;
                 int rawTier = g.getSoldierTier() != null ? g.getSoldierTier() : 1;
                 int sRank = g.getSoldierRank() != null ? g.getSoldierRank() : 1;
@@ -621,9 +682,9 @@ public class HeroRankService {
                     g.getAttrDodge() != null ? (int) Math.round(g.getAttrDodge()) : 5,
                     g.getAttrMobility() != null ? g.getAttrMobility() : 15,
                     troopType, tier, maxSoldiers, maxSoldiers, formLv,
-                    eq.getOrDefault("attack", 0), eq.getOrDefault("defense", 0),
-                    eq.getOrDefault("mobility", eq.getOrDefault("speed", 0)), eq.getOrDefault("hit", 0),
-                    eq.getOrDefault("dodge", 0), 0, 0, 0);
+                    eq.attack, eq.defense,
+                    eq.mobility, eq.hit,
+                    eq.dodge, 0, 0, 0);
 
                 u.position = units.size();
                 if (g.getTacticsId() != null) {
@@ -681,11 +742,28 @@ public class HeroRankService {
         return units;
     }
 
+    /**
+     * 按 userId 顺序取榜单行，名次以内存排名为准（库里可能还没写回）
+     */
+    private List<Map<String, Object>> loadRankRows(int serverId, List<String> ids) {
+        List<Map<String, Object>> list = new ArrayList<>();
+        if (ids.isEmpty()) return list;
+        Map<String, Map<String, Object>> rows = new HashMap<>();
+        for (Map<String, Object> row : heroRankMapper.findByUserIds(ids)) rows.put(str(row, "userId"), row);
+        for (String id : ids) {
+            Map<String, Object> row = rows.get(id);
+            if (row == null) continue;
+            row.put("ranking", heroRankBoard.rankOf(serverId, id));
+            list.add(row);
+        }
+        return list;
+    }
+
     private int[] getRewardForRank(int rank) {
         for (int[] r : RANK_REWARDS) {
             if (rank <= r[0]) return new int[]{r[1], r[2], r[3]};
         }
-        return new int[]{500, 5000, 3000};
+        return DEFAULT_RANK_REWARD.clone();
     }
 
     private static int getInt(Map<String, Object> m, String k) {
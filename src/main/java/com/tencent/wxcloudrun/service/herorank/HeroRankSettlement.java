@@ -0,0 +1,62 @@
+package com.tencent.wxcloudrun.service.herorank;
+
+import com.tencent.wxcloudrun.dao.HeroRankMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 英雄榜单服每日结算
+ *
+ * 1. 按排名流式读取本服 userId/ranking，只记下排名与名次不一致的玩家，按批改写（正常情况下排名本就连续，几乎不写）
+ * 2. 待领取奖励、奖励日志各用一条按排名档位 CASE 的整服 SQL 完成，不再逐人 update/insert
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HeroRankSettlement {
+
+    private static final int RANK_BATCH = 500;
+
+    private final HeroRankMapper heroRankMapper;
+
+    /**
+     * @param tiers 奖励档位（maxRank/fame/silver/exp，按 maxRank 升序，最后一档兜底）
+     * @return 本服参与结算的人数
+     */
+    @Transactional
+    public int settleServer(int serverId, List<Map<String, Integer>> tiers, String today, long now) {
+        Map<String, Integer> changed = new LinkedHashMap<>();
+        int[] position = {0};
+        heroRankMapper.streamRankingOrder(serverId, ctx -> {
+            Map<String, Object> row = ctx.getResultObject();
+            int rank = ++position[0];
+            Object current = row.get("ranking");
+            if (!(current instanceof Number) || ((Number) current).intValue() != rank) {
+                changed.put(String.valueOf(row.get("userId")), rank);
+            }
+        });
+
+        Map<String, Integer> batch = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> e : changed.entrySet()) {
+            batch.put(e.getKey(), e.getValue());
+            if (batch.size() >= RANK_BATCH) {
+                heroRankMapper.batchUpdateRanking(batch, now);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) heroRankMapper.batchUpdateRanking(batch, now);
+
+        heroRankMapper.settlePendingRewards(serverId, tiers, today);
+        heroRankMapper.insertRewardLogsByServer(serverId, tiers, today, now);
+        if (!changed.isEmpty()) {
+            log.info("[英雄榜] serverId={} 结算时校正排名 {} 条", serverId, changed.size());
+        }
+        return position[0];
+    }
+}
@@ -8,6 +8,7 @@ import com.tencent.wxcloudrun.model.UserResource;
 import com.tencent.wxcloudrun.repository.GeneralRepository;
 import com.tencent.wxcloudrun.service.UserResourceService;
 import com.tencent.wxcloudrun.service.battle.BattleCalculator;
+import com.tencent.wxcloudrun.service.catalog.GameCatalog;
 import com.tencent.wxcloudrun.service.level.LevelService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,14 +36,15 @@ public class PeerageService {
     @Autowired
     private LevelService levelService;
 
-    private List<Map<String, Object>> peerageConfigs = new ArrayList<>();
+    @Autowired
+    private GameCatalog gameCatalog;
+
     private List<Map<String, Object>> soldierTiers = new ArrayList<>();
 
     @PostConstruct
     public void init() {
-        peerageConfigs = peerageConfigMapper.findAllPeerage();
         soldierTiers = peerageConfigMapper.findAllSoldierTiers();
-        logger.info("加载爵位配置 {} 条, 兵种配置 {} 条", peerageConfigs.size(), soldierTiers.size());
+        logger.info("加载兵种配置 {} 条", soldierTiers.size());
     }
 
     /**
@@ -67,7 +69,7 @@ public class PeerageService {
         result.put("currentPeerage", currentPeerage);
         result.put("nextPeerage", nextPeerage);
         result.put("maxSoldierTier", maxTier);
-        result.put("peerageList", peerageConfigs);
+        result.put("peerageList", gameCatalog.current().getPeerageRows());
 
         Map<String, List<Map<String, Object>>> tiersByCategory = new LinkedHashMap<>();
         for (String cat : Arrays.asList("步", "骑", "弓")) {
@@ -204,14 +206,14 @@ public class PeerageService {
     // ==== 内部工具 ====
 
     private Map<String, Object> findPeerageByRank(String rank) {
-        return peerageConfigs.stream()
+        return gameCatalog.current().getPeerageRows().stream()
                 .filter(p -> rank.equals(p.get("rankName")))
                 .findFirst().orElse(null);
     }
 
     private Map<String, Object> findNextPeerage(String currentRank) {
         boolean found = false;
-        for (Map<String, Object> p : peerageConfigs) {
+        for (Map<String, Object> p : gameCatalog.current().getPeerageRows()) {
             if (found) return p;
             if (currentRank.equals(p.get("rankName"))) found = true;
         }
@@ -12,6 +12,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class MailService {
@@ -21,21 +22,52 @@ public class MailService {
     @Autowired private WarehouseService warehouseService;
     @Autowired private UserResourceService userResourceService;
 
+    /**
+     * 已提交广播数的本地缓存刷新间隔，新广播最多晚这么久出现在邮箱里（多实例部署时同样适用）
+     */
+    private static final long BROADCAST_REFRESH_MS = 30_000L;
+
+    /** 内存中最多记录的玩家数，超过后清空，之后各玩家按需重新补发一次（已补发的被唯一键忽略） */
+    private static final int MAX_SYNCED_RECEIVERS = 50_000;
+
+    private volatile long broadcastCount = -1;
+    private volatile long broadcastCountCheckedAt = 0;
+    /** receiverId → 上次补发时的已提交广播数 */
+    private final Map<String, Long> syncedBroadcastCounts = new ConcurrentHashMap<>();
+
     /**
      * 获取收件箱
      */
     public Map<String, Object> getInbox(String userId) {
+        syncBroadcasts(userId);
         List<Map<String, Object>> mails = mailMapper.findByReceiver(userId);
-        int unread = mailMapper.countUnread(userId);
+        // 打开收件箱时顺便按 mail 表校准红点计数
+        int unread = refreshCounter(userId)[0];
 
-        // 为每封有附件的邮件加载附件信息
+        // 整页有附件的邮件一次批量加载附件（普通邮件按 mail_id，广播邮件按 broadcast_id）
+        Set<Long> mailIds = new LinkedHashSet<>();
+        Set<Long> broadcastIds = new LinkedHashSet<>();
         for (Map<String, Object> mail : mails) {
-            Object hasAtt = mail.get("has_attachment");
-            if (hasAtt != null && (Integer.parseInt(String.valueOf(hasAtt)) == 1)) {
-                long mailId = Long.parseLong(String.valueOf(mail.get("id")));
-                mail.put("attachments", mailMapper.findAttachments(mailId));
+            if (!hasAttachment(mail)) continue;
+            Object broadcastId = mail.get("broadcast_id");
+            if (broadcastId != null) {
+                broadcastIds.add(Long.parseLong(String.valueOf(broadcastId)));
+            } else {
+                mailIds.add(Long.parseLong(String.valueOf(mail.get("id"))));
             }
         }
+        Map<Long, List<Map<String, Object>>> byMail = groupAttachments(
+                mailIds.isEmpty() ? null : mailMapper.findAttachmentsByMailIds(mailIds), "mail_id");
+        Map<Long, List<Map<String, Object>>> byBroadcast = groupAttachments(
+                broadcastIds.isEmpty() ? null : mailMapper.findBroadcastAttachmentsByIds(broadcastIds), "broadcast_id");
+        for (Map<String, Object> mail : mails) {
+            if (!hasAttachment(mail)) continue;
+            Object broadcastId = mail.get("broadcast_id");
+            List<Map<String, Object>> atts = broadcastId != null
+                    ? byBroadcast.get(Long.parseLong(String.valueOf(broadcastId)))
+                    : byMail.get(Long.parseLong(String.valueOf(mail.get("id"))));
+            mail.put("attachments", atts != null ? atts : new ArrayList<Map<String, Object>>());
+        }
 
         Map<String, Object> result = new LinkedHashMap<>();
         result.put("unread", unread);
@@ -52,12 +84,12 @@ public class MailService {
         if (!userId.equals(String.valueOf(mail.get("receiver_id")))) {
             throw new BusinessException("无权查看此邮件");
         }
-        mailMapper.markRead(mailId);
+        if (mailMapper.markRead(mailId) > 0) adjustCounter(userId, -1, 0);
         mail.put("is_read", 1);
 
         Object hasAtt = mail.get("has_attachment");
         if (hasAtt != null && Integer.parseInt(String.valueOf(hasAtt)) == 1) {
-            mail.put("attachments", mailMapper.findAttachments(mailId));
+            mail.put("attachments", loadAttachments(mail));
         }
         return mail;
     }
@@ -79,7 +111,7 @@ public class MailService {
             throw new BusinessException("附件已领取");
         }
 
-        List<Map<String, Object>> attachments = mailMapper.findAttachments(mailId);
+        List<Map<String, Object>> attachments = loadAttachments(mail);
         if (attachments == null || attachments.isEmpty()) {
             logger.error("邮件附件领取失败: 附件为空, userId={}, mailId={}", userId, mailId);
             throw new BusinessException("邮件附件为空，无法领取");
@@ -141,9 +173,13 @@ public class MailService {
             throw new BusinessException("附件发放失败，请稍后重试");
         }
 
-        mailMapper.markAttachmentClaimed(mailId);
+        if (mailMapper.markAttachmentClaimed(mailId) <= 0) {
+            // 并发领取：另一请求已先标记，本次回滚
+            throw new BusinessException("附件已领取");
+        }
         // 领取附件视为已读
-        mailMapper.markRead(mailId);
+        int readRows = mailMapper.markRead(mailId);
+        adjustCounter(userId, -readRows, -1);
 
         Map<String, Object> result = new LinkedHashMap<>();
         result.put("mailId", mailId);
@@ -155,7 +191,9 @@ public class MailService {
      * 一键已读
      */
     public Map<String, Object> readAll(String userId) {
+        syncBroadcasts(userId);
         int updated = mailMapper.markAllRead(userId);
+        adjustCounter(userId, -updated, 0);
         Map<String, Object> result = new LinkedHashMap<>();
         result.put("updated", updated);
         return result;
@@ -165,6 +203,7 @@ public class MailService {
      * 一键领取附件（领取即已读）
      */
     public Map<String, Object> claimAll(String userId) {
+        syncBroadcasts(userId);
         List<Long> ids = mailMapper.findUnclaimedMailIds(userId);
         int success = 0;
         int skipped = 0;
@@ -211,6 +250,7 @@ public class MailService {
         mail.put("createTime", System.currentTimeMillis());
         mail.put("expireTime", 0L);
         mailMapper.insertMail(mail);
+        adjustCounter(receiverId, 1, 0);
     }
 
     /**
@@ -246,39 +286,186 @@ public class MailService {
                 insertedAttachmentCount += rows;
             }
         }
+        adjustCounter(receiverId, 1, expectedAttachmentCount > 0 ? 1 : 0);
         logger.info("系统邮件发送成功: receiverId={}, mailId={}, title={}, attachmentCount={}/{}",
                 receiverId, mailId, title, insertedAttachmentCount, expectedAttachmentCount);
     }
 
+    /**
+     * 全服广播系统邮件：只写一条模板和附件，发送时已创建角色的玩家在打开邮箱时各自补出一封
+     *
+     * @return 广播ID
+     */
+    @Transactional
+    public long sendBroadcastMail(String title, String content, List<Map<String, Object>> attachments) {
+        Map<String, Object> broadcast = new LinkedHashMap<>();
+        broadcast.put("senderId", "system");
+        broadcast.put("senderName", "系统");
+        broadcast.put("title", title);
+        broadcast.put("content", content != null ? content : "");
+        broadcast.put("hasAttachment", (attachments != null && !attachments.isEmpty()) ? 1 : 0);
+        broadcast.put("createTime", System.currentTimeMillis());
+        broadcast.put("expireTime", 0L);
+        mailMapper.insertBroadcast(broadcast);
+
+        long broadcastId = Long.parseLong(String.valueOf(broadcast.get("id")));
+        if (attachments != null) {
+            for (Map<String, Object> att : attachments) {
+                att.put("broadcastId", broadcastId);
+                if (mailMapper.insertBroadcastAttachment(att) <= 0) {
+                    logger.error("广播邮件附件写入失败: broadcastId={}, title={}, att={}", broadcastId, title, att);
+                    throw new BusinessException("广播邮件附件写入失败");
+                }
+            }
+        }
+        logger.info("广播邮件发送成功: broadcastId={}, title={}, attachmentCount={}",
+                broadcastId, title, attachments == null ? 0 : attachments.size());
+        return broadcastId;
+    }
+
+    /**
+     * 把该玩家尚未补成个人邮件行的广播补出来；已提交广播数没有变化时只比较内存中的计数，不访问数据库。
+     * 按"该玩家还没有这条广播的邮件行"判断是否补发，不按ID高水位：ID小但提交晚的广播同样能补到。
+     */
+    private void syncBroadcasts(String userId) {
+        long count = broadcastCount();
+        if (count <= 0 || userId == null) return;
+        Long synced = syncedBroadcastCounts.get(userId);
+        if (synced != null && synced == count) return;
+        try {
+            int idx = userId.lastIndexOf('_');
+            if (idx > 0 && idx < userId.length() - 1) {
+                int serverId = Integer.parseInt(userId.substring(idx + 1));
+                int inserted = mailMapper.materializeBroadcasts(userId, userId.substring(0, idx), serverId,
+                        System.currentTimeMillis());
+                if (inserted > 0) refreshCounter(userId);
+            }
+            rememberSynced(userId, count);
+        } catch (NumberFormatException e) {
+            rememberSynced(userId, count);
+        } catch (Exception e) {
+            logger.warn("广播邮件补发失败: userId={}, broadcastCount={}", userId, count, e);
+        }
+    }
+
+    private void rememberSynced(String userId, long count) {
+        if (syncedBroadcastCounts.size() >= MAX_SYNCED_RECEIVERS) {
+            logger.info("广播补发记录达到上限 {}，清空", MAX_SYNCED_RECEIVERS);
+            syncedBroadcastCounts.clear();
+        }
+        syncedBroadcastCounts.put(userId, count);
+    }
+
+    private long broadcastCount() {
+        long now = System.currentTimeMillis();
+        if (broadcastCount < 0 || now - broadcastCountCheckedAt > BROADCAST_REFRESH_MS) {
+            try {
+                broadcastCount = mailMapper.countBroadcasts();
+            } catch (Exception e) {
+                logger.warn("查询广播邮件数失败", e);
+            }
+            broadcastCountCheckedAt = now;
+        }
+        return broadcastCount;
+    }
+
+    /**
+     * 广播补发的邮件读模板附件，其它邮件读自己的附件
+     */
+    private List<Map<String, Object>> loadAttachments(Map<String, Object> mail) {
+        Object broadcastId = mail.get("broadcast_id");
+        if (broadcastId != null) {
+            return mailMapper.findBroadcastAttachments(Long.parseLong(String.valueOf(broadcastId)));
+        }
+        return mailMapper.findAttachments(Long.parseLong(String.valueOf(mail.get("id"))));
+    }
+
     /**
      * 删除邮件
      */
     public void deleteMail(String userId, long mailId) {
-        int rows = mailMapper.deleteMail(mailId, userId);
-        if (rows == 0) throw new BusinessException("邮件不存在或无权删除");
+        Map<String, Object> mail = mailMapper.findById(mailId);
+        if (mail == null || !userId.equals(String.valueOf(mail.get("receiver_id")))) {
+            throw new BusinessException("邮件不存在或无权删除");
+        }
+        // 只有本次真正删除时才扣减计数，重复删除视为成功
+        if (mailMapper.deleteMail(mailId, userId) > 0) {
+            adjustCounter(userId, flag(mail.get("is_read")) ? 0 : -1,
+                    hasAttachment(mail) && !flag(mail.get("attachment_claimed")) ? -1 : 0);
+        }
     }
 
     /**
      * 未读数量
      */
     public int getUnreadCount(String userId) {
-        return mailMapper.countUnread(userId);
+        return counter(userId)[0];
     }
 
     /**
      * 未领取附件数量
      */
     public int getUnclaimedCount(String userId) {
-        return mailMapper.countUnclaimedAttachment(userId);
+        return counter(userId)[1];
     }
 
     /**
      * 邮件提醒摘要（未读 + 未领取附件）
      */
     public Map<String, Object> getMailBadge(String userId) {
+        int[] counts = counter(userId);
         Map<String, Object> result = new LinkedHashMap<>();
-        result.put("unread", mailMapper.countUnread(userId));
-        result.put("unclaimed", mailMapper.countUnclaimedAttachment(userId));
+        result.put("unread", counts[0]);
+        result.put("unclaimed", counts[1]);
         return result;
     }
+
+    /**
+     * 红点计数 [未读, 未领取]：读 mail_counter，不存在时按 mail 表 COUNT 初始化
+     */
+    private int[] counter(String userId) {
+        syncBroadcasts(userId);
+        Map<String, Object> row = mailMapper.findCounter(userId);
+        if (row == null) return refreshCounter(userId);
+        return new int[]{toInt(row.get("unread")), toInt(row.get("unclaimed"))};
+    }
+
+    private int[] refreshCounter(String userId) {
+        int unread = mailMapper.countUnread(userId);
+        int unclaimed = mailMapper.countUnclaimedAttachment(userId);
+        mailMapper.upsertCounter(userId, unread, unclaimed);
+        return new int[]{unread, unclaimed};
+    }
+
+    private void adjustCounter(String userId, int unread, int unclaimed) {
+        if (unread == 0 && unclaimed == 0) return;
+        try {
+            mailMapper.addCounter(userId, unread, unclaimed);
+        } catch (Exception e) {
+            logger.warn("邮件计数更新失败: userId={}, unread={}, unclaimed={}", userId, unread, unclaimed, e);
+        }
+    }
+
+    private Map<Long, List<Map<String, Object>>> groupAttachments(List<Map<String, Object>> rows, String key) {
+        Map<Long, List<Map<String, Object>>> grouped = new HashMap<>();
+        if (rows == null) return grouped;
+        for (Map<String, Object> row : rows) {
+            grouped.computeIfAbsent(Long.parseLong(String.valueOf(row.get(key))), k -> new ArrayList<>()).add(row);
+        }
+        return grouped;
+    }
+
+    private boolean hasAttachment(Map<String, Object> mail) {
+        return flag(mail.get("has_attachment"));
+    }
+
+    private boolean flag(Object value) {
+        return value != null && toInt(value) == 1;
+    }
+
+    private int toInt(Object value) {
+        if (value instanceof Number) return ((Number) value).intValue();
+        if (value instanceof Boolean) return (Boolean) value ? 1 : 0;
+        return value == null ? 0 : Integer.parseInt(String.valueOf(value));
+    }
 }
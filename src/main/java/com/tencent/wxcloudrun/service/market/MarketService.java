@@ -9,6 +9,7 @@ import com.tencent.wxcloudrun.model.Warehouse;
 import com.tencent.wxcloudrun.repository.EquipmentRepository;
 import com.tencent.wxcloudrun.service.UserResourceService;
 import com.tencent.wxcloudrun.service.PlayerNameResolver;
+import com.tencent.wxcloudrun.service.RateLimiter;
 import com.tencent.wxcloudrun.service.warehouse.WarehouseService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,6 +29,9 @@ public class MarketService {
     private static final long COMMISSION_RATE = 20;
     private static final int PAGE_SIZE = 12;
     private static final long EXPIRE_DAYS = 7;
+    /** 挂牌频率：每 3 秒恢复一次，最多连挂 5 件 */
+    private static final long LISTING_INTERVAL_MS = 3000;
+    private static final int LISTING_BURST = 5;
 
     @Autowired
     private MarketMapper marketMapper;
@@ -39,6 +43,8 @@ public class MarketService {
     private EquipmentRepository equipmentRepository;
     @Autowired
     private PlayerNameResolver playerNameResolver;
+    @Autowired
+    private RateLimiter rateLimiter;
 
     static int extractServerId(String compositeUserId) {
         if (compositeUserId == null) return 1;
@@ -87,6 +93,7 @@ public class MarketService {
      */
     public Map<String, Object> listEquipment(String userId, String equipmentId, long price) {
         validateListingPrice(price);
+        acquireListingRate(userId);
         checkListingQuota(userId);
 
         Equipment equip = equipmentRepository.findById(equipmentId);
@@ -130,6 +137,7 @@ public class MarketService {
     public Map<String, Object> listItem(String userId, String itemId, int count, long price) {
         validateListingPrice(price);
         if (count <= 0) throw new BusinessException(400, "数量必须大于0");
+        acquireListingRate(userId);
         checkListingQuota(userId);
 
         Warehouse warehouse = warehouseService.getWarehouse(userId);
@@ -302,6 +310,10 @@ public class MarketService {
         if (price > MAX_PRICE) throw new BusinessException(400, "总价超过上限" + MAX_PRICE / 10000 + "W!");
     }
 
+    private void acquireListingRate(String userId) {
+        rateLimiter.acquire("market.list", userId, LISTING_INTERVAL_MS, LISTING_BURST, "挂牌太频繁，请稍后再试");
+    }
+
     private void checkListingQuota(String userId) {
         int active = marketMapper.countActiveBySeller(userId);
         if (active >= MAX_LISTINGS) {
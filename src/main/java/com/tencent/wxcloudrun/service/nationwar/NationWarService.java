@@ -3,21 +3,19 @@ package com.tencent.wxcloudrun.service.nationwar;
 import com.alibaba.fastjson.JSON;
 import com.tencent.wxcloudrun.dao.NationWarMapper;
 import com.tencent.wxcloudrun.dao.RewardIssueLogMapper;
-import com.tencent.wxcloudrun.dao.UserTacticsMapper;
-import com.tencent.wxcloudrun.config.TacticsConfig;
 import com.tencent.wxcloudrun.exception.BusinessException;
 import com.tencent.wxcloudrun.model.NationWar;
 import com.tencent.wxcloudrun.model.NationWar.*;
-import com.tencent.wxcloudrun.model.General;
 import com.tencent.wxcloudrun.model.UserResource;
 import com.tencent.wxcloudrun.service.chat.ChatService;
 import com.tencent.wxcloudrun.service.UserResourceService;
 import com.tencent.wxcloudrun.service.PlayerNameResolver;
-import com.tencent.wxcloudrun.service.SuitConfigService;
 import com.tencent.wxcloudrun.service.alliance.AllianceService;
 import com.tencent.wxcloudrun.service.vip.VipService;
 import com.tencent.wxcloudrun.service.battle.BattleCalculator;
 import com.tencent.wxcloudrun.service.battle.BattleService;
+import com.tencent.wxcloudrun.service.battle.BattleReportStore;
+import com.tencent.wxcloudrun.service.formation.CombatSnapshot;
 import com.tencent.wxcloudrun.service.formation.FormationService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,8 +25,12 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 @Service
@@ -41,15 +43,13 @@ public class NationWarService {
     @Autowired @Lazy private AllianceService allianceService;
     @Autowired private NationWarMapper nationWarMapper;
     @Autowired private BattleService battleService;
+    @Autowired private BattleReportStore battleReportStore;
     @Autowired @Lazy private FormationService formationService;
-    @Autowired private SuitConfigService suitConfigService;
-    @Autowired @Lazy private com.tencent.wxcloudrun.service.general.GeneralService generalService;
     @Autowired @Lazy private ChatService chatService;
     @Autowired private PlayerNameResolver playerNameResolver;
-    @Autowired private UserTacticsMapper userTacticsMapper;
-    @Autowired private TacticsConfig tacticsConfig;
     @Autowired private VipService vipService;
     @Autowired private RewardIssueLogMapper rewardIssueLogMapper;
+    @Autowired private NationWarSessionStore sessionStore;
 
     private final Map<String, Nation> nations = new LinkedHashMap<>();
     private final Map<String, City> cities = new LinkedHashMap<>();
@@ -77,7 +77,19 @@ public class NationWarService {
     /** 当天活跃的国战会话（内存中缓存，定期持久化到DB） */
     private volatile NationWarSession activeSession;
     private boolean testMode = false;
-    private final Map<String, Integer> killStreakMap = new HashMap<>();
+    private final Map<String, Integer> killStreakMap = new ConcurrentHashMap<>();
+
+    /**
+     * 轮次引擎：每座城市的结算作为一个任务并行执行，城市之间互不阻塞。
+     * 锁顺序约定：roundLock -> cityLock -> this，任何路径都不能在持有 this 时再去拿 cityLock。
+     */
+    private final ReentrantLock roundLock = new ReentrantLock();
+    private final Map<String, Object> cityLocks = new ConcurrentHashMap<>();
+    private final Map<String, CityTickStats> cityTickStats = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor roundExecutor = createRoundExecutor();
+    /** 战斗轮进行中时玩家操作不直接落库，由本轮结算结束后统一保存 */
+    private volatile boolean sessionDirty = false;
+    private volatile long lastRoundMillis = 0L;
 
     static int extractServerId(String compositeUserId) {
         if (compositeUserId == null) return 1;
@@ -93,6 +105,35 @@ public class NationWarService {
         initMapData();
     }
 
+    private ThreadPoolExecutor createRoundExecutor() {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        AtomicInteger seq = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(64), r -> {
+                    Thread t = new Thread(r, "nation-war-round-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        // 国战每天只打40分钟，其余时间让线程回收
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @PreDestroy
+    public void shutdownRoundExecutor() {
+        roundExecutor.shutdown();
+        try {
+            if (!roundExecutor.awaitTermination(10, TimeUnit.SECONDS)) roundExecutor.shutdownNow();
+        } catch (InterruptedException e) {
+            roundExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Object getCityLock(String cityId) {
+        return cityLocks.computeIfAbsent(cityId, k -> new Object());
+    }
+
     @PostConstruct
     public void restoreFromDatabase() {
         try {
@@ -138,10 +179,11 @@ public class NationWarService {
         try {
             String today = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
             String sessionId = SESSION_ID_PREFIX + today;
-            String data = nationWarMapper.findById(sessionId, DEFAULT_SERVER_ID);
-            if (data != null) {
-                activeSession = JSON.parseObject(data, NationWarSession.class);
-                logger.info("从DB恢复国战会话: phase={}", activeSession.getPhase());
+            NationWarSession restored = loadSession(sessionId);
+            if (restored != null) {
+                activeSession = restored;
+                logger.info("从DB恢复国战会话: phase={}, round={}, players={}", activeSession.getPhase(),
+                        activeSession.getCurrentRound(), activeSession.getPlayerStates().size());
             }
         } catch (Exception e) {
             logger.warn("恢复国战会话失败: {}", e.getMessage());
@@ -384,29 +426,59 @@ public class NationWarService {
         if (activeSession != null && today.equals(activeSession.getDate())) return;
 
         String sessionId = SESSION_ID_PREFIX + today;
-        String existing = nationWarMapper.findById(sessionId, DEFAULT_SERVER_ID);
+        NationWarSession existing = loadSession(sessionId);
         if (existing != null) {
-            activeSession = JSON.parseObject(existing, NationWarSession.class);
+            activeSession = existing;
             return;
         }
 
         if (!tryMarkScheduled("NATION_WAR_REG_LAZY_INIT", today, "SERVER_" + DEFAULT_SERVER_ID)) {
-            String latest = nationWarMapper.findById(sessionId, DEFAULT_SERVER_ID);
+            NationWarSession latest = loadSession(sessionId);
             if (latest != null) {
-                activeSession = JSON.parseObject(latest, NationWarSession.class);
+                activeSession = latest;
             }
             return;
         }
 
         activeSession = createSession(today);
         killStreakMap.clear();
+        sessionStore.markAllDirty(activeSession);
         saveSession(activeSession);
         logger.info("国战访问兜底触发报名初始化: {}", today);
     }
 
+    /** 只写出自上次保存以来标记过的元数据/战场/玩家/轮次行，见 {@link NationWarSessionStore} */
     private void saveSession(NationWarSession session) {
         String id = SESSION_ID_PREFIX + session.getDate();
-        nationWarMapper.upsert(id, session.getDate(), JSON.toJSONString(session), DEFAULT_SERVER_ID);
+        sessionDirty = false;
+        sessionStore.flush(id, session, DEFAULT_SERVER_ID);
+    }
+
+    /** 优先从分行存储恢复，旧版本写入的整体JSON作为回退 */
+    private NationWarSession loadSession(String sessionId) {
+        NationWarSession session = sessionStore.load(sessionId, DEFAULT_SERVER_ID);
+        if (session != null) return session;
+        String legacy = nationWarMapper.findById(sessionId, DEFAULT_SERVER_ID);
+        if (legacy == null) return null;
+        session = JSON.parseObject(legacy, NationWarSession.class);
+        // 旧格式恢复后整份迁移到新表
+        sessionStore.markAllDirty(session);
+        return session;
+    }
+
+    /**
+     * 没有战斗轮在执行时立即保存；否则保留脏标记，由正在执行的轮次结束后统一保存，
+     * 避免序列化会话时与结算线程并发修改同一份数据。
+     */
+    private void saveSessionIfIdle() {
+        if (!roundLock.tryLock()) return;
+        try {
+            synchronized (this) {
+                if (sessionDirty && activeSession != null) saveSession(activeSession);
+            }
+        } finally {
+            roundLock.unlock();
+        }
     }
 
     private NationWarSession createSession(String date) {
@@ -466,6 +538,8 @@ public class NationWarService {
         String today = todayStr();
         activeSession = createSession(today);
         killStreakMap.clear();
+        cityTickStats.clear();
+        sessionStore.markAllDirty(activeSession);
         saveSession(activeSession);
         logger.info("国战报名开始: {}", today);
     }
@@ -537,6 +611,7 @@ public class NationWarService {
             result.put("message", "报名成功（" + nationCount + "/" + MIN_SIGN_UP + "）");
         }
 
+        sessionStore.markMetaDirty();
         saveSession(activeSession);
         return result;
     }
@@ -605,6 +680,7 @@ public class NationWarService {
         cal.set(Calendar.MINUTE, 40);
         activeSession.setPhaseEndTime(cal.getTimeInMillis());
 
+        sessionStore.markAllDirty(activeSession);
         saveSession(activeSession);
         logger.info("国战开始，活跃战场数: {}", activeSession.getCityBattles().size());
     }
@@ -872,8 +948,8 @@ public class NationWarService {
 
     // ==================== 玩家加入/切换城市 ====================
 
-    public synchronized Map<String, Object> joinCity(String odUserId, String playerName,
-                                                      Integer level, Integer power, String cityId) {
+    public Map<String, Object> joinCity(String odUserId, String playerName,
+                                        Integer level, Integer power, String cityId) {
         if (activeSession == null || activeSession.getPhase() != SessionPhase.BATTLE)
             throw new BusinessException(400, "当前不是战斗阶段");
 
@@ -898,6 +974,7 @@ public class NationWarService {
             throw new BusinessException(400, "您已在城市" + existing.getCurrentCityId() + "参战，需先切换");
         }
 
+        // 阵容/VIP查询放在锁外，避免持锁访问数据库
         int vipLevel = 0;
         try {
             UserResource ur = userResourceService.getUserResource(odUserId);
@@ -918,8 +995,19 @@ public class NationWarService {
                 .totalMerit(0).totalScore(0).wins(0).losses(0).byeCount(0)
                 .vipLevel(vipLevel).build();
 
-        activeSession.getPlayerStates().put(odUserId, state);
-        saveSession(activeSession);
+        synchronized (getCityLock(cityId)) {
+            if (battle.getWinner() != null) throw new BusinessException(400, "该城市战斗已结束");
+            synchronized (this) {
+                PlayerWarState current = activeSession.getPlayerStates().get(odUserId);
+                if (current != null && current.getCurrentCityId() != null) {
+                    throw new BusinessException(400, "您已在城市" + current.getCurrentCityId() + "参战，需先切换");
+                }
+                activeSession.getPlayerStates().put(odUserId, state);
+                sessionStore.markPlayerDirty(odUserId);
+                sessionDirty = true;
+            }
+        }
+        saveSessionIfIdle();
 
         Map<String, Object> result = new HashMap<>();
         result.put("success", true);
@@ -931,13 +1019,10 @@ public class NationWarService {
 
     private void initPlayerSoldiers(String odUserId, Map<String, Integer> remaining, Map<String, Integer> max) {
         try {
-            List<General> generals = formationService.getBattleOrder(odUserId);
-            for (General g : generals) {
-                String key = g.getId() != null ? String.valueOf(g.getId()) : g.getName();
-                int maxSc = g.getSoldierMaxCount() != null ? g.getSoldierMaxCount() : 100;
-                int sc = g.getSoldierCount() != null ? Math.min(g.getSoldierCount(), maxSc) : maxSc;
-                remaining.put(key, sc);
-                max.put(key, maxSc);
+            // 入场即建好战斗快照，后续每轮结算直接复用
+            for (CombatSnapshot.CombatGeneral g : formationService.getCombatSnapshot(odUserId).getBattleOrder()) {
+                remaining.put(g.key, Math.min(g.soldierCount, g.maxSoldierCount));
+                max.put(g.key, g.maxSoldierCount);
             }
         } catch (Exception e) {
             remaining.put("default", 100);
@@ -945,38 +1030,52 @@ public class NationWarService {
         }
     }
 
-    public synchronized Map<String, Object> switchCity(String odUserId, String newCityId) {
+    public Map<String, Object> switchCity(String odUserId, String newCityId) {
         if (activeSession == null || activeSession.getPhase() != SessionPhase.BATTLE)
             throw new BusinessException(400, "当前不是战斗阶段");
 
         PlayerWarState state = activeSession.getPlayerStates().get(odUserId);
         if (state == null) throw new BusinessException(400, "您还未加入任何战场");
 
-        int requiredRounds = getRequiredRoundsForSwitch(state.getVipLevel());
-        boolean canSwitch = state.getAllDead() || state.getRoundsAtCurrentCity() >= requiredRounds;
-        if (!canSwitch)
-            throw new BusinessException(400, "还需" + (requiredRounds - state.getRoundsAtCurrentCity()) + "轮才能切换");
-
         CityBattle newBattle = activeSession.getCityBattles().get(newCityId);
         if (newBattle == null) throw new BusinessException(400, "目标城市没有战场");
-        if (newBattle.getWinner() != null) throw new BusinessException(400, "目标城市战斗已结束");
 
-        String playerNation = state.getNation();
+        // 只锁玩家所在城市和目标城市，按cityId排序加锁避免死锁
+        String oldCityId = state.getCurrentCityId() != null ? state.getCurrentCityId() : newCityId;
+        String firstId = oldCityId.compareTo(newCityId) <= 0 ? oldCityId : newCityId;
+        String secondId = firstId.equals(oldCityId) ? newCityId : oldCityId;
         String side;
-        if (playerNation.equals(newBattle.getSideANation())) {
-            side = "ATTACK";
-        } else if (playerNation.equals(newBattle.getSideBNation())) {
-            side = "DEFEND";
-        } else {
-            throw new BusinessException(400, "该城市战场不涉及您的国家");
-        }
-
-        state.setCurrentCityId(newCityId);
-        state.setSide(side);
-        state.setRoundsAtCurrentCity(0);
-        state.setCanSwitch(false);
+        synchronized (getCityLock(firstId)) {
+            synchronized (getCityLock(secondId)) {
+                if (state.getCurrentCityId() != null && !oldCityId.equals(state.getCurrentCityId()))
+                    throw new BusinessException(400, "战场状态已变化，请重试");
+
+                int requiredRounds = getRequiredRoundsForSwitch(state.getVipLevel());
+                boolean canSwitch = state.getAllDead() || state.getRoundsAtCurrentCity() >= requiredRounds;
+                if (!canSwitch)
+                    throw new BusinessException(400, "还需" + (requiredRounds - state.getRoundsAtCurrentCity()) + "轮才能切换");
+                if (newBattle.getWinner() != null) throw new BusinessException(400, "目标城市战斗已结束");
+
+                String playerNation = state.getNation();
+                if (playerNation.equals(newBattle.getSideANation())) {
+                    side = "ATTACK";
+                } else if (playerNation.equals(newBattle.getSideBNation())) {
+                    side = "DEFEND";
+                } else {
+                    throw new BusinessException(400, "该城市战场不涉及您的国家");
+                }
 
-        saveSession(activeSession);
+                synchronized (this) {
+                    state.setCurrentCityId(newCityId);
+                    state.setSide(side);
+                    state.setRoundsAtCurrentCity(0);
+                    state.setCanSwitch(false);
+                    sessionStore.markPlayerDirty(odUserId);
+                    sessionDirty = true;
+                }
+            }
+        }
+        saveSessionIfIdle();
 
         Map<String, Object> result = new HashMap<>();
         result.put("success", true);
@@ -1040,34 +1139,85 @@ public class NationWarService {
 
     // ==================== 每分钟战斗结算 ====================
 
-    public synchronized void battleTick() {
-        if (activeSession == null || activeSession.getPhase() != SessionPhase.BATTLE) return;
+    public void battleTick() {
+        roundLock.lock();
+        try {
+            long roundStart = System.currentTimeMillis();
+            int roundNum;
+            List<CityBattle> openBattles = new ArrayList<>();
+            Map<String, List<PlayerWarState>> playersByCity = new HashMap<>();
+            synchronized (this) {
+                if (activeSession == null || activeSession.getPhase() != SessionPhase.BATTLE) return;
+                activeSession.setCurrentRound(activeSession.getCurrentRound() + 1);
+                roundNum = activeSession.getCurrentRound();
+                sessionStore.markMetaDirty();
+                for (CityBattle battle : activeSession.getCityBattles().values()) {
+                    if (battle.getWinner() == null) openBattles.add(battle);
+                }
+                for (PlayerWarState ps : activeSession.getPlayerStates().values()) {
+                    if (ps.getCurrentCityId() == null || ps.getAllDead()) continue;
+                    playersByCity.computeIfAbsent(ps.getCurrentCityId(), k -> new ArrayList<>()).add(ps);
+                }
+            }
+            logger.info("国战第{}轮结算开始，战场数: {}", roundNum, openBattles.size());
 
-        activeSession.setCurrentRound(activeSession.getCurrentRound() + 1);
-        int roundNum = activeSession.getCurrentRound();
-        logger.info("国战第{}轮结算开始", roundNum);
+            Map<String, Future<Boolean>> futures = new LinkedHashMap<>();
+            for (CityBattle battle : openBattles) {
+                List<PlayerWarState> candidates = playersByCity.getOrDefault(battle.getCityId(), Collections.emptyList());
+                futures.put(battle.getCityId(), roundExecutor.submit(() -> settleCityRound(battle, candidates, roundNum)));
+            }
 
-        for (Map.Entry<String, CityBattle> entry : activeSession.getCityBattles().entrySet()) {
-            String cityId = entry.getKey();
-            CityBattle battle = entry.getValue();
-            if (battle.getWinner() != null) continue;
+            List<CityBattle> endedBattles = new ArrayList<>();
+            for (CityBattle battle : openBattles) {
+                try {
+                    if (futures.get(battle.getCityId()).get()) endedBattles.add(battle);
+                } catch (ExecutionException e) {
+                    logger.error("国战第{}轮城市{}结算失败", roundNum, battle.getCityId(), e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    logger.warn("国战第{}轮结算被中断", roundNum);
+                    break;
+                }
+            }
 
-            processCityBattleTick(cityId, battle, roundNum);
+            synchronized (this) {
+                for (CityBattle battle : endedBattles) onCityBattleEnd(battle);
+                saveSession(activeSession);
+            }
+            lastRoundMillis = System.currentTimeMillis() - roundStart;
+            logger.info("国战第{}轮结算完成，耗时{}ms", roundNum, lastRoundMillis);
+        } finally {
+            roundLock.unlock();
+        }
+        // 结算期间玩家加入/切换的改动由这里补存
+        if (sessionDirty) saveSessionIfIdle();
+    }
+
+    /**
+     * 在城市锁内结算单个城市的一轮，返回本轮是否分出胜负。
+     * 只有同城的加入/切换会等待这把锁，其它城市的玩家操作不受影响。
+     */
+    private boolean settleCityRound(CityBattle battle, List<PlayerWarState> candidates, int roundNum) {
+        String cityId = battle.getCityId();
+        synchronized (getCityLock(cityId)) {
+            if (battle.getWinner() != null) return false;
+            long start = System.nanoTime();
+            int fights = processCityBattleTick(cityId, battle, roundNum, candidates);
 
             if (battle.getSideAScore() >= battle.getVictoryPoint()) {
                 battle.setWinner(battle.getSideANation());
-                onCityBattleEnd(battle);
             } else if (battle.getSideBScore() >= battle.getVictoryPoint()) {
                 battle.setWinner(battle.getSideBNation());
-                onCityBattleEnd(battle);
             }
+            long costMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            cityTickStats.computeIfAbsent(cityId, k -> new CityTickStats()).record(roundNum, costMicros, fights);
+            logger.debug("国战第{}轮城市{}结算耗时{}ms，对战{}场", roundNum, cityId, costMicros / 1000, fights);
+            return battle.getWinner() != null;
         }
-
-        saveSession(activeSession);
-        logger.info("国战第{}轮结算完成", roundNum);
     }
 
-    private void processCityBattleTick(String cityId, CityBattle battle, int roundNum) {
+    private int processCityBattleTick(String cityId, CityBattle battle, int roundNum,
+                                      List<PlayerWarState> candidates) {
         List<PlayerWarState> sideAPlayers = new ArrayList<>();
         List<PlayerWarState> sideBPlayers = new ArrayList<>();
         if (!Boolean.TRUE.equals(battle.getIsChibiBattle())
@@ -1075,7 +1225,7 @@ public class NationWarService {
             battle.setNpcDefenders(generateNpcDefenders(battle.getSideBNation(), cityId));
         }
 
-        for (PlayerWarState ps : activeSession.getPlayerStates().values()) {
+        for (PlayerWarState ps : candidates) {
             if (!cityId.equals(ps.getCurrentCityId())) continue;
             if (ps.getAllDead()) continue;
             if ("ATTACK".equals(ps.getSide())) sideAPlayers.add(ps);
@@ -1090,11 +1240,15 @@ public class NationWarService {
             }
         }
 
-        Collections.shuffle(sideAPlayers, new Random());
-        Collections.shuffle(sideBWithNpc, new Random());
+        // 每城每轮一个配对种子，随轮次结果保存，配对过程可复现
+        long pairingSeed = ThreadLocalRandom.current().nextLong();
+        Random pairingRandom = new Random(pairingSeed);
+        Collections.shuffle(sideAPlayers, pairingRandom);
+        Collections.shuffle(sideBWithNpc, pairingRandom);
 
         RoundResult roundResult = RoundResult.builder()
                 .roundNumber(roundNum).cityId(cityId).timestamp(System.currentTimeMillis())
+                .pairingSeed(pairingSeed)
                 .fights(new ArrayList<>()).byes(new ArrayList<>()).build();
 
         int pairs = Math.min(sideAPlayers.size(), sideBWithNpc.size());
@@ -1139,12 +1293,21 @@ public class NationWarService {
             }
         }
 
-        for (PlayerWarState ps : sideAPlayers) updatePlayerSwitchEligibility(ps);
-        for (PlayerWarState ps : sideBPlayers) updatePlayerSwitchEligibility(ps);
+        for (PlayerWarState ps : sideAPlayers) {
+            updatePlayerSwitchEligibility(ps);
+            sessionStore.markPlayerDirty(ps.getOdUserId());
+        }
+        for (PlayerWarState ps : sideBPlayers) {
+            updatePlayerSwitchEligibility(ps);
+            sessionStore.markPlayerDirty(ps.getOdUserId());
+        }
 
         roundResult.setSideAScoreAfter(battle.getSideAScore());
         roundResult.setSideBScoreAfter(battle.getSideBScore());
         battle.getRounds().add(roundResult);
+        sessionStore.markCityDirty(cityId);
+        sessionStore.appendRound(roundResult);
+        return pairs;
     }
 
     private void fightPair(PlayerWarState attacker, PlayerWarState defender,
@@ -1167,8 +1330,18 @@ public class NationWarService {
             defenderLevel = npcDef.getLevel();
         }
 
-        BattleService.BattleReport report = battleService.fight(sideA, sideB, 20);
-        boolean attackerWins = report.victoryA;
+        // NPC援军打NPC守军没有玩家会看回放，只结算胜负不生成战报
+        boolean npcOnly = isNpcId(attacker.getOdUserId()) && (defender == null || isNpcId(defender.getOdUserId()));
+        boolean attackerWins;
+        Long reportId = null;
+        if (npcOnly) {
+            attackerWins = battleService.simulate(sideA, sideB, 20);
+        } else {
+            BattleService.BattleReport report = battleService.fight(sideA, sideB, 20);
+            attackerWins = report.victoryA;
+            reportId = battleReportStore.save(BattleReportStore.TYPE_NATION_WAR,
+                    extractServerId(attacker.getOdUserId()), report);
+        }
 
         updateSoldiersAfterBattle(attacker, sideA);
         if (defender != null) {
@@ -1203,7 +1376,7 @@ public class NationWarService {
                     .defenderId(defenderId).defenderName(defenderName).defenderLevel(defenderLevel)
                     .winnerId(attacker.getOdUserId()).winnerName(attacker.getPlayerName())
                     .meritGained(merit).scoreGained(score)
-                    .battleReportJson(JSON.toJSONString(report))
+                    .battleReportId(reportId)
                     .build());
         } else {
             int lossMerit = attackerLevel;
@@ -1226,7 +1399,7 @@ public class NationWarService {
                         .defenderId(defenderId).defenderName(defenderName).defenderLevel(defenderLevel)
                         .winnerId(defender.getOdUserId()).winnerName(defender.getPlayerName())
                         .meritGained(merit).scoreGained(score)
-                        .battleReportJson(JSON.toJSONString(report))
+                        .battleReportId(reportId)
                         .build());
             } else {
                 battle.setSideBScore(battle.getSideBScore() + attackerLevel * 10);
@@ -1235,7 +1408,7 @@ public class NationWarService {
                         .defenderId(defenderId).defenderName(defenderName).defenderLevel(defenderLevel)
                         .winnerId(defenderId).winnerName(defenderName)
                         .meritGained(0).scoreGained(attackerLevel * 10)
-                        .battleReportJson(JSON.toJSONString(report))
+                        .battleReportId(reportId)
                         .build());
             }
         }
@@ -1263,11 +1436,12 @@ public class NationWarService {
                 r.put("winnerName", resolveDisplayName(f.getWinnerId(), f.getWinnerName()));
                 r.put("meritGained", f.getMeritGained() != null ? f.getMeritGained() : 0);
                 r.put("scoreGained", f.getScoreGained() != null ? f.getScoreGained() : 0);
-                r.put("hasReplay", f.getBattleReportJson() != null && !f.getBattleReportJson().isEmpty());
+                boolean legacyReport = f.getBattleReportJson() != null && !f.getBattleReportJson().isEmpty();
+                r.put("hasReplay", f.getBattleReportId() != null || legacyReport);
+                // 新战报只给ID，客户端回放时再走 /battle-report/{id}；旧会话里内嵌的JSON照旧返回
+                r.put("battleReportId", f.getBattleReportId());
                 r.put("battleReportJson", f.getBattleReportJson());
-                r.put("battleReport", f.getBattleReportJson() != null && !f.getBattleReportJson().isEmpty()
-                        ? JSON.parseObject(f.getBattleReportJson())
-                        : null);
+                r.put("battleReport", legacyReport ? JSON.parseObject(f.getBattleReportJson()) : null);
                 return r;
             }
         }
@@ -1286,6 +1460,7 @@ public class NationWarService {
                 r.put("meritGained", b.getMeritGained() != null ? b.getMeritGained() : 0);
                 r.put("scoreGained", b.getScoreGained() != null ? b.getScoreGained() : 0);
                 r.put("hasReplay", false);
+                r.put("battleReportId", null);
                 r.put("battleReportJson", null);
                 r.put("battleReport", null);
                 return r;
@@ -1294,6 +1469,10 @@ public class NationWarService {
         return null;
     }
 
+    private static boolean isNpcId(String odUserId) {
+        return odUserId != null && odUserId.startsWith("NPC_");
+    }
+
     private int nextKillStreak(PlayerWarState player, boolean won) {
         if (player == null) return 0;
         String uid = player.getOdUserId();
@@ -1336,64 +1515,44 @@ public class NationWarService {
         double mobilityBonus = bonus[2];
 
         try {
-            List<General> generals = formationService.getBattleOrder(odUserId);
+            // 武将/装备/特性/兵法取自战斗快照，这里只套用主城加成和国战剩余兵力
+            List<CombatSnapshot.CombatGeneral> generals = formationService.getCombatSnapshot(odUserId).getBattleOrder();
             if (!generals.isEmpty()) {
                 List<BattleCalculator.BattleUnit> units = new ArrayList<>();
                 for (int i = 0; i < generals.size(); i++) {
-                    General g = generals.get(i);
-                    String key = g.getId() != null ? String.valueOf(g.getId()) : g.getName();
-                    int remaining = ps.getRemainingSoldiers().getOrDefault(key, 0);
+                    CombatSnapshot.CombatGeneral g = generals.get(i);
+                    int remaining = ps.getRemainingSoldiers().getOrDefault(g.key, 0);
                     if (remaining <= 0) continue;
 
-                    Map<String, Integer> eq = suitConfigService.calculateTotalEquipBonus(g.getId());
-                    int rawTier = g.getSoldierTier() != null ? g.getSoldierTier() : 1;
-                    int sRank = g.getSoldierRank() != null ? g.getSoldierRank() : 1;
-                    int tier = Math.max(rawTier, sRank);
-                    int troopType = BattleCalculator.parseTroopType(g.getTroopType());
-                    int maxSc = g.getSoldierMaxCount() != null ? g.getSoldierMaxCount() : 100;
-                    int formLv = BattleCalculator.maxPeopleToFormationLevel(maxSc);
-
-                    int baseAtk = g.getAttrAttack() != null ? g.getAttrAttack() : 100;
-                    int baseDef = g.getAttrDefense() != null ? g.getAttrDefense() : 50;
-                    int baseMob = g.getAttrMobility() != null ? g.getAttrMobility() : 15;
-                    int atk = (int)(baseAtk * (1 + atkDefBonus));
-                    int def = (int)(baseDef * (1 + atkDefBonus));
-                    int mob = (int)(baseMob * (1 + mobilityBonus));
+                    int formLv = BattleCalculator.maxPeopleToFormationLevel(g.maxSoldierCount);
+                    int atk = (int)(g.attack * (1 + atkDefBonus));
+                    int def = (int)(g.defense * (1 + atkDefBonus));
+                    int mob = (int)(g.mobility * (1 + mobilityBonus));
 
                     BattleCalculator.BattleUnit u = BattleCalculator.assembleBattleUnit(
-                            g.getName() != null ? g.getName() : ps.getPlayerName(),
-                            g.getLevel() != null ? g.getLevel() : ps.getLevel(),
-                            atk, def,
-                            g.getAttrValor() != null ? g.getAttrValor() : 10,
-                            g.getAttrCommand() != null ? g.getAttrCommand() : 10,
-                            g.getAttrDodge() != null ? (int) Math.round(g.getAttrDodge()) : 5,
-                            mob, troopType, tier, remaining, maxSc, formLv,
-                            eq.getOrDefault("attack", 0), eq.getOrDefault("defense", 0),
-                            eq.getOrDefault("mobility", eq.getOrDefault("speed", 0)), eq.getOrDefault("hit", 0),
-                            eq.getOrDefault("dodge", 0), 0, 0, 0);
+                            g.name != null ? g.name : ps.getPlayerName(),
+                            g.level != null ? g.level : ps.getLevel(),
+                            atk, def, g.valor, g.command, g.dodge,
+                            mob, g.troopType, g.soldierTier, remaining, g.maxSoldierCount, formLv,
+                            g.equipAttack, g.equipDefense, g.equipMobility, g.equipHit, g.equipDodge,
+                            0, 0, 0);
                     u.position = i;
-                    generalService.applyFamousTraitsToUnit(u, g.getName(), troopType);
+
+                    // 名将特性，与 GeneralService.applyFamousTraitsToUnit 一致：加兵同时提高当前兵力和满编
+                    u.totalAttack += g.traitAttack;
+                    u.totalDefense += g.traitDefense;
+                    u.traitDmgBonus += g.traitDamage;
+                    u.traitDamageResist += g.traitDamageResist;
+                    u.traitLifePct += g.traitLifePct;
+                    u.traitImmuneAmbush = g.traitImmuneAmbush;
+                    u.mobility += g.traitMobility;
+                    u.dodge += g.traitDodge;
+                    u.soldierCount += g.traitSoldierCount;
+                    u.maxSoldierCount += g.traitSoldierCount;
+                    u.tacticsTriggerMultiplier = g.traitTacticsMultiplier;
 
                     // Inject equipped tactics into nation war units, same as other battle modes.
-                    if (g.getSlotId() != null && g.getSlotId() > 0) {
-                        u.tacticsTriggerBonus = generalService.getTacticsTriggerBonus(g.getSlotId());
-                    }
-                    if (g.getTacticsId() != null) {
-                        Map<String, Object> owned = userTacticsMapper.findByUserIdAndTacticsId(
-                                g.getUserId(), g.getTacticsId());
-                        if (owned != null) {
-                            String templateId = String.valueOf(owned.get("tacticsId"));
-                            TacticsConfig.TacticsTemplate tt = tacticsConfig.getById(templateId);
-                            if (tt != null) {
-                                int tLevel = ((Number) owned.get("level")).intValue();
-                                u.tacticsId = tt.getId();
-                                u.tacticsName = tt.getName();
-                                u.tacticsLevel = tLevel;
-                                u.tacticsEffectValue = TacticsConfig.calcEffect(tt, tLevel);
-                                u.tacticsTriggerRate = TacticsConfig.calcTriggerRate(tt, tLevel);
-                            }
-                        }
-                    }
+                    g.applyTactics(u);
                     units.add(u);
                 }
                 if (!units.isEmpty()) return units;
@@ -1452,22 +1611,85 @@ public class NationWarService {
 
     // ==================== 战斗结束 ====================
 
-    public synchronized void finishAllBattles() {
-        if (activeSession == null || activeSession.getPhase() != SessionPhase.BATTLE) return;
+    public void finishAllBattles() {
+        roundLock.lock();
+        try {
+            List<CityBattle> battles;
+            synchronized (this) {
+                if (activeSession == null || activeSession.getPhase() != SessionPhase.BATTLE) return;
+                battles = new ArrayList<>(activeSession.getCityBattles().values());
+            }
 
-        for (CityBattle battle : activeSession.getCityBattles().values()) {
-            if (battle.getWinner() != null) continue;
-            if (battle.getSideAScore() >= battle.getSideBScore()) {
-                battle.setWinner(battle.getSideANation());
-            } else {
-                battle.setWinner(battle.getSideBNation());
+            List<CityBattle> endedBattles = new ArrayList<>();
+            for (CityBattle battle : battles) {
+                synchronized (getCityLock(battle.getCityId())) {
+                    if (battle.getWinner() != null) continue;
+                    if (battle.getSideAScore() >= battle.getSideBScore()) {
+                        battle.setWinner(battle.getSideANation());
+                    } else {
+                        battle.setWinner(battle.getSideBNation());
+                    }
+                    endedBattles.add(battle);
+                    sessionStore.markCityDirty(battle.getCityId());
+                }
             }
-            onCityBattleEnd(battle);
+
+            synchronized (this) {
+                for (CityBattle battle : endedBattles) onCityBattleEnd(battle);
+                activeSession.setPhase(SessionPhase.FINISHED);
+                sessionStore.markMetaDirty();
+                saveSession(activeSession);
+            }
+            logger.info("国战全部结束");
+        } finally {
+            roundLock.unlock();
         }
+    }
 
-        activeSession.setPhase(SessionPhase.FINISHED);
-        saveSession(activeSession);
-        logger.info("国战全部结束");
+    // ==================== 轮次引擎指标 ====================
+
+    /** 单个城市的结算耗时统计 */
+    private static class CityTickStats {
+        private int lastRound;
+        private int lastFights;
+        private long lastMicros;
+        private long maxMicros;
+        private long totalMicros;
+        private long ticks;
+
+        synchronized void record(int round, long micros, int fights) {
+            lastRound = round;
+            lastFights = fights;
+            lastMicros = micros;
+            maxMicros = Math.max(maxMicros, micros);
+            totalMicros += micros;
+            ticks++;
+        }
+
+        synchronized Map<String, Object> toMap() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("lastRound", lastRound);
+            m.put("lastFights", lastFights);
+            m.put("lastMs", lastMicros / 1000.0);
+            m.put("maxMs", maxMicros / 1000.0);
+            m.put("avgMs", ticks > 0 ? totalMicros / 1000.0 / ticks : 0);
+            m.put("ticks", ticks);
+            return m;
+        }
+    }
+
+    public Map<String, Object> getRoundEngineMetrics() {
+        Map<String, Object> cityStats = new LinkedHashMap<>();
+        for (String cityId : cities.keySet()) {
+            CityTickStats stats = cityTickStats.get(cityId);
+            if (stats != null) cityStats.put(cityId, stats.toMap());
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("workerThreads", roundExecutor.getMaximumPoolSize());
+        result.put("activeWorkers", roundExecutor.getActiveCount());
+        result.put("lastRoundMs", lastRoundMillis);
+        result.put("cities", cityStats);
+        return result;
     }
 
     private void onCityBattleEnd(CityBattle battle) {
@@ -1514,9 +1736,7 @@ public class NationWarService {
 
     private void addPlayerMerit(String odUserId, int merit) {
         if (odUserId == null || odUserId.startsWith("NPC_")) return;
-        int serverId = extractServerId(odUserId);
-        Integer current = nationWarMapper.findPlayerMerit(odUserId, serverId);
-        nationWarMapper.upsertPlayerMerit(odUserId, (current != null ? current : 0) + merit, serverId);
+        nationWarMapper.addPlayerMerit(odUserId, merit, extractServerId(odUserId));
     }
 
     public int getPlayerMerit(String odUserId) {
@@ -1842,7 +2062,9 @@ public class NationWarService {
 
             autoJoinRegisteredPlayers();
             generateNpcAttackers();
-            saveSession(activeSession);
+            sessionStore.markAllDirty(activeSession);
+            sessionDirty = true;
+            saveSessionIfIdle();
             logger.info("测试强制开战兜底已创建战场: {}", targetCityId);
         }
 
@@ -1930,6 +2152,7 @@ public class NationWarService {
             }
 
             activeSession.setPhase(SessionPhase.BATTLE);
+            sessionStore.markAllDirty(activeSession);
 
             int maxTicks = 40;
             for (int t = 0; t < maxTicks; t++) {
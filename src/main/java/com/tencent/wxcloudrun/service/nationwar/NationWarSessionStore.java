@@ -0,0 +1,212 @@
+package com.tencent.wxcloudrun.service.nationwar;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SimplePropertyPreFilter;
+import com.tencent.wxcloudrun.dao.NationWarMapper;
+import com.tencent.wxcloudrun.model.NationWar.CityBattle;
+import com.tencent.wxcloudrun.model.NationWar.NationWarSession;
+import com.tencent.wxcloudrun.model.NationWar.PlayerWarState;
+import com.tencent.wxcloudrun.model.NationWar.RoundResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 国战会话增量持久化。
+ * 会话拆成 元数据 / 城市战场 / 玩家状态 / 轮次结果 四类行，调用方标记变化，
+ * flush 时只写脏行；轮次结果只追加，不再随40轮结算反复重写整份会话JSON。
+ */
+@Component
+public class NationWarSessionStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(NationWarSessionStore.class);
+    private static final int BATCH_SIZE = 200;
+
+    /** 元数据不含战场和玩家，战场不含轮次记录，它们各自单独成行 */
+    private static final SimplePropertyPreFilter META_FILTER = new SimplePropertyPreFilter();
+    private static final SimplePropertyPreFilter CITY_FILTER = new SimplePropertyPreFilter();
+    static {
+        META_FILTER.getExcludes().add("cityBattles");
+        META_FILTER.getExcludes().add("playerStates");
+        CITY_FILTER.getExcludes().add("rounds");
+    }
+
+    @Autowired private NationWarMapper nationWarMapper;
+
+    private volatile boolean metaDirty = false;
+    private final Set<String> dirtyCities = ConcurrentHashMap.newKeySet();
+    private final Set<String> dirtyPlayers = ConcurrentHashMap.newKeySet();
+    private final Queue<RoundResult> pendingRounds = new ConcurrentLinkedQueue<>();
+
+    public void markMetaDirty() { metaDirty = true; }
+
+    public void markCityDirty(String cityId) {
+        if (cityId != null) dirtyCities.add(cityId);
+    }
+
+    public void markPlayerDirty(String odUserId) {
+        if (odUserId != null) dirtyPlayers.add(odUserId);
+    }
+
+    public void appendRound(RoundResult round) {
+        if (round != null) pendingRounds.add(round);
+    }
+
+    /** 新建/重建会话时调用：丢弃旧会话残留的待写数据，整份会话视为脏 */
+    public void markAllDirty(NationWarSession session) {
+        pendingRounds.clear();
+        dirtyCities.clear();
+        dirtyPlayers.clear();
+        metaDirty = true;
+        if (session == null) return;
+        if (session.getCityBattles() != null) {
+            dirtyCities.addAll(session.getCityBattles().keySet());
+            for (CityBattle battle : session.getCityBattles().values()) {
+                if (battle.getRounds() != null) pendingRounds.addAll(battle.getRounds());
+            }
+        }
+        if (session.getPlayerStates() != null) dirtyPlayers.addAll(session.getPlayerStates().keySet());
+    }
+
+    /**
+     * 写出自上次 flush 以来的变化。调用方需保证期间没有结算线程在修改会话。
+     * 写失败的部分重新标脏，下次 flush 重试。
+     */
+    public void flush(String sessionId, NationWarSession session, int serverId) {
+        long now = System.currentTimeMillis();
+
+        if (metaDirty) {
+            metaDirty = false;
+            try {
+                nationWarMapper.upsertSessionMeta(sessionId, session.getDate(), session.getPhase().name(),
+                        session.getCurrentRound() != null ? session.getCurrentRound() : 0,
+                        JSON.toJSONString(session, META_FILTER), serverId, now);
+            } catch (Exception e) {
+                metaDirty = true;
+                logger.error("国战会话元数据持久化失败: {}", sessionId, e);
+            }
+        }
+
+        List<String> cityIds = drain(dirtyCities);
+        if (!cityIds.isEmpty()) {
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for (String cityId : cityIds) {
+                CityBattle battle = session.getCityBattles().get(cityId);
+                if (battle != null) rows.add(row(cityId, JSON.toJSONString(battle, CITY_FILTER)));
+            }
+            try {
+                for (List<Map<String, Object>> chunk : chunks(rows)) {
+                    nationWarMapper.batchUpsertSessionCities(sessionId, serverId, chunk, now);
+                }
+            } catch (Exception e) {
+                dirtyCities.addAll(cityIds);
+                logger.error("国战城市战场持久化失败: {}", sessionId, e);
+            }
+        }
+
+        List<String> playerIds = drain(dirtyPlayers);
+        if (!playerIds.isEmpty()) {
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for (String odUserId : playerIds) {
+                PlayerWarState ps = session.getPlayerStates().get(odUserId);
+                if (ps != null) rows.add(row(odUserId, JSON.toJSONString(ps)));
+            }
+            try {
+                for (List<Map<String, Object>> chunk : chunks(rows)) {
+                    nationWarMapper.batchUpsertSessionPlayers(sessionId, serverId, chunk, now);
+                }
+            } catch (Exception e) {
+                dirtyPlayers.addAll(playerIds);
+                logger.error("国战玩家状态持久化失败: {}", sessionId, e);
+            }
+        }
+
+        List<RoundResult> rounds = new ArrayList<>();
+        RoundResult r;
+        while ((r = pendingRounds.poll()) != null) rounds.add(r);
+        if (!rounds.isEmpty()) {
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for (RoundResult round : rounds) {
+                Map<String, Object> m = row(round.getCityId(), JSON.toJSONString(round));
+                m.put("roundNumber", round.getRoundNumber());
+                rows.add(m);
+            }
+            try {
+                for (List<Map<String, Object>> chunk : chunks(rows)) {
+                    nationWarMapper.batchInsertSessionRounds(sessionId, serverId, chunk, now);
+                }
+            } catch (Exception e) {
+                pendingRounds.addAll(rounds);
+                logger.error("国战轮次结果持久化失败: {}", sessionId, e);
+            }
+        }
+    }
+
+    /**
+     * 从分行存储重建会话，没有元数据行时返回 null（由调用方回退到旧的整体JSON）。
+     */
+    public NationWarSession load(String sessionId, int serverId) {
+        String meta = nationWarMapper.findSessionMeta(sessionId, serverId);
+        if (meta == null) return null;
+        NationWarSession session = JSON.parseObject(meta, NationWarSession.class);
+
+        Map<String, CityBattle> battles = new LinkedHashMap<>();
+        List<String> cityRows = nationWarMapper.findSessionCities(sessionId, serverId);
+        if (cityRows != null) {
+            for (String data : cityRows) {
+                CityBattle battle = JSON.parseObject(data, CityBattle.class);
+                battle.setRounds(new ArrayList<>());
+                battles.put(battle.getCityId(), battle);
+            }
+        }
+        List<String> roundRows = nationWarMapper.findSessionRounds(sessionId, serverId);
+        if (roundRows != null) {
+            for (String data : roundRows) {
+                RoundResult round = JSON.parseObject(data, RoundResult.class);
+                CityBattle battle = battles.get(round.getCityId());
+                if (battle != null) battle.getRounds().add(round);
+            }
+        }
+        session.setCityBattles(battles);
+
+        Map<String, PlayerWarState> players = new LinkedHashMap<>();
+        List<String> playerRows = nationWarMapper.findSessionPlayers(sessionId, serverId);
+        if (playerRows != null) {
+            for (String data : playerRows) {
+                PlayerWarState ps = JSON.parseObject(data, PlayerWarState.class);
+                players.put(ps.getOdUserId(), ps);
+            }
+        }
+        session.setPlayerStates(players);
+
+        if (session.getNationTargets() == null) session.setNationTargets(new LinkedHashMap<>());
+        if (session.getRegistrations() == null) session.setRegistrations(new LinkedHashMap<>());
+        return session;
+    }
+
+    private static List<String> drain(Set<String> dirty) {
+        List<String> ids = new ArrayList<>(dirty);
+        dirty.removeAll(ids);
+        return ids;
+    }
+
+    private static Map<String, Object> row(String key, String data) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("key", key);
+        m.put("data", data);
+        return m;
+    }
+
+    private static List<List<Map<String, Object>>> chunks(List<Map<String, Object>> rows) {
+        List<List<Map<String, Object>>> result = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i += BATCH_SIZE) {
+            result.add(rows.subList(i, Math.min(rows.size(), i + BATCH_SIZE)));
+        }
+        return result;
+    }
+}
@@ -8,12 +8,16 @@ import com.tencent.wxcloudrun.model.General;
 import com.tencent.wxcloudrun.model.PlunderData;
 import com.tencent.wxcloudrun.model.UserResource;
 import com.tencent.wxcloudrun.repository.GeneralRepository;
+import com.tencent.wxcloudrun.repository.PlayerDirectory;
 import com.tencent.wxcloudrun.repository.PlunderRepository;
+import com.tencent.wxcloudrun.repository.UserResourceLedger;
 import com.tencent.wxcloudrun.repository.UserResourceRepository;
+import com.tencent.wxcloudrun.repository.UserResourceLedger.Column;
 import com.tencent.wxcloudrun.service.formation.FormationService;
 import com.tencent.wxcloudrun.service.battle.BattleCalculator;
 import com.tencent.wxcloudrun.service.battle.BattleService;
 import com.tencent.wxcloudrun.service.PlayerNameResolver;
+import com.tencent.wxcloudrun.service.RateLimiter;
 import com.tencent.wxcloudrun.service.SuitConfigService;
 import com.tencent.wxcloudrun.service.level.LevelService;
 import org.slf4j.Logger;
@@ -22,12 +26,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 public class PlunderService {
 
     private static final Logger logger = LoggerFactory.getLogger(PlunderService.class);
+    /** 掠夺请求频率：每 2 秒恢复一次，最多连发 3 次 */
+    private static final long PLUNDER_RATE_INTERVAL_MS = 2000;
+    private static final int PLUNDER_RATE_BURST = 3;
 
     static int extractServerId(String compositeUserId) {
         if (compositeUserId == null) return 1;
@@ -51,6 +57,9 @@ public class PlunderService {
     @Autowired
     private UserResourceRepository userResourceRepository;
 
+    @Autowired
+    private UserResourceLedger userResourceLedger;
+
     @Autowired
     private GeneralRepository generalRepository;
 
@@ -60,12 +69,18 @@ public class PlunderService {
     @Autowired
     private BattleService battleService;
 
+    @Autowired
+    private RateLimiter rateLimiter;
+
     @Autowired
     private SuitConfigService suitConfigService;
 
     @Autowired
     private PlayerNameResolver playerNameResolver;
 
+    @Autowired
+    private PlayerDirectory playerDirectory;
+
     @Autowired
     private LevelService levelService;
 
@@ -120,41 +135,36 @@ public class PlunderService {
             }
         }
 
-        // 查找等级范围内的玩家
-        List<Map<String, Object>> allUsers = plunderRepository.findUserLevelsByServerId(extractServerId(userId));
-        List<Map<String, Object>> matchedPlayers = new ArrayList<>();
-
-        for (Map<String, Object> u : allUsers) {
-            String uid = String.valueOf(u.get("userId"));
-            if (uid.equals(userId)) continue;
-
-            int uLevel = parseIntSafe(u.get("level"), 1);
-            if (Math.abs(uLevel - myLevel) > PlunderConfig.LEVEL_RANGE) continue;
-
-            boolean onCooldown = cooldownIds.contains(uid);
+        // 从玩家目录按等级区间取当前页的真实玩家（等级从高到低），NPC 排在所有玩家之后
+        int start = page * PlunderConfig.PAGE_SIZE;
+        PlayerDirectory.Page players = playerDirectory.findByLevel(extractServerId(userId),
+                myLevel - PlunderConfig.LEVEL_RANGE, myLevel + PlunderConfig.LEVEL_RANGE,
+                userId, start, PlunderConfig.PAGE_SIZE);
+        List<Map<String, Object>> pageTargets = new ArrayList<>();
 
+        for (PlayerDirectory.Player p : players.getPlayers()) {
             Map<String, Object> target = new HashMap<>();
-            target.put("id", uid);
-            target.put("name", playerNameResolver.resolve(uid));
-            target.put("level", uLevel);
+            target.put("id", p.getUserId());
+            target.put("name", p.getName());
+            target.put("level", p.getLevel());
             target.put("isNpc", false);
-            target.put("silver", parseLongSafe(u.get("silver"), 0));
+            target.put("silver", p.getSilver());
             // 历史兼容字段：保留 wood 但不再展示/发放
             target.put("wood", 0L);
-            target.put("metal", parseLongSafe(u.get("metal"), 0));
-            target.put("paper", parseLongSafe(u.get("paper"), 0));
-            target.put("food", parseLongSafe(u.get("food"), 0));
-            target.put("rank", stripQuotes(String.valueOf(u.get("rank"))));
-            target.put("onCooldown", onCooldown);
-            target.put("power", uLevel * 500 + 1000);
-            matchedPlayers.add(target);
+            target.put("metal", p.getMetal());
+            target.put("paper", p.getPaper());
+            target.put("food", p.getFood());
+            target.put("rank", stripQuotes(String.valueOf(p.getRank())));
+            target.put("onCooldown", cooldownIds.contains(p.getUserId()));
+            target.put("power", p.getLevel() * 500 + 1000);
+            pageTargets.add(target);
         }
 
-        matchedPlayers.sort((a, b) -> ((Integer) b.get("level")).compareTo((Integer) a.get("level")));
-
         // 从数据库模板生成NPC列表
         List<PlunderNpc> npcs = plunderConfig.generateNpcsForLevel(myLevel);
-        List<Map<String, Object>> npcTargets = npcs.stream().map(npc -> {
+        int npcStart = Math.max(0, start - players.getTotal());
+        for (int i = npcStart; i < npcs.size() && pageTargets.size() < PlunderConfig.PAGE_SIZE; i++) {
+            PlunderNpc npc = npcs.get(i);
             Map<String, Object> target = new HashMap<>();
             target.put("id", npc.getId());
             target.put("name", npc.getName());
@@ -169,16 +179,9 @@ public class PlunderService {
             target.put("food", npc.getFood());
             target.put("power", npc.getPower());
             target.put("onCooldown", false);
-            return target;
-        }).collect(Collectors.toList());
-
-        List<Map<String, Object>> allTargets = new ArrayList<>(matchedPlayers);
-        allTargets.addAll(npcTargets);
-
-        int total = allTargets.size();
-        int start = page * PlunderConfig.PAGE_SIZE;
-        int end = Math.min(start + PlunderConfig.PAGE_SIZE, total);
-        List<Map<String, Object>> pageTargets = start < total ? allTargets.subList(start, end) : new ArrayList<>();
+            pageTargets.add(target);
+        }
+        int total = players.getTotal() + npcs.size();
 
         Map<String, Object> result = new HashMap<>();
         result.put("targets", pageTargets);
@@ -193,6 +196,7 @@ public class PlunderService {
      * 执行掠夺 - 使用阵型全部武将，回合制伤害计算（与战役一致）
      */
     public Map<String, Object> doPlunder(String userId, String targetId) {
+        rateLimiter.acquire("plunder.attack", userId, PLUNDER_RATE_INTERVAL_MS, PLUNDER_RATE_BURST, "操作太频繁，请稍后再试");
         PlunderData pd = plunderRepository.getOrInit(userId);
 
         int available = pd.getAvailableCount() != null ? pd.getAvailableCount() : 0;
@@ -201,7 +205,6 @@ public class PlunderService {
         }
 
         int myLevel = levelService.getUserLevel(userId).getLevel();
-        UserResource myResource = userResourceRepository.findByUserId(userId);
 
         // 获取完整阵型（含装备+兵法+天赋加成）
         List<BattleCalculator.BattleUnit> playerBattleUnits = formationService.buildPlayerBattleUnits(userId);
@@ -336,26 +339,25 @@ public class PlunderService {
             foodGain = scaleResourceGain((long) (myLevel * PlunderConfig.REWARD_BASE_MULTIPLIER
                     + tFood * PlunderConfig.REWARD_RESOURCE_RATIO));
 
-            myResource.setSilver((myResource.getSilver() != null ? myResource.getSilver() : 0) + silverGain);
-            myResource.setMetal((myResource.getMetal() != null ? myResource.getMetal() : 0) + metalGain);
-            myResource.setPaper((myResource.getPaper() != null ? myResource.getPaper() : 0) + paperGain);
-            myResource.setFood((myResource.getFood() != null ? myResource.getFood() : 0) + foodGain);
-            userResourceRepository.save(myResource);
+            // 双方资源都按增量原子修改，不会覆盖对方同时发生的收支
+            userResourceLedger.change(userId)
+                    .add(Column.SILVER, silverGain)
+                    .add(Column.METAL, metalGain)
+                    .add(Column.PAPER, paperGain)
+                    .add(Column.FOOD, foodGain)
+                    .apply();
 
             if (!isNpcTarget) {
-                UserResource targetResource = userResourceRepository.findByUserId(targetId);
-                if (targetResource != null) {
-                    long sLoss = (long) (tSilver * PlunderConfig.VICTIM_LOSS_RATIO);
-                    long mLoss = (long) (tMetal * PlunderConfig.VICTIM_LOSS_RATIO);
-                    long pLoss = (long) (tPaper * PlunderConfig.VICTIM_LOSS_RATIO);
-                    long fLoss = (long) (tFood * PlunderConfig.VICTIM_LOSS_RATIO);
-
-                    targetResource.setSilver(Math.max(0, (targetResource.getSilver() != null ? targetResource.getSilver() : 0) - sLoss));
-                    targetResource.setMetal(Math.max(0, (targetResource.getMetal() != null ? targetResource.getMetal() : 0) - mLoss));
-                    targetResource.setPaper(Math.max(0, (targetResource.getPaper() != null ? targetResource.getPaper() : 0) - pLoss));
-                    targetResource.setFood(Math.max(0, (targetResource.getFood() != null ? targetResource.getFood() : 0) - fLoss));
-                    userResourceRepository.save(targetResource);
-                }
+                long sLoss = (long) (tSilver * PlunderConfig.VICTIM_LOSS_RATIO);
+                long mLoss = (long) (tMetal * PlunderConfig.VICTIM_LOSS_RATIO);
+                long pLoss = (long) (tPaper * PlunderConfig.VICTIM_LOSS_RATIO);
+                long fLoss = (long) (tFood * PlunderConfig.VICTIM_LOSS_RATIO);
+                userResourceLedger.change(targetId)
+                        .deduct(Column.SILVER, sLoss)
+                        .deduct(Column.METAL, mLoss)
+                        .deduct(Column.PAPER, pLoss)
+                        .deduct(Column.FOOD, fLoss)
+                        .apply();
             }
         }
 
@@ -415,14 +417,10 @@ public class PlunderService {
         }
 
         int cost = PlunderConfig.getPurchaseCost(purchased);
-        UserResource resource = userResourceRepository.findByUserId(userId);
-        if (resource == null || resource.getGold() == null || resource.getGold() < cost) {
+        if (!userResourceLedger.consume(userId, Column.GOLD, cost)) {
             throw new BusinessException(400, "黄金不足，需要" + cost + "黄金");
         }
 
-        resource.setGold(resource.getGold() - cost);
-        userResourceRepository.save(resource);
-
         pd.setTodayPurchased(purchased + 1);
         int current = pd.getAvailableCount() != null ? pd.getAvailableCount() : 0;
         pd.setAvailableCount(current + 1);
@@ -449,6 +447,14 @@ public class PlunderService {
         } else {
             records = plunderRecordMapper.findByAttacker(userId, 50);
         }
+        List<String> playerIds = new ArrayList<>();
+        for (Map<String, Object> r : records) {
+            playerIds.add(String.valueOf(r.get("attackerId")));
+            playerIds.add(String.valueOf(r.get("defenderId")));
+        }
+        playerIds.removeIf(id -> id.startsWith("npc_"));
+        Map<String, String> names = playerNameResolver.resolveAll(playerIds);
+
         // 转换数据库字段类型以兼容前端
         List<Map<String, Object>> formatted = new ArrayList<>();
         for (Map<String, Object> r : records) {
@@ -463,11 +469,11 @@ public class PlunderService {
                     || "true".equalsIgnoreCase(String.valueOf(victoryObj))));
             String attackerId = String.valueOf(item.get("attackerId"));
             String defenderId = String.valueOf(item.get("defenderId"));
-            if (attackerId != null && !attackerId.startsWith("npc_")) {
-                item.put("attackerName", playerNameResolver.resolve(attackerId));
+            if (!attackerId.startsWith("npc_")) {
+                item.put("attackerName", names.get(attackerId));
             }
-            if (defenderId != null && !defenderId.startsWith("npc_")) {
-                item.put("defenderName", playerNameResolver.resolve(defenderId));
+            if (!defenderId.startsWith("npc_")) {
+                item.put("defenderName", names.get(defenderId));
             }
             formatted.add(item);
         }
@@ -475,11 +481,6 @@ public class PlunderService {
         return result;
     }
 
-    private int parseIntSafe(Object val, int def) {
-        if (val == null) return def;
-        try { return Integer.parseInt(String.valueOf(val)); } catch (Exception e) { return def; }
-    }
-
     private long parseLongSafe(Object val, long def) {
         if (val == null) return def;
         try { return Long.parseLong(String.valueOf(val)); } catch (Exception e) { return def; }
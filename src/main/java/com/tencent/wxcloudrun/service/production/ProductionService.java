@@ -49,6 +49,9 @@ public class ProductionService {
     @Autowired
     private com.tencent.wxcloudrun.config.TacticsConfig tacticsConfig;
 
+    @Autowired
+    private com.tencent.wxcloudrun.service.formation.CombatSnapshotCache combatSnapshotCache;
+
     @org.springframework.beans.factory.annotation.Autowired @org.springframework.context.annotation.Lazy
     private com.tencent.wxcloudrun.service.dailytask.DailyTaskService dailyTaskService;
     
@@ -711,6 +714,7 @@ public class ProductionService {
             }
             String internalId = template.getId();
             userTacticsMapper.upsert(userId, internalId, 1, System.currentTimeMillis());
+            combatSnapshotCache.invalidate(userId);
             log.info("兵法 {} (内部ID={}) 已同步到用户 {} 的 user_tactics 表", template.getName(), internalId, userId);
         } catch (Exception e) {
             log.warn("兵法同步到user_tactics失败: {} - {}", apkTacticsId, e.getMessage());
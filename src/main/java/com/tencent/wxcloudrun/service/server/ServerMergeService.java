@@ -2,12 +2,19 @@ package com.tencent.wxcloudrun.service.server;
 
 import com.tencent.wxcloudrun.dao.*;
 import com.tencent.wxcloudrun.exception.BusinessException;
+import com.tencent.wxcloudrun.repository.PlayerDirectory;
+import com.tencent.wxcloudrun.service.PlayerNameResolver;
+import com.tencent.wxcloudrun.service.chat.ChatChannelHub;
+import com.tencent.wxcloudrun.service.chat.ChatMessageWriter;
+import com.tencent.wxcloudrun.service.herorank.HeroRankBoard;
 import com.tencent.wxcloudrun.service.herorank.HeroRankService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.*;
 
@@ -19,6 +26,7 @@ public class ServerMergeService {
     @Autowired private GameServerMapper gameServerMapper;
     @Autowired private HeroRankMapper heroRankMapper;
     @Autowired private HeroRankService heroRankService;
+    @Autowired private HeroRankBoard heroRankBoard;
     @Autowired private AllianceMapper allianceMapper;
     @Autowired private ChatMapper chatMapper;
     @Autowired private MarketMapper marketMapper;
@@ -28,6 +36,10 @@ public class ServerMergeService {
     @Autowired private WorldBossMapper worldBossMapper;
     @Autowired private AllianceBossMapper allianceBossMapper;
     @Autowired private ServerMergeMapper mergeMapper;
+    @Autowired private PlayerDirectory playerDirectory;
+    @Autowired private PlayerNameResolver playerNameResolver;
+    @Autowired private ChatChannelHub chatChannelHub;
+    @Autowired private ChatMessageWriter chatMessageWriter;
 
     /**
      * 将 sourceServerId 合入 targetServerId
@@ -55,20 +67,30 @@ public class ServerMergeService {
         // 1. 标记源服
         gameServerMapper.updateServerStatus(sourceServerId, "merging");
 
-        // 2. 收集两个服的真实玩家（合并前）
+        // 2. 收集两个服的真实玩家（合并前，内存名次先写回）
+        heroRankBoard.flush();
         List<Map<String, Object>> sourcePlayers = heroRankMapper.findRealPlayersByServerId(sourceServerId);
         List<Map<String, Object>> targetPlayers = heroRankMapper.findRealPlayersByServerId(targetServerId);
         logger.info("源服玩家 {} 人, 目标服玩家 {} 人", sourcePlayers.size(), targetPlayers.size());
 
-        // 3. 迁移 server_id 隔离的表
+        // 3. 迁移 server_id 隔离的表（聊天写入队列先落库）
+        chatMessageWriter.flush();
         migrateServerIdTables(sourceServerId, targetServerId);
 
         // 4. 迁移 user_server（玩家区服记录）
         gameServerMapper.migratePlayerServer(sourceServerId, targetServerId);
+        // 内存缓存等提交后再清：提交前重新加载会读回旧的区服归属
+        afterCommit(playerDirectory::invalidate);
+        afterCommit(playerNameResolver::invalidateAll);
+        afterCommit(chatChannelHub::clear);
         logger.info("user_server 迁移完成");
 
         // 5. 重建英雄榜
         rebuildHeroRank(targetServerId, sourcePlayers, targetPlayers);
+        afterCommit(() -> {
+            heroRankBoard.invalidate(sourceServerId);
+            heroRankBoard.invalidate(targetServerId);
+        });
 
         // 6. 标记源服
         String sourceName = (String) sourceServer.get("serverName");
@@ -86,6 +108,22 @@ public class ServerMergeService {
         return result;
     }
 
+    /**
+     * 事务提交后执行；没有事务时立即执行
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
     private void migrateServerIdTables(int source, int target) {
         // 联盟：处理重名后迁移
         mergeMapper.renameConflictAlliances(source, target);
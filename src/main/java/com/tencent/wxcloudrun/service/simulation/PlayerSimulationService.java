@@ -6,6 +6,7 @@ import com.tencent.wxcloudrun.model.General;
 import com.tencent.wxcloudrun.model.Production.Recipe;
 import com.tencent.wxcloudrun.model.SecretRealm;
 import com.tencent.wxcloudrun.model.Shop;
+import com.tencent.wxcloudrun.repository.PlayerDirectory;
 import com.tencent.wxcloudrun.service.ShopService;
 import com.tencent.wxcloudrun.service.PlayerNameResolver;
 import com.tencent.wxcloudrun.service.UserResourceService;
@@ -86,6 +87,7 @@ public class PlayerSimulationService {
     private final PlayerNameResolver playerNameResolver;
     private final SimulationConfigService simulationConfigService;
     private final UserResourceService userResourceService;
+    private final PlayerDirectory playerDirectory;
 
     private final Random random = new Random();
 
@@ -111,7 +113,8 @@ public class PlayerSimulationService {
                                    WarehouseService warehouseService,
                                    PlayerNameResolver playerNameResolver,
                                    SimulationConfigService simulationConfigService,
-                                   UserResourceService userResourceService) {
+                                   UserResourceService userResourceService,
+                                   PlayerDirectory playerDirectory) {
         this.gameServerMapper = gameServerMapper;
         this.chatService = chatService;
         this.heroRankService = heroRankService;
@@ -135,6 +138,7 @@ public class PlayerSimulationService {
         this.playerNameResolver = playerNameResolver;
         this.simulationConfigService = simulationConfigService;
         this.userResourceService = userResourceService;
+        this.playerDirectory = playerDirectory;
     }
 
     public Map<String, Object> runSimulationOnce(int maxPlayers, boolean includeWarModules) {
@@ -322,6 +326,8 @@ public class PlayerSimulationService {
                 long now = System.currentTimeMillis();
                 gameServerMapper.insertPlayerServer(rawUserId, serverId, lordName, now);
                 gameServerMapper.incrementServerPlayers(serverId);
+                playerDirectory.updateName(rawUserId + "_" + serverId, lordName);
+                playerNameResolver.invalidateUser(rawUserId);
                 initVirtualRoleData(rawUserId + "_" + serverId);
                 created++;
             } catch (Exception e) {
@@ -13,6 +13,7 @@ import com.tencent.wxcloudrun.service.battle.BattleCalculator;
 import com.tencent.wxcloudrun.service.battle.BattleService;
 import com.tencent.wxcloudrun.service.PlayerNameResolver;
 import com.tencent.wxcloudrun.service.SuitConfigService;
+import com.tencent.wxcloudrun.service.equipment.EquipBonus;
 import com.tencent.wxcloudrun.service.level.LevelService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -339,12 +340,16 @@ public class SupplyService {
         List<Map<String, Object>> allActive = transportMapper.findAllActiveByServerId(extractServerId(userId));
         long now = System.currentTimeMillis();
 
+        List<String> ownerIds = new ArrayList<>();
+        for (Map<String, Object> t : allActive) ownerIds.add(String.valueOf(t.get("userId")));
+        Map<String, String> names = playerNameResolver.resolveAll(ownerIds);
+
         List<Map<String, Object>> transports = new ArrayList<>();
         for (Map<String, Object> t : allActive) {
             enrichTransport(t);
             String tUserId = String.valueOf(t.get("userId"));
             t.put("isOwn", userId.equals(tUserId));
-            t.put("playerName", playerNameResolver.resolve(tUserId));
+            t.put("playerName", names.get(tUserId));
             transports.add(t);
         }
 
@@ -480,17 +485,25 @@ public class SupplyService {
         } else {
             records = robberyMapper.findByAttacker(userId, 50);
         }
+        List<String> playerIds = new ArrayList<>();
+        for (Map<String, Object> r : records) {
+            playerIds.add(String.valueOf(r.get("attackerId")));
+            playerIds.add(String.valueOf(r.get("defenderId")));
+        }
+        playerIds.removeIf(id -> id.startsWith("NPC_"));
+        Map<String, String> names = playerNameResolver.resolveAll(playerIds);
+
         for (Map<String, Object> r : records) {
             Object v = r.get("victory");
             r.put("victory", v != null && ("1".equals(String.valueOf(v))
                     || Boolean.TRUE.equals(v) || "true".equalsIgnoreCase(String.valueOf(v))));
             String attackerId = String.valueOf(r.get("attackerId"));
             String defenderId = String.valueOf(r.get("defenderId"));
-            if (attackerId != null && !attackerId.startsWith("NPC_")) {
-                r.put("attackerName", playerNameResolver.resolve(attackerId));
+            if (!attackerId.startsWith("NPC_")) {
+                r.put("attackerName", names.get(attackerId));
             }
-            if (defenderId != null && !defenderId.startsWith("NPC_")) {
-                r.put("defenderName", playerNameResolver.resolve(defenderId));
+            if (!defenderId.startsWith("NPC_")) {
+                r.put("defenderName", names.get(defenderId));
             }
         }
 
@@ -606,7 +619,7 @@ public class SupplyService {
         List<BattleCalculator.BattleUnit> units = new ArrayList<>();
         for (int i = 0; i < generals.size(); i++) {
             General g = generals.get(i);
-            Map<String, Integer> eq = suitConfigService.calculateTotalEquipBonus(g.getId());
+            EquipBonus eq = suitConfigService.calculateTotalEquipBonus(g.getId());
             int rawTier = g.getSoldierTier() != null ? g.getSoldierTier() : 1;
             int sRank = g.getSoldierRank() != null ? g.getSoldierRank() : 1;
             int tier = Math.max(rawTier, sRank);
@@ -624,9 +637,9 @@ public class SupplyService {
                     g.getAttrDodge() != null ? (int) Math.round(g.getAttrDodge()) : 5,
                     g.getAttrMobility() != null ? g.getAttrMobility() : 15,
                     troopType, tier, sc, maxSc, formLv,
-                    eq.getOrDefault("attack", 0), eq.getOrDefault("defense", 0),
-                    eq.getOrDefault("mobility", eq.getOrDefault("speed", 0)), eq.getOrDefault("hit", 0),
-                    eq.getOrDefault("dodge", 0), 0, 0, 0);
+                    eq.attack, eq.defense,
+                    eq.mobility, eq.hit,
+                    eq.dodge, 0, 0, 0);
             u.position = i;
             generalService.applyFamousTraitsToUnit(u, g.getName(), troopType);
             units.add(u);
@@ -8,6 +8,7 @@ import com.tencent.wxcloudrun.model.General;
 import com.tencent.wxcloudrun.model.UserResource;
 import com.tencent.wxcloudrun.repository.GeneralRepository;
 import com.tencent.wxcloudrun.service.UserResourceService;
+import com.tencent.wxcloudrun.service.formation.CombatSnapshotCache;
 import com.tencent.wxcloudrun.service.warehouse.WarehouseService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,6 +37,9 @@ public class TacticsService {
     @Autowired
     private WarehouseService warehouseService;
 
+    @Autowired
+    private CombatSnapshotCache combatSnapshotCache;
+
     private final Random random = new Random();
 
     /**
@@ -91,6 +95,7 @@ public class TacticsService {
         checkAndDeductResources(resource, cost, userId);
 
         userTacticsMapper.upsert(userId, tacticsId, 1, System.currentTimeMillis());
+        combatSnapshotCache.invalidate(userId);
         Map<String, Object> latest = userTacticsMapper.findByUserIdAndTacticsId(userId, tacticsId);
         String instanceId = latest == null ? null : String.valueOf(latest.get("instanceId"));
         int level = latest == null ? 1 : ((Number) latest.get("level")).intValue();
@@ -152,6 +157,7 @@ public class TacticsService {
         if (success) {
             finalLevel = nextLevel;
             userTacticsMapper.updateLevel(userId, instanceId, finalLevel);
+            combatSnapshotCache.invalidate(userId);
         }
         int leftBookCount = warehouseService.getItemCount(userId, bookItemId);
         logger.info("用户 {} 升级兵法 {} ({}): lv{}->{} success={} rate={}%",
@@ -298,6 +304,7 @@ public class TacticsService {
      */
     public void grantTactics(String userId, String tacticsId, int level) {
         userTacticsMapper.upsert(userId, tacticsId, level, System.currentTimeMillis());
+        combatSnapshotCache.invalidate(userId);
         logger.info("授予用户 {} 兵法 {}, 等级 {}", userId, tacticsId, level);
     }
 
@@ -6,6 +6,7 @@ import com.tencent.wxcloudrun.model.Equipment;
 import com.tencent.wxcloudrun.model.UserResource;
 import com.tencent.wxcloudrun.model.Warehouse;
 import com.tencent.wxcloudrun.repository.EquipmentRepository;
+import com.tencent.wxcloudrun.repository.UserResourceLedger;
 import com.tencent.wxcloudrun.repository.UserResourceRepository;
 import com.tencent.wxcloudrun.repository.WarehouseRepository;
 import com.tencent.wxcloudrun.service.UserResourceService;
@@ -29,6 +30,9 @@ public class WarehouseService {
     
     @Autowired
     private UserResourceRepository resourceRepository;
+
+    @Autowired
+    private UserResourceLedger userResourceLedger;
     
     @Autowired
     private EquipmentRepository equipmentRepository;
@@ -90,7 +94,6 @@ public class WarehouseService {
      */
     public Map<String, Object> expandEquipmentStorage(String userId) {
         Warehouse warehouse = getWarehouse(userId);
-        UserResource resource = resourceRepository.findByUserId(userId);
         
         int expandTimes = warehouse.getEquipmentStorage().getExpandTimes();
         int cost = warehouseRepository.getExpandCost(expandTimes);
@@ -99,13 +102,11 @@ public class WarehouseService {
             throw new BusinessException(400, "装备仓库已达到最大容量，无法继续扩充");
         }
         
-        if (resource.getGold() < cost) {
+        // 扣除元宝（带余额条件的列增量扣减）
+        if (!userResourceLedger.consume(userId, UserResourceLedger.Column.GOLD, cost)) {
             throw new BusinessException(400, "元宝不足，需要" + cost + "元宝");
         }
-        
-        // 扣除元宝
-        resource.setGold(resource.getGold() - cost);
-        resourceRepository.save(resource);
+        UserResource resource = resourceRepository.findByUserId(userId);
         
         // 扩充仓库
         Warehouse.EquipmentStorage storage = warehouse.getEquipmentStorage();
@@ -131,7 +132,6 @@ public class WarehouseService {
      */
     public Map<String, Object> expandItemStorage(String userId) {
         Warehouse warehouse = getWarehouse(userId);
-        UserResource resource = resourceRepository.findByUserId(userId);
         
         int expandTimes = warehouse.getItemStorage().getExpandTimes();
         int cost = warehouseRepository.getExpandCost(expandTimes);
@@ -140,13 +140,11 @@ public class WarehouseService {
             throw new BusinessException(400, "物品仓库已达到最大容量，无法继续扩充");
         }
         
-        if (resource.getGold() < cost) {
+        // 扣除元宝（带余额条件的列增量扣减）
+        if (!userResourceLedger.consume(userId, UserResourceLedger.Column.GOLD, cost)) {
             throw new BusinessException(400, "元宝不足，需要" + cost + "元宝");
         }
-        
-        // 扣除元宝
-        resource.setGold(resource.getGold() - cost);
-        resourceRepository.save(resource);
+        UserResource resource = resourceRepository.findByUserId(userId);
         
         // 扩充仓库
         Warehouse.ItemStorage storage = warehouse.getItemStorage();
@@ -176,13 +174,8 @@ public class WarehouseService {
         List<Equipment> allEquipments = equipmentRepository.findUnequippedByUserId(userId);
         if (allEquipments == null) allEquipments = new ArrayList<>();
 
+        // 只读接口，不回写仓库；已用槽位以实际未穿戴装备数为准
         Warehouse.EquipmentStorage es = warehouse.getEquipmentStorage();
-        es.setUsedSlots(allEquipments.size());
-        if (es.getEquipmentIds() == null) es.setEquipmentIds(new ArrayList<>());
-        List<String> ids = new ArrayList<>();
-        for (Equipment e : allEquipments) ids.add(e.getId());
-        es.setEquipmentIds(ids);
-        warehouseRepository.save(warehouse);
 
         // 分页
         int total = allEquipments.size();
@@ -243,7 +236,19 @@ public class WarehouseService {
         Warehouse.EquipmentStorage storage = warehouse.getEquipmentStorage();
         
         if (storage.getUsedSlots() >= storage.getCapacity()) {
-            throw new BusinessException(400, "装备仓库已满，请先扩充或清理");
+            // 记录的槽位可能因穿戴/出售而偏大，按实际未穿戴装备重新校准后再判断
+            List<Equipment> unequipped = equipmentRepository.findUnequippedByUserId(userId);
+            List<String> ids = new ArrayList<>();
+            if (unequipped != null) {
+                for (Equipment e : unequipped) {
+                    if (!e.getId().equals(equipmentId)) ids.add(e.getId());
+                }
+            }
+            storage.setEquipmentIds(ids);
+            storage.setUsedSlots(ids.size());
+            if (storage.getUsedSlots() >= storage.getCapacity()) {
+                throw new BusinessException(400, "装备仓库已满，请先扩充或清理");
+            }
         }
         
         if (storage.getEquipmentIds() == null) {
@@ -554,15 +559,15 @@ public class WarehouseService {
     }
     private void addSilverEffect(UserResource r, Map<String, Object> e, long amount) {
         long before = r.getSilver() != null ? r.getSilver() : 0L;
+        userResourceLedger.add(r.getOdUserId(), UserResourceLedger.Column.SILVER, amount);
         r.setSilver(before + amount);
-        resourceRepository.save(r);
         logger.info("【addSilverEffect】before={}, add={}, after={}", before, amount, r.getSilver());
         e.put("type", "silver"); e.put("gain", amount);
         e.put("message", "获得" + amount + "白银");
     }
     private void addGoldEffect(UserResource r, Map<String, Object> e, long amount) {
+        userResourceLedger.add(r.getOdUserId(), UserResourceLedger.Column.GOLD, amount);
         r.setGold((r.getGold() != null ? r.getGold() : 0L) + amount);
-        resourceRepository.save(r);
         e.put("type", "gold"); e.put("gain", amount);
         e.put("message", "获得" + amount + "黄金");
     }
@@ -588,19 +593,23 @@ public class WarehouseService {
     }
     private void addMaterialEffect(UserResource r, Map<String, Object> e, int matId, long amount) {
         String matName;
+        UserResourceLedger.Column column;
         switch (matId) {
             case 11052:
                 r.setMetal((r.getMetal() != null ? r.getMetal() : 0L) + amount);
+                column = UserResourceLedger.Column.METAL;
                 matName = "金属"; break;
             case 11053:
                 r.setFood((r.getFood() != null ? r.getFood() : 0L) + amount);
+                column = UserResourceLedger.Column.FOOD;
                 matName = "粮食"; break;
             case 11054:
                 r.setPaper((r.getPaper() != null ? r.getPaper() : 0L) + amount);
+                column = UserResourceLedger.Column.PAPER;
                 matName = "纸张"; break;
-            default: matName = "资源"; break;
+            default: column = null; matName = "资源"; break;
         }
-        resourceRepository.save(r);
+        if (column != null) userResourceLedger.add(r.getOdUserId(), column, amount);
         logger.info("【addMaterialEffect】matId={}, matName={}, add={}", matId, matName, amount);
         e.put("type", "material"); e.put("gain", amount);
         e.put("message", "获得" + amount + matName);
@@ -830,10 +839,9 @@ public class WarehouseService {
         // 计算出售价格（根据品质）
         int sellPrice = calculateEquipmentSellPrice(equipment);
         
-        // 获取用户资源
+        // 按增量加白银，不整行回写（避免覆盖同时进行的其它资源变动）
         UserResource resource = resourceRepository.findByUserId(userId);
-        resource.setSilver(resource.getSilver() + sellPrice);
-        resourceRepository.save(resource);
+        userResourceLedger.add(userId, UserResourceLedger.Column.SILVER, sellPrice);
         
         // 从仓库移除
         removeEquipment(userId, equipmentId);
@@ -844,7 +852,7 @@ public class WarehouseService {
         Map<String, Object> result = new HashMap<>();
         result.put("success", true);
         result.put("sellPrice", sellPrice);
-        result.put("totalSilver", resource.getSilver());
+        result.put("totalSilver", (resource.getSilver() != null ? resource.getSilver() : 0L) + sellPrice);
         
         return result;
     }
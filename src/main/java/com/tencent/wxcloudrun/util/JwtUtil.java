@@ -2,30 +2,52 @@ package com.tencent.wxcloudrun.util;
 
 import com.tencent.wxcloudrun.config.JwtConfig;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * JWT工具类
+ *
+ * 签名密钥和解析器启动时构建一次；校验通过的token按自身过期时间缓存（有上限），
+ * 同一token的后续请求不再做签名运算。
  */
 @Component
 public class JwtUtil {
     
     private static final Logger logger = LoggerFactory.getLogger(JwtUtil.class);
+
+    /** 缓存的已校验token上限，超过时先清过期项，仍超限则清空 */
+    private static final int MAX_VERIFIED_TOKENS = 20000;
     
     @Autowired
     private JwtConfig jwtConfig;
+
+    private SecretKey key;
+    private JwtParser parser;
+
+    /** token → 已校验的openId */
+    private final Map<String, VerifiedToken> verifiedTokens = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        key = Keys.hmacShaKeyFor(jwtConfig.getSecret().getBytes(StandardCharsets.UTF_8));
+        parser = Jwts.parserBuilder().setSigningKey(key).build();
+    }
     
     /**
      * 生成token
@@ -37,8 +59,6 @@ public class JwtUtil {
         long now = System.currentTimeMillis();
         Date expireDate = new Date(now + jwtConfig.getExpiration() * 1000);
         
-        SecretKey key = Keys.hmacShaKeyFor(jwtConfig.getSecret().getBytes(StandardCharsets.UTF_8));
-        
         return Jwts.builder()
                 .setClaims(claims)
                 .setIssuedAt(new Date(now))
@@ -48,23 +68,48 @@ public class JwtUtil {
     }
     
     /**
-     * 从token中获取openId
+     * 校验token并取出openId（只解析一次）
+     *
+     * @return openId；token无效、已过期或不含openId时返回 null
      */
-    public String getOpenIdFromToken(String token) {
-        Claims claims = parseToken(token);
-        return claims.get("openId", String.class);
-    }
-    
-    /**
-     * 验证token是否有效
-     */
-    public boolean validateToken(String token) {
+    public String verify(String token) {
+        if (token == null || token.isEmpty()) return null;
+        long now = System.currentTimeMillis();
+        VerifiedToken cached = verifiedTokens.get(token);
+        if (cached != null) {
+            if (cached.expiresAt > now) return cached.openId;
+            verifiedTokens.remove(token, cached);
+            return null;
+        }
+
+        Claims claims;
         try {
-            parseToken(token);
-            return true;
+            claims = parseToken(token);
         } catch (Exception e) {
-            logger.error("JWT验证异常", e);
-            return false;
+            logger.warn("JWT验证失败: {}", e.getMessage());
+            return null;
+        }
+        String openId = claims.get("openId", String.class);
+        if (openId == null) return null;
+
+        Date expiration = claims.getExpiration();
+        long expiresAt = expiration != null ? expiration.getTime() : now + jwtConfig.getExpiration() * 1000;
+        if (verifiedTokens.size() >= MAX_VERIFIED_TOKENS) purgeExpired(true);
+        verifiedTokens.put(token, new VerifiedToken(openId, expiresAt));
+        return openId;
+    }
+
+    @Scheduled(cron = "0 */10 * * * ?")
+    public void evictExpired() {
+        purgeExpired(false);
+    }
+
+    private void purgeExpired(boolean clearIfFull) {
+        long now = System.currentTimeMillis();
+        verifiedTokens.values().removeIf(v -> v.expiresAt <= now);
+        if (clearIfFull && verifiedTokens.size() >= MAX_VERIFIED_TOKENS) {
+            logger.info("已校验token缓存达到上限 {}，清空", MAX_VERIFIED_TOKENS);
+            verifiedTokens.clear();
         }
     }
     
@@ -72,14 +117,16 @@ public class JwtUtil {
      * 解析token
      */
     private Claims parseToken(String token) {
-        SecretKey key = Keys.hmacShaKeyFor(jwtConfig.getSecret().getBytes(StandardCharsets.UTF_8));
-        
-        return Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return parser.parseClaimsJws(token).getBody();
     }
-}
 
+    private static final class VerifiedToken {
+        final String openId;
+        final long expiresAt;
 
+        VerifiedToken(String openId, long expiresAt) {
+            this.openId = openId;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.tencent.wxcloudrun.util;
+
+import java.util.*;
+
+/**
+ * 多关键词匹配（Aho-Corasick 自动机），构建后只读、可并发使用
+ *
+ * 一次扫描文本即可判断是否包含任一关键词，耗时与关键词数量无关；匹配不区分大小写。
+ */
+public final class KeywordMatcher {
+
+    private static final KeywordMatcher EMPTY = new KeywordMatcher(Collections.<String>emptyList());
+
+    /** 每个节点的子节点：字符 → 节点下标 */
+    private final List<Map<Character, Integer>> children = new ArrayList<>();
+    private final int[] fail;
+    /** 节点（或其失败链上的节点）是某个关键词的结尾 */
+    private final boolean[] terminal;
+    private final List<String> keywords;
+
+    private KeywordMatcher(Collection<String> words) {
+        children.add(new HashMap<>());
+        List<Boolean> ends = new ArrayList<>();
+        ends.add(false);
+        List<String> kept = new ArrayList<>();
+        for (String word : words) {
+            if (word == null || word.isEmpty()) continue;
+            kept.add(word);
+            int node = 0;
+            for (int i = 0; i < word.length(); i++) {
+                char c = Character.toLowerCase(word.charAt(i));
+                Integer next = children.get(node).get(c);
+                if (next == null) {
+                    next = children.size();
+                    children.add(new HashMap<>());
+                    ends.add(false);
+                    children.get(node).put(c, next);
+                }
+                node = next;
+            }
+            ends.set(node, true);
+        }
+        this.keywords = Collections.unmodifiableList(kept);
+
+        int n = children.size();
+        this.fail = new int[n];
+        this.terminal = new boolean[n];
+        for (int i = 0; i < n; i++) terminal[i] = ends.get(i);
+
+        // 按层构建失败指针，终止标记沿失败链向下传递
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : children.get(0).values()) {
+            fail[child] = 0;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (Map.Entry<Character, Integer> e : children.get(node).entrySet()) {
+                int child = e.getValue();
+                int f = fail[node];
+                while (f != 0 && !children.get(f).containsKey(e.getKey())) f = fail[f];
+                Integer target = children.get(f).get(e.getKey());
+                fail[child] = (target != null && target != child) ? target : 0;
+                terminal[child] = terminal[child] || terminal[fail[child]];
+                queue.add(child);
+            }
+        }
+    }
+
+    public static KeywordMatcher of(Collection<String> keywords) {
+        if (keywords == null || keywords.isEmpty()) return EMPTY;
+        return new KeywordMatcher(keywords);
+    }
+
+    public List<String> getKeywords() {
+        return keywords;
+    }
+
+    public boolean isEmpty() {
+        return keywords.isEmpty();
+    }
+
+    /**
+     * 文本中是否出现任一关键词
+     */
+    public boolean matches(String text) {
+        if (text == null || text.isEmpty() || keywords.isEmpty()) return false;
+        int node = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            Integer next = children.get(node).get(c);
+            while (next == null && node != 0) {
+                node = fail[node];
+                next = children.get(node).get(c);
+            }
+            node = next != null ? next : 0;
+            if (terminal[node]) return true;
+        }
+        return false;
+    }
+}
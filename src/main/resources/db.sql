@@ -299,7 +299,8 @@ CREATE TABLE IF NOT EXISTS `equipment` (
   `create_time` BIGINT COMMENT '创建时间戳',
   `update_time` BIGINT COMMENT '更新时间戳',
   PRIMARY KEY (`id`),
-  KEY `idx_equip_user_id` (`user_id`)
+  KEY `idx_equip_user_id` (`user_id`),
+  KEY `idx_equip_general` (`equipped_general_id`, `equipped`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='装备实例表';
 
 -- =============================================
@@ -539,6 +540,48 @@ CREATE TABLE IF NOT EXISTS `nation_war_city_owner` (
   PRIMARY KEY (`city_id`, `server_id`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='国战城市归属表';
 
+-- =============================================
+-- 14.2 国战会话增量持久化表（元数据/战场/玩家/轮次分行存储）
+-- =============================================
+CREATE TABLE IF NOT EXISTS `nation_war_session` (
+  `session_id` VARCHAR(64) NOT NULL COMMENT '会话ID(SESSION_yyyy-MM-dd)',
+  `server_id` INT NOT NULL DEFAULT 1 COMMENT '区服ID',
+  `war_date` VARCHAR(16) NOT NULL COMMENT '国战日期(yyyy-MM-dd)',
+  `phase` VARCHAR(16) NOT NULL COMMENT '会话阶段',
+  `current_round` INT DEFAULT 0 COMMENT '当前轮次',
+  `data` TEXT COMMENT '会话元数据JSON（报名/锁定目标/阶段时间，不含战场和玩家）',
+  `update_time` BIGINT DEFAULT 0 COMMENT '最后写入时间戳',
+  PRIMARY KEY (`session_id`, `server_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='国战会话元数据表';
+
+CREATE TABLE IF NOT EXISTS `nation_war_session_city` (
+  `session_id` VARCHAR(64) NOT NULL COMMENT '会话ID',
+  `server_id` INT NOT NULL DEFAULT 1 COMMENT '区服ID',
+  `city_id` VARCHAR(32) NOT NULL COMMENT '城市ID',
+  `data` TEXT COMMENT '城市战场JSON（比分/守军/胜负，不含轮次记录）',
+  `update_time` BIGINT DEFAULT 0 COMMENT '最后写入时间戳',
+  PRIMARY KEY (`session_id`, `server_id`, `city_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='国战城市战场状态表';
+
+CREATE TABLE IF NOT EXISTS `nation_war_session_player` (
+  `session_id` VARCHAR(64) NOT NULL COMMENT '会话ID',
+  `server_id` INT NOT NULL DEFAULT 1 COMMENT '区服ID',
+  `od_user_id` VARCHAR(64) NOT NULL COMMENT '玩家ID（含NPC_前缀的援军）',
+  `data` TEXT COMMENT '玩家参战状态JSON',
+  `update_time` BIGINT DEFAULT 0 COMMENT '最后写入时间戳',
+  PRIMARY KEY (`session_id`, `server_id`, `od_user_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='国战玩家状态表';
+
+CREATE TABLE IF NOT EXISTS `nation_war_session_round` (
+  `session_id` VARCHAR(64) NOT NULL COMMENT '会话ID',
+  `server_id` INT NOT NULL DEFAULT 1 COMMENT '区服ID',
+  `city_id` VARCHAR(32) NOT NULL COMMENT '城市ID',
+  `round_number` INT NOT NULL COMMENT '轮次',
+  `data` MEDIUMTEXT COMMENT '本轮结果JSON（对战/轮空）',
+  `create_time` BIGINT DEFAULT 0 COMMENT '写入时间戳',
+  PRIMARY KEY (`session_id`, `server_id`, `city_id`, `round_number`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='国战轮次结果表（只追加）';
+
 -- =============================================
 -- 15. 战役进度表
 -- =============================================
@@ -671,7 +714,8 @@ CREATE TABLE IF NOT EXISTS `hero_rank` (
   `update_time` BIGINT COMMENT '更新时间戳',
   PRIMARY KEY (`id`),
   UNIQUE KEY `uk_hr_user` (`user_id`),
-  KEY `idx_hr_server_rank` (`server_id`, `rank_position`)
+  KEY `idx_hr_server_rank` (`server_id`, `rank_position`),
+  KEY `idx_hr_server_ranking` (`server_id`, `ranking`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='英雄榜排名表';
 
 -- 兼容旧表: 补充 hero_rank 缺失字段
@@ -965,3 +1009,23 @@ CREATE TABLE IF NOT EXISTS `simulation_chat_template` (
   PRIMARY KEY (`id`),
   KEY `idx_sct_server_channel` (`server_id`, `channel`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='区服模拟聊天文案池';
+
+-- =============================================
+-- 28. 战报存储表（开战快照 + 种子，回放时重新结算；业务记录只存 report_id）
+-- =============================================
+CREATE TABLE IF NOT EXISTS `battle_report` (
+  `id` BIGINT AUTO_INCREMENT COMMENT '战报ID',
+  `report_type` VARCHAR(16) NOT NULL COMMENT 'nationwar/alliancewar/herorank',
+  `server_id` INT DEFAULT 1 COMMENT '区服ID',
+  `payload` MEDIUMBLOB NULL COMMENT '整份编码的战报(旧数据)',
+  `seed` BIGINT DEFAULT 0 COMMENT '战斗随机种子',
+  `snapshot` BLOB NULL COMMENT '开战快照(双方单位属性)',
+  `victory_a` TINYINT(1) DEFAULT 0 COMMENT 'A方是否获胜',
+  `total_rounds` INT DEFAULT 0 COMMENT '回合数',
+  `side_a_remaining` INT DEFAULT 0 COMMENT 'A方剩余兵力',
+  `side_b_remaining` INT DEFAULT 0 COMMENT 'B方剩余兵力',
+  `raw_size` INT DEFAULT 0 COMMENT '按旧JSON格式估算的字节数，用于观察压缩比',
+  `create_time` BIGINT NOT NULL COMMENT '创建时间戳',
+  PRIMARY KEY (`id`),
+  KEY `idx_create_time` (`create_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='战报存储表';